@@ -0,0 +1,31 @@
+package com.db.awmd.challenge;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Zipfian rank sampler over {@code 0..n-1}: rank k is drawn with probability proportional to
+ * {@code 1 / (k + 1)^exponent}, so low ranks are hot accounts. Sampling is a binary search of the
+ * precomputed cumulative distribution and is safe from any thread.
+ */
+public class Zipf {
+
+  private final double[] cumulative;
+
+  public Zipf(int n, double exponent) {
+    cumulative = new double[n];
+    double sum = 0;
+    for (int k = 0; k < n; k++) {
+      sum += 1 / Math.pow(k + 1, exponent);
+      cumulative[k] = sum;
+    }
+    for (int k = 0; k < n; k++) {
+      cumulative[k] /= sum;
+    }
+  }
+
+  public int next() {
+    int index = Arrays.binarySearch(cumulative, ThreadLocalRandom.current().nextDouble());
+    return Math.min(index >= 0 ? index : -index - 1, cumulative.length - 1);
+  }
+}
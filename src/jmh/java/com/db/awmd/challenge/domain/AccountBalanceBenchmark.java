@@ -0,0 +1,90 @@
+package com.db.awmd.challenge.domain;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One hot account hit by 1, 8 and 64 threads, for each {@link BalanceEngineType}.
+ * The creditOnly benchmarks run against a {@link StripedCreditBalanceEngine} account instead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccountBalanceBenchmark {
+
+  //Minor units: 1,000,000,000.00 and 1.25.
+  private static final long OPENING_BALANCE = 100_000_000_000L;
+
+  private static final long AMOUNT = 125;
+
+  @Param({"LOCKING", "ATOMIC"})
+  private BalanceEngineType engine;
+
+  private Account account;
+
+  private Account creditOnlyAccount;
+
+  @Setup
+  public void setUp() {
+    AccountLocks locks = new AccountLocks(16);
+    MinorUnits minorUnits = new MinorUnits(MinorUnits.DEFAULT_CURRENCY);
+    account = new Account("hot", engine, engine.create(OPENING_BALANCE), locks.lockFor("hot"), minorUnits);
+    creditOnlyAccount = new Account("sink", BalanceEngineType.CREDIT_ONLY, BalanceEngineType.CREDIT_ONLY.create(0),
+      locks.lockFor("sink"), minorUnits);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void creditDebit1() {
+    creditDebit();
+  }
+
+  @Benchmark
+  @Threads(8)
+  public void creditDebit8() {
+    creditDebit();
+  }
+
+  @Benchmark
+  @Threads(64)
+  public void creditDebit64() {
+    creditDebit();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void creditOnly1() {
+    creditOnlyAccount.credit(AMOUNT);
+  }
+
+  @Benchmark
+  @Threads(8)
+  public void creditOnly8() {
+    creditOnlyAccount.credit(AMOUNT);
+  }
+
+  @Benchmark
+  @Threads(64)
+  public void creditOnly64() {
+    creditOnlyAccount.credit(AMOUNT);
+  }
+
+  private void creditDebit() {
+    account.credit(AMOUNT);
+    account.debit(AMOUNT);
+  }
+}
@@ -0,0 +1,61 @@
+package com.db.awmd.challenge.domain;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Transaction id generators under 1 to 64 threads: time-ordered ids against UUID.randomUUID().
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionIdBenchmark {
+
+  @Param({"TIME_ORDERED", "UUID"})
+  private TransactionIdType type;
+
+  private TransactionIdGenerator generator;
+
+  @Setup
+  public void setUp() {
+    generator = type.create(1);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public String nextId1() {
+    return generator.nextId();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public String nextId4() {
+    return generator.nextId();
+  }
+
+  @Benchmark
+  @Threads(16)
+  public String nextId16() {
+    return generator.nextId();
+  }
+
+  @Benchmark
+  @Threads(64)
+  public String nextId64() {
+    return generator.nextId();
+  }
+}
@@ -0,0 +1,395 @@
+package com.db.awmd.challenge.load;
+
+import com.db.awmd.challenge.Zipf;
+import com.db.awmd.challenge.web.BinaryTransferHandler;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Open-loop HTTP load generator for a locally running DevChallengeApplication. Requests are
+ * scheduled at a fixed rate and each latency is measured from the time the request was due to be
+ * sent, not from when a worker got round to it, so a stalled server shows up in the percentiles
+ * instead of silently lowering the offered load (coordinated omission).
+ *
+ * <pre>
+ *   ./gradlew loadTest -PloadTestArgs="--rate=5000 --duration=30 --read-ratio=0.8 --zipf=0.99"
+ * </pre>
+ *
+ * Options: --url (http://localhost:18080), --accounts (10000), --rate in requests/s (1000),
+ * --duration and --warmup in seconds (30, 5), --read-ratio (0.5), --zipf exponent, 0 for uniform
+ * (0.99), --workers, the most requests in flight (256), --transfer-path
+ * (/v1/transaction/transfer; /v1/transaction/transfer/async for the async endpoint), --protocol
+ * for transfers (json; binary sends one BinaryTransferHandler frame to /v1/transaction/binary;
+ * tcp pipelines the same frames over --connections (4) connections to the TransferGateway at
+ * --gateway-port (18081), without waiting for responses), --hot-ratio, the share of requests sent
+ * as JSON transfers out of one hot account by one client (0); those are reported on their own, so
+ * the latency of everyone else under a hot-key attack can be read off the transfer histogram.
+ */
+public class LoadTest {
+
+  private static final String OPENING_BALANCE = "1000000000";
+
+  private final String url;
+
+  private final int accounts;
+
+  private final int rate;
+
+  private final int durationSeconds;
+
+  private final int warmupSeconds;
+
+  private final double readRatio;
+
+  private final Zipf zipf;
+
+  private final int workers;
+
+  private final String transferPath;
+
+  private final boolean binary;
+
+  private final boolean tcp;
+
+  private final int gatewayPort;
+
+  private final AtomicReferenceArray<Socket> gatewayConnections;
+
+  private final AtomicLong outstanding = new AtomicLong();
+
+  private volatile long measureFrom;
+
+  private final Recorder reads = new Recorder(3);
+
+  private final Recorder transfers = new Recorder(3);
+
+  private final Recorder hotTransfers = new Recorder(3);
+
+  private final double hotRatio;
+
+  private final Map<Integer, LongAdder> statuses = statuses();
+
+  private final Map<Integer, LongAdder> hotStatuses = statuses();
+
+  private final LongAdder errors = new LongAdder();
+
+  private final AtomicLong nextRequest = new AtomicLong();
+
+  LoadTest(Map<String, String> options) {
+    url = options.getOrDefault("url", "http://localhost:18080");
+    accounts = Integer.parseInt(options.getOrDefault("accounts", "10000"));
+    rate = Integer.parseInt(options.getOrDefault("rate", "1000"));
+    durationSeconds = Integer.parseInt(options.getOrDefault("duration", "30"));
+    warmupSeconds = Integer.parseInt(options.getOrDefault("warmup", "5"));
+    readRatio = Double.parseDouble(options.getOrDefault("read-ratio", "0.5"));
+    zipf = new Zipf(accounts, Double.parseDouble(options.getOrDefault("zipf", "0.99")));
+    workers = Integer.parseInt(options.getOrDefault("workers", "256"));
+    binary = "binary".equals(options.getOrDefault("protocol", "json"));
+    tcp = "tcp".equals(options.getOrDefault("protocol", "json"));
+    gatewayPort = Integer.parseInt(options.getOrDefault("gateway-port", "18081"));
+    gatewayConnections = new AtomicReferenceArray<>(Integer.parseInt(options.getOrDefault("connections", "4")));
+    transferPath = binary ? "/v1/transaction/binary"
+      : tcp ? "tcp://localhost:" + gatewayPort : options.getOrDefault("transfer-path", "/v1/transaction/transfer");
+    hotRatio = Double.parseDouble(options.getOrDefault("hot-ratio", "0"));
+  }
+
+  private static Map<Integer, LongAdder> statuses() {
+    Map<Integer, LongAdder> statuses = new HashMap<>();
+    for (int status : new int[] {200, 201, 400, 404, 429, 500, 503}) {
+      statuses.put(status, new LongAdder());
+    }
+    return statuses;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new HashMap<>();
+    for (String arg : args) {
+      if (!arg.startsWith("--") || !arg.contains("=")) {
+        throw new IllegalArgumentException("Expected --name=value but got " + arg);
+      }
+      options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+    }
+    LoadTest loadTest = new LoadTest(options);
+    //Keep one pooled keep-alive connection per worker instead of the default five.
+    System.setProperty("http.maxConnections", Integer.toString(loadTest.workers));
+    loadTest.run();
+  }
+
+  void run() throws InterruptedException, IOException {
+    System.out.printf("Creating %d accounts at %s%n", accounts, url);
+    for (int i = 0; i < accounts; i++) {
+      //400 means the account is left over from an earlier run, which is fine.
+      send("POST", "/v1/accounts", json("{\"accountId\":\"" + accountId(i) + "\",\"balance\":" + OPENING_BALANCE + "}"),
+        "application/json", null);
+    }
+
+    System.out.printf("Offering %d requests/s for %d s after a %d s warm-up, %.0f%% reads, %d workers%n",
+      rate, durationSeconds, warmupSeconds, readRatio * 100, workers);
+    long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+    long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+    measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+    long end = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+    if (tcp) {
+      openGatewayConnections();
+    }
+
+    ExecutorService pool = Executors.newFixedThreadPool(workers);
+    for (int i = 0; i < workers; i++) {
+      pool.execute(() -> {
+        while (true) {
+          long due = start + nextRequest.getAndIncrement() * intervalNanos;
+          if (due >= end) {
+            return;
+          }
+          long wait;
+          while ((wait = due - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+          }
+          if (hotRatio > 0 && ThreadLocalRandom.current().nextDouble() < hotRatio) {
+            int status = hotTransfer();
+            if (due >= measureFrom) {
+              hotTransfers.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - due));
+              LongAdder count = hotStatuses.get(status);
+              if (count != null) {
+                count.increment();
+              }
+            }
+            continue;
+          }
+          boolean read = ThreadLocalRandom.current().nextDouble() < readRatio;
+          if (!read && tcp) {
+            //Recorded by the connection's reader when the response arrives.
+            sendFrame(due);
+            continue;
+          }
+          int status = read ? read() : transfer();
+          long latencyMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - due);
+          //Requests due during the warm-up are sent but not recorded.
+          if (due >= measureFrom) {
+            (read ? reads : transfers).recordValue(latencyMicros);
+            LongAdder count = statuses.get(status);
+            if (count != null) {
+              count.increment();
+            }
+          }
+        }
+      });
+    }
+    pool.shutdown();
+    pool.awaitTermination(warmupSeconds + durationSeconds + 60, TimeUnit.SECONDS);
+    if (tcp) {
+      closeGatewayConnections();
+    }
+    report(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - measureFrom));
+  }
+
+  private int read() {
+    return send("GET", "/v1/accounts/" + accountId(zipf.next()), null, null, null);
+  }
+
+  private int hotTransfer() {
+    int receiver = 1 + ThreadLocalRandom.current().nextInt(accounts - 1);
+    return send("POST", "/v1/transaction/transfer",
+      json("{\"from\":\"" + accountId(0) + "\",\"to\":\"" + accountId(receiver) + "\",\"amount\":1}"),
+      "application/json", "hot");
+  }
+
+  private int transfer() {
+    int sender = zipf.next();
+    int receiver = zipf.next();
+    while (receiver == sender) {
+      receiver = ThreadLocalRandom.current().nextInt(accounts);
+    }
+    if (binary) {
+      //One frame of 1.00, the same amount as the JSON request below.
+      ByteBuffer frame = ByteBuffer.allocate(128);
+      BinaryTransferHandler.writeRequest(frame, 0, accountId(sender), accountId(receiver), 100);
+      byte[] body = new byte[frame.position()];
+      System.arraycopy(frame.array(), 0, body, 0, body.length);
+      return send("POST", transferPath, body, "application/octet-stream", null);
+    }
+    return send("POST", transferPath,
+      json("{\"from\":\"" + accountId(sender) + "\",\"to\":\"" + accountId(receiver) + "\",\"amount\":1}"),
+      "application/json", null);
+  }
+
+  private void openGatewayConnections() throws IOException {
+    for (int i = 0; i < gatewayConnections.length(); i++) {
+      Socket socket = new Socket("localhost", gatewayPort);
+      socket.setTcpNoDelay(true);
+      gatewayConnections.set(i, socket);
+      Thread reader = new Thread(() -> readResponses(socket), "gateway-reader-" + i);
+      reader.setDaemon(true);
+      reader.start();
+    }
+  }
+
+  //Each frame carries the time it was due as its correlation id, so the latency can be taken from
+  //the response alone.
+  private void sendFrame(long due) {
+    int sender = zipf.next();
+    int receiver = zipf.next();
+    while (receiver == sender) {
+      receiver = ThreadLocalRandom.current().nextInt(accounts);
+    }
+    ByteBuffer frame = ByteBuffer.allocate(128);
+    BinaryTransferHandler.writeRequest(frame, due, accountId(sender), accountId(receiver), 100);
+    Socket socket = gatewayConnections.get((int) (due % gatewayConnections.length()));
+    outstanding.incrementAndGet();
+    try {
+      synchronized (socket) {
+        socket.getOutputStream().write(frame.array(), 0, frame.position());
+      }
+    } catch (IOException ioe) {
+      outstanding.decrementAndGet();
+      errors.increment();
+    }
+  }
+
+  private void readResponses(Socket socket) {
+    try {
+      DataInputStream in = new DataInputStream(socket.getInputStream());
+      while (true) {
+        int length = in.readInt();
+        long due = in.readLong();
+        byte status = in.readByte();
+        if (in.skipBytes(length - 9) != length - 9) {
+          throw new EOFException();
+        }
+        long latencyMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - due);
+        outstanding.decrementAndGet();
+        if (due >= measureFrom) {
+          transfers.recordValue(latencyMicros);
+          statuses.get(httpStatus(status)).increment();
+        }
+      }
+    } catch (IOException ioe) {
+      //Closed by closeGatewayConnections, or by the gateway.
+    }
+  }
+
+  private static int httpStatus(byte status) {
+    switch (status) {
+      case BinaryTransferHandler.OK:
+        return 200;
+      case BinaryTransferHandler.INVALID_ACCOUNT:
+        return 404;
+      case BinaryTransferHandler.ERROR:
+        return 500;
+      default:
+        return 400;
+    }
+  }
+
+  private void closeGatewayConnections() throws IOException, InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+    while (outstanding.get() > 0 && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    errors.add(outstanding.get());
+    for (int i = 0; i < gatewayConnections.length(); i++) {
+      gatewayConnections.get(i).close();
+    }
+  }
+
+  //Returns the HTTP status, or -1 when the request failed outright. Bodies are read to the end so
+  //the connection goes back to the keep-alive pool.
+  private int send(String method, String path, byte[] body, String contentType, String clientId) {
+    HttpURLConnection connection = null;
+    try {
+      connection = (HttpURLConnection) new URL(url + path).openConnection();
+      connection.setRequestMethod(method);
+      if (clientId != null) {
+        connection.setRequestProperty("X-Client-Id", clientId);
+      }
+      if (body != null) {
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", contentType);
+        connection.setFixedLengthStreamingMode(body.length);
+        try (OutputStream out = connection.getOutputStream()) {
+          out.write(body);
+        }
+      }
+      int status = connection.getResponseCode();
+      InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+      if (in != null) {
+        try (InputStream drained = in) {
+          byte[] buffer = new byte[4096];
+          while (drained.read(buffer) >= 0) {
+            //Discard.
+          }
+        }
+      }
+      return status;
+    } catch (IOException ioe) {
+      errors.increment();
+      if (connection != null) {
+        connection.disconnect();
+      }
+      return -1;
+    }
+  }
+
+  private void report(long elapsedSeconds) {
+    Histogram readHistogram = reads.getIntervalHistogram();
+    Histogram transferHistogram = transfers.getIntervalHistogram();
+    Histogram hotHistogram = hotTransfers.getIntervalHistogram();
+    long completed = readHistogram.getTotalCount() + transferHistogram.getTotalCount() + hotHistogram.getTotalCount();
+    System.out.printf("%nAchieved %.0f requests/s of %d offered (%d completed in %d s, %d I/O errors)%n",
+      (double) completed / Math.max(1, elapsedSeconds), rate, completed, elapsedSeconds, errors.sum());
+    statuses.forEach((status, count) -> {
+      if (count.sum() > 0) {
+        System.out.printf("  HTTP %d: %d%n", status, count.sum());
+      }
+    });
+    print("GET /v1/accounts/{accountId}", readHistogram);
+    print(tcp ? transferPath : "POST " + transferPath, transferHistogram);
+    if (hotHistogram.getTotalCount() > 0) {
+      hotStatuses.forEach((status, count) -> {
+        if (count.sum() > 0) {
+          System.out.printf("%n  hot HTTP %d: %d", status, count.sum());
+        }
+      });
+      print("POST /v1/transaction/transfer from " + accountId(0), hotHistogram);
+    }
+  }
+
+  private static void print(String name, Histogram histogram) {
+    if (histogram.getTotalCount() == 0) {
+      return;
+    }
+    System.out.printf("%n%s: %d requests, p50 %.2f ms, p99 %.2f ms, p99.9 %.2f ms, max %.2f ms%n",
+      name, histogram.getTotalCount(), histogram.getValueAtPercentile(50) / 1000.0,
+      histogram.getValueAtPercentile(99) / 1000.0, histogram.getValueAtPercentile(99.9) / 1000.0,
+      histogram.getMaxValue() / 1000.0);
+    histogram.outputPercentileDistribution(System.out, 2, 1000.0);
+  }
+
+  private static byte[] json(String body) {
+    return body.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static String accountId(int index) {
+    return "Load-" + index;
+  }
+}
@@ -0,0 +1,91 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link AccountsRepositoryInMemory} lookups of existing and missing ids, and account creation.
+ * Creation is measured in batches into a fresh repository per iteration, since the map only grows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccountsRepositoryBenchmark {
+
+  private static final int CREATE_BATCH = 100_000;
+
+  @Param({"10000", "1000000"})
+  private int accounts;
+
+  private AccountsRepositoryInMemory repository;
+
+  private String[] existingIds;
+
+  private String[] missingIds;
+
+  private AccountsRepositoryInMemory createTarget;
+
+  private String[] newIds;
+
+  @Setup(Level.Trial)
+  public void load() {
+    repository = new AccountsRepositoryInMemory();
+    for (int i = 0; i < accounts; i++) {
+      repository.createAccount(new Account("Id-" + i, new BigDecimal(1000)));
+    }
+    existingIds = new String[1 << 14];
+    missingIds = new String[1 << 14];
+    for (int i = 0; i < existingIds.length; i++) {
+      existingIds[i] = "Id-" + ThreadLocalRandom.current().nextInt(accounts);
+      missingIds[i] = "Missing-" + i;
+    }
+    newIds = new String[CREATE_BATCH];
+    for (int i = 0; i < CREATE_BATCH; i++) {
+      newIds[i] = "New-" + i;
+    }
+  }
+
+  @Setup(Level.Iteration)
+  public void emptyTarget() {
+    createTarget = new AccountsRepositoryInMemory();
+  }
+
+  @Benchmark
+  public Account getExisting() {
+    return repository.getAccount(existingIds[ThreadLocalRandom.current().nextInt(existingIds.length)]);
+  }
+
+  @Benchmark
+  public Account getMissing() {
+    return repository.getAccount(missingIds[ThreadLocalRandom.current().nextInt(missingIds.length)]);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @Warmup(iterations = 5)
+  @Measurement(iterations = 10)
+  public AccountsRepositoryInMemory create100k() {
+    for (String id : newIds) {
+      createTarget.createAccount(new Account(id, new BigDecimal(1000)));
+    }
+    return createTarget;
+  }
+}
@@ -0,0 +1,111 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.config.HistoryProperties;
+import com.db.awmd.challenge.domain.TransactionHistoryPage;
+import com.db.awmd.challenge.domain.TransactionIds;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Queries against a {@link TransactionHistory} pre-filled with {@code transfers} transfers between
+ * {@code accounts} accounts, one millisecond apart: the first page of an account's history, a page
+ * starting halfway through it (the time range is binary-searched), and appends. A full
+ * history needs about 52 bytes per transfer, so size the heap to match, e.g. -Xmx2g for 20M.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class HistoryQueryBenchmark {
+
+  @Param({"20000000"})
+  private int transfers;
+
+  @Param({"100000"})
+  private int accounts;
+
+  @Param({"100"})
+  private int limit;
+
+  private TransactionHistory history;
+
+  private String[] accountIds;
+
+  private final AtomicLong now = new AtomicLong();
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    HistoryProperties properties = new HistoryProperties();
+    properties.setMaxTransfers(0);
+    history = new TransactionHistory(properties, now::get);
+    accountIds = new String[accounts];
+    for (int i = 0; i < accounts; i++) {
+      accountIds[i] = "Id-" + i;
+    }
+    //One id reused throughout: decoding it is the same work for every transfer.
+    String transactionId = TransactionIds.next();
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    for (int i = 0; i < transfers; i++) {
+      int sender = random.nextInt(accounts);
+      int receiver = (sender + 1 + random.nextInt(accounts - 1)) % accounts;
+      history.record(transactionId, accountIds[sender], accountIds[receiver], 100);
+      now.incrementAndGet();
+    }
+  }
+
+  @Benchmark
+  @Threads(1)
+  public TransactionHistoryPage firstPage() {
+    return history.query(randomAccount(), 0, Long.MAX_VALUE, -1, limit);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public TransactionHistoryPage pageFromMiddle() {
+    return history.query(randomAccount(), transfers / 2, Long.MAX_VALUE, -1, limit);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public TransactionHistoryPage pageFromMiddle4() {
+    return history.query(randomAccount(), transfers / 2, Long.MAX_VALUE, -1, limit);
+  }
+
+  //Appends go to a separate history capped at a million transfers, so they also pay for eviction.
+  @Benchmark
+  @Threads(1)
+  public void record(Appends appends) {
+    appends.history.record(TransactionIds.next(), randomAccount(), accountIds[0], 1);
+  }
+
+  private String randomAccount() {
+    return accountIds[ThreadLocalRandom.current().nextInt(accounts)];
+  }
+
+  @State(Scope.Benchmark)
+  public static class Appends {
+
+    private TransactionHistory history;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      history = new TransactionHistory(new HistoryProperties());
+    }
+  }
+}
@@ -0,0 +1,80 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.config.JournalProperties;
+import com.db.awmd.challenge.config.JournalProperties.Durability;
+import com.db.awmd.challenge.domain.BalanceEngineType;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Durable transfer records per second for each journal durability mode, with 16 concurrent
+ * writers that each wait for their own record the way the transfer path does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JournalBenchmark {
+
+  //12.34 in minor units.
+  private static final long AMOUNT = 1234;
+
+  @Param({"FSYNC", "GROUP_COMMIT", "ASYNC"})
+  private Durability durability;
+
+  private Path directory;
+
+  private TransactionJournal journal;
+
+  @Setup
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("journal-benchmark");
+    JournalProperties properties = new JournalProperties();
+    properties.setDurability(durability);
+    properties.setDirectory(directory.toString());
+    journal = new TransactionJournal(properties);
+    journal.recover(new TransactionJournal.ReplayHandler() {
+      @Override
+      public void onCreate(long lsn, String accountId, BalanceEngineType balanceEngineType, long balance) {
+      }
+
+      @Override
+      public void onTransfer(long lsn, String senderId, String receiverId, long amount) {
+      }
+
+      @Override
+      public void onClear(long lsn) {
+      }
+    });
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    journal.close();
+    Files.deleteIfExists(journal.getFile());
+    Files.deleteIfExists(directory);
+  }
+
+  @Benchmark
+  @Threads(16)
+  public void durableTransfer() {
+    journal.awaitDurable(journal.appendTransfer("Id-1", "Id-2", AMOUNT));
+  }
+}
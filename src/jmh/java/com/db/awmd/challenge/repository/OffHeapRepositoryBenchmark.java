@@ -0,0 +1,78 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookup and debit/credit cost of the heap and off-heap account stores at 1M, 10M and 50M
+ * accounts. The heap in use after loading is printed once per trial; run with {@code -prof gc}
+ * to compare allocation and GC time. 50M accounts on the heap store need a very large heap.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx12g", "-XX:MaxDirectMemorySize=8g"})
+public class OffHeapRepositoryBenchmark {
+
+  @Param({"1000000", "10000000", "50000000"})
+  private int accounts;
+
+  @Param({"heap", "off-heap"})
+  private String store;
+
+  private AccountsRepository repository;
+
+  private String[] ids;
+
+  @Setup(Level.Trial)
+  public void load() {
+    repository = "heap".equals(store)
+      ? new AccountsRepositoryInMemory()
+      : new OffHeapAccountsRepository(accounts, TransactionJournal.disabled());
+    //Look-ups go through a fixed sample of ids so building keys is not part of the measurement.
+    ids = new String[1 << 16];
+    for (int i = 0; i < accounts; i++) {
+      String id = "Id-" + i;
+      repository.createAccount(new Account(id, new BigDecimal(1_000_000)));
+      if (i < ids.length) {
+        ids[i] = id;
+      }
+    }
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = "Id-" + ThreadLocalRandom.current().nextInt(accounts);
+    }
+    System.gc();
+    long used = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    System.out.printf("%n  heap in use with %d accounts in the %s store: %d MB%n", accounts, store, used >> 20);
+  }
+
+  @Benchmark
+  public Account getAccount() {
+    return repository.getAccount(ids[ThreadLocalRandom.current().nextInt(ids.length)]);
+  }
+
+  @Benchmark
+  public Account creditDebit() {
+    Account account = repository.getAccount(ids[ThreadLocalRandom.current().nextInt(ids.length)]);
+    account.credit(BigDecimal.ONE);
+    account.debit(BigDecimal.ONE);
+    return account;
+  }
+}
@@ -0,0 +1,115 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.config.JournalProperties;
+import com.db.awmd.challenge.config.JournalProperties.Durability;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountLocks;
+import com.db.awmd.challenge.domain.BalanceEngineFactory;
+import com.db.awmd.challenge.domain.BalanceEngineType;
+import com.db.awmd.challenge.domain.MinorUnits;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Startup cost of rebuilding the account map from a snapshot, compared with creating the same
+ * accounts one by one through {@link AccountsRepository#createAccount}. The heap still in use
+ * after each run is printed, since JMH itself only reports time. 10M accounts need a heap of
+ * several GB, e.g. {@code -jvmArgs -Xmx8g}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class SnapshotRecoveryBenchmark {
+
+  @Param({"1000000", "10000000"})
+  private int accounts;
+
+  private Path directory;
+
+  private AccountsRepositoryInMemory repository;
+
+  @Setup(Level.Trial)
+  public void writeSnapshot() throws IOException {
+    directory = Files.createTempDirectory("snapshot-benchmark");
+    TransactionJournal journal = new TransactionJournal(properties());
+    AccountsRepositoryInMemory source = repository(journal);
+    source.recover();
+    for (int i = 0; i < accounts; i++) {
+      source.createAccount(new Account("Id-" + i, new BigDecimal(i % 100_000).movePointLeft(2)));
+    }
+    source.takeSnapshot();
+    try {
+      journal.close();
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @TearDown(Level.Invocation)
+  public void reportHeap() {
+    System.gc();
+    long used = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    System.out.printf("%n  heap in use with %d accounts: %d MB%n", accounts, used >> 20);
+    repository = null;
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteFiles() throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  @Benchmark
+  public AccountsRepositoryInMemory recoverFromSnapshot() throws Exception {
+    TransactionJournal journal = new TransactionJournal(properties());
+    repository = repository(journal);
+    repository.recover();
+    journal.close();
+    return repository;
+  }
+
+  @Benchmark
+  public AccountsRepositoryInMemory createAccountLoop() {
+    repository = new AccountsRepositoryInMemory();
+    for (int i = 0; i < accounts; i++) {
+      repository.createAccount(new Account("Id-" + i, new BigDecimal(i % 100_000).movePointLeft(2)));
+    }
+    return repository;
+  }
+
+  private JournalProperties properties() {
+    JournalProperties properties = new JournalProperties();
+    properties.setDurability(Durability.ASYNC);
+    properties.setDirectory(directory.toString());
+    return properties;
+  }
+
+  private AccountsRepositoryInMemory repository(TransactionJournal journal) {
+    return new AccountsRepositoryInMemory(journal, new AccountSnapshotStore(properties()), properties(),
+      new AccountLocks(AccountLocks.DEFAULT_STRIPES), new BalanceEngineFactory(BalanceEngineType.LOCKING),
+      new MinorUnits(MinorUnits.DEFAULT_CURRENCY));
+  }
+}
@@ -0,0 +1,168 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountImportResult;
+import com.db.awmd.challenge.domain.AccountsFormat;
+import com.db.awmd.challenge.domain.MinorUnits;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.OffHeapAccountsRepository;
+import com.db.awmd.challenge.repository.TransactionJournal;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Enumeration;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One full import of {@code accounts} generated lines into an empty store, and one full export of
+ * a loaded store to a sink that discards the bytes. Each export prints the heap in use before it
+ * and the peak heap while it ran; the difference is what the export itself held on to.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-XX:MaxDirectMemorySize=2g"})
+public class AccountsBulkBenchmark {
+
+  @Param({"1000000"})
+  private int accounts;
+
+  @Param({"heap", "off-heap"})
+  private String store;
+
+  @Param({"NDJSON", "CSV"})
+  private AccountsFormat format;
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  @Benchmark
+  public AccountImportResult importAccounts(Empty empty) throws IOException {
+    return empty.service.importAccounts(generate(accounts, format), format);
+  }
+
+  @Benchmark
+  public long exportAccounts(Loaded loaded) throws IOException {
+    return loaded.service.exportAccounts(new DiscardingOutputStream(), format);
+  }
+
+  //A new empty store for every import.
+  @State(Scope.Benchmark)
+  public static class Empty {
+
+    private AccountsBulkService service;
+
+    @Setup(Level.Iteration)
+    public void prepare(AccountsBulkBenchmark benchmark) {
+      service = benchmark.newService(benchmark.newRepository());
+    }
+  }
+
+  //One store loaded per trial and exported by every iteration.
+  @State(Scope.Benchmark)
+  public static class Loaded {
+
+    private AccountsBulkService service;
+
+    private long heapBefore;
+
+    @Setup(Level.Trial)
+    public void load(AccountsBulkBenchmark benchmark) {
+      AccountsRepository repository = benchmark.newRepository();
+      for (int i = 0; i < benchmark.accounts; i++) {
+        repository.createAccount(new Account("Id-" + i, new BigDecimal(i % 10_000)));
+      }
+      service = benchmark.newService(repository);
+    }
+
+    @Setup(Level.Iteration)
+    public void resetPeak() {
+      System.gc();
+      heapBefore = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+      ManagementFactory.getMemoryPoolMXBeans().forEach(MemoryPoolMXBean::resetPeakUsage);
+    }
+
+    @TearDown(Level.Iteration)
+    public void printHeap() {
+      long peak = 0;
+      for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+        if (pool.getType() == MemoryType.HEAP) {
+          peak += pool.getPeakUsage().getUsed();
+        }
+      }
+      System.out.printf("%n  heap before export: %d MB, peak during export: %d MB%n", heapBefore >> 20, peak >> 20);
+    }
+  }
+
+  private AccountsBulkService newService(AccountsRepository repository) {
+    return new AccountsBulkService(new AccountsService(repository), objectMapper,
+      new MinorUnits(MinorUnits.DEFAULT_CURRENCY), 10_000);
+  }
+
+  private AccountsRepository newRepository() {
+    return "heap".equals(store)
+      ? new AccountsRepositoryInMemory()
+      : new OffHeapAccountsRepository(accounts, TransactionJournal.disabled());
+  }
+
+  //Builds the body 10k lines at a time as it is read, so the input never exists in full.
+  private static InputStream generate(int count, AccountsFormat format) {
+    return new SequenceInputStream(new Enumeration<InputStream>() {
+
+      private int next;
+
+      @Override
+      public boolean hasMoreElements() {
+        return next < count;
+      }
+
+      @Override
+      public InputStream nextElement() {
+        StringBuilder chunk = new StringBuilder();
+        for (int end = Math.min(count, next + 10_000); next < end; next++) {
+          if (format == AccountsFormat.NDJSON) {
+            chunk.append("{\"accountId\":\"Id-").append(next).append("\",\"balance\":")
+              .append(next % 10_000).append(".25}\n");
+          } else {
+            chunk.append("Id-").append(next).append(',').append(next % 10_000).append(".25\n");
+          }
+        }
+        return new ByteArrayInputStream(chunk.toString().getBytes(StandardCharsets.UTF_8));
+      }
+    });
+  }
+
+  private static final class DiscardingOutputStream extends OutputStream {
+
+    @Override
+    public void write(int b) {
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+    }
+  }
+}
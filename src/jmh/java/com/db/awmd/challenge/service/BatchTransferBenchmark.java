@@ -0,0 +1,90 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BatchMode;
+import com.db.awmd.challenge.domain.BatchTransferResult;
+import com.db.awmd.challenge.domain.MinorUnits;
+import com.db.awmd.challenge.domain.Transaction;
+import com.db.awmd.challenge.domain.TransactionDetails;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.HoldRegistry;
+import com.db.awmd.challenge.repository.TransactionHistory;
+import com.db.awmd.challenge.repository.TransactionJournal;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Time to settle a whole batch through {@link TransactionService#transferBatch} compared with
+ * calling {@link TransactionService#transferAmount} once per item.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchTransferBenchmark {
+
+  private static final int ACCOUNTS = 10_000;
+
+  @Param({"10", "1000", "100000"})
+  private int batchSize;
+
+  private TransactionService transactionService;
+
+  private List<Transaction> batch;
+
+  @Setup
+  public void setUp() {
+    AccountsService accountsService = new AccountsService(new AccountsRepositoryInMemory());
+    for(int i = 0; i < ACCOUNTS; i++) {
+      accountsService.createAccount(new Account("Id-" + i, new BigDecimal(1_000_000_000)));
+    }
+    transactionService = new TransactionServiceImpl(accountsService, (account, description) -> { },
+        TransactionJournal.disabled(), TransactionHistory.disabled(), new HoldRegistry(100, 512), new TransferMetrics(),
+        new MinorUnits(MinorUnits.DEFAULT_CURRENCY));
+
+    SplittableRandom random = new SplittableRandom(42);
+    batch = new ArrayList<>(batchSize);
+    while(batch.size() < batchSize) {
+      int sender = random.nextInt(ACCOUNTS);
+      int receiver = random.nextInt(ACCOUNTS);
+      if(sender != receiver) {
+        batch.add(new Transaction("Id-" + sender, "Id-" + receiver, BigDecimal.ONE));
+      }
+    }
+  }
+
+  @Benchmark
+  public BatchTransferResult bestEffortBatch() {
+    return transactionService.transferBatch(batch, BatchMode.BEST_EFFORT);
+  }
+
+  @Benchmark
+  public BatchTransferResult allOrNothingBatch() {
+    return transactionService.transferBatch(batch, BatchMode.ALL_OR_NOTHING);
+  }
+
+  @Benchmark
+  public void singleTransfers(Blackhole blackhole) {
+    for(Transaction transaction : batch) {
+      TransactionDetails details = transactionService.transferAmount(transaction);
+      blackhole.consume(details);
+    }
+  }
+}
@@ -0,0 +1,118 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.FanOutTransfer;
+import com.db.awmd.challenge.domain.FanOutTransferResult;
+import com.db.awmd.challenge.domain.MinorUnits;
+import com.db.awmd.challenge.domain.Transaction;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.HoldRegistry;
+import com.db.awmd.challenge.repository.TransactionHistory;
+import com.db.awmd.challenge.repository.TransactionJournal;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A payroll run: one sender paying {@code legs} receivers, as that many calls to
+ * {@link TransactionServiceImpl#transferAmount} or as one
+ * {@link TransactionServiceImpl#transferFanOut}. After each iteration prints how long the
+ * sender's lock was held: the sum of the UPDATE phase for single transfers, and the whole call,
+ * an upper bound, for the fan-out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FanOutBenchmark {
+
+  private static final String SENDER = "payroll";
+
+  @Param({"50000"})
+  private int legs;
+
+  private AccountsService accountsService;
+
+  private TransferMetrics metrics;
+
+  private TransactionService transactionService;
+
+  private List<Transaction> transactions;
+
+  private FanOutTransfer fanOut;
+
+  private long fanOutNanos;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    accountsService = new AccountsService(new AccountsRepositoryInMemory());
+    accountsService.createAccount(new Account(SENDER, new BigDecimal(1_000_000_000_000L)));
+    transactions = new ArrayList<>(legs);
+    List<FanOutTransfer.Leg> fanOutLegs = new ArrayList<>(legs);
+    for (int i = 0; i < legs; i++) {
+      accountsService.createAccount(new Account("Employee-" + i, BigDecimal.ZERO));
+      BigDecimal salary = new BigDecimal(1000 + i % 5000);
+      transactions.add(new Transaction(SENDER, "Employee-" + i, salary));
+      fanOutLegs.add(new FanOutTransfer.Leg("Employee-" + i, salary));
+    }
+    fanOut = new FanOutTransfer(SENDER, fanOutLegs);
+  }
+
+  @Setup(Level.Iteration)
+  public void newService() {
+    metrics = new TransferMetrics();
+    transactionService = new TransactionServiceImpl(accountsService, (account, description) -> { },
+      TransactionJournal.disabled(), TransactionHistory.disabled(), new HoldRegistry(100, 512), metrics,
+      new MinorUnits(MinorUnits.DEFAULT_CURRENCY));
+    fanOutNanos = 0;
+  }
+
+  @TearDown(Level.Iteration)
+  @SuppressWarnings("unchecked")
+  public void printSenderLockHeld() {
+    double heldMillis;
+    if (fanOutNanos > 0) {
+      heldMillis = fanOutNanos / 1e6;
+    } else {
+      Map<String, Object> update = (Map<String, Object>) ((Map<String, Object>) metrics.report().get("phases")).get("update");
+      heldMillis = (Long) update.get("count") * (Double) update.get("mean") / 1000;
+    }
+    System.out.printf("%n  sender lock held: %.1f ms%n", heldMillis);
+  }
+
+  @Benchmark
+  public int singleTransfers() {
+    int succeeded = 0;
+    for (Transaction transaction : transactions) {
+      if (transactionService.transferAmount(transaction).getTransactionId() != null) {
+        succeeded++;
+      }
+    }
+    return succeeded;
+  }
+
+  @Benchmark
+  public FanOutTransferResult fanOut() {
+    long started = System.nanoTime();
+    FanOutTransferResult result = transactionService.transferFanOut(fanOut);
+    fanOutNanos = System.nanoTime() - started;
+    return result;
+  }
+}
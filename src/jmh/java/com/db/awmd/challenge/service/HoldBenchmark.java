@@ -0,0 +1,97 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.HoldDetails;
+import com.db.awmd.challenge.domain.MinorUnits;
+import com.db.awmd.challenge.domain.Transaction;
+import com.db.awmd.challenge.domain.TransactionDetails;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.HoldRegistry;
+import com.db.awmd.challenge.repository.TransactionHistory;
+import com.db.awmd.challenge.repository.TransactionJournal;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of placing a hold and then capturing or releasing it while {@code openHolds} other holds
+ * are open, spread over 100k accounts. Setup prints the heap each open hold keeps, measured
+ * after a full GC.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class HoldBenchmark {
+
+  private static final int ACCOUNTS = 100_000;
+
+  @Param({"0", "1000000", "4000000"})
+  private int openHolds;
+
+  private HoldRegistry holds;
+
+  private TransactionService transactionService;
+
+  private Transaction held;
+
+  @Setup
+  public void setUp() {
+    AccountsService accountsService = new AccountsService(new AccountsRepositoryInMemory());
+    for (int i = 0; i < ACCOUNTS; i++) {
+      accountsService.createAccount(new Account("Id-" + i, new BigDecimal(1_000_000_000)));
+    }
+    //Started, so closed holds are dropped from the incoming stack; nothing expires within the hour.
+    holds = new HoldRegistry(100, 512);
+    holds.start();
+    transactionService = new TransactionServiceImpl(accountsService, (account, description) -> { },
+      TransactionJournal.disabled(), TransactionHistory.disabled(), holds, new TransferMetrics(),
+      new MinorUnits(MinorUnits.DEFAULT_CURRENCY));
+
+    long before = usedHeap();
+    for (int i = 0; i < openHolds; i++) {
+      transactionService.hold(new Transaction("Id-" + (i % ACCOUNTS), "Id-" + ((i + 1) % ACCOUNTS), BigDecimal.ONE),
+        TimeUnit.HOURS.toMillis(1));
+    }
+    if (openHolds > 0) {
+      System.out.printf("%n  %d open holds, %d bytes each%n", openHolds, (usedHeap() - before) / openHolds);
+    }
+    held = new Transaction("Id-1", "Id-2", BigDecimal.TEN);
+  }
+
+  @TearDown
+  public void tearDown() {
+    holds.stop();
+  }
+
+  @Benchmark
+  public TransactionDetails holdAndCapture() {
+    HoldDetails hold = transactionService.hold(held, TimeUnit.MINUTES.toMillis(1));
+    return transactionService.capture(hold.getHoldId());
+  }
+
+  @Benchmark
+  public HoldDetails holdAndRelease() {
+    HoldDetails hold = transactionService.hold(held, TimeUnit.MINUTES.toMillis(1));
+    return transactionService.release(hold.getHoldId());
+  }
+
+  private static long usedHeap() {
+    System.gc();
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+  }
+}
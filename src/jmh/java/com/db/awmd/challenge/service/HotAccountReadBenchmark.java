@@ -0,0 +1,104 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountSnapshot;
+import com.db.awmd.challenge.domain.MinorUnits;
+import com.db.awmd.challenge.domain.Transaction;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.HoldRegistry;
+import com.db.awmd.challenge.repository.TransactionHistory;
+import com.db.awmd.challenge.repository.TransactionJournal;
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Read latency percentiles for one hot account while three threads keep transferring money into
+ * and out of it. The snapshot group reads the published {@link AccountSnapshot} as
+ * GET /v1/accounts/{accountId} does; the locked group takes the account lock for a consistent read
+ * instead. Compare the p0.99 rows of the read methods, and the transfer rows to see whether
+ * readers slow the writers down.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HotAccountReadBenchmark {
+
+  private static final int COUNTERPARTIES = 64;
+
+  private TransactionService transactionService;
+
+  private Account hot;
+
+  private Transaction[] transactions;
+
+  @Setup
+  public void setUp() {
+    AccountsService accountsService = new AccountsService(new AccountsRepositoryInMemory());
+    accountsService.createAccount(new Account("Hot", new BigDecimal(1_000_000_000)));
+    transactions = new Transaction[COUNTERPARTIES * 2];
+    for (int i = 0; i < COUNTERPARTIES; i++) {
+      accountsService.createAccount(new Account("Id-" + i, new BigDecimal(1_000_000_000)));
+      transactions[2 * i] = new Transaction("Hot", "Id-" + i, BigDecimal.ONE);
+      transactions[2 * i + 1] = new Transaction("Id-" + i, "Hot", BigDecimal.ONE);
+    }
+    hot = accountsService.getAccount("Hot");
+    transactionService = new TransactionServiceImpl(accountsService, (account, description) -> { },
+      TransactionJournal.disabled(), TransactionHistory.disabled(), new HoldRegistry(100, 512), new TransferMetrics(),
+      new MinorUnits(MinorUnits.DEFAULT_CURRENCY));
+  }
+
+  @Benchmark
+  @Group("snapshot")
+  @GroupThreads(1)
+  public AccountSnapshot snapshotRead() {
+    return hot.getSnapshot();
+  }
+
+  @Benchmark
+  @Group("snapshot")
+  @GroupThreads(3)
+  public Object snapshotTransfer() {
+    return transfer();
+  }
+
+  @Benchmark
+  @Group("locked")
+  @GroupThreads(1)
+  public BigDecimal lockedRead() {
+    Lock lock = hot.getLock();
+    lock.lock();
+    try {
+      return hot.getBalance();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Benchmark
+  @Group("locked")
+  @GroupThreads(3)
+  public Object lockedTransfer() {
+    return transfer();
+  }
+
+  private Object transfer() {
+    return transactionService.transferAmount(transactions[ThreadLocalRandom.current().nextInt(transactions.length)]);
+  }
+}
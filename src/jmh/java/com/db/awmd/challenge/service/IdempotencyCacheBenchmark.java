@@ -0,0 +1,78 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Transaction;
+import com.db.awmd.challenge.domain.TransactionDetails;
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link IdempotencyCache} on its own: a retry that hits a remembered key, and a new key arriving
+ * at a full cache, which also evicts the oldest key of its segment. The transfer itself is a
+ * constant so only the cache is measured; compare with TransferBenchmark for the transfer cost.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdempotencyCacheBenchmark {
+
+  @Param({"1000000"})
+  private int maxKeys;
+
+  private IdempotencyCache cache;
+
+  private String[] keys;
+
+  private final Transaction transaction = new Transaction("Id-1", "Id-2", BigDecimal.ONE);
+
+  private final TransactionDetails details = TransactionDetails.builder().transactionId("tx").build();
+
+  private final Supplier<TransactionDetails> transfer = () -> details;
+
+  private final AtomicLong nextKey = new AtomicLong();
+
+  @Setup
+  public void setUp() {
+    cache = new IdempotencyCache(maxKeys, TimeUnit.HOURS.toNanos(1), System::nanoTime);
+    keys = new String[maxKeys];
+    for (int i = 0; i < maxKeys; i++) {
+      keys[i] = "key-" + i;
+      cache.execute(keys[i], transaction, transfer);
+    }
+  }
+
+  @Benchmark
+  @Threads(1)
+  public TransactionDetails hit1() {
+    return cache.execute(keys[ThreadLocalRandom.current().nextInt(maxKeys)], transaction, transfer);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public TransactionDetails hit4() {
+    return cache.execute(keys[ThreadLocalRandom.current().nextInt(maxKeys)], transaction, transfer);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public TransactionDetails missAtCapacity() {
+    return cache.execute("new-" + nextKey.incrementAndGet(), transaction, transfer);
+  }
+}
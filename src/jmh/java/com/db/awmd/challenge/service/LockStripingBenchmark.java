@@ -0,0 +1,94 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountLocks;
+import com.db.awmd.challenge.domain.BalanceEngineType;
+import com.db.awmd.challenge.domain.MinorUnits;
+import com.db.awmd.challenge.domain.Transaction;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.HoldRegistry;
+import com.db.awmd.challenge.repository.TransactionHistory;
+import com.db.awmd.challenge.repository.TransactionJournal;
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sweeps the number of lock stripes against one lock per account (stripes = 0), for transfers
+ * between random accounts and for account creation. Fewer stripes mean less memory but more
+ * unrelated transfers queueing on the same lock. Repositories always take locks from a pool, so
+ * for stripes = 0 the transfers run on a pool far larger than the number of accounts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LockStripingBenchmark {
+
+  private static final int ACCOUNTS = 10_000;
+
+  //1,000,000,000.00 in minor units.
+  private static final long OPENING_BALANCE = 100_000_000_000L;
+
+  @Param({"0", "1", "16", "256", "4096", "65536"})
+  private int stripes;
+
+  private Transaction[] transactions;
+
+  private TransactionService transactionService;
+
+  private AccountLocks locks;
+
+  private final MinorUnits minorUnits = new MinorUnits(MinorUnits.DEFAULT_CURRENCY);
+
+  @Setup
+  public void setUp() {
+    locks = new AccountLocks(stripes == 0 ? 1 << 20 : stripes);
+    AccountsService accountsService = new AccountsService(new AccountsRepositoryInMemory(locks));
+    for (int i = 0; i < ACCOUNTS; i++) {
+      accountsService.createAccount(new Account("Id-" + i, minorUnits.toBigDecimal(OPENING_BALANCE)));
+    }
+    transactionService = new TransactionServiceImpl(accountsService, (account, description) -> { },
+      TransactionJournal.disabled(), TransactionHistory.disabled(), new HoldRegistry(100, 512), new TransferMetrics(),
+      minorUnits);
+
+    transactions = new Transaction[1 << 14];
+    for (int i = 0; i < transactions.length; i++) {
+      int sender = ThreadLocalRandom.current().nextInt(ACCOUNTS);
+      int receiver = (sender + 1 + ThreadLocalRandom.current().nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+      transactions[i] = new Transaction("Id-" + sender, "Id-" + receiver, BigDecimal.ONE);
+    }
+  }
+
+  @Benchmark
+  @Threads(4)
+  public Object randomTransfers() {
+    return transactionService.transferAmount(transactions[ThreadLocalRandom.current().nextInt(transactions.length)]);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public Account createAccount() {
+    return account("New-" + ThreadLocalRandom.current().nextInt());
+  }
+
+  private Account account(String accountId) {
+    return new Account(accountId, BalanceEngineType.LOCKING, BalanceEngineType.LOCKING.create(OPENING_BALANCE),
+      stripes == 0 ? new ReentrantLock() : locks.lockFor(accountId), minorUnits);
+  }
+}
@@ -0,0 +1,114 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.MinorUnits;
+import com.db.awmd.challenge.domain.Transaction;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.HoldRegistry;
+import com.db.awmd.challenge.repository.TransactionHistory;
+import com.db.awmd.challenge.repository.TransactionJournal;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Contention benchmark for {@link TransactionServiceImpl#transferAmount}. The disjoint benchmarks
+ * give every thread its own pair of accounts and should scale with cores; sharedPair has every
+ * thread move money back and forth between the same two accounts.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransferBenchmark {
+
+  private static final int MAX_PAIRS = 256;
+
+  private static final BigDecimal OPENING_BALANCE = new BigDecimal(1_000_000_000);
+
+  private static final BigDecimal AMOUNT = BigDecimal.ONE;
+
+  @State(Scope.Benchmark)
+  public static class Bank {
+
+    private TransactionService transactionService;
+
+    private final AtomicInteger nextPair = new AtomicInteger();
+
+    @Setup
+    public void setUp() {
+      AccountsService accountsService = new AccountsService(new AccountsRepositoryInMemory());
+      for(int i = 0; i < MAX_PAIRS; i++) {
+        accountsService.createAccount(new Account("A-" + i, OPENING_BALANCE));
+        accountsService.createAccount(new Account("B-" + i, OPENING_BALANCE));
+      }
+      transactionService = new TransactionServiceImpl(accountsService, (account, description) -> { },
+        TransactionJournal.disabled(), TransactionHistory.disabled(), new HoldRegistry(100, 512), new TransferMetrics(),
+        new MinorUnits(MinorUnits.DEFAULT_CURRENCY));
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Pair {
+
+    private Transaction forward;
+
+    private Transaction backward;
+
+    @Setup
+    public void setUp(Bank bank) {
+      int pair = bank.nextPair.getAndIncrement() % MAX_PAIRS;
+      forward = new Transaction("A-" + pair, "B-" + pair, AMOUNT);
+      backward = new Transaction("B-" + pair, "A-" + pair, AMOUNT);
+    }
+  }
+
+  @State(Scope.Benchmark)
+  public static class SharedPair {
+
+    private final Transaction forward = new Transaction("A-0", "B-0", AMOUNT);
+
+    private final Transaction backward = new Transaction("B-0", "A-0", AMOUNT);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void disjoint1(Bank bank, Pair pair) {
+    roundTrip(bank, pair.forward, pair.backward);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void disjoint4(Bank bank, Pair pair) {
+    roundTrip(bank, pair.forward, pair.backward);
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public void disjointMax(Bank bank, Pair pair) {
+    roundTrip(bank, pair.forward, pair.backward);
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public void sharedPair(Bank bank, SharedPair pair) {
+    roundTrip(bank, pair.forward, pair.backward);
+  }
+
+  private void roundTrip(Bank bank, Transaction forward, Transaction backward) {
+    bank.transactionService.transferAmount(forward);
+    bank.transactionService.transferAmount(backward);
+  }
+}
@@ -0,0 +1,97 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.Zipf;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.MinorUnits;
+import com.db.awmd.challenge.domain.Transaction;
+import com.db.awmd.challenge.domain.TransactionDetails;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.HoldRegistry;
+import com.db.awmd.challenge.repository.TransactionHistory;
+import com.db.awmd.challenge.repository.TransactionJournal;
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link TransactionServiceImpl#transferAmount} between accounts picked uniformly or from a
+ * Zipfian distribution, where a handful of hot accounts take most of the transfers. Transfers are
+ * pregenerated so picking accounts is not part of the measurement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransferDistributionBenchmark {
+
+  private static final int TRANSFERS = 1 << 16;
+
+  @Param({"10000"})
+  private int accounts;
+
+  @Param({"uniform", "zipf"})
+  private String distribution;
+
+  @Param({"1.0"})
+  private double zipfExponent;
+
+  private TransactionService transactionService;
+
+  private Transaction[] transactions;
+
+  @Setup
+  public void setUp() {
+    AccountsService accountsService = new AccountsService(new AccountsRepositoryInMemory());
+    for (int i = 0; i < accounts; i++) {
+      accountsService.createAccount(new Account("Id-" + i, new BigDecimal(1_000_000_000)));
+    }
+    transactionService = new TransactionServiceImpl(accountsService, (account, description) -> { },
+      TransactionJournal.disabled(), TransactionHistory.disabled(), new HoldRegistry(100, 512), new TransferMetrics(),
+      new MinorUnits(MinorUnits.DEFAULT_CURRENCY));
+
+    Zipf zipf = new Zipf(accounts, zipfExponent);
+    transactions = new Transaction[TRANSFERS];
+    for (int i = 0; i < TRANSFERS; i++) {
+      int sender = pick(zipf);
+      int receiver = pick(zipf);
+      while (receiver == sender) {
+        receiver = pick(zipf);
+      }
+      transactions[i] = new Transaction("Id-" + sender, "Id-" + receiver, BigDecimal.ONE);
+    }
+  }
+
+  @Benchmark
+  @Threads(1)
+  public TransactionDetails transfer1() {
+    return transfer();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public TransactionDetails transfer4() {
+    return transfer();
+  }
+
+  private TransactionDetails transfer() {
+    return transactionService.transferAmount(transactions[ThreadLocalRandom.current().nextInt(TRANSFERS)]);
+  }
+
+  private int pick(Zipf zipf) {
+    return "zipf".equals(distribution) ? zipf.next() : ThreadLocalRandom.current().nextInt(accounts);
+  }
+}
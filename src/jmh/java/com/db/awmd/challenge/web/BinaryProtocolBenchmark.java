@@ -0,0 +1,128 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.BatchMode;
+import com.db.awmd.challenge.domain.BatchTransferResult;
+import com.db.awmd.challenge.domain.FanOutTransfer;
+import com.db.awmd.challenge.domain.FanOutTransferResult;
+import com.db.awmd.challenge.domain.HoldDetails;
+import com.db.awmd.challenge.domain.Transaction;
+import com.db.awmd.challenge.domain.TransactionDetails;
+import com.db.awmd.challenge.service.TransactionService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Wire cost of one transfer over the JSON endpoint and over {@link BinaryTransferHandler}: decoding
+ * the request, calling a service that does nothing, and encoding the response. Run with -prof gc
+ * to see the allocation per transfer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BinaryProtocolBenchmark {
+
+  private static final byte[] JSON_REQUEST = "{\"from\":\"Id-1\",\"to\":\"Id-2\",\"amount\":123.45}".getBytes();
+
+  private static final String TRANSACTION_ID = UUID.randomUUID().toString();
+
+  private final ByteBuffer in = ByteBuffer.allocate(128);
+
+  private final ByteBuffer out = ByteBuffer.allocate(BinaryTransferHandler.MAX_RESPONSE_FRAME);
+
+  private ObjectMapper objectMapper;
+
+  private BinaryTransferHandler handler;
+
+  private int requestLength;
+
+  @Setup
+  public void setUp() {
+    objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    handler = new BinaryTransferHandler(new NoOpTransactionService());
+    BinaryTransferHandler.writeRequest(in, 1, "Id-1", "Id-2", 12_345);
+    requestLength = in.position();
+  }
+
+  @Benchmark
+  public byte[] json() throws IOException {
+    Transaction transaction = objectMapper.readValue(JSON_REQUEST, Transaction.class);
+    return objectMapper.writeValueAsBytes(TransactionDetails.builder()
+      .transactionId(TRANSACTION_ID)
+      .transaction(transaction)
+      .message("Transaction Successful!!")
+      .build());
+  }
+
+  @Benchmark
+  public ByteBuffer binary() {
+    in.limit(requestLength).position(0);
+    out.clear();
+    handler.handle(in, out, "client");
+    return out;
+  }
+
+  private static class NoOpTransactionService implements TransactionService {
+
+    @Override
+    public String transfer(String senderId, String receiverId, long amount) {
+      return TRANSACTION_ID;
+    }
+
+    @Override
+    public void transferEach(int count, String[] senderIds, String[] receiverIds, long[] amounts,
+                             String[] transactionIds, RuntimeException[] failures) {
+      for (int i = 0; i < count; i++) {
+        transactionIds[i] = TRANSACTION_ID;
+        failures[i] = null;
+      }
+    }
+
+    @Override
+    public TransactionDetails transferAmount(Transaction transaction) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public BatchTransferResult transferBatch(List<Transaction> transactions, BatchMode mode) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public FanOutTransferResult transferFanOut(FanOutTransfer transfer) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public HoldDetails hold(Transaction transaction, long ttlMillis) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public TransactionDetails capture(String holdId) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public HoldDetails release(String holdId) {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
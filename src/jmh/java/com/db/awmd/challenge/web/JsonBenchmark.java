@@ -0,0 +1,79 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.Transaction;
+import com.db.awmd.challenge.domain.TransactionDetails;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Jackson cost of the transfer endpoint: reading the {@link Transaction} request body and writing
+ * the {@link TransactionDetails} response, with an ObjectMapper configured the way Spring Boot
+ * configures the one used by the controllers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+
+  private static final byte[] REQUEST = "{\"from\":\"Id-1\",\"to\":\"Id-2\",\"amount\":123.45}".getBytes();
+
+  private ObjectMapper objectMapper;
+
+  private TransactionDetails details;
+
+  private byte[] response;
+
+  @Setup
+  public void setUp() throws IOException {
+    objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    details = TransactionDetails.builder()
+      .transactionId(UUID.randomUUID().toString())
+      .transaction(new Transaction("Id-1", "Id-2", new BigDecimal("123.45")))
+      .message("Transaction Successful!!")
+      .build();
+    response = objectMapper.writeValueAsBytes(details);
+  }
+
+  @Benchmark
+  public Transaction readTransaction() throws IOException {
+    return objectMapper.readValue(REQUEST, Transaction.class);
+  }
+
+  @Benchmark
+  public byte[] writeTransaction() throws IOException {
+    return objectMapper.writeValueAsBytes(details.getTransaction());
+  }
+
+  @Benchmark
+  public byte[] writeTransactionDetails() throws IOException {
+    return objectMapper.writeValueAsBytes(details);
+  }
+
+  //TransactionDetails has no creator, so the response is read back as a tree.
+  @Benchmark
+  public Object readTransactionDetails() throws IOException {
+    return objectMapper.readTree(response);
+  }
+
+  @Benchmark
+  public byte[] roundTrip() throws IOException {
+    return objectMapper.writeValueAsBytes(objectMapper.readValue(REQUEST, Transaction.class));
+  }
+}
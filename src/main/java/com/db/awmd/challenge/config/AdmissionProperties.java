@@ -0,0 +1,48 @@
+package com.db.awmd.challenge.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "admission")
+public class AdmissionProperties {
+
+  //Check transfers against the limits below before they reach the TransactionService.
+  private boolean enabled;
+
+  //Transfers each account may send or receive.
+  private final Bucket account = new Bucket(2000, 500);
+
+  //Transfers each client may send, keyed by the X-Client-Id header or else the remote address.
+  private final Bucket client = new Bucket(20000, 5000);
+
+  //Accounts and clients tracked, each; buckets that have filled up again are dropped first.
+  private int maxKeys = 100_000;
+
+  private final Limit limit = new Limit();
+
+  @Data
+  @NoArgsConstructor
+  @AllArgsConstructor
+  public static class Bucket {
+
+    //Sustained transfers per second; 0 disables the bucket.
+    private double ratePerSecond;
+
+    //Transfers allowed back to back after a quiet spell.
+    private int burst;
+  }
+
+  //Transfers in flight across all clients; adapts between min and max to the observed latency.
+  @Data
+  public static class Limit {
+
+    private int initial = 100;
+
+    private int min = 10;
+
+    private int max = 1000;
+  }
+}
@@ -0,0 +1,39 @@
+package com.db.awmd.challenge.config;
+
+import com.db.awmd.challenge.domain.AccountLocks;
+import com.db.awmd.challenge.domain.BalanceEngineFactory;
+import com.db.awmd.challenge.domain.BalanceEngineType;
+import com.db.awmd.challenge.domain.MinorUnits;
+import java.util.Currency;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+//How accounts keep their balances, injected into the repositories and services that need it.
+@Configuration
+@Slf4j
+public class BalanceEngineConfiguration {
+
+  @Bean
+  public MinorUnits minorUnits(@Value("${account.currency:EUR}") String currency) {
+    MinorUnits minorUnits = new MinorUnits(Currency.getInstance(currency));
+    log.info("Keeping balances in minor units of {} ({} decimal places)", currency, minorUnits.getScale());
+    return minorUnits;
+  }
+
+  @Bean
+  public BalanceEngineFactory balanceEngineFactory(
+    @Value("${account.balance-engine:LOCKING}") BalanceEngineType balanceEngineType) {
+    log.info("Using {} balance engine for accounts", balanceEngineType);
+    return new BalanceEngineFactory(balanceEngineType);
+  }
+
+  @Bean
+  public AccountLocks accountLocks(
+    @Value("${account.lock-stripes:" + AccountLocks.DEFAULT_STRIPES + "}") int lockStripes) {
+    AccountLocks accountLocks = new AccountLocks(lockStripes);
+    log.info("Using {} account lock stripes", accountLocks.getStripes());
+    return accountLocks;
+  }
+}
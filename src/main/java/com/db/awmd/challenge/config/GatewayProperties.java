@@ -0,0 +1,31 @@
+package com.db.awmd.challenge.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "gateway")
+public class GatewayProperties {
+
+  //Accept BinaryTransferHandler frames over plain TCP, see TransferGateway.
+  private boolean enabled = true;
+
+  //Loopback unless configured otherwise: the gateway has no authentication of its own.
+  private String address = "127.0.0.1";
+
+  //0 binds an ephemeral port, see TransferGateway.getPort.
+  private int port = 18081;
+
+  //Selector threads that read, execute and answer requests; 0 uses one per available processor.
+  //Transfers run on these threads and block them, see TransferGateway.
+  private int ioThreads = 0;
+
+  //Connections beyond this are closed as soon as they are accepted.
+  private int maxConnections = 1024;
+
+  //A connection is not read while more responses than this are waiting to be written to it.
+  private int maxPendingBytes = 256 * 1024;
+
+  //On shutdown, connections get this long to have their outstanding responses written.
+  private long shutdownTimeoutMillis = 5000;
+}
@@ -0,0 +1,21 @@
+package com.db.awmd.challenge.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "history")
+public class HistoryProperties {
+
+  //Record committed transfers for GET /v1/accounts/{accountId}/transactions.
+  private boolean enabled = true;
+
+  //Transfers per column segment; whole segments are evicted at a time.
+  private int segmentSize = 1 << 16;
+
+  //Oldest segments are dropped once more transfers than this are held; 0 means no limit.
+  private long maxTransfers = 1_000_000;
+
+  //Segments whose newest transfer is older than this are dropped; 0 means no limit.
+  private long maxAgeSeconds = 0;
+}
@@ -0,0 +1,35 @@
+package com.db.awmd.challenge.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "journal")
+public class JournalProperties {
+
+  public enum Durability {
+    //No journal; balances live in memory only.
+    NONE,
+    //Every write is flushed with its own fsync before the caller continues.
+    FSYNC,
+    //Writers wait for a shared fsync that covers everything appended since the last one.
+    GROUP_COMMIT,
+    //Writers never wait; a background thread fsyncs every asyncFlushIntervalMillis.
+    ASYNC
+  }
+
+  private Durability durability = Durability.NONE;
+
+  private String directory = "data";
+
+  //Size of each of the two in-memory write buffers.
+  private int bufferSize = 1 << 20;
+
+  private long asyncFlushIntervalMillis = 10;
+
+  //Seconds between account snapshots; 0 disables snapshots. Needs the journal to be enabled.
+  private long snapshotIntervalSeconds = 0;
+
+  //Number of snapshot files kept on disk, newest first.
+  private int snapshotsRetained = 2;
+}
@@ -0,0 +1,30 @@
+package com.db.awmd.challenge.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "notification.dispatch")
+public class NotificationDispatchProperties {
+
+  public enum OverflowPolicy {
+    //Wait up to blockTimeoutMillis for space, then drop the new notification.
+    BLOCK,
+    //Drop the notification being published.
+    DROP_NEWEST,
+    //Evict the oldest queued notification to make room.
+    DROP_OLDEST
+  }
+
+  //Total capacity, split evenly across the dispatcher queues.
+  private int queueCapacity = 65536;
+
+  private int dispatcherThreads = 2;
+
+  //Maximum notifications drained and merged per dispatch round.
+  private int batchSize = 256;
+
+  private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+
+  private long blockTimeoutMillis = 5;
+}
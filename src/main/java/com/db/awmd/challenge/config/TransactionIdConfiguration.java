@@ -0,0 +1,26 @@
+package com.db.awmd.challenge.config;
+
+import com.db.awmd.challenge.domain.TimeOrderedIdGenerator;
+import com.db.awmd.challenge.domain.TransactionIdType;
+import com.db.awmd.challenge.domain.TransactionIds;
+import java.util.concurrent.ThreadLocalRandom;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+//Configures the static TransactionIds; beans that take ids from it name this in @DependsOn.
+@Configuration(TransactionIdConfiguration.BEAN_NAME)
+@Slf4j
+public class TransactionIdConfiguration {
+
+  public static final String BEAN_NAME = "transactionIdConfiguration";
+
+  public TransactionIdConfiguration(
+    @Value("${transfer.id.generator:TIME_ORDERED}") TransactionIdType transactionIdType,
+    @Value("${transfer.id.node-id:-1}") int nodeId) {
+    //Nodes that share journals or indexes should each be given their own id.
+    int node = nodeId >= 0 ? nodeId : ThreadLocalRandom.current().nextInt(TimeOrderedIdGenerator.MAX_NODE_ID + 1);
+    TransactionIds.configure(transactionIdType, node);
+    log.info("Using {} transaction ids for node {}", transactionIdType, node);
+  }
+}
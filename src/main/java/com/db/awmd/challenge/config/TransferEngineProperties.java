@@ -0,0 +1,57 @@
+package com.db.awmd.challenge.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "transfer")
+public class TransferEngineProperties {
+
+  public enum Engine {
+    //Transfers lock both accounts' stripes, see TransactionServiceImpl.
+    LOCKING,
+    //Each account is owned by one shard thread, see ShardedTransactionService.
+    SHARDED
+  }
+
+  private Engine engine = Engine.LOCKING;
+
+  //Number of shard threads for the SHARDED engine; 0 uses one per available processor.
+  private int shards = 0;
+
+  //Transfers a shard accepts before submitters wait; bounds each shard's queue.
+  private int shardQueueCapacity = 4096;
+
+  private final Async async = new Async();
+
+  private final Idempotency idempotency = new Idempotency();
+
+  //Executor behind POST /v1/transaction/transfer/async.
+  @Data
+  public static class Async {
+
+    //Platform threads running async transfers; ignored when virtual threads are used.
+    private int threads = 256;
+
+    //One virtual thread per transfer where the JDK has them (21+), else the platform pool.
+    private boolean virtualThreads = false;
+
+    //Transfers waiting for a platform thread; beyond it requests get 503.
+    private int queueCapacity = 1024;
+
+    //Async requests not answered within this get an error, and transfers that had not started by
+    //then are dropped.
+    private long timeoutMillis = 10_000;
+  }
+
+  //Results kept for requests carrying an Idempotency-Key header.
+  @Data
+  public static class Idempotency {
+
+    //Upper bound on remembered keys; the oldest keys are dropped first.
+    private int maxKeys = 262144;
+
+    //How long a key is remembered after its transfer started.
+    private long ttlSeconds = 3600;
+  }
+}
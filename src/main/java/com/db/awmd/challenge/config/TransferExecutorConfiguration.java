@@ -0,0 +1,58 @@
+package com.db.awmd.challenge.config;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+
+@Slf4j
+@Configuration
+@EnableConfigurationProperties(TransferEngineProperties.class)
+public class TransferExecutorConfiguration extends WebMvcConfigurerAdapter {
+
+  private final TransferEngineProperties properties;
+
+  public TransferExecutorConfiguration(TransferEngineProperties properties) {
+    this.properties = properties;
+  }
+
+  //Async requests that outlive this get an error response, see TransactionController.transactAsync.
+  @Override
+  public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+    configurer.setDefaultTimeout(properties.getAsync().getTimeoutMillis());
+  }
+
+  //Platform threads take transfers from a bounded queue and reject the rest, so a backlog turns
+  //into 503s instead of transfers run after their requests have timed out.
+  @Bean(destroyMethod = "shutdown")
+  public ExecutorService transferExecutor() {
+    TransferEngineProperties.Async async = properties.getAsync();
+    if (async.isVirtualThreads()) {
+      //Looked up reflectively so the build keeps targeting Java 8.
+      try {
+        ExecutorService executor = (ExecutorService) Executors.class
+          .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        log.info("Running async transfers on virtual threads");
+        return executor;
+      } catch (ReflectiveOperationException roe) {
+        log.warn("Virtual threads need Java 21 or later; using {} platform threads", async.getThreads());
+      }
+    }
+    int threads = Math.max(1, async.getThreads());
+    AtomicInteger count = new AtomicInteger();
+    return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+      new ArrayBlockingQueue<>(Math.max(1, async.getQueueCapacity())), runnable -> {
+        Thread thread = new Thread(runnable, "transfer-async-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }, new ThreadPoolExecutor.AbortPolicy());
+  }
+}
@@ -1,17 +1,15 @@
 package com.db.awmd.challenge.domain;
 
-import com.db.awmd.challenge.exception.InsufficientBalanceException;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.math.BigDecimal;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.Lock;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
-import lombok.Data;
 import lombok.Getter;
 import lombok.Setter;
-import org.hibernate.validator.constraints.NotBlank;
 import org.hibernate.validator.constraints.NotEmpty;
 
 public class Account {
@@ -21,47 +19,267 @@ public class Account {
   @NotEmpty
   private final String accountId;
 
+  //Set by open(), or by the constructors that build an account around its engine. Until then
+  //the account is only a request, and its balance the BigDecimal asked for.
+  @JsonIgnore
+  private Lock lock;
+
+  @JsonIgnore
+  private MinorUnits minorUnits;
+
+  //Repository views publish nothing, see view().
+  @JsonIgnore
+  private final boolean view;
+
+  //Lsn of the last journal record applied to this account; guarded by the lock.
   @Getter
   @Setter
-  @NotNull
-  @Min(value = 0, message = "Initial balance must be positive.")
-  private BigDecimal balance;
+  @JsonIgnore
+  private long journalLsn;
+
+  //Null until the account is opened.
+  @JsonIgnore
+  private BalanceEngine balanceEngine;
 
+  //Balance of a request, turned into MinorUnits by open().
   @JsonIgnore
-  private final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock(true);
+  private BigDecimal requestedBalance;
+
+  //Fixed when the account is created, and journaled with it. Null in a request for the node's
+  //default, and in repository views, whose engine belongs to the repository.
+  private BalanceEngineType balanceEngineType;
+
+  //Last committed state, replaced wholesale by publish(); null for repository views.
+  @JsonIgnore
+  private volatile AccountSnapshot snapshot;
+
+  private static final AtomicReferenceFieldUpdater<Account, AccountSnapshot> SNAPSHOT =
+    AtomicReferenceFieldUpdater.newUpdater(Account.class, AccountSnapshot.class, "snapshot");
 
   public Account(String accountId) {
-    this.accountId = accountId;
-    this.balance = BigDecimal.ZERO;
+    this(accountId, BigDecimal.ZERO);
+  }
+
+  public Account(String accountId, BigDecimal balance) {
+    this(accountId, balance, null);
   }
 
+  //A request to create an account, which a repository opens. The engine is optional and only
+  //needed for credit-only accounts; the others get the node's.
   @JsonCreator
   public Account(@JsonProperty("accountId") String accountId,
-    @JsonProperty("balance") BigDecimal balance) {
+    @JsonProperty("balance") BigDecimal balance,
+    @JsonProperty("balanceEngine") BalanceEngineType balanceEngineType) {
     this.accountId = accountId;
-    this.balance = balance;
+    this.view = false;
+    this.requestedBalance = balance;
+    this.balanceEngineType = balanceEngineType;
   }
 
-  public void credit(BigDecimal amount) {
-    readWriteLock.writeLock().lock();
+  //An open account around its engine, e.g. when recovering from the journal.
+  public Account(String accountId, BalanceEngineType balanceEngineType, BalanceEngine balanceEngine, Lock lock,
+    MinorUnits minorUnits) {
+    this(accountId, balanceEngineType, balanceEngine, lock, minorUnits, false);
+  }
 
-    try{
-      balance = balance.add(amount);
-    } finally {
-      readWriteLock.writeLock().unlock();
+  private Account(String accountId, BalanceEngineType balanceEngineType, BalanceEngine balanceEngine, Lock lock,
+    MinorUnits minorUnits, boolean view) {
+    this.accountId = accountId;
+    this.balanceEngineType = balanceEngineType;
+    this.balanceEngine = balanceEngine;
+    this.lock = lock;
+    this.minorUnits = minorUnits;
+    this.view = view;
+    publish();
+  }
+
+  //Lets repositories hand out several Account views that share one underlying lock. Such views are
+  //short-lived, so they publish no snapshot and getSnapshot() reads the balance under the lock.
+  public static Account view(String accountId, BalanceEngine balanceEngine, Lock lock, MinorUnits minorUnits) {
+    return new Account(accountId, null, balanceEngine, lock, minorUnits, true);
+  }
+
+  /**
+   * Turns a request into an account: converts the requested balance and gives the account its
+   * engine and lock. Called once, by the repository that creates the account, before anyone
+   * else can see it.
+   */
+  public void open(BalanceEngineFactory engines, Lock lock, MinorUnits minorUnits) {
+    if (this.lock != null) {
+      throw new IllegalStateException("Account " + accountId + " is already open.");
+    }
+    BalanceEngineType type = engines.resolve(balanceEngineType);
+    this.balanceEngine = engines.create(type, minorUnits.toMinor(requestedBalance));
+    this.balanceEngineType = type;
+    this.minorUnits = minorUnits;
+    this.lock = lock;
+    this.requestedBalance = null;
+    publish();
+  }
+
+  //Held by transfers while both legs are applied, see TransactionServiceImpl. Null until open.
+  @JsonIgnore
+  public Lock getLock() {
+    return lock;
+  }
+
+  @JsonProperty("balanceEngine")
+  public BalanceEngineType getBalanceEngineType() {
+    return balanceEngineType;
+  }
+
+  //The BigDecimal accessors are the JSON boundary; everything else works in MinorUnits.
+  @NotNull
+  @Min(value = 0, message = "Initial balance must be positive.")
+  public BigDecimal getBalance() {
+    return balanceEngine == null ? requestedBalance : minorUnits.toBigDecimal(balanceEngine.getBalance());
+  }
+
+  public void setBalance(BigDecimal balance) {
+    if(balanceEngine == null) {
+      requestedBalance = balance;
+      return;
     }
+    balanceEngine.setBalance(minorUnits.toMinor(balance));
+    publish();
+  }
+
+  @JsonIgnore
+  public long getBalanceMinor() {
+    return balanceEngine.getBalance();
+  }
+
+  public void credit(BigDecimal amount) {
+    credit(minorUnits.toMinor(amount));
   }
 
   public void debit(BigDecimal amount) {
-    readWriteLock.writeLock().lock();
+    debit(minorUnits.toMinor(amount));
+  }
+
+  public void credit(long amount) {
+    applyCredit(amount);
+    publish();
+  }
+
+  public void debit(long amount) {
+    applyDebit(amount);
+    publish();
+  }
+
+  //Change the balance without publishing it. The caller holds the lock and calls publish() once
+  //the whole change has been committed, e.g. both legs of a transfer. Every change is counted in
+  //LedgerTotals, so a credit without its matching debit shows up there.
+  public void applyCredit(long amount) {
+    balanceEngine.credit(amount);
+    LedgerTotals.balanceChanged(amount);
+  }
+
+  public void applyDebit(long amount) {
+    balanceEngine.debit(amount);
+    LedgerTotals.balanceChanged(-amount);
+  }
+
+  //Undoes an applyCredit of a transfer that failed before it was published. Unlike applyDebit it
+  //works on credit-only accounts, which may receive a transfer that is then rolled back.
+  public void revertCredit(long amount) {
+    balanceEngine.revertCredit(amount);
+    LedgerTotals.balanceChanged(-amount);
+  }
 
-    try{
-      if(balance.compareTo(amount) < 0) {
-        throw new InsufficientBalanceException("Insufficient Account Balance.");
+  //Part of the balance set aside by open holds, see TransactionService#hold.
+  @JsonIgnore
+  public long getHeldMinor() {
+    return balanceEngine.getHeld();
+  }
+
+  //What debits and new holds may take: the balance less open holds.
+  @JsonIgnore
+  public long getAvailableMinor() {
+    return balanceEngine.getBalance() - balanceEngine.getHeld();
+  }
+
+  //Holds and releases move money between the available and held parts of the balance without
+  //changing it. They still take the account lock, briefly: a batch or fan-out holding it may have
+  //applied changes it can yet undo, and a hold must neither spend nor publish those.
+  public void hold(long amount) {
+    Lock accountLock = getLock();
+    accountLock.lock();
+    try {
+      LedgerTotals.beginChange();
+      try {
+        balanceEngine.hold(amount);
+      } finally {
+        LedgerTotals.endChange();
+      }
+      publish();
+    } finally {
+      accountLock.unlock();
+    }
+  }
+
+  public void releaseHold(long amount) {
+    Lock accountLock = getLock();
+    accountLock.lock();
+    try {
+      LedgerTotals.beginChange();
+      try {
+        balanceEngine.releaseHold(amount);
+      } finally {
+        LedgerTotals.endChange();
       }
-      balance = balance.subtract(amount);
+      publish();
+    } finally {
+      accountLock.unlock();
+    }
+  }
+
+  //Takes held money out of the balance without publishing it, like applyDebit.
+  public void applyCapture(long amount) {
+    balanceEngine.captureHold(amount);
+    LedgerTotals.balanceChanged(-amount);
+  }
+
+  /**
+   * Publishes the current balance as a new snapshot. Concurrent publishers retry until the
+   * snapshot with the highest version also holds the latest balance.
+   */
+  public void publish() {
+    publish(0);
+  }
+
+  //Publishes the balance plus unpublished, the part of a change applied to the engine that may
+  //not be shown yet; see ShardedTransactionService.
+  public void publish(long unpublished) {
+    if(view || balanceEngine == null) {
+      return;
+    }
+    AccountSnapshot current;
+    AccountSnapshot next;
+    do {
+      current = snapshot;
+      next = new AccountSnapshot(accountId, MinorUnits.add(getBalanceMinor(), unpublished),
+        MinorUnits.add(getAvailableMinor(), unpublished), minorUnits.getScale(),
+        current == null ? 1 : current.getVersion() + 1);
+    } while(!SNAPSHOT.compareAndSet(this, current, next));
+  }
+
+  //Repository views publish nothing, so theirs is read under the account's lock, balance and holds
+  //together, and has no version.
+  @JsonIgnore
+  public AccountSnapshot getSnapshot() {
+    AccountSnapshot published = snapshot;
+    if(published != null) {
+      return published;
+    }
+    Lock accountLock = getLock();
+    accountLock.lock();
+    try {
+      long balance = balanceEngine.getBalance();
+      return new AccountSnapshot(accountId, balance, balance - balanceEngine.getHeld(), minorUnits.getScale(),
+        AccountSnapshot.UNVERSIONED);
     } finally {
-      readWriteLock.writeLock().unlock();
+      accountLock.unlock();
     }
   }
 }
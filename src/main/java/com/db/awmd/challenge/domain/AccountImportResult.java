@@ -0,0 +1,15 @@
+package com.db.awmd.challenge.domain;
+
+import java.util.List;
+import lombok.Builder;
+import lombok.Getter;
+
+@Getter
+@Builder
+public class AccountImportResult {
+    private long created;
+    private long duplicates;
+    private long invalid;
+    //Reasons for the first skipped lines only, see AccountsBulkService.MAX_ERRORS.
+    private List<String> errors;
+}
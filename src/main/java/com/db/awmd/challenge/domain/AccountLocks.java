@@ -0,0 +1,63 @@
+package com.db.awmd.challenge.domain;
+
+import java.util.Comparator;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed pool of striped locks keyed by the hash of the account id, so accounts carry no lock object
+ * of their own. Accounts whose ids fall on the same stripe share a lock. One pool per node, sized
+ * by account.lock-stripes and handed to the account repositories.
+ */
+public final class AccountLocks {
+
+  public static final int DEFAULT_STRIPES = 1024;
+
+  //Locks are always taken in this order: by stripe, then by id for accounts whose lock is not a
+  //stripe, such as those given a lock of their own.
+  public static final Comparator<Account> LOCK_ORDER = Comparator
+    .comparingInt((Account account) -> indexOf(account.getLock()))
+    .thenComparing(Account::getAccountId);
+
+  private final Stripe[] stripes;
+
+  //Rounded up to a power of two.
+  public AccountLocks(int count) {
+    if (count < 1 || count > 1 << 24) {
+      throw new IllegalArgumentException("Lock stripes must be between 1 and 2^24.");
+    }
+    int size = count == 1 ? 1 : Integer.highestOneBit(count - 1) << 1;
+    stripes = new Stripe[size];
+    for (int i = 0; i < size; i++) {
+      stripes[i] = new Stripe(i);
+    }
+  }
+
+  public int getStripes() {
+    return stripes.length;
+  }
+
+  public int stripeOf(String accountId) {
+    int hash = accountId.hashCode();
+    //Spread the high bits down, as HashMap does, since only the low bits pick the stripe.
+    return (hash ^ (hash >>> 16)) & (stripes.length - 1);
+  }
+
+  public Lock lockFor(String accountId) {
+    return stripes[stripeOf(accountId)];
+  }
+
+  private static int indexOf(Lock lock) {
+    return lock instanceof Stripe ? ((Stripe) lock).index : 0;
+  }
+
+  //Knows its place in the pool, so LOCK_ORDER needs no pool to compare accounts.
+  private static final class Stripe extends ReentrantLock {
+
+    private final int index;
+
+    private Stripe(int index) {
+      this.index = index;
+    }
+  }
+}
@@ -0,0 +1,47 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import java.math.BigDecimal;
+import lombok.Value;
+
+/**
+ * Immutable copy of an account's committed state. Writers publish a new one after every change,
+ * so readers never lock and never see a transfer half applied.
+ */
+@Value
+@JsonPropertyOrder({"accountId", "balance", "availableBalance"})
+public class AccountSnapshot {
+
+  //Version of a snapshot read straight from a repository view rather than published.
+  public static final long UNVERSIONED = 0;
+
+  String accountId;
+
+  //MinorUnits; converted only when the snapshot is serialized.
+  @JsonIgnore
+  long balanceMinor;
+
+  //Balance less open holds.
+  @JsonIgnore
+  long availableMinor;
+
+  //Decimal places of the minor units, see MinorUnits#getScale.
+  @JsonIgnore
+  int scale;
+
+  //Incremented by every publish; served as the ETag of GET /v1/accounts/{accountId} unless UNVERSIONED.
+  @JsonIgnore
+  long version;
+
+  @JsonProperty("balance")
+  public BigDecimal getBalance() {
+    return MinorUnits.toBigDecimal(balanceMinor, scale);
+  }
+
+  @JsonProperty("availableBalance")
+  public BigDecimal getAvailableBalance() {
+    return MinorUnits.toBigDecimal(availableMinor, scale);
+  }
+}
@@ -0,0 +1,34 @@
+package com.db.awmd.challenge.domain;
+
+import org.springframework.http.MediaType;
+
+/**
+ * Line formats for bulk account import and export. Every line holds one account id and balance.
+ */
+public enum AccountsFormat {
+
+  //One {"accountId": ..., "balance": ...} object per line.
+  NDJSON("application/x-ndjson"),
+
+  //accountId,balance with an optional header line; ids containing commas or quotes are quoted.
+  CSV("text/csv");
+
+  private final MediaType mediaType;
+
+  AccountsFormat(String mediaType) {
+    this.mediaType = MediaType.parseMediaType(mediaType);
+  }
+
+  public MediaType getMediaType() {
+    return mediaType;
+  }
+
+  public static AccountsFormat of(MediaType contentType) {
+    for (AccountsFormat format : values()) {
+      if (format.mediaType.includes(contentType)) {
+        return format;
+      }
+    }
+    throw new IllegalArgumentException("Unsupported content type " + contentType + ".");
+  }
+}
@@ -0,0 +1,80 @@
+package com.db.awmd.challenge.domain;
+
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Lock-free engine: the balance is updated with compare-and-set.
+ *
+ * <p>The word that is compared-and-set is the available balance, so debits and new holds check
+ * and take funds in one CAS without reading a second word. Held money is counted separately; the
+ * ledger balance is the sum of both, which is off by the amount of a hold while it moves between
+ * the two.
+ */
+public class AtomicBalanceEngine implements BalanceEngine {
+
+  private static final AtomicLongFieldUpdater<AtomicBalanceEngine> AVAILABLE =
+    AtomicLongFieldUpdater.newUpdater(AtomicBalanceEngine.class, "available");
+
+  private static final AtomicLongFieldUpdater<AtomicBalanceEngine> HELD =
+    AtomicLongFieldUpdater.newUpdater(AtomicBalanceEngine.class, "held");
+
+  private volatile long available;
+
+  private volatile long held;
+
+  public AtomicBalanceEngine(long balance) {
+    this.available = balance;
+  }
+
+  @Override
+  public long getBalance() {
+    return available + held;
+  }
+
+  @Override
+  public void setBalance(long balance) {
+    this.available = balance - held;
+  }
+
+  @Override
+  public void credit(long amount) {
+    long current;
+    do {
+      current = available;
+    } while (!AVAILABLE.compareAndSet(this, current, MinorUnits.add(current, amount)));
+  }
+
+  @Override
+  public void debit(long amount) {
+    long current;
+    do {
+      current = available;
+      if(current < amount) {
+        throw new InsufficientBalanceException("Insufficient Account Balance.");
+      }
+    } while (!AVAILABLE.compareAndSet(this, current, MinorUnits.subtract(current, amount)));
+  }
+
+  @Override
+  public long getHeld() {
+    return held;
+  }
+
+  @Override
+  public void hold(long amount) {
+    debit(amount);
+    HELD.addAndGet(this, amount);
+  }
+
+  @Override
+  public void releaseHold(long amount) {
+    HELD.addAndGet(this, -amount);
+    credit(amount);
+  }
+
+  @Override
+  public void captureHold(long amount) {
+    HELD.addAndGet(this, -amount);
+  }
+}
@@ -0,0 +1,47 @@
+package com.db.awmd.challenge.domain;
+
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+
+/**
+ * Holds the balance of a single {@link Account}, in {@link MinorUnits}, and applies credits and
+ * debits to it.
+ *
+ * <p>Engines that support reservations also track the part of the balance set aside by open
+ * holds. getBalance() is the ledger balance and includes it; debits and new holds only see what is
+ * left, the available balance.
+ */
+public interface BalanceEngine {
+
+  long getBalance();
+
+  void setBalance(long balance);
+
+  void credit(long amount);
+
+  void debit(long amount) throws InsufficientBalanceException;
+
+  //Takes back a credit whose transfer is being undone. The credit is still in the balance, so
+  //this is a plain debit except on engines that refuse debits, see StripedCreditBalanceEngine.
+  default void revertCredit(long amount) {
+    debit(amount);
+  }
+
+  default long getHeld() {
+    return 0;
+  }
+
+  //Sets amount aside out of the available balance.
+  default void hold(long amount) throws InsufficientBalanceException {
+    throw new UnsupportedOperationException("Holds are not supported by this balance engine.");
+  }
+
+  //Makes held money available again.
+  default void releaseHold(long amount) {
+    throw new UnsupportedOperationException("Holds are not supported by this balance engine.");
+  }
+
+  //Takes held money out of the balance.
+  default void captureHold(long amount) {
+    throw new UnsupportedOperationException("Holds are not supported by this balance engine.");
+  }
+}
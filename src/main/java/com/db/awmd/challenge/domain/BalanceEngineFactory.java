@@ -0,0 +1,32 @@
+package com.db.awmd.challenge.domain;
+
+/**
+ * Creates the balance engine of each account: the type the account was created with, or the
+ * node's default, see account.balance-engine. The default must be debitable; CREDIT_ONLY is only
+ * ever chosen per account.
+ */
+public class BalanceEngineFactory {
+
+  private final BalanceEngineType defaultType;
+
+  public BalanceEngineFactory(BalanceEngineType defaultType) {
+    if (!defaultType.isDebitable()) {
+      throw new IllegalArgumentException(defaultType + " can only be chosen per account.");
+    }
+    this.defaultType = defaultType;
+  }
+
+  public BalanceEngineType getDefaultType() {
+    return defaultType;
+  }
+
+  //The type an account gets when it asks for requested, which may be null.
+  public BalanceEngineType resolve(BalanceEngineType requested) {
+    return requested != null ? requested : defaultType;
+  }
+
+  //Balance in MinorUnits.
+  public BalanceEngine create(BalanceEngineType type, long balance) {
+    return resolve(type).create(balance);
+  }
+}
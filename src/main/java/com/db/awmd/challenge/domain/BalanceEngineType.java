@@ -0,0 +1,37 @@
+package com.db.awmd.challenge.domain;
+
+//Chosen per account when it is created; journals and snapshots store the ordinal, so new types go
+//at the end.
+public enum BalanceEngineType {
+
+  LOCKING {
+    @Override
+    public BalanceEngine create(long balance) {
+      return new LockingBalanceEngine(balance);
+    }
+  },
+
+  ATOMIC {
+    @Override
+    public BalanceEngine create(long balance) {
+      return new AtomicBalanceEngine(balance);
+    }
+  },
+
+  //For accounts that only ever receive money, e.g. settlement sinks. Debits, and with them
+  //transfers out of the account, and holds throw CreditOnlyAccountException. Never the node
+  //default, see account.balance-engine.
+  CREDIT_ONLY {
+    @Override
+    public BalanceEngine create(long balance) {
+      return new StripedCreditBalanceEngine(balance);
+    }
+  };
+
+  //Balance in MinorUnits.
+  public abstract BalanceEngine create(long balance);
+
+  public boolean isDebitable() {
+    return this != CREDIT_ONLY;
+  }
+}
@@ -0,0 +1,10 @@
+package com.db.awmd.challenge.domain;
+
+public enum BatchMode {
+
+  //Either every transfer of the batch is applied or none is.
+  ALL_OR_NOTHING,
+
+  //Every valid transfer is applied on its own; failures are reported per item.
+  BEST_EFFORT
+}
@@ -0,0 +1,16 @@
+package com.db.awmd.challenge.domain;
+
+import java.util.List;
+import lombok.Builder;
+import lombok.Getter;
+
+@Getter
+@Builder
+public class BatchTransferResult {
+    private BatchMode mode;
+    private boolean committed;
+    private int succeeded;
+    private int failed;
+    //One entry per submitted transfer, in submission order.
+    private List<TransactionDetails> results;
+}
@@ -0,0 +1,67 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+import org.hibernate.validator.constraints.NotEmpty;
+
+import javax.validation.Valid;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.NotNull;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One sender paying many receivers, e.g. a payroll run. Applied as a whole or not at all, see
+ * {@link com.db.awmd.challenge.service.TransactionService#transferFanOut}.
+ */
+@Data
+public class FanOutTransfer {
+
+    @NotNull
+    @NotEmpty
+    private String senderId;
+
+    @NotNull
+    @NotEmpty
+    @Valid
+    private List<Leg> legs;
+
+    @JsonCreator
+    public FanOutTransfer(@JsonProperty("from") String senderId,
+                          @JsonProperty("legs") List<Leg> legs) {
+        this.senderId = senderId;
+        this.legs = legs;
+    }
+
+    //Each leg as the single transfer it stands for, in leg order.
+    @JsonIgnore
+    public List<Transaction> getTransactions() {
+        List<Transaction> transactions = new ArrayList<>(legs.size());
+        for(Leg leg : legs) {
+            transactions.add(new Transaction(senderId, leg.getReceiverId(), leg.getAmount()));
+        }
+        return transactions;
+    }
+
+    @Data
+    public static class Leg {
+
+        @NotNull
+        @NotEmpty
+        private String receiverId;
+
+        @NotNull
+        @DecimalMin(value = "0", inclusive = false, message = "Transfer amount should be greater than 0.")
+        private BigDecimal amount;
+
+        @JsonCreator
+        public Leg(@JsonProperty("to") String receiverId,
+                   @JsonProperty("amount") BigDecimal amount) {
+            this.receiverId = receiverId;
+            this.amount = amount;
+        }
+    }
+}
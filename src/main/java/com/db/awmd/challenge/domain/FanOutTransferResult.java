@@ -0,0 +1,18 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+import java.util.List;
+import lombok.Builder;
+import lombok.Getter;
+
+@Getter
+@Builder
+public class FanOutTransferResult {
+    private boolean committed;
+    //Sum of all legs, debited from the sender in one step.
+    private BigDecimal total;
+    private int succeeded;
+    private int failed;
+    //One entry per leg, in submission order.
+    private List<TransactionDetails> results;
+}
@@ -0,0 +1,15 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Builder;
+import lombok.Getter;
+
+@Getter
+@Builder
+public class HoldDetails {
+    private String holdId;
+    //The transfer the hold completes when it is captured.
+    private Transaction transaction;
+    //Epoch milliseconds after which the hold is released on its own.
+    private long expiresAt;
+    private String message;
+}
@@ -0,0 +1,50 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import java.math.BigDecimal;
+import lombok.Value;
+
+/**
+ * The running total of all balances next to the total accounts were created with, and the outcome
+ * of the background checks that compare them.
+ */
+@Value
+@JsonPropertyOrder({"total", "createdTotal", "inFlight"})
+public class LedgerStatus {
+
+  //MinorUnits; converted only when the status is serialized.
+  @JsonIgnore
+  long totalMinor;
+
+  @JsonIgnore
+  long createdTotalMinor;
+
+  //Decimal places of the minor units, see MinorUnits#getScale.
+  @JsonIgnore
+  int scale;
+
+  //Transfers and account creations half applied when the totals were read.
+  long inFlight;
+
+  long checks;
+
+  long violations;
+
+  //Checks skipped because changes kept overlapping the read.
+  long busy;
+
+  //Epoch milliseconds of the last check that found the totals consistent, 0 if none yet.
+  long lastConsistentAt;
+
+  @JsonProperty("total")
+  public BigDecimal getTotal() {
+    return MinorUnits.toBigDecimal(totalMinor, scale);
+  }
+
+  @JsonProperty("createdTotal")
+  public BigDecimal getCreatedTotal() {
+    return MinorUnits.toBigDecimal(createdTotalMinor, scale);
+  }
+}
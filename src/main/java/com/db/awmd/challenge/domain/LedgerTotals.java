@@ -0,0 +1,101 @@
+package com.db.awmd.challenge.domain;
+
+import java.util.concurrent.atomic.LongAdder;
+import lombok.Value;
+
+/**
+ * Running totals of every account balance, kept in striped counters so concurrent writers rarely
+ * touch the same cache line and a read costs the same at any number of accounts.
+ *
+ * <p>{@code balances} follows every credit and debit applied to an account; {@code created} follows
+ * only the balances accounts were created with. Transfers move money between accounts, so the two
+ * are equal whenever no change is half applied. Writers wrap each change that spans several
+ * calls (both legs of a transfer, an account insert) in {@link #beginChange()} and
+ * {@link #endChange()}; a reader that sees the same count of finished changes before its reads
+ * as of begun changes after them knows nothing was in flight in between, see {@link #read()}.
+ */
+public final class LedgerTotals {
+
+  private static final LongAdder balances = new LongAdder();
+
+  private static final LongAdder created = new LongAdder();
+
+  private static final LongAdder begun = new LongAdder();
+
+  private static final LongAdder ended = new LongAdder();
+
+  //Totals in MinorUnits, read while no change was in flight.
+  @Value
+  public static class Reading {
+    long balances;
+    long created;
+  }
+
+  private LedgerTotals() {
+  }
+
+  public static void beginChange() {
+    begun.increment();
+  }
+
+  public static void endChange() {
+    ended.increment();
+  }
+
+  //Callers wrap the insert of the account and this call in beginChange/endChange.
+  public static void accountCreated(long balance) {
+    created.add(balance);
+    balances.add(balance);
+  }
+
+  static void balanceChanged(long amount) {
+    balances.add(amount);
+  }
+
+  //Sum of all balances, including any change still in flight; O(1) in the number of accounts.
+  public static long getBalances() {
+    return balances.sum();
+  }
+
+  public static long getCreated() {
+    return created.sum();
+  }
+
+  //Changes begun and not yet ended, read without synchronisation, so only an estimate.
+  public static long getInFlight() {
+    return Math.max(0, begun.sum() - ended.sum());
+  }
+
+  /**
+   * Both totals if no change was in flight while they were read, else null. Counters only grow and
+   * ended never passes begun, so ended read first equalling begun read last means no change began
+   * or ended, and none was open, between the two reads.
+   */
+  public static Reading read() {
+    long[] totals = new long[2];
+    boolean consistent = quiescent(() -> {
+      totals[0] = balances.sum();
+      totals[1] = created.sum();
+    });
+    return consistent ? new Reading(totals[0], totals[1]) : null;
+  }
+
+  /**
+   * Runs the reader with no change in flight on either side of it: returns false, having run it,
+   * when a change overlapped, so the caller should discard what it read.
+   */
+  public static boolean quiescent(Runnable reader) {
+    long endedBefore = ended.sum();
+    reader.run();
+    return begun.sum() == endedBefore;
+  }
+
+  //Restarts both totals at the given sum of balances, e.g. after recovery or clearing the accounts.
+  //Not safe against concurrent changes.
+  public static void reset(long balance) {
+    balances.reset();
+    created.reset();
+    balances.add(balance);
+    created.add(balance);
+  }
+}
@@ -0,0 +1,67 @@
+package com.db.awmd.challenge.domain;
+
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+
+/**
+ * Original engine: the balance is only changed under the engine's monitor. Transfers already hold
+ * the account's stripe lock, so the monitor only matters for callers outside a transfer, and costs
+ * nothing until it is contended.
+ */
+public class LockingBalanceEngine implements BalanceEngine {
+
+  private volatile long balance;
+
+  //Part of balance set aside by open holds.
+  private volatile long held;
+
+  public LockingBalanceEngine(long balance) {
+    this.balance = balance;
+  }
+
+  @Override
+  public long getBalance() {
+    return balance;
+  }
+
+  @Override
+  public void setBalance(long balance) {
+    this.balance = balance;
+  }
+
+  @Override
+  public synchronized void credit(long amount) {
+    balance = MinorUnits.add(balance, amount);
+  }
+
+  @Override
+  public synchronized void debit(long amount) {
+    if(balance - held < amount) {
+      throw new InsufficientBalanceException("Insufficient Account Balance.");
+    }
+    balance = MinorUnits.subtract(balance, amount);
+  }
+
+  @Override
+  public long getHeld() {
+    return held;
+  }
+
+  @Override
+  public synchronized void hold(long amount) {
+    if(balance - held < amount) {
+      throw new InsufficientBalanceException("Insufficient Account Balance.");
+    }
+    held = MinorUnits.add(held, amount);
+  }
+
+  @Override
+  public synchronized void releaseHold(long amount) {
+    held = MinorUnits.subtract(held, amount);
+  }
+
+  @Override
+  public synchronized void captureHold(long amount) {
+    held = MinorUnits.subtract(held, amount);
+    balance = MinorUnits.subtract(balance, amount);
+  }
+}
@@ -0,0 +1,78 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+import java.util.Currency;
+
+/**
+ * Fixed-point money: amounts are a {@code long} count of the currency's minor units (cents for
+ * EUR, whole yen for JPY), see account.currency. Arithmetic is exact and fails on overflow instead
+ * of wrapping. {@link BigDecimal} is only used when converting at the JSON and journal boundaries.
+ *
+ * <p>One instance per node, created by BalanceEngineConfiguration for account.currency and handed
+ * to the repositories and services that convert amounts.
+ */
+public final class MinorUnits {
+
+  //account.currency when none is configured.
+  public static final Currency DEFAULT_CURRENCY = Currency.getInstance("EUR");
+
+  //Smallest transfer amount, in minor units.
+  public static final long MIN_TRANSFER_AMOUNT = 1;
+
+  private final int scale;
+
+  public MinorUnits(Currency currency) {
+    //Pseudo-currencies such as XXX report -1 fraction digits.
+    this.scale = Math.max(0, currency.getDefaultFractionDigits());
+  }
+
+  public int getScale() {
+    return scale;
+  }
+
+  public long toMinor(BigDecimal amount) {
+    try {
+      return amount.setScale(scale).unscaledValue().longValueExact();
+    } catch (ArithmeticException ae) {
+      throw new IllegalArgumentException(
+        "Amount " + amount + " cannot be represented with " + scale + " decimal places.", ae);
+    }
+  }
+
+  //Transfers move at least one minor unit, whatever the currency. Bean validation on the JSON
+  //requests only checks that amounts are positive; the minor-unit minimum is checked here.
+  public long toTransferAmount(BigDecimal amount) {
+    long minor = toMinor(amount);
+    if (minor < MIN_TRANSFER_AMOUNT) {
+      throw new IllegalArgumentException("Transfer amount should be at least " + toBigDecimal(MIN_TRANSFER_AMOUNT) + ".");
+    }
+    return minor;
+  }
+
+  public BigDecimal toBigDecimal(long minor) {
+    return toBigDecimal(minor, scale);
+  }
+
+  //For values that carry the scale they were taken with, such as AccountSnapshot.
+  public static BigDecimal toBigDecimal(long minor, int scale) {
+    //Drop the trailing zeros of the fixed scale so 300.00 reads back as 300.
+    BigDecimal value = BigDecimal.valueOf(minor, scale).stripTrailingZeros();
+    return value.scale() < 0 ? value.setScale(0) : value;
+  }
+
+  public static long add(long balance, long amount) {
+    try {
+      return Math.addExact(balance, amount);
+    } catch (ArithmeticException ae) {
+      throw new ArithmeticException("Amount overflow: " + balance + " + " + amount + " minor units.");
+    }
+  }
+
+  public static long subtract(long balance, long amount) {
+    try {
+      return Math.subtractExact(balance, amount);
+    } catch (ArithmeticException ae) {
+      throw new ArithmeticException("Amount overflow: " + balance + " - " + amount + " minor units.");
+    }
+  }
+}
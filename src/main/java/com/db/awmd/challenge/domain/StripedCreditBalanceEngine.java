@@ -0,0 +1,115 @@
+package com.db.awmd.challenge.domain;
+
+import com.db.awmd.challenge.exception.CreditOnlyAccountException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Engine for credit-only accounts (e.g. settlement sinks) hit by many writers at once. Credits are
+ * spread over striped cells, each on its own cache line, so concurrent credits rarely contend.
+ *
+ * <p>Unlike a LongAdder, every cell is capped at {@link #MAX_CELL}, so the cells can never add up
+ * past Long.MAX_VALUE: a credit that fits in no cell throws ArithmeticException instead of wrapping
+ * the balance negative. Debits and holds throw {@link CreditOnlyAccountException}. Chosen per
+ * account with {@link BalanceEngineType#CREDIT_ONLY}.
+ */
+public class StripedCreditBalanceEngine implements BalanceEngine {
+
+  private static final int CELLS = cells(Runtime.getRuntime().availableProcessors());
+
+  //Longs per cache line; only every PAD-th slot of the array is used.
+  private static final int PAD = 8;
+
+  static final long MAX_CELL = Long.MAX_VALUE / CELLS;
+
+  private final AtomicLongArray cells = new AtomicLongArray(CELLS * PAD);
+
+  public StripedCreditBalanceEngine(long balance) {
+    setBalance(balance);
+  }
+
+  @Override
+  public long getBalance() {
+    long sum = 0;
+    for (int i = 0; i < CELLS; i++) {
+      sum += cells.get(i * PAD);
+    }
+    return sum;
+  }
+
+  //Not atomic with concurrent credits; only used while the account is being set up.
+  @Override
+  public void setBalance(long balance) {
+    if (balance < 0 || balance > MAX_CELL * CELLS) {
+      throw new ArithmeticException("Amount overflow: balance of " + balance + " minor units.");
+    }
+    long remaining = balance;
+    for (int i = 0; i < CELLS; i++) {
+      long share = Math.min(remaining, MAX_CELL);
+      cells.set(i * PAD, share);
+      remaining -= share;
+    }
+  }
+
+  //Tries the calling thread's cell first, then the others, so the balance only overflows once
+  //every cell is full.
+  @Override
+  public void credit(long amount) {
+    int start = home();
+    for (int n = 0; n < CELLS; n++) {
+      int cell = ((start + n) & (CELLS - 1)) * PAD;
+      long current;
+      while ((current = cells.get(cell)) <= MAX_CELL - amount) {
+        if (cells.compareAndSet(cell, current, current + amount)) {
+          return;
+        }
+      }
+    }
+    throw new ArithmeticException("Amount overflow: credit of " + amount + " minor units.");
+  }
+
+  @Override
+  public void debit(long amount) {
+    throw new CreditOnlyAccountException("Debit not supported on a credit-only account.");
+  }
+
+  @Override
+  public void hold(long amount) {
+    throw new CreditOnlyAccountException("Holds not supported on a credit-only account.");
+  }
+
+  //Takes the amount out of whichever cells hold it. The credit being undone is still in the
+  //balance, so this only fails if the caller undoes more than it credited, and then changes
+  //nothing. Reverts run under the account lock; concurrent credits only add.
+  @Override
+  public void revertCredit(long amount) {
+    if (getBalance() < amount) {
+      throw new IllegalStateException("Cannot revert a credit of " + amount + " minor units.");
+    }
+    long remaining = amount;
+    int start = home();
+    for (int n = 0; n < CELLS && remaining > 0; n++) {
+      int cell = ((start + n) & (CELLS - 1)) * PAD;
+      long current;
+      long taken;
+      do {
+        current = cells.get(cell);
+        taken = Math.min(current, remaining);
+      } while (taken > 0 && !cells.compareAndSet(cell, current, current - taken));
+      remaining -= taken;
+    }
+  }
+
+  private static int home() {
+    int h = (int) Thread.currentThread().getId() * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  //A power of two near the processor count, as a LongAdder grows to.
+  private static int cells(int processors) {
+    int cells = 1;
+    while (cells < processors && cells < 64) {
+      cells <<= 1;
+    }
+    return cells;
+  }
+}
@@ -0,0 +1,122 @@
+package com.db.awmd.challenge.domain;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * ULID-style 128-bit ids written as 26 Crockford base32 characters, so string order is creation
+ * order down to the millisecond:
+ *
+ * <pre>
+ *   48 bits  milliseconds since the epoch, never going back within a thread
+ *   16 bits  node id
+ *   20 bits  slot of the creating thread
+ *   44 bits  per-thread sequence, starting at a random value
+ * </pre>
+ *
+ * Each thread owns its slot and sequence, so creating an id takes no lock, CAS or shared random
+ * source. An id made after a restart differs from every earlier one by its timestamp, and the
+ * random sequence start covers a clock that was set back.
+ */
+public class TimeOrderedIdGenerator implements TransactionIdGenerator {
+
+  public static final int MAX_NODE_ID = 0xFFFF;
+
+  private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+
+  private static final byte[] DECODE = new byte[128];
+
+  static {
+    Arrays.fill(DECODE, (byte) -1);
+    for (int i = 0; i < ALPHABET.length; i++) {
+      DECODE[ALPHABET[i]] = (byte) i;
+    }
+  }
+
+  private static final int SLOT_BITS = 20;
+
+  private static final int SEQUENCE_BITS = 44;
+
+  private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+  private final long node;
+
+  private final LongSupplier clock;
+
+  private final AtomicInteger slots = new AtomicInteger();
+
+  private final ThreadLocal<ThreadState> state = ThreadLocal.withInitial(ThreadState::new);
+
+  public TimeOrderedIdGenerator(int nodeId) {
+    this(nodeId, System::currentTimeMillis);
+  }
+
+  TimeOrderedIdGenerator(int nodeId, LongSupplier clock) {
+    if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+      throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE_ID + ".");
+    }
+    this.node = nodeId;
+    this.clock = clock;
+  }
+
+  @Override
+  public String nextId() {
+    ThreadState thread = state.get();
+    long millis = Math.max(clock.getAsLong(), thread.lastMillis);
+    thread.lastMillis = millis;
+    thread.sequence = (thread.sequence + 1) & SEQUENCE_MASK;
+
+    return format(millis << 16 | node, thread.slot << SEQUENCE_BITS | thread.sequence);
+  }
+
+  public static String format(long high, long low) {
+    char[] id = new char[26];
+    for (int i = 25; i >= 0; i--) {
+      id[i] = ALPHABET[(int) low & 31];
+      low = low >>> 5 | high << 59;
+      high >>>= 5;
+    }
+    return new String(id);
+  }
+
+  //The first 13 characters hold the top 65 bits, of which the first is always 0.
+  public static long highBits(String id) {
+    long high = 0;
+    for (int i = 0; i < 13; i++) {
+      high = high << 5 | decode(id.charAt(i));
+    }
+    return high << 1 | decode(id.charAt(13)) >>> 4;
+  }
+
+  public static long lowBits(String id) {
+    long low = decode(id.charAt(13)) & 0xF;
+    for (int i = 14; i < 26; i++) {
+      low = low << 5 | decode(id.charAt(i));
+    }
+    return low;
+  }
+
+  /** The millisecond timestamp an id was created at. */
+  public static long timestampOf(String id) {
+    return highBits(id) >>> 16;
+  }
+
+  private static int decode(char c) {
+    int value = c < DECODE.length ? DECODE[c] : -1;
+    if (value < 0) {
+      throw new IllegalArgumentException("Not a base32 character: " + c);
+    }
+    return value;
+  }
+
+  private final class ThreadState {
+
+    private final long slot = slots.getAndIncrement() & ((1 << SLOT_BITS) - 1);
+
+    private long sequence = ThreadLocalRandom.current().nextLong() & (SEQUENCE_MASK >>> 1);
+
+    private long lastMillis;
+  }
+}
@@ -1,16 +1,23 @@
 package com.db.awmd.challenge.domain;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
 import org.hibernate.validator.constraints.NotEmpty;
 
 import javax.validation.constraints.DecimalMin;
-import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import java.math.BigDecimal;
 
 @Data
+@EqualsAndHashCode(exclude = "amountMinor")
+@ToString(exclude = "amountMinor")
 public class Transaction {
 
     @NotNull
@@ -22,9 +29,15 @@ public class Transaction {
     private String receiverId;
 
     @NotNull
-    @DecimalMin(value = "0.1", message = "Transfer amount should be greater than 0.")
+    @DecimalMin(value = "0", inclusive = false, message = "Transfer amount should be greater than 0.")
     private BigDecimal amount;
 
+    //Amount in MinorUnits, converted on first use and kept; 0 until then, as no transfer is for 0.
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private long amountMinor;
+
     public Transaction() {
         amount = BigDecimal.ZERO;
     }
@@ -37,4 +50,19 @@ public class Transaction {
         this.receiverId = receiverId;
         this.amount = amount;
     }
+
+    public void setAmount(BigDecimal amount) {
+        this.amount = amount;
+        this.amountMinor = 0;
+    }
+
+    //Throws IllegalArgumentException for amounts below one minor unit, see MinorUnits#toTransferAmount.
+    public long getAmountMinor(MinorUnits minorUnits) {
+        long minor = amountMinor;
+        if(minor == 0) {
+            minor = minorUnits.toTransferAmount(amount);
+            amountMinor = minor;
+        }
+        return minor;
+    }
 }
@@ -0,0 +1,16 @@
+package com.db.awmd.challenge.domain;
+
+import java.util.List;
+import lombok.Value;
+
+/**
+ * A page of an account's transaction history, oldest first. Pass nextCursor back as the cursor
+ * parameter to read the next page; it is null when the page reached the end of the range.
+ */
+@Value
+public class TransactionHistoryPage {
+
+  List<TransactionRecord> transactions;
+
+  Long nextCursor;
+}
@@ -0,0 +1,6 @@
+package com.db.awmd.challenge.domain;
+
+public interface TransactionIdGenerator {
+
+  String nextId();
+}
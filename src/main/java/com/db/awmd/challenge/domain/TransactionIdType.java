@@ -0,0 +1,59 @@
+package com.db.awmd.challenge.domain;
+
+public enum TransactionIdType {
+
+  //26-character ids that sort by creation time, see TimeOrderedIdGenerator.
+  TIME_ORDERED {
+    @Override
+    public TransactionIdGenerator create(int nodeId) {
+      return new TimeOrderedIdGenerator(nodeId);
+    }
+
+    @Override
+    public long highBits(String id) {
+      return TimeOrderedIdGenerator.highBits(id);
+    }
+
+    @Override
+    public long lowBits(String id) {
+      return TimeOrderedIdGenerator.lowBits(id);
+    }
+
+    @Override
+    public String format(long high, long low) {
+      return TimeOrderedIdGenerator.format(high, low);
+    }
+  },
+
+  //Random UUIDs; unordered, and drawn from a shared SecureRandom.
+  UUID {
+    @Override
+    public TransactionIdGenerator create(int nodeId) {
+      return () -> java.util.UUID.randomUUID().toString();
+    }
+
+    @Override
+    public long highBits(String id) {
+      return java.util.UUID.fromString(id).getMostSignificantBits();
+    }
+
+    @Override
+    public long lowBits(String id) {
+      return java.util.UUID.fromString(id).getLeastSignificantBits();
+    }
+
+    @Override
+    public String format(long high, long low) {
+      return new java.util.UUID(high, low).toString();
+    }
+  };
+
+  public abstract TransactionIdGenerator create(int nodeId);
+
+  //Ids of either type are 128 bits, so they can be stored as two longs and formatted back.
+  public abstract long highBits(String id);
+
+  public abstract long lowBits(String id);
+
+  public abstract String format(long high, long low);
+}
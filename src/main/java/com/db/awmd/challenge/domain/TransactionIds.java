@@ -0,0 +1,31 @@
+package com.db.awmd.challenge.domain;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Source of the ids handed out for committed transfers. Replaced only at startup, see
+ * transfer.id.generator.
+ */
+public final class TransactionIds {
+
+  private static volatile TransactionIdType type = TransactionIdType.TIME_ORDERED;
+
+  private static volatile TransactionIdGenerator generator =
+    type.create(ThreadLocalRandom.current().nextInt(TimeOrderedIdGenerator.MAX_NODE_ID + 1));
+
+  private TransactionIds() {
+  }
+
+  public static void configure(TransactionIdType transactionIdType, int nodeId) {
+    generator = transactionIdType.create(nodeId);
+    type = transactionIdType;
+  }
+
+  public static TransactionIdType getType() {
+    return type;
+  }
+
+  public static String next() {
+    return generator.nextId();
+  }
+}
@@ -0,0 +1,37 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import java.math.BigDecimal;
+import lombok.Value;
+
+/**
+ * One committed transfer as read back from the transaction history.
+ */
+@Value
+@JsonPropertyOrder({"transactionId", "senderId", "receiverId", "amount", "timestamp"})
+public class TransactionRecord {
+
+  String transactionId;
+
+  String senderId;
+
+  String receiverId;
+
+  //MinorUnits; converted only when the record is serialized.
+  @JsonIgnore
+  long amountMinor;
+
+  //Decimal places of the minor units, see MinorUnits#getScale.
+  @JsonIgnore
+  int scale;
+
+  //Milliseconds since the epoch at which the transfer was recorded.
+  long timestamp;
+
+  @JsonProperty("amount")
+  public BigDecimal getAmount() {
+    return MinorUnits.toBigDecimal(amountMinor, scale);
+  }
+}
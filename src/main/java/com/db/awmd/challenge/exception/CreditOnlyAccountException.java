@@ -0,0 +1,10 @@
+package com.db.awmd.challenge.exception;
+
+//An invalid transfer like any other, so every endpoint that answers IllegalArgumentException with a
+//bad request answers this one the same way.
+public class CreditOnlyAccountException extends IllegalArgumentException {
+
+    public CreditOnlyAccountException(String message) {
+        super(message);
+    }
+}
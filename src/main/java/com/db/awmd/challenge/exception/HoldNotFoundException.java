@@ -0,0 +1,8 @@
+package com.db.awmd.challenge.exception;
+
+public class HoldNotFoundException extends RuntimeException {
+
+    public HoldNotFoundException(String message) {
+        super(message);
+    }
+}
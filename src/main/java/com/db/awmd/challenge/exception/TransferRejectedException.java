@@ -0,0 +1,16 @@
+package com.db.awmd.challenge.exception;
+
+import lombok.Getter;
+
+public class TransferRejectedException extends RuntimeException {
+
+    //How long until the limit that rejected the transfer would have admitted it; 0 when unknown.
+    @Getter
+    private final long retryAfterMillis;
+
+    public TransferRejectedException(String message, long retryAfterMillis) {
+        //Thrown at the rate of the overload it guards against, so it skips the stack trace.
+        super(message, null, false, false);
+        this.retryAfterMillis = retryAfterMillis;
+    }
+}
@@ -0,0 +1,285 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.config.JournalProperties;
+import com.db.awmd.challenge.domain.BalanceEngineType;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Point-in-time copies of the account map, written to and read from memory-mapped files.
+ *
+ * <p>Layout: a header {@code [int magic][int version][long lsn][long journalOffset][long count]
+ * [int crc32]} followed by one entry per account {@code [short idLength][id bytes][byte engine]
+ * [long balance in minor units][long journal lsn]}. The CRC covers every entry. Version 1 files,
+ * written before entries held the account's {@link BalanceEngineType}, are still read. Snapshots are
+ * fuzzy: each account is read on its own, and its journal lsn tells recovery which later journal
+ * records it already contains.
+ */
+@Slf4j
+@Component
+public class AccountSnapshotStore {
+
+  public interface EntryWriter {
+    void write(String accountId, BalanceEngineType balanceEngineType, long balanceMinor, long journalLsn);
+  }
+
+  public interface EntrySource {
+    void forEach(EntryWriter writer);
+  }
+
+  public interface EntryLoader {
+    //The engine is null for entries of version 1 files.
+    void onAccount(String accountId, BalanceEngineType balanceEngineType, long balanceMinor, long journalLsn);
+  }
+
+  @Value
+  public static class Snapshot {
+    Path file;
+    TransactionJournal.Position position;
+    long count;
+    int version;
+  }
+
+  private static final int MAGIC = 0x534E4150;
+
+  private static final int VERSION = 2;
+
+  private static final int HEADER = 4 + 4 + 8 + 8 + 8 + 4;
+
+  private static final int MAX_ENTRY = 2 + 0xFFFF + 1 + 8 + 8;
+
+  //Files are mapped in windows of this size rather than all at once.
+  private static final long WINDOW = 64L << 20;
+
+  private static final String PREFIX = "snapshot-";
+
+  private static final String SUFFIX = ".bin";
+
+  private final Path directory;
+
+  private final int retained;
+
+  @Autowired
+  public AccountSnapshotStore(JournalProperties properties) {
+    this.directory = Paths.get(properties.getDirectory());
+    this.retained = Math.max(1, properties.getSnapshotsRetained());
+  }
+
+  /**
+   * Writes every entry of the source to a new snapshot, then removes snapshots beyond the
+   * retention count. The position must be taken from the journal before the source is read.
+   */
+  public Snapshot write(TransactionJournal.Position position, EntrySource source) {
+    Path target = directory.resolve(String.format("%s%020d%s", PREFIX, position.getLsn(), SUFFIX));
+    Path temp = directory.resolve(target.getFileName() + ".tmp");
+    long count;
+    try {
+      Files.createDirectories(directory);
+      try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        MappedWriter writer = new MappedWriter(channel);
+        source.forEach(writer);
+        long size = writer.finish();
+        channel.truncate(size);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        header.putInt(MAGIC).putInt(VERSION).putLong(position.getLsn()).putLong(position.getOffset())
+          .putLong(writer.count).putInt((int) writer.crc.getValue());
+        header.flip();
+        channel.write(header, 0);
+        channel.force(true);
+        count = writer.count;
+      }
+      Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException ioe) {
+      throw new UncheckedIOException("Could not write snapshot " + target, ioe);
+    }
+
+    List<Path> snapshots = list();
+    for (int i = retained; i < snapshots.size(); i++) {
+      try {
+        Files.deleteIfExists(snapshots.get(i));
+      } catch (IOException ioe) {
+        log.warn("Could not delete old snapshot {}", snapshots.get(i), ioe);
+      }
+    }
+    return new Snapshot(target, position, count, VERSION);
+  }
+
+  /**
+   * Loads the newest readable snapshot into the loader, falling back to older ones if a file is
+   * damaged. Returns null when there is no usable snapshot.
+   */
+  public Snapshot loadLatest(EntryLoader loader) {
+    for (Path file : list()) {
+      try {
+        Snapshot snapshot = readHeader(file);
+        if (snapshot != null && verify(file, snapshot)) {
+          load(file, snapshot.getVersion(), loader);
+          return snapshot;
+        }
+        log.warn("Skipping damaged snapshot {}", file);
+      } catch (IOException ioe) {
+        log.warn("Skipping unreadable snapshot {}", file, ioe);
+      }
+    }
+    return null;
+  }
+
+  /** Reads only the header, which is enough to presize the account map before loading. */
+  public Snapshot latest() {
+    for (Path file : list()) {
+      try {
+        Snapshot snapshot = readHeader(file);
+        if (snapshot != null) {
+          return snapshot;
+        }
+      } catch (IOException ioe) {
+        log.warn("Skipping unreadable snapshot {}", file, ioe);
+      }
+    }
+    return null;
+  }
+
+  private Snapshot readHeader(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER);
+      if (channel.size() < HEADER || channel.read(header, 0) < HEADER) {
+        return null;
+      }
+      header.flip();
+      if (header.getInt() != MAGIC) {
+        return null;
+      }
+      int version = header.getInt();
+      if (version != 1 && version != VERSION) {
+        return null;
+      }
+      long lsn = header.getLong();
+      long offset = header.getLong();
+      return new Snapshot(file, new TransactionJournal.Position(lsn, offset), header.getLong(), version);
+    }
+  }
+
+  private boolean verify(Path file, Snapshot snapshot) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer stored = ByteBuffer.allocate(4);
+      channel.read(stored, HEADER - 4);
+      stored.flip();
+
+      CRC32 crc = new CRC32();
+      long size = channel.size();
+      for (long position = HEADER; position < size; position += WINDOW) {
+        crc.update(channel.map(MapMode.READ_ONLY, position, Math.min(WINDOW, size - position)));
+      }
+      return (int) crc.getValue() == stored.getInt();
+    }
+  }
+
+  private void load(Path file, int version, EntryLoader loader) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      long base = HEADER;
+      MappedByteBuffer window = channel.map(MapMode.READ_ONLY, base, Math.min(WINDOW, size - base));
+      byte[] id = new byte[0xFFFF];
+      while (base + window.position() < size) {
+        //Remap when the next entry might straddle the end of the window.
+        if (window.remaining() < MAX_ENTRY && base + window.limit() < size) {
+          base += window.position();
+          window = channel.map(MapMode.READ_ONLY, base, Math.min(WINDOW, size - base));
+        }
+        int length = window.getShort() & 0xFFFF;
+        window.get(id, 0, length);
+        BalanceEngineType engine = version == 1 ? null : BalanceEngineType.values()[window.get()];
+        loader.onAccount(new String(id, 0, length, StandardCharsets.UTF_8), engine, window.getLong(), window.getLong());
+      }
+    }
+  }
+
+  //Newest first.
+  private List<Path> list() {
+    List<Path> snapshots = new ArrayList<>();
+    if (!Files.isDirectory(directory)) {
+      return snapshots;
+    }
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+      stream.forEach(snapshots::add);
+    } catch (IOException ioe) {
+      throw new UncheckedIOException("Could not list snapshots in " + directory, ioe);
+    }
+    //File names hold a zero-padded lsn, so name order is lsn order.
+    snapshots.sort(Collections.reverseOrder());
+    return snapshots;
+  }
+
+  private static final class MappedWriter implements EntryWriter {
+
+    private final FileChannel channel;
+
+    private final CRC32 crc = new CRC32();
+
+    private long base = HEADER;
+
+    private MappedByteBuffer window;
+
+    private long count;
+
+    private MappedWriter(FileChannel channel) throws IOException {
+      this.channel = channel;
+      this.window = channel.map(MapMode.READ_WRITE, base, WINDOW);
+    }
+
+    @Override
+    public void write(String accountId, BalanceEngineType balanceEngineType, long balanceMinor, long journalLsn) {
+      byte[] id = accountId.getBytes(StandardCharsets.UTF_8);
+      if (window.remaining() < 2 + id.length + 1 + 16) {
+        advance();
+      }
+      window.putShort((short) id.length).put(id).put((byte) balanceEngineType.ordinal()).putLong(balanceMinor)
+        .putLong(journalLsn);
+      count++;
+    }
+
+    private void advance() {
+      flushWindow();
+      base += window.position();
+      try {
+        window = channel.map(MapMode.READ_WRITE, base, WINDOW);
+      } catch (IOException ioe) {
+        throw new UncheckedIOException(ioe);
+      }
+    }
+
+    private void flushWindow() {
+      window.force();
+      ByteBuffer written = window.duplicate();
+      written.flip();
+      crc.update(written);
+    }
+
+    //Returns the file size covering everything written.
+    private long finish() {
+      flushWindow();
+      return base + window.position();
+    }
+  }
+}
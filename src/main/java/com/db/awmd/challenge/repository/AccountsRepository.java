@@ -2,12 +2,22 @@ package com.db.awmd.challenge.repository;
 
 import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import java.util.List;
+import java.util.function.Consumer;
 
 public interface AccountsRepository {
 
   void createAccount(Account account) throws DuplicateAccountIdException;
 
+  //Creates every account whose id is free, waiting for durability once for the whole list, and
+  //returns the accounts that were skipped because their id already exists.
+  List<Account> createAccountsIfAbsent(List<Account> accounts);
+
   Account getAccount(String accountId);
 
+  //Visits every account without copying them first. Accounts created during the walk may or may
+  //not be visited.
+  void forEachAccount(Consumer<Account> action);
+
   void clearAccounts();
 }
@@ -1,23 +1,251 @@
 package com.db.awmd.challenge.repository;
 
+import com.db.awmd.challenge.config.JournalProperties;
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountLocks;
+import com.db.awmd.challenge.domain.BalanceEngineFactory;
+import com.db.awmd.challenge.domain.BalanceEngineType;
+import com.db.awmd.challenge.domain.LedgerTotals;
+import com.db.awmd.challenge.domain.MinorUnits;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Repository;
 
+@Slf4j
 @Repository
+@ConditionalOnProperty(name = "accounts.store", havingValue = "in-memory", matchIfMissing = true)
 public class AccountsRepositoryInMemory implements AccountsRepository {
 
-  private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+  //Replaced once during recovery by a map presized for the snapshot being loaded.
+  private Map<String, Account> accounts = new ConcurrentHashMap<>();
+
+  private final TransactionJournal journal;
+
+  private final AccountSnapshotStore snapshotStore;
+
+  private final long snapshotIntervalSeconds;
+
+  private final AccountLocks locks;
+
+  private final BalanceEngineFactory engines;
+
+  private final MinorUnits minorUnits;
+
+  private ScheduledExecutorService snapshotScheduler;
+
+  public AccountsRepositoryInMemory() {
+    this(new AccountLocks(AccountLocks.DEFAULT_STRIPES));
+  }
+
+  public AccountsRepositoryInMemory(AccountLocks locks) {
+    this(TransactionJournal.disabled(), null, new JournalProperties(), locks,
+      new BalanceEngineFactory(BalanceEngineType.LOCKING), new MinorUnits(MinorUnits.DEFAULT_CURRENCY));
+  }
+
+  @Autowired
+  public AccountsRepositoryInMemory(TransactionJournal journal, AccountSnapshotStore snapshotStore,
+    JournalProperties properties, AccountLocks locks, BalanceEngineFactory engines, MinorUnits minorUnits) {
+    this.journal = journal;
+    this.snapshotStore = snapshotStore;
+    this.snapshotIntervalSeconds = properties.getSnapshotIntervalSeconds();
+    this.locks = locks;
+    this.engines = engines;
+    this.minorUnits = minorUnits;
+  }
+
+  //Rebuilds the accounts from the newest snapshot plus the journal records written after it,
+  //before the repository is used.
+  @PostConstruct
+  public void recover() {
+    if (!journal.isEnabled()) {
+      return;
+    }
+    long started = System.nanoTime();
+    TransactionJournal.Position from = new TransactionJournal.Position(0, 0);
+    AccountSnapshotStore.Snapshot latest = snapshotStore.latest();
+    if (latest != null) {
+      Map<String, Account> loaded = new ConcurrentHashMap<>((int) Math.min(Integer.MAX_VALUE, latest.getCount() * 4 / 3 + 1));
+      AccountSnapshotStore.Snapshot snapshot = snapshotStore.loadLatest((accountId, engine, balanceMinor, journalLsn) -> {
+        Account account = recovered(accountId, engine, balanceMinor);
+        account.setJournalLsn(journalLsn);
+        loaded.put(accountId, account);
+      });
+      if (snapshot != null) {
+        accounts = loaded;
+        from = snapshot.getPosition();
+        log.info("Loaded {} accounts from {}", snapshot.getCount(), snapshot.getFile());
+      }
+    }
+
+    //Records already contained in an account's snapshot entry are skipped by comparing lsns.
+    journal.recover(from, new TransactionJournal.ReplayHandler() {
+      @Override
+      public void onCreate(long lsn, String accountId, BalanceEngineType engine, long balance) {
+        Account existing = accounts.get(accountId);
+        if (existing == null || existing.getJournalLsn() < lsn) {
+          Account account = recovered(accountId, engine, balance);
+          account.setJournalLsn(lsn);
+          accounts.put(accountId, account);
+        }
+      }
+
+      @Override
+      public void onTransfer(long lsn, String senderId, String receiverId, long amount) {
+        Account sender = accounts.get(senderId);
+        Account receiver = accounts.get(receiverId);
+        if (sender == null || receiver == null) {
+          //Journals written before creation records were ordered ahead of transfers can have one.
+          log.warn("Skipping transfer at lsn {} from {} to {}: account not created yet", lsn, senderId,
+            receiverId);
+          return;
+        }
+        //Credit-only accounts refuse debits before anything is journaled, so they are never the
+        //sender of a record; accounts journaled before the engine was recorded get a debitable one.
+        if (sender.getJournalLsn() < lsn) {
+          sender.debit(amount);
+          sender.setJournalLsn(lsn);
+        }
+        if (receiver.getJournalLsn() < lsn) {
+          receiver.credit(amount);
+          receiver.setJournalLsn(lsn);
+        }
+      }
+
+      @Override
+      public void onClear(long lsn) {
+        accounts.clear();
+      }
+    });
+    //Snapshot entries are taken at different lsns, so only the recovered balances give the totals.
+    long total = 0;
+    for (Account account : accounts.values()) {
+      total = MinorUnits.add(total, account.getBalanceMinor());
+    }
+    LedgerTotals.reset(total);
+    log.info("Recovered {} accounts from {} in {} ms", accounts.size(), journal.getFile(),
+      TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+
+    if (snapshotIntervalSeconds > 0) {
+      snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "account-snapshot");
+        thread.setDaemon(true);
+        return thread;
+      });
+      snapshotScheduler.scheduleWithFixedDelay(() -> {
+        try {
+          takeSnapshot();
+        } catch (RuntimeException ex) {
+          log.error("Snapshot failed", ex);
+        }
+      }, snapshotIntervalSeconds, snapshotIntervalSeconds, TimeUnit.SECONDS);
+    }
+  }
+
+  //Accounts journaled before the engine was recorded get the node's default.
+  private Account recovered(String accountId, BalanceEngineType engine, long balance) {
+    BalanceEngineType type = engines.resolve(engine);
+    return new Account(accountId, type, engines.create(type, balance), locks.lockFor(accountId), minorUnits);
+  }
+
+  /**
+   * Writes a snapshot without stopping transfers: each account is locked only while its own
+   * balance and journal lsn are read.
+   */
+  public AccountSnapshotStore.Snapshot takeSnapshot() {
+    long started = System.nanoTime();
+    TransactionJournal.Position position = journal.position();
+    AccountSnapshotStore.Snapshot snapshot = snapshotStore.write(position, writer -> {
+      for (Account account : accounts.values()) {
+        long balanceMinor;
+        long journalLsn;
+        account.getLock().lock();
+        try {
+          balanceMinor = account.getBalanceMinor();
+          journalLsn = account.getJournalLsn();
+        } finally {
+          account.getLock().unlock();
+        }
+        writer.write(account.getAccountId(), account.getBalanceEngineType(), balanceMinor, journalLsn);
+      }
+    });
+    log.info("Wrote snapshot of {} accounts to {} in {} ms", snapshot.getCount(), snapshot.getFile(),
+      TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    return snapshot;
+  }
+
+  @PreDestroy
+  public void stopSnapshots() {
+    if (snapshotScheduler != null) {
+      snapshotScheduler.shutdownNow();
+    }
+  }
 
   @Override
   public void createAccount(Account account) throws DuplicateAccountIdException {
-    Account previousAccount = accounts.putIfAbsent(account.getAccountId(), account);
-    if (previousAccount != null) {
-      throw new DuplicateAccountIdException(
-        "Account id " + account.getAccountId() + " already exists!");
+    long lsn;
+    //Creators of the same id share this lock. The account is only published once its creation
+    //record is in the journal, so no transfer on it can be journaled first, whichever engine runs
+    //it.
+    Lock lock = locks.lockFor(account.getAccountId());
+    lock.lock();
+    LedgerTotals.beginChange();
+    try {
+      if (accounts.containsKey(account.getAccountId())) {
+        throw new DuplicateAccountIdException(
+          "Account id " + account.getAccountId() + " already exists!");
+      }
+      account.open(engines, lock, minorUnits);
+      lsn = journal.appendCreate(account.getAccountId(), account.getBalanceEngineType(),
+        account.getBalanceMinor());
+      account.setJournalLsn(lsn);
+      accounts.put(account.getAccountId(), account);
+      LedgerTotals.accountCreated(account.getBalanceMinor());
+    } finally {
+      LedgerTotals.endChange();
+      lock.unlock();
     }
+    journal.awaitDurable(lsn);
+  }
+
+  @Override
+  public List<Account> createAccountsIfAbsent(List<Account> newAccounts) {
+    List<Account> duplicates = new ArrayList<>();
+    long lastLsn = 0;
+    for (Account account : newAccounts) {
+      Lock lock = locks.lockFor(account.getAccountId());
+      lock.lock();
+      LedgerTotals.beginChange();
+      try {
+        if (accounts.containsKey(account.getAccountId())) {
+          duplicates.add(account);
+          continue;
+        }
+        account.open(engines, lock, minorUnits);
+        lastLsn = journal.appendCreate(account.getAccountId(), account.getBalanceEngineType(),
+        account.getBalanceMinor());
+        account.setJournalLsn(lastLsn);
+        accounts.put(account.getAccountId(), account);
+        LedgerTotals.accountCreated(account.getBalanceMinor());
+      } finally {
+        LedgerTotals.endChange();
+        lock.unlock();
+      }
+    }
+    journal.awaitDurable(lastLsn);
+    return duplicates;
   }
 
   @Override
@@ -25,9 +253,16 @@ public class AccountsRepositoryInMemory implements AccountsRepository {
     return accounts.get(accountId);
   }
 
+  @Override
+  public void forEachAccount(Consumer<Account> action) {
+    accounts.values().forEach(action);
+  }
+
   @Override
   public void clearAccounts() {
+    journal.awaitDurable(journal.appendClear());
     accounts.clear();
+    LedgerTotals.reset(0);
   }
 
 }
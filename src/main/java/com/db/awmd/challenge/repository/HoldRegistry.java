@@ -0,0 +1,324 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.config.TransactionIdConfiguration;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransactionIds;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Open holds by id, expired by a hashed timer wheel.
+ *
+ * <p>Opening and closing a hold take no lock: holds are kept in a {@link ConcurrentHashMap}, and
+ * closing one is a CAS on its state, which also settles a race between a capture or release and
+ * the expiry. A new hold is pushed onto a lock-free stack. Every tick the wheel thread drains that
+ * stack into the buckets of the ticks the holds expire at, then expires the holds in the bucket of
+ * the current tick. Buckets belong to the wheel thread alone. A tick only visits its own bucket,
+ * so expiry costs the same however many holds are open, and no task is scheduled per hold.
+ * Buckets are doubly linked: a captured or released hold is pushed onto a second stack, and the
+ * next tick unlinks it from its bucket, so closed holds are not kept until they would have been
+ * due.
+ */
+@Slf4j
+@Repository
+@DependsOn(TransactionIdConfiguration.BEAN_NAME)
+@ManagedResource(objectName = "com.db.awmd.challenge:type=HoldRegistry")
+public class HoldRegistry {
+
+  public static final class Hold {
+
+    private static final AtomicIntegerFieldUpdater<Hold> STATE =
+      AtomicIntegerFieldUpdater.newUpdater(Hold.class, "state");
+
+    private static final int OPEN = 0;
+
+    private static final int CLOSED = 1;
+
+    @Getter
+    private final String holdId;
+
+    @Getter
+    private final Account sender;
+
+    @Getter
+    private final Account receiver;
+
+    //MinorUnits.
+    @Getter
+    private final long amount;
+
+    //Epoch milliseconds.
+    @Getter
+    private final long expiresAt;
+
+    private volatile int state;
+
+    //Next hold on the incoming stack, or in the same bucket.
+    private Hold next;
+
+    //Wheel thread only: the previous hold in the same bucket, and the bucket, -1 when unlinked.
+    private Hold previous;
+
+    private int bucket = -1;
+
+    //Next hold on the closed stack.
+    private Hold nextClosed;
+
+    private Hold(String holdId, Account sender, Account receiver, long amount, long expiresAt) {
+      this.holdId = holdId;
+      this.sender = sender;
+      this.receiver = receiver;
+      this.amount = amount;
+      this.expiresAt = expiresAt;
+    }
+
+    private boolean close() {
+      return STATE.compareAndSet(this, OPEN, CLOSED);
+    }
+  }
+
+  private final long tickMillis;
+
+  private final LongSupplier clock;
+
+  private final ConcurrentHashMap<String, Hold> open = new ConcurrentHashMap<>();
+
+  private final AtomicReference<Hold> incoming = new AtomicReference<>();
+
+  //Holds closed by capture or release, for the wheel thread to unlink.
+  private final AtomicReference<Hold> closed = new AtomicReference<>();
+
+  //Owned by the wheel thread, like tick.
+  private final Hold[] buckets;
+
+  private final int mask;
+
+  //Last tick processed, in ticks since the epoch.
+  private long tick;
+
+  private final LongAdder expired = new LongAdder();
+
+  private Thread wheel;
+
+  private volatile boolean running;
+
+  @Autowired
+  public HoldRegistry(@Value("${holds.tick-millis:100}") long tickMillis,
+    @Value("${holds.wheel-size:512}") int wheelSize) {
+    this(tickMillis, wheelSize, System::currentTimeMillis);
+  }
+
+  HoldRegistry(long tickMillis, int wheelSize, LongSupplier clock) {
+    if (tickMillis < 1 || wheelSize < 1 || wheelSize > 1 << 20) {
+      throw new IllegalArgumentException("holds.tick-millis must be positive and holds.wheel-size between 1 and 2^20.");
+    }
+    this.tickMillis = tickMillis;
+    this.clock = clock;
+    this.buckets = new Hold[wheelSize == 1 ? 1 : Integer.highestOneBit(wheelSize - 1) << 1];
+    this.mask = buckets.length - 1;
+    this.tick = clock.getAsLong() / tickMillis;
+  }
+
+  @PostConstruct
+  public void start() {
+    running = true;
+    wheel = new Thread(this::turn, "hold-wheel");
+    wheel.setDaemon(true);
+    wheel.start();
+  }
+
+  @PreDestroy
+  public void stop() {
+    running = false;
+    if (wheel != null) {
+      wheel.interrupt();
+    }
+  }
+
+  /**
+   * Registers a hold whose amount the caller has already set aside on the sender. Unless it is
+   * closed first, the wheel releases it back to the sender once ttlMillis have passed.
+   */
+  public Hold open(Account sender, Account receiver, long amount, long ttlMillis) {
+    if (ttlMillis < 1) {
+      throw new IllegalArgumentException("Hold ttl must be positive.");
+    }
+    Hold hold = new Hold(TransactionIds.next(), sender, receiver, amount, clock.getAsLong() + ttlMillis);
+    open.put(hold.holdId, hold);
+    Hold head;
+    do {
+      head = incoming.get();
+      hold.next = head;
+    } while (!incoming.compareAndSet(head, hold));
+    return hold;
+  }
+
+  /** The open hold with holdId, or null; it may still be closed by someone else at any time. */
+  public Hold get(String holdId) {
+    Hold hold = open.get(holdId);
+    return hold != null && hold.state == Hold.OPEN ? hold : null;
+  }
+
+  /**
+   * Closes an open hold, so that only the caller goes on to capture or release it. Null when the
+   * hold is unknown, already closed or expired.
+   */
+  public Hold close(String holdId) {
+    Hold hold = open.get(holdId);
+    if (hold == null || !hold.close()) {
+      return null;
+    }
+    open.remove(holdId);
+    Hold head;
+    do {
+      head = closed.get();
+      hold.nextClosed = head;
+    } while (!closed.compareAndSet(head, hold));
+    return hold;
+  }
+
+  @ManagedAttribute(description = "Holds neither captured, released nor expired")
+  public int getOpen() {
+    return open.size();
+  }
+
+  @ManagedAttribute(description = "Holds released by the timer wheel")
+  public long getExpired() {
+    return expired.sum();
+  }
+
+  private void turn() {
+    while (running) {
+      advance(clock.getAsLong());
+      try {
+        Thread.sleep(tickMillis);
+      } catch (InterruptedException ie) {
+        return;
+      }
+    }
+  }
+
+  //Processes every tick up to now. Wheel thread only, or tests that do not start it.
+  void advance(long now) {
+    long target = now / tickMillis;
+    while (tick < target) {
+      tick++;
+      drainIncoming();
+      unlinkClosed();
+      expireBucket();
+    }
+  }
+
+  //Holds in the buckets, for tests.
+  int scheduled() {
+    int count = 0;
+    for (Hold head : buckets) {
+      for (Hold hold = head; hold != null; hold = hold.next) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private void drainIncoming() {
+    Hold hold = incoming.getAndSet(null);
+    while (hold != null) {
+      Hold next = hold.next;
+      if (hold.state == Hold.OPEN) {
+        //A hold already due goes into the bucket processed next.
+        link(hold, Math.max(dueTick(hold), tick));
+      }
+      hold = next;
+    }
+  }
+
+  //A hold closed before it was drained from the incoming stack was never linked.
+  private void unlinkClosed() {
+    Hold hold = closed.getAndSet(null);
+    while (hold != null) {
+      Hold next = hold.nextClosed;
+      hold.nextClosed = null;
+      if (hold.bucket >= 0) {
+        unlink(hold);
+      }
+      hold = next;
+    }
+  }
+
+  private void expireBucket() {
+    int bucket = (int) (tick & mask);
+    Hold hold = buckets[bucket];
+    buckets[bucket] = null;
+    while (hold != null) {
+      Hold next = hold.next;
+      hold.next = null;
+      hold.previous = null;
+      hold.bucket = -1;
+      if (hold.state == Hold.OPEN) {
+        if (dueTick(hold) <= tick) {
+          expire(hold);
+        } else {
+          //Due after another turn of the wheel.
+          link(hold, tick + buckets.length);
+        }
+      }
+      hold = next;
+    }
+  }
+
+  private void expire(Hold hold) {
+    if (!hold.close()) {
+      return;
+    }
+    open.remove(hold.holdId);
+    try {
+      hold.sender.releaseHold(hold.amount);
+      expired.increment();
+    } catch (RuntimeException ex) {
+      log.error("Could not release expired hold {} on account {}", hold.holdId, hold.sender.getAccountId(), ex);
+    }
+  }
+
+  private void link(Hold hold, long atTick) {
+    int bucket = (int) (atTick & mask);
+    hold.previous = null;
+    hold.next = buckets[bucket];
+    if (hold.next != null) {
+      hold.next.previous = hold;
+    }
+    buckets[bucket] = hold;
+    hold.bucket = bucket;
+  }
+
+  private void unlink(Hold hold) {
+    if (hold.previous == null) {
+      buckets[hold.bucket] = hold.next;
+    } else {
+      hold.previous.next = hold.next;
+    }
+    if (hold.next != null) {
+      hold.next.previous = hold.previous;
+    }
+    hold.next = null;
+    hold.previous = null;
+    hold.bucket = -1;
+  }
+
+  //First tick at or after the hold's expiry.
+  private long dueTick(Hold hold) {
+    return (hold.expiresAt + tickMillis - 1) / tickMillis;
+  }
+}
@@ -0,0 +1,353 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceEngineType;
+import com.db.awmd.challenge.domain.AccountLocks;
+import com.db.awmd.challenge.domain.LedgerTotals;
+import com.db.awmd.challenge.domain.MinorUnits;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import javax.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Account store that keeps no per-account objects on the heap. Accounts live in an open-addressing
+ * table (linear probing) of 24-byte slots in direct buffers:
+ *
+ * <pre>
+ *   0  long  64-bit hash of the account id (0 = empty)
+ *   8  long  balance in minor units
+ *  16  long  arena offset of the id characters &lt;&lt; 16 | id length
+ * </pre>
+ *
+ * Id characters are appended to a separate off-heap arena. Inserts take the write lock of a
+ * {@link StampedLock}; look-ups probe under an optimistic read and only fall back to the read lock
+ * when an insert ran at the same time. {@link #getAccount} returns a small flyweight
+ * {@link Account} whose balance is a view of the slot, guarded by the account's
+ * {@link AccountLocks} stripe.
+ */
+@Slf4j
+@Repository
+@ConditionalOnProperty(name = "accounts.store", havingValue = "off-heap")
+public class OffHeapAccountsRepository implements AccountsRepository {
+
+  private static final int SLOT_SIZE = 24;
+
+  private static final int HASH = 0;
+
+  private static final int BALANCE = 8;
+
+  private static final int ID = 16;
+
+  private static final long EMPTY = 0;
+
+  //1M slots (24 MB) per slot segment and 64 MB per arena segment.
+  private static final int SLOT_SEGMENT_SHIFT = 20;
+
+  private static final int ARENA_SEGMENT_SHIFT = 26;
+
+  private static final int MAX_ARENA_SEGMENTS = 1 << 14;
+
+  private final TransactionJournal journal;
+
+  private final AccountLocks locks;
+
+  private final MinorUnits minorUnits;
+
+  private final int maxAccounts;
+
+  private final int mask;
+
+  private final ByteBuffer[] slotSegments;
+
+  private final AtomicReferenceArray<ByteBuffer> arenaSegments = new AtomicReferenceArray<>(MAX_ARENA_SEGMENTS);
+
+  private final StampedLock table = new StampedLock();
+
+  //Guarded by the write lock of table.
+  private long arenaTop;
+
+  private final AtomicInteger size = new AtomicInteger();
+
+  public OffHeapAccountsRepository(int maxAccounts, TransactionJournal journal) {
+    this(maxAccounts, journal, new AccountLocks(AccountLocks.DEFAULT_STRIPES),
+      new MinorUnits(MinorUnits.DEFAULT_CURRENCY));
+  }
+
+  @Autowired
+  public OffHeapAccountsRepository(@Value("${accounts.off-heap.capacity:1048576}") int maxAccounts,
+    TransactionJournal journal, AccountLocks locks, MinorUnits minorUnits) {
+    this.journal = journal;
+    this.locks = locks;
+    this.minorUnits = minorUnits;
+    this.maxAccounts = maxAccounts;
+
+    //Keep the load factor at or below 0.75 so probe chains stay short.
+    int slots = Integer.highestOneBit(Math.max(2, (int) Math.min(1L << 29, maxAccounts * 4L / 3)) - 1) << 1;
+    this.mask = slots - 1;
+    int segmentSlots = Math.min(slots, 1 << SLOT_SEGMENT_SHIFT);
+    int segments = slots / segmentSlots;
+    this.slotSegments = new ByteBuffer[segments];
+    for (int i = 0; i < segments; i++) {
+      slotSegments[i] = allocate(segmentSlots * SLOT_SIZE);
+    }
+    log.info("Off-heap account store with {} slots for up to {} accounts", slots, maxAccounts);
+  }
+
+  @PostConstruct
+  public void checkJournal() {
+    if (journal.isEnabled()) {
+      throw new IllegalStateException("The transaction journal is not supported with the off-heap account store.");
+    }
+  }
+
+  @Override
+  public void createAccount(Account account) throws DuplicateAccountIdException {
+    if (!insert(account)) {
+      throw new DuplicateAccountIdException("Account id " + account.getAccountId() + " already exists!");
+    }
+  }
+
+  @Override
+  public List<Account> createAccountsIfAbsent(List<Account> accounts) {
+    List<Account> duplicates = new ArrayList<>();
+    for (Account account : accounts) {
+      if (!insert(account)) {
+        duplicates.add(account);
+      }
+    }
+    return duplicates;
+  }
+
+  //Returns false when the id is already taken. Slots hold a plain balance word, so every account
+  //here is debitable.
+  private boolean insert(Account account) {
+    String accountId = account.getAccountId();
+    long balance = minorUnits.toMinor(account.getBalance());
+    if (accountId.length() > 0xFFFF) {
+      throw new IllegalArgumentException("Account id is too long.");
+    }
+    if (account.getBalanceEngineType() == BalanceEngineType.CREDIT_ONLY) {
+      throw new IllegalArgumentException("Credit-only accounts are not supported by the off-heap store.");
+    }
+    long hash = hash(accountId);
+    long stamp = table.writeLock();
+    LedgerTotals.beginChange();
+    try {
+      return insertSlot(accountId, hash, balance);
+    } finally {
+      LedgerTotals.endChange();
+      table.unlockWrite(stamp);
+    }
+  }
+
+  private boolean insertSlot(String accountId, long hash, long balance) {
+    int slot = (int) hash & mask;
+    for (int probes = 0; probes <= mask; probes++) {
+      ByteBuffer slots = segment(slot);
+      int index = index(slot);
+      long current = slots.getLong(index + HASH);
+      if (current == EMPTY) {
+        if (size.get() >= maxAccounts) {
+          break;
+        }
+        slots.putLong(index + ID, writeId(accountId));
+        slots.putLong(index + BALANCE, balance);
+        slots.putLong(index + HASH, hash);
+        size.incrementAndGet();
+        LedgerTotals.accountCreated(balance);
+        return true;
+      }
+      if (current == hash && idEquals(slots, index, accountId)) {
+        return false;
+      }
+      slot = (slot + 1) & mask;
+    }
+    throw new IllegalStateException("Off-heap account store is full (" + maxAccounts + " accounts).");
+  }
+
+  @Override
+  public Account getAccount(String accountId) {
+    long hash = hash(accountId);
+    int slot = read(() -> find(accountId, hash));
+    return slot < 0 ? null : view(accountId, slot);
+  }
+
+  private int find(String accountId, long hash) {
+    int slot = (int) hash & mask;
+    for (int probes = 0; probes <= mask; probes++) {
+      ByteBuffer slots = segment(slot);
+      int index = index(slot);
+      long current = slots.getLong(index + HASH);
+      if (current == EMPTY) {
+        return -1;
+      }
+      if (current == hash && idEquals(slots, index, accountId)) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  //Walks the slot table in slot order, handing out the same flyweights as getAccount.
+  @Override
+  public void forEachAccount(Consumer<Account> action) {
+    for (int slot = 0; slot <= mask; slot++) {
+      int at = slot;
+      String accountId = read(() -> segment(at).getLong(index(at) + HASH) == EMPTY ? null : readId(at));
+      if (accountId != null) {
+        action.accept(view(accountId, slot));
+      }
+    }
+  }
+
+  //Not safe against concurrent transfers; meant for resets between tests.
+  @Override
+  public void clearAccounts() {
+    long stamp = table.writeLock();
+    try {
+      for (ByteBuffer slots : slotSegments) {
+        for (int index = 0; index < slots.capacity(); index += 8) {
+          slots.putLong(index, 0);
+        }
+      }
+      arenaTop = 0;
+      size.set(0);
+      LedgerTotals.reset(0);
+    } finally {
+      table.unlockWrite(stamp);
+    }
+  }
+
+  public int size() {
+    return size.get();
+  }
+
+  //Runs a probe without locking and repeats it under the read lock if an insert ran meanwhile, in
+  //which case the probe may also have failed on a half-written slot.
+  private <T> T read(Supplier<T> probe) {
+    long stamp = table.tryOptimisticRead();
+    if (stamp != 0) {
+      try {
+        T result = probe.get();
+        if (table.validate(stamp)) {
+          return result;
+        }
+      } catch (RuntimeException ex) {
+        if (table.validate(stamp)) {
+          throw ex;
+        }
+      }
+    }
+    stamp = table.readLock();
+    try {
+      return probe.get();
+    } finally {
+      table.unlockRead(stamp);
+    }
+  }
+
+  private Account view(String accountId, int slot) {
+    Lock lock = locks.lockFor(accountId);
+    return Account.view(accountId, new OffHeapBalanceEngine(segment(slot), index(slot) + BALANCE, lock), lock,
+      minorUnits);
+  }
+
+  private ByteBuffer segment(int slot) {
+    return slotSegments[slot >>> SLOT_SEGMENT_SHIFT];
+  }
+
+  private static int index(int slot) {
+    return (slot & ((1 << SLOT_SEGMENT_SHIFT) - 1)) * SLOT_SIZE;
+  }
+
+  private boolean idEquals(ByteBuffer slots, int index, String accountId) {
+    long idRef = slots.getLong(index + ID);
+    int length = (int) (idRef & 0xFFFF);
+    if (length != accountId.length()) {
+      return false;
+    }
+    ByteBuffer arena = arenaSegments.get((int) (idRef >>> 16 >>> ARENA_SEGMENT_SHIFT));
+    int chars = arenaIndex(idRef >>> 16);
+    for (int i = 0; i < length; i++) {
+      if (arena.getChar(chars + 2 * i) != accountId.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private String readId(int slot) {
+    long idRef = segment(slot).getLong(index(slot) + ID);
+    char[] id = new char[(int) (idRef & 0xFFFF)];
+    ByteBuffer arena = arenaSegments.get((int) (idRef >>> 16 >>> ARENA_SEGMENT_SHIFT));
+    int chars = arenaIndex(idRef >>> 16);
+    for (int i = 0; i < id.length; i++) {
+      id[i] = arena.getChar(chars + 2 * i);
+    }
+    return new String(id);
+  }
+
+  //Called under the write lock of table.
+  private long writeId(String accountId) {
+    long offset = allocateArena(accountId.length() * 2);
+    ByteBuffer arena = arenaSegments.get((int) (offset >>> ARENA_SEGMENT_SHIFT));
+    int chars = arenaIndex(offset);
+    for (int i = 0; i < accountId.length(); i++) {
+      arena.putChar(chars + 2 * i, accountId.charAt(i));
+    }
+    return offset << 16 | accountId.length();
+  }
+
+  //Bump allocation that never lets an id straddle two arena segments.
+  private long allocateArena(int bytes) {
+    long start = arenaTop;
+    long segmentEnd = ((start >>> ARENA_SEGMENT_SHIFT) + 1) << ARENA_SEGMENT_SHIFT;
+    if (start + bytes > segmentEnd) {
+      start = segmentEnd;
+    }
+    int segment = (int) (start >>> ARENA_SEGMENT_SHIFT);
+    if (arenaSegments.get(segment) == null) {
+      arenaSegments.set(segment, allocate(1 << ARENA_SEGMENT_SHIFT));
+    }
+    arenaTop = start + bytes;
+    return start;
+  }
+
+  private static int arenaIndex(long offset) {
+    return (int) (offset & ((1 << ARENA_SEGMENT_SHIFT) - 1));
+  }
+
+  private static ByteBuffer allocate(int bytes) {
+    return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+  }
+
+  //FNV-1a over the id characters followed by the MurmurHash3 finaliser; 0 is reserved.
+  private static long hash(String accountId) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < accountId.length(); i++) {
+      hash ^= accountId.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash == EMPTY ? 1 : hash;
+  }
+}
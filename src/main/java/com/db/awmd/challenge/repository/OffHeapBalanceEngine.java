@@ -0,0 +1,71 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.BalanceEngine;
+import com.db.awmd.challenge.domain.MinorUnits;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * View of the balance word of one {@link OffHeapAccountsRepository} slot. The word is only read
+ * and written under the account's lock, which transfers already hold, so taking it here is a
+ * reentrant acquire on the hot path.
+ */
+class OffHeapBalanceEngine implements BalanceEngine {
+
+  private final ByteBuffer slots;
+
+  private final int index;
+
+  private final Lock lock;
+
+  OffHeapBalanceEngine(ByteBuffer slots, int index, Lock lock) {
+    this.slots = slots;
+    this.index = index;
+    this.lock = lock;
+  }
+
+  @Override
+  public long getBalance() {
+    lock.lock();
+    try {
+      return slots.getLong(index);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void setBalance(long balance) {
+    lock.lock();
+    try {
+      slots.putLong(index, balance);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void credit(long amount) {
+    lock.lock();
+    try {
+      slots.putLong(index, MinorUnits.add(slots.getLong(index), amount));
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void debit(long amount) {
+    lock.lock();
+    try {
+      long current = slots.getLong(index);
+      if (current < amount) {
+        throw new InsufficientBalanceException("Insufficient Account Balance.");
+      }
+      slots.putLong(index, MinorUnits.subtract(current, amount));
+    } finally {
+      lock.unlock();
+    }
+  }
+}
@@ -0,0 +1,333 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.config.HistoryProperties;
+import com.db.awmd.challenge.config.TransactionIdConfiguration;
+import com.db.awmd.challenge.domain.MinorUnits;
+import com.db.awmd.challenge.domain.TransactionHistoryPage;
+import com.db.awmd.challenge.domain.TransactionIdType;
+import com.db.awmd.challenge.domain.TransactionIds;
+import com.db.awmd.challenge.domain.TransactionRecord;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongSupplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Repository;
+
+/**
+ * In-memory, append-only log of committed transfers, queryable per account in time order.
+ *
+ * <p>Transfers are numbered by position and stored column-wise in fixed-size segments of primitive
+ * arrays, so a transfer costs 36 bytes and no object. Account ids are interned to ints, and every
+ * account keeps the ascending positions of its transfers; since timestamps never go back as
+ * positions grow, a query binary-searches the account's positions for its start and then reads
+ * only the transfers it returns. Retention drops whole segments from the old end.
+ */
+@Repository
+@DependsOn(TransactionIdConfiguration.BEAN_NAME)
+@EnableConfigurationProperties(HistoryProperties.class)
+@ManagedResource(objectName = "com.db.awmd.challenge:type=TransactionHistory")
+public class TransactionHistory {
+
+  private final boolean enabled;
+
+  private final int segmentSize;
+
+  private final long maxTransfers;
+
+  private final long maxAgeMillis;
+
+  private final LongSupplier clock;
+
+  private final int scale;
+
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  //Oldest first; every segment but the last is sealed.
+  private final List<Segment> segments = new ArrayList<>();
+
+  private final Map<String, Integer> accountIndex = new HashMap<>();
+
+  private final List<String> accountIds = new ArrayList<>();
+
+  private final List<Postings> postings = new ArrayList<>();
+
+  //Position the next transfer gets.
+  private long next;
+
+  private long lastMillis;
+
+  private long evicted;
+
+  public TransactionHistory(HistoryProperties properties) {
+    this(properties, new MinorUnits(MinorUnits.DEFAULT_CURRENCY));
+  }
+
+  @Autowired
+  public TransactionHistory(HistoryProperties properties, MinorUnits minorUnits) {
+    this(properties, minorUnits, System::currentTimeMillis);
+  }
+
+  TransactionHistory(HistoryProperties properties, LongSupplier clock) {
+    this(properties, new MinorUnits(MinorUnits.DEFAULT_CURRENCY), clock);
+  }
+
+  TransactionHistory(HistoryProperties properties, MinorUnits minorUnits, LongSupplier clock) {
+    if (properties.getSegmentSize() < 1) {
+      throw new IllegalArgumentException("history.segment-size must be positive.");
+    }
+    this.enabled = properties.isEnabled();
+    this.segmentSize = properties.getSegmentSize();
+    this.maxTransfers = properties.getMaxTransfers();
+    this.maxAgeMillis = TimeUnit.SECONDS.toMillis(properties.getMaxAgeSeconds());
+    this.clock = clock;
+    this.scale = minorUnits.getScale();
+  }
+
+  public static TransactionHistory disabled() {
+    HistoryProperties properties = new HistoryProperties();
+    properties.setEnabled(false);
+    return new TransactionHistory(properties);
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Appends a committed transfer; amount is in MinorUnits. */
+  public void record(String transactionId, String senderId, String receiverId, long amount) {
+    if (!enabled) {
+      return;
+    }
+    TransactionIdType idType = TransactionIds.getType();
+    long idHigh = idType.highBits(transactionId);
+    long idLow = idType.lowBits(transactionId);
+
+    lock.writeLock().lock();
+    try {
+      long millis = Math.max(clock.getAsLong(), lastMillis);
+      lastMillis = millis;
+      Segment tail = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+      if (tail == null || tail.size == segmentSize || millis - tail.baseMillis > Integer.MAX_VALUE) {
+        tail = new Segment(next, millis, segmentSize);
+        segments.add(tail);
+      }
+      int sender = intern(senderId);
+      int receiver = intern(receiverId);
+      int slot = tail.size;
+      tail.millis[slot] = (int) (millis - tail.baseMillis);
+      tail.idHigh[slot] = idHigh;
+      tail.idLow[slot] = idLow;
+      tail.amount[slot] = amount;
+      tail.sender[slot] = sender;
+      tail.receiver[slot] = receiver;
+      tail.size++;
+      postings.get(sender).add(next);
+      postings.get(receiver).add(next);
+      next++;
+      evict(millis);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Transfers sending from or to the account with a timestamp in [fromMillis, toMillis], oldest
+   * first, starting after the transfer at position cursor (-1 to start at the beginning).
+   */
+  public TransactionHistoryPage query(String accountId, long fromMillis, long toMillis, long cursor, int limit) {
+    lock.readLock().lock();
+    try {
+      Integer account = accountIndex.get(accountId);
+      if (account == null || segments.isEmpty()) {
+        return new TransactionHistoryPage(Collections.emptyList(), null);
+      }
+      Postings positions = postings.get(account);
+      long minPosition = Math.max(segments.get(0).first, cursor + 1);
+
+      //Both conditions only ever turn from false to true along the postings.
+      int low = positions.start;
+      int high = positions.size;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        long position = positions.positions[mid];
+        if (position < minPosition || millisAt(position) < fromMillis) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+
+      TransactionIdType idType = TransactionIds.getType();
+      List<TransactionRecord> records = new ArrayList<>(Math.min(limit, positions.size - low));
+      int i = low;
+      for (; i < positions.size && records.size() < limit; i++) {
+        long position = positions.positions[i];
+        Segment segment = segmentOf(position);
+        int slot = (int) (position - segment.first);
+        long millis = segment.baseMillis + segment.millis[slot];
+        if (millis > toMillis) {
+          return new TransactionHistoryPage(records, null);
+        }
+        records.add(new TransactionRecord(
+          idType.format(segment.idHigh[slot], segment.idLow[slot]),
+          accountIds.get(segment.sender[slot]),
+          accountIds.get(segment.receiver[slot]),
+          segment.amount[slot],
+          scale,
+          millis));
+      }
+      boolean more = i < positions.size && millisAt(positions.positions[i]) <= toMillis;
+      return new TransactionHistoryPage(records, more ? positions.positions[i - 1] : null);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @ManagedAttribute(description = "Transfers currently held")
+  public long getSize() {
+    lock.readLock().lock();
+    try {
+      return segments.isEmpty() ? 0 : next - segments.get(0).first;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @ManagedAttribute(description = "Transfers dropped by the retention policy")
+  public long getEvicted() {
+    lock.readLock().lock();
+    try {
+      return evicted;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private int intern(String accountId) {
+    Integer index = accountIndex.get(accountId);
+    if (index == null) {
+      index = accountIds.size();
+      accountIndex.put(accountId, index);
+      accountIds.add(accountId);
+      postings.add(new Postings());
+    }
+    return index;
+  }
+
+  //Drops whole sealed segments from the old end; callers hold the write lock.
+  private void evict(long now) {
+    while (segments.size() > 1) {
+      Segment oldest = segments.get(0);
+      boolean tooMany = maxTransfers > 0 && next - oldest.first > maxTransfers;
+      boolean tooOld = maxAgeMillis > 0 && now - oldest.lastMillis() > maxAgeMillis;
+      if (!tooMany && !tooOld) {
+        return;
+      }
+      segments.remove(0);
+      evicted += oldest.size;
+      long floor = segments.get(0).first;
+      for (int slot = 0; slot < oldest.size; slot++) {
+        postings.get(oldest.sender[slot]).dropBefore(floor);
+        postings.get(oldest.receiver[slot]).dropBefore(floor);
+      }
+    }
+  }
+
+  private long millisAt(long position) {
+    Segment segment = segmentOf(position);
+    return segment.baseMillis + segment.millis[(int) (position - segment.first)];
+  }
+
+  private Segment segmentOf(long position) {
+    int low = 0;
+    int high = segments.size() - 1;
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      if (segments.get(mid).first <= position) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return segments.get(low);
+  }
+
+  private static final class Segment {
+
+    //Position of slot 0.
+    private final long first;
+
+    private final long baseMillis;
+
+    //Milliseconds after baseMillis.
+    private final int[] millis;
+
+    private final long[] idHigh;
+
+    private final long[] idLow;
+
+    private final long[] amount;
+
+    //Indexes into accountIds.
+    private final int[] sender;
+
+    private final int[] receiver;
+
+    private int size;
+
+    private Segment(long first, long baseMillis, int capacity) {
+      this.first = first;
+      this.baseMillis = baseMillis;
+      this.millis = new int[capacity];
+      this.idHigh = new long[capacity];
+      this.idLow = new long[capacity];
+      this.amount = new long[capacity];
+      this.sender = new int[capacity];
+      this.receiver = new int[capacity];
+    }
+
+    private long lastMillis() {
+      return baseMillis + millis[size - 1];
+    }
+  }
+
+  //Ascending positions of one account's transfers; positions before start were evicted.
+  private static final class Postings {
+
+    private long[] positions = new long[4];
+
+    private int start;
+
+    private int size;
+
+    private void add(long position) {
+      if (size == positions.length) {
+        if (start > size / 2) {
+          //Reuse the space of evicted positions before growing.
+          System.arraycopy(positions, start, positions, 0, size - start);
+          size -= start;
+          start = 0;
+        } else {
+          positions = Arrays.copyOf(positions, positions.length * 2);
+        }
+      }
+      positions[size++] = position;
+    }
+
+    private void dropBefore(long floor) {
+      while (start < size && positions[start] < floor) {
+        start++;
+      }
+    }
+  }
+}
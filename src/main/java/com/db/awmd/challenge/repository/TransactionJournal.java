@@ -0,0 +1,694 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.config.JournalProperties;
+import com.db.awmd.challenge.config.JournalProperties.Durability;
+import com.db.awmd.challenge.domain.BalanceEngineType;
+import com.db.awmd.challenge.domain.MinorUnits;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+import javax.annotation.PreDestroy;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Append-only write-ahead journal of account creations and transfers.
+ *
+ * <p>Each record is {@code [int length][long lsn][byte type][payload][int crc32]}, where the
+ * length covers lsn, type and payload and the CRC is taken over the same bytes. Records are
+ * encoded into one of two in-memory buffers; a flusher thread swaps the buffers, writes the full
+ * one through a {@link FileChannel} and forces it, so one fsync covers every record appended
+ * while the previous one was in progress (group commit).
+ *
+ * <p>Transfers that must commit together go into one record that takes one lsn per leg: a
+ * TRANSFERS record for a batch, or a FAN_OUT record that writes the sender of every leg once. A
+ * torn record is cut off like any other, so replay sees every leg or none. A record larger than
+ * a buffer is handed to the flusher, which writes it between the buffered records appended before
+ * and after it; only in FSYNC mode does the appender write and force it itself.
+ *
+ * <p>A failed write or fsync is final. Every later append throws, so callers undo and reject the
+ * transfers it was for, and waiters in {@link #awaitDurable} are woken with the failure. Transfers
+ * whose records were in the failed write stay applied in memory although their callers got an
+ * error: memory and disk have diverged until a restart recovers from the journal. After
+ * {@link #close()} appends throw too, and waiters whose records the flusher did not write before
+ * it stopped are woken with an error instead of waiting for good.
+ */
+@Slf4j
+@Component
+@EnableConfigurationProperties(JournalProperties.class)
+public class TransactionJournal {
+
+  public interface ReplayHandler {
+
+    //Amounts are in MinorUnits. The engine is null for accounts journaled before it was recorded,
+    //which get the node's default.
+    void onCreate(long lsn, String accountId, BalanceEngineType balanceEngineType, long balance);
+
+    void onTransfer(long lsn, String senderId, String receiverId, long amount);
+
+    void onClear(long lsn);
+  }
+
+  /**
+   * Transfers encoded by {@link #encodeTransfers} or {@link #encodeFanOut} for one record. Encoding
+   * happens before the caller changes any balance, so an id or size the journal cannot take fails
+   * first.
+   */
+  public static final class Transfers {
+
+    private final byte type;
+
+    private final int count;
+
+    private final byte[] payload;
+
+    private Transfers(byte type, int count, byte[] payload) {
+      this.type = type;
+      this.count = count;
+      this.payload = payload;
+    }
+
+    public int getCount() {
+      return count;
+    }
+  }
+
+  //Last assigned lsn and the file offset at which the next record will be written.
+  @Value
+  public static class Position {
+    long lsn;
+    long offset;
+  }
+
+  static final String FILE_NAME = "transactions.journal";
+
+  private static final byte CREATE = 1;
+
+  private static final byte TRANSFER = 2;
+
+  private static final byte CLEAR = 3;
+
+  private static final byte TRANSFERS = 4;
+
+  private static final byte FAN_OUT = 5;
+
+  //length prefix + lsn + type + crc
+  private static final int OVERHEAD = 4 + 8 + 1 + 4;
+
+  //Account ids are written with an unsigned short length prefix.
+  static final int MAX_ID_LENGTH = 0xFFFF;
+
+  private final Durability durability;
+
+  private final Path file;
+
+  private final long asyncFlushIntervalMillis;
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final Condition dataAvailable = lock.newCondition();
+
+  private final Condition flushed = lock.newCondition();
+
+  private ByteBuffer active;
+
+  private ByteBuffer standby;
+
+  private FileChannel channel;
+
+  private Thread flusher;
+
+  private volatile boolean running;
+
+  private long nextLsn = 1;
+
+  //Highest lsn known to be on disk.
+  private long durableLsn;
+
+  //File offset just past the last appended record, including records still in the buffers.
+  private long appendOffset;
+
+  //A record too large for the buffers, waiting for the flusher to write it after the first
+  //directAt bytes of the active buffer. Only one waits at a time.
+  private ByteBuffer directRecord;
+
+  private int directAt;
+
+  //The flusher has exited, so nothing appended from now on reaches the disk.
+  private boolean stopped;
+
+  private IOException failure;
+
+  private final MinorUnits minorUnits;
+
+  public TransactionJournal(JournalProperties properties) {
+    this(properties, new MinorUnits(MinorUnits.DEFAULT_CURRENCY));
+  }
+
+  @Autowired
+  public TransactionJournal(JournalProperties properties, MinorUnits minorUnits) {
+    this.minorUnits = minorUnits;
+    this.durability = properties.getDurability();
+    this.file = Paths.get(properties.getDirectory()).resolve(FILE_NAME);
+    this.asyncFlushIntervalMillis = properties.getAsyncFlushIntervalMillis();
+    if (isEnabled()) {
+      this.active = ByteBuffer.allocateDirect(properties.getBufferSize());
+      this.standby = ByteBuffer.allocateDirect(properties.getBufferSize());
+    }
+  }
+
+  public static TransactionJournal disabled() {
+    return new TransactionJournal(new JournalProperties());
+  }
+
+  public boolean isEnabled() {
+    return durability != Durability.NONE;
+  }
+
+  public Path getFile() {
+    return file;
+  }
+
+  /**
+   * Replays every intact record into the handler, cuts off a torn or corrupt tail and opens the
+   * journal for appending. Must be called once before the first append.
+   */
+  public void recover(ReplayHandler handler) {
+    recover(new Position(0, 0), handler);
+  }
+
+  /**
+   * Same as {@link #recover(ReplayHandler)}, but starts reading at a position taken earlier by
+   * {@link #position()}, e.g. the one stored with a snapshot.
+   */
+  public void recover(Position from, ReplayHandler handler) {
+    if (!isEnabled()) {
+      return;
+    }
+    nextLsn = from.getLsn() + 1;
+    durableLsn = from.getLsn();
+    try {
+      Files.createDirectories(file.toAbsolutePath().getParent());
+      channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+      long end = replay(Math.min(from.getOffset(), channel.size()), handler);
+      if (end < channel.size()) {
+        log.warn("Truncating journal {} from {} to {} bytes after a torn or corrupt record",
+          file, channel.size(), end);
+        channel.truncate(end);
+      }
+      channel.position(end);
+      appendOffset = end;
+    } catch (IOException ioe) {
+      throw new UncheckedIOException("Could not open journal " + file, ioe);
+    }
+
+    running = true;
+    if (durability != Durability.FSYNC) {
+      flusher = new Thread(this::flushLoop, "journal-flusher");
+      flusher.setDaemon(true);
+      flusher.start();
+    }
+    log.info("Journal {} open in {} mode, next lsn {}", file, durability, nextLsn);
+  }
+
+  public Position position() {
+    lock.lock();
+    try {
+      return new Position(nextLsn - 1, appendOffset);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public long appendCreate(String accountId, BalanceEngineType balanceEngineType, long balance) {
+    byte[] id = encode(accountId);
+    return append(CREATE, 2 + id.length + 9 + 1, buffer -> {
+      putString(buffer, id);
+      putAmount(buffer, balance);
+      buffer.put((byte) balanceEngineType.ordinal());
+    });
+  }
+
+  public long appendTransfer(String senderId, String receiverId, long amount) {
+    byte[] sender = encode(senderId);
+    byte[] receiver = encode(receiverId);
+    return append(TRANSFER, 2 + sender.length + 2 + receiver.length + 9, buffer -> {
+      putString(buffer, sender);
+      putString(buffer, receiver);
+      putAmount(buffer, amount);
+    });
+  }
+
+  /**
+   * Encodes transfers i = 0..count-1 for {@link #appendTransfers}. The record may be larger than
+   * the journal's buffer. Throws IllegalArgumentException if an id is too long or the record
+   * exceeds the largest the journal can hold.
+   */
+  public Transfers encodeTransfers(String[] senderIds, String[] receiverIds, long[] amounts) {
+    int count = amounts.length;
+    if (!isEnabled()) {
+      return new Transfers(TRANSFERS, count, null);
+    }
+    byte[][] senders = new byte[count][];
+    byte[][] receivers = new byte[count][];
+    long length = 4;
+    for (int i = 0; i < count; i++) {
+      senders[i] = encode(senderIds[i]);
+      receivers[i] = encode(receiverIds[i]);
+      length += 2 + senders[i].length + 2 + receivers[i].length + 9;
+    }
+    ByteBuffer payload = ByteBuffer.allocate(payloadLength(length));
+    payload.putInt(count);
+    for (int i = 0; i < count; i++) {
+      putString(payload, senders[i]);
+      putString(payload, receivers[i]);
+      putAmount(payload, amounts[i]);
+    }
+    return new Transfers(TRANSFERS, count, payload.array());
+  }
+
+  /**
+   * Encodes transfers from senderId to receiver i = 0..count-1 for {@link #appendTransfers}, with
+   * the sender written once. Otherwise as {@link #encodeTransfers}.
+   */
+  public Transfers encodeFanOut(String senderId, String[] receiverIds, long[] amounts) {
+    int count = amounts.length;
+    if (!isEnabled()) {
+      return new Transfers(FAN_OUT, count, null);
+    }
+    byte[] sender = encode(senderId);
+    byte[][] receivers = new byte[count][];
+    long length = 2 + sender.length + 4;
+    for (int i = 0; i < count; i++) {
+      receivers[i] = encode(receiverIds[i]);
+      length += 2 + receivers[i].length + 9;
+    }
+    ByteBuffer payload = ByteBuffer.allocate(payloadLength(length));
+    putString(payload, sender);
+    payload.putInt(count);
+    for (int i = 0; i < count; i++) {
+      putString(payload, receivers[i]);
+      putAmount(payload, amounts[i]);
+    }
+    return new Transfers(FAN_OUT, count, payload.array());
+  }
+
+  //Record lengths are written as an int.
+  private static int payloadLength(long length) {
+    if (OVERHEAD + length > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Journal record of " + (OVERHEAD + length) + " bytes is too large");
+    }
+    return (int) length;
+  }
+
+  //Returns the lsn of the first transfer; transfer i has the first lsn + i.
+  public long appendTransfers(Transfers transfers) {
+    if (transfers.payload == null) {
+      return 0;
+    }
+    return append(transfers.type, transfers.payload.length, transfers.count, buffer -> buffer.put(transfers.payload));
+  }
+
+  public long appendClear() {
+    return append(CLEAR, 0, buffer -> { });
+  }
+
+  /**
+   * Blocks until the record with the given lsn is on disk. Returns at once in ASYNC mode and when
+   * the journal is disabled.
+   */
+  public void awaitDurable(long lsn) {
+    if (durability != Durability.GROUP_COMMIT || lsn == 0) {
+      return;
+    }
+    lock.lock();
+    try {
+      while (durableLsn < lsn) {
+        checkFailure();
+        if (stopped) {
+          throw new IllegalStateException("Journal closed before record " + lsn + " was written");
+        }
+        flushed.awaitUninterruptibly();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private interface Payload {
+    void write(ByteBuffer buffer);
+  }
+
+  private long append(byte type, int payloadLength, Payload payload) {
+    return append(type, payloadLength, 1, payload);
+  }
+
+  private long append(byte type, int payloadLength, int lsns, Payload payload) {
+    if (!isEnabled()) {
+      return 0;
+    }
+    int recordLength = OVERHEAD + payloadLength;
+    if (recordLength > active.capacity()) {
+      return appendDirect(type, recordLength, lsns, payload);
+    }
+
+    lock.lock();
+    try {
+      checkOpen();
+      while (active.remaining() < recordLength) {
+        //Full buffer: let the flusher swap it out (FSYNC mode flushes inline).
+        if (durability == Durability.FSYNC) {
+          flushActive();
+        } else {
+          dataAvailable.signal();
+          flushed.awaitUninterruptibly();
+          checkOpen();
+        }
+      }
+
+      long lsn = nextLsn;
+      nextLsn += Math.max(1, lsns);
+      int start = active.position();
+      active.putInt(recordLength - 4 - 4);
+      active.putLong(lsn);
+      active.put(type);
+      payload.write(active);
+      active.putInt(crc(active, start + 4, active.position()));
+      appendOffset += recordLength;
+
+      if (durability == Durability.FSYNC) {
+        flushActive();
+      } else {
+        dataAvailable.signal();
+      }
+      return lsn;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  //Appends a record larger than the buffers. The payload is encoded before the lock is taken.
+  //FSYNC mode writes and forces it at once, as it does every record; otherwise the flusher writes
+  //it in order with the buffered records, so the caller, who may hold account locks, neither
+  //writes it nor waits for the disk.
+  private long appendDirect(byte type, int recordLength, int lsns, Payload payload) {
+    ByteBuffer record = ByteBuffer.allocate(recordLength);
+    record.position(4 + 8 + 1);
+    payload.write(record);
+    lock.lock();
+    try {
+      checkOpen();
+      while (directRecord != null) {
+        flushed.awaitUninterruptibly();
+        checkOpen();
+      }
+
+      long lsn = nextLsn;
+      long lastLsn = lsn + Math.max(1, lsns) - 1;
+      record.putInt(0, recordLength - 4 - 4);
+      record.putLong(4, lsn);
+      record.put(12, type);
+      record.putInt(crc(record, 4, record.position()));
+      record.flip();
+      if (durability == Durability.FSYNC) {
+        //Every earlier record was forced when it was appended.
+        try {
+          write(record);
+          channel.force(false);
+        } catch (IOException ioe) {
+          failure = ioe;
+          throw new UncheckedIOException("Journal write failed", ioe);
+        }
+        durableLsn = lastLsn;
+      } else {
+        directRecord = record;
+        directAt = active.position();
+        dataAvailable.signal();
+      }
+      nextLsn = lastLsn + 1;
+      appendOffset += recordLength;
+      return lsn;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  //FSYNC mode only: write and force while still holding the lock.
+  private void flushActive() {
+    try {
+      active.flip();
+      write(active);
+      channel.force(false);
+      active.clear();
+      durableLsn = nextLsn - 1;
+    } catch (IOException ioe) {
+      failure = ioe;
+      throw new UncheckedIOException("Journal write failed", ioe);
+    }
+  }
+
+  private void flushLoop() {
+    try {
+      flushBatches();
+    } finally {
+      lock.lock();
+      try {
+        stopped = true;
+        flushed.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  private void flushBatches() {
+    while (true) {
+      ByteBuffer batch;
+      ByteBuffer record;
+      int recordAt;
+      long batchLsn;
+      lock.lock();
+      try {
+        while (active.position() == 0 && directRecord == null) {
+          if (!running) {
+            return;
+          }
+          try {
+            if (durability == Durability.ASYNC) {
+              dataAvailable.await(asyncFlushIntervalMillis, TimeUnit.MILLISECONDS);
+            } else {
+              dataAvailable.await();
+            }
+          } catch (InterruptedException ie) {
+            running = false;
+          }
+        }
+        batch = active;
+        active = standby;
+        standby = batch;
+        record = directRecord;
+        recordAt = directAt;
+        directRecord = null;
+        batchLsn = nextLsn - 1;
+        //The swapped-in buffer is empty, so appenders waiting for space, or to hand over the
+        //next large record, can continue.
+        flushed.signalAll();
+      } finally {
+        lock.unlock();
+      }
+
+      IOException error = null;
+      try {
+        batch.flip();
+        if (record != null) {
+          int end = batch.limit();
+          batch.limit(recordAt);
+          write(batch);
+          write(record);
+          batch.limit(end);
+        }
+        write(batch);
+        channel.force(false);
+      } catch (IOException ioe) {
+        log.error("Journal flush failed; transfers are refused until a restart recovers from the journal", ioe);
+        error = ioe;
+      } finally {
+        batch.clear();
+      }
+
+      lock.lock();
+      try {
+        if (error != null) {
+          failure = error;
+        } else {
+          durableLsn = batchLsn;
+        }
+        flushed.signalAll();
+      } finally {
+        lock.unlock();
+      }
+      if (error != null) {
+        return;
+      }
+
+      if (durability == Durability.ASYNC && running) {
+        try {
+          Thread.sleep(asyncFlushIntervalMillis);
+        } catch (InterruptedException ie) {
+          running = false;
+        }
+      }
+    }
+  }
+
+  private long replay(long position, ReplayHandler handler) throws IOException {
+    ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+    long size = channel.size();
+    while (position + 4 <= size) {
+      lengthBuffer.clear();
+      channel.read(lengthBuffer, position);
+      lengthBuffer.flip();
+      int length = lengthBuffer.getInt();
+      if (length < 9 || position + 4 + length + 4 > size) {
+        break;
+      }
+      ByteBuffer record = ByteBuffer.allocate(length + 4);
+      while (record.hasRemaining()) {
+        channel.read(record, position + 4 + record.position());
+      }
+      record.flip();
+      if (crc(record, 0, length) != record.getInt(length)) {
+        break;
+      }
+
+      long lsn = record.getLong();
+      long lastLsn = lsn;
+      byte type = record.get();
+      if (type == CREATE) {
+        String accountId = getString(record);
+        long balance = getAmount(record);
+        //Creation records written before the engine byte end after the balance.
+        BalanceEngineType engine = record.position() < length ? BalanceEngineType.values()[record.get()] : null;
+        handler.onCreate(lsn, accountId, engine, balance);
+      } else if (type == TRANSFER) {
+        handler.onTransfer(lsn, getString(record), getString(record), getAmount(record));
+      } else if (type == TRANSFERS) {
+        int count = record.getInt();
+        for (int i = 0; i < count; i++) {
+          handler.onTransfer(lsn + i, getString(record), getString(record), getAmount(record));
+        }
+        lastLsn = lsn + Math.max(0, count - 1);
+      } else if (type == FAN_OUT) {
+        String senderId = getString(record);
+        int count = record.getInt();
+        for (int i = 0; i < count; i++) {
+          handler.onTransfer(lsn + i, senderId, getString(record), getAmount(record));
+        }
+        lastLsn = lsn + Math.max(0, count - 1);
+      } else if (type == CLEAR) {
+        handler.onClear(lsn);
+      } else {
+        break;
+      }
+      nextLsn = lastLsn + 1;
+      durableLsn = lastLsn;
+      position += 4 + length + 4;
+    }
+    return position;
+  }
+
+  @PreDestroy
+  public void close() throws IOException, InterruptedException {
+    if (!running) {
+      return;
+    }
+    lock.lock();
+    try {
+      running = false;
+      dataAvailable.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    if (flusher != null) {
+      //The flusher writes whatever is still buffered before it exits.
+      flusher.join(TimeUnit.SECONDS.toMillis(5));
+    }
+    channel.close();
+  }
+
+  private void checkFailure() {
+    if (failure != null) {
+      throw new UncheckedIOException("Journal is unavailable after a write failure", failure);
+    }
+  }
+
+  //Appends are refused once the journal has failed or been closed, as no flush would follow.
+  private void checkOpen() {
+    checkFailure();
+    if (!running || stopped) {
+      throw new IllegalStateException("Journal is closed");
+    }
+  }
+
+  private void write(ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  private static int crc(ByteBuffer buffer, int from, int to) {
+    CRC32 crc = new CRC32();
+    ByteBuffer slice = buffer.duplicate();
+    slice.limit(to).position(from);
+    crc.update(slice);
+    return (int) crc.getValue();
+  }
+
+  private static byte[] encode(String accountId) {
+    byte[] value = accountId.getBytes(StandardCharsets.UTF_8);
+    if (value.length > MAX_ID_LENGTH) {
+      throw new IllegalArgumentException(
+        "Account ids longer than " + MAX_ID_LENGTH + " bytes cannot be journaled.");
+    }
+    return value;
+  }
+
+  private static void putString(ByteBuffer buffer, byte[] value) {
+    buffer.putShort((short) value.length);
+    buffer.put(value);
+  }
+
+  private static String getString(ByteBuffer buffer) {
+    byte[] value = new byte[buffer.getShort() & 0xFFFF];
+    buffer.get(value);
+    return new String(value, StandardCharsets.UTF_8);
+  }
+
+  //Amounts are stored as an unscaled long and a scale, so records written with another scale (or
+  //as BigDecimals by earlier versions) still read back exactly.
+  private void putAmount(ByteBuffer buffer, long amount) {
+    buffer.putLong(amount);
+    buffer.put((byte) minorUnits.getScale());
+  }
+
+  private long getAmount(ByteBuffer buffer) {
+    long unscaled = buffer.getLong();
+    byte scale = buffer.get();
+    return scale == minorUnits.getScale() ? unscaled : minorUnits.toMinor(BigDecimal.valueOf(unscaled, scale));
+  }
+}
@@ -0,0 +1,262 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountImportResult;
+import com.db.awmd.challenge.domain.AccountSnapshot;
+import com.db.awmd.challenge.domain.AccountsFormat;
+import com.db.awmd.challenge.domain.MinorUnits;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Bulk account import and export in {@link AccountsFormat} lines. Both directions stream: an
+ * import holds at most one batch of accounts besides the ones it created, and an export writes
+ * each account as it is visited, so neither builds the whole book in memory.
+ */
+@Slf4j
+@Service
+public class AccountsBulkService {
+
+  static final int MAX_ERRORS = 100;
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private static final String CSV_HEADER = "accountId,balance";
+
+  private final AccountsService accountsService;
+
+  private final ObjectMapper objectMapper;
+
+  private final ObjectReader accountReader;
+
+  private final MinorUnits minorUnits;
+
+  private final int batchSize;
+
+  @Autowired
+  public AccountsBulkService(AccountsService accountsService, ObjectMapper objectMapper, MinorUnits minorUnits,
+    @Value("${accounts.import.batch-size:10000}") int batchSize) {
+    this.accountsService = accountsService;
+    this.objectMapper = objectMapper;
+    this.accountReader = objectMapper.readerFor(Account.class);
+    this.minorUnits = minorUnits;
+    this.batchSize = Math.max(1, batchSize);
+  }
+
+  /**
+   * Creates the accounts read from the body, batchSize at a time. Ids that already exist and
+   * lines that do not hold a valid account are skipped and counted; the rest of the body is still
+   * imported.
+   */
+  public AccountImportResult importAccounts(InputStream body, AccountsFormat format) throws IOException {
+    long started = System.nanoTime();
+    Import result = new Import();
+    List<Account> batch = new ArrayList<>(batchSize);
+    BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8), BUFFER_SIZE);
+    String line;
+    long lineNumber = 0;
+    while ((line = reader.readLine()) != null) {
+      lineNumber++;
+      if (line.trim().isEmpty() || (lineNumber == 1 && format == AccountsFormat.CSV
+        && line.trim().equalsIgnoreCase(CSV_HEADER))) {
+        continue;
+      }
+      try {
+        batch.add(parse(line, format));
+      } catch (IllegalArgumentException iae) {
+        result.invalid(lineNumber, iae.getMessage());
+        continue;
+      }
+      if (batch.size() == batchSize) {
+        result.create(batch);
+        batch.clear();
+      }
+    }
+    result.create(batch);
+
+    log.info("Imported {} accounts ({} duplicates, {} invalid) in {} ms", result.created, result.duplicates,
+      result.invalid, (System.nanoTime() - started) / 1_000_000);
+    return AccountImportResult.builder()
+      .created(result.created)
+      .duplicates(result.duplicates)
+      .invalid(result.invalid)
+      .errors(result.errors)
+      .build();
+  }
+
+  /**
+   * Writes every account's published balance to out and returns the number of accounts written.
+   * Writes block while the client is not reading, so a slow client slows the walk down instead of
+   * output piling up in memory.
+   */
+  public long exportAccounts(OutputStream out, AccountsFormat format) throws IOException {
+    Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+    JsonGenerator generator = objectMapper.getFactory().createGenerator(writer);
+    //Lines end with '\n' instead of the default space between root values.
+    generator.setRootValueSeparator(null);
+    long[] count = new long[1];
+    try {
+      if (format == AccountsFormat.CSV) {
+        writer.write(CSV_HEADER);
+        writer.write('\n');
+      }
+      accountsService.forEachAccount(account -> {
+        AccountSnapshot snapshot = account.getSnapshot();
+        try {
+          if (format == AccountsFormat.NDJSON) {
+            generator.writeStartObject();
+            generator.writeStringField("accountId", snapshot.getAccountId());
+            generator.writeNumberField("balance", snapshot.getBalance());
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+          } else {
+            writer.write(csvField(snapshot.getAccountId()));
+            writer.write(',');
+            writer.write(snapshot.getBalance().toPlainString());
+            writer.write('\n');
+          }
+        } catch (IOException ioe) {
+          throw new UncheckedIOException(ioe);
+        }
+        count[0]++;
+      });
+      generator.flush();
+      writer.flush();
+    } catch (UncheckedIOException uioe) {
+      throw uioe.getCause();
+    }
+    return count[0];
+  }
+
+  private Account parse(String line, AccountsFormat format) {
+    Account account;
+    if (format == AccountsFormat.NDJSON) {
+      try {
+        account = accountReader.readValue(line);
+      } catch (JsonProcessingException jpe) {
+        throw new IllegalArgumentException(jpe.getOriginalMessage());
+      } catch (IOException ioe) {
+        throw new UncheckedIOException(ioe);
+      }
+    } else {
+      List<String> fields = csvFields(line);
+      if (fields.size() != 2) {
+        throw new IllegalArgumentException("Expected accountId,balance but found " + fields.size() + " fields.");
+      }
+      try {
+        account = new Account(fields.get(0), new BigDecimal(fields.get(1).trim()));
+      } catch (NumberFormatException nfe) {
+        throw new IllegalArgumentException("Balance " + fields.get(1) + " is not a number.");
+      }
+    }
+
+    validate(account);
+    return account;
+  }
+
+  //The constraints declared on Account, checked directly: going through the bean validator cost
+  //more than the rest of an import put together. The balance is converted here too, so one with
+  //more decimal places than the currency has is counted as invalid rather than failing its batch.
+  private void validate(Account account) {
+    if (account.getAccountId() == null || account.getAccountId().isEmpty()) {
+      throw new IllegalArgumentException("accountId may not be empty");
+    }
+    if (account.getBalance() == null) {
+      throw new IllegalArgumentException("balance may not be null");
+    }
+    if (minorUnits.toMinor(account.getBalance()) < 0) {
+      throw new IllegalArgumentException("balance Initial balance must be positive.");
+    }
+  }
+
+  //Splits one CSV line; a field in double quotes may contain commas and "" for a quote.
+  static List<String> csvFields(String line) {
+    List<String> fields = new ArrayList<>(2);
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (quoted) {
+        if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+          field.append('"');
+          i++;
+        } else if (c == '"') {
+          quoted = false;
+        } else {
+          field.append(c);
+        }
+      } else if (c == '"') {
+        quoted = true;
+      } else if (c == ',') {
+        fields.add(field.toString());
+        field.setLength(0);
+      } else {
+        field.append(c);
+      }
+    }
+    if (quoted) {
+      throw new IllegalArgumentException("Unterminated quoted field.");
+    }
+    fields.add(field.toString());
+    return fields;
+  }
+
+  static String csvField(String value) {
+    if (value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+      return value;
+    }
+    return '"' + value.replace("\"", "\"\"") + '"';
+  }
+
+  private final class Import {
+
+    private long created;
+
+    private long duplicates;
+
+    private long invalid;
+
+    private final List<String> errors = new ArrayList<>();
+
+    private void create(List<Account> batch) {
+      if (batch.isEmpty()) {
+        return;
+      }
+      List<Account> skipped = accountsService.createAccountsIfAbsent(batch);
+      created += batch.size() - skipped.size();
+      duplicates += skipped.size();
+      for (Account account : skipped) {
+        error("Account id " + account.getAccountId() + " already exists!");
+      }
+    }
+
+    private void invalid(long lineNumber, String message) {
+      invalid++;
+      error("Line " + lineNumber + ": " + message);
+    }
+
+    private void error(String message) {
+      if (errors.size() < MAX_ERRORS) {
+        errors.add(message);
+      }
+    }
+  }
+}
@@ -2,6 +2,8 @@ package com.db.awmd.challenge.service;
 
 import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.repository.AccountsRepository;
+import java.util.List;
+import java.util.function.Consumer;
 import lombok.Getter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -21,7 +23,15 @@ public class AccountsService {
     this.accountsRepository.createAccount(account);
   }
 
+  public List<Account> createAccountsIfAbsent(List<Account> accounts) {
+    return this.accountsRepository.createAccountsIfAbsent(accounts);
+  }
+
   public Account getAccount(String accountId) {
     return this.accountsRepository.getAccount(accountId);
   }
+
+  public void forEachAccount(Consumer<Account> action) {
+    this.accountsRepository.forEachAccount(action);
+  }
 }
@@ -0,0 +1,232 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.config.NotificationDispatchProperties;
+import com.db.awmd.challenge.config.NotificationDispatchProperties.OverflowPolicy;
+import com.db.awmd.challenge.domain.Account;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+/**
+ * Takes notifications off the transfer path. Notifications are queued in bounded per-dispatcher
+ * ring buffers (partitioned by account, so per-account order is kept) and delivered in batches,
+ * with all notifications for the same account in a batch merged into one message.
+ */
+@Slf4j
+@Service
+@Primary
+@ManagedResource(objectName = "com.db.awmd.challenge:type=NotificationDispatch")
+@EnableConfigurationProperties(NotificationDispatchProperties.class)
+public class AsyncNotificationService implements NotificationService {
+
+  private final NotificationService delegate;
+
+  private final NotificationDispatchProperties properties;
+
+  private final List<BlockingQueue<PendingNotification>> queues;
+
+  private final Thread[] dispatchers;
+
+  private volatile boolean running = true;
+
+  private final LongAdder published = new LongAdder();
+
+  private final LongAdder dropped = new LongAdder();
+
+  private final LongAdder delivered = new LongAdder();
+
+  private final LongAdder messagesSent = new LongAdder();
+
+  private final AtomicLong lastDispatchLagNanos = new AtomicLong();
+
+  private final AtomicLong maxDispatchLagNanos = new AtomicLong();
+
+  @Autowired
+  public AsyncNotificationService(@Qualifier("emailNotificationService") NotificationService delegate,
+    NotificationDispatchProperties properties) {
+    this.delegate = delegate;
+    this.properties = properties;
+
+    int threads = Math.max(1, properties.getDispatcherThreads());
+    int capacity = Math.max(1, properties.getQueueCapacity() / threads);
+    this.queues = new ArrayList<>(threads);
+    this.dispatchers = new Thread[threads];
+    for (int i = 0; i < threads; i++) {
+      BlockingQueue<PendingNotification> queue = new ArrayBlockingQueue<>(capacity);
+      queues.add(queue);
+      dispatchers[i] = new Thread(() -> dispatchLoop(queue), "notification-dispatcher-" + i);
+      dispatchers[i].setDaemon(true);
+      dispatchers[i].start();
+    }
+  }
+
+  @Override
+  public void notifyAboutTransfer(Account account, String transferDescription) {
+    PendingNotification notification =
+      new PendingNotification(account, transferDescription, System.nanoTime());
+    BlockingQueue<PendingNotification> queue =
+      queues.get((account.getAccountId().hashCode() & Integer.MAX_VALUE) % queues.size());
+    published.increment();
+
+    if (queue.offer(notification)) {
+      return;
+    }
+    OverflowPolicy policy = properties.getOverflowPolicy();
+    if (policy == OverflowPolicy.BLOCK) {
+      try {
+        if (queue.offer(notification, properties.getBlockTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+          return;
+        }
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+      }
+    } else if (policy == OverflowPolicy.DROP_OLDEST) {
+      if (queue.poll() != null) {
+        dropped.increment();
+      }
+      if (queue.offer(notification)) {
+        return;
+      }
+    }
+    dropped.increment();
+  }
+
+  private void dispatchLoop(BlockingQueue<PendingNotification> queue) {
+    List<PendingNotification> batch = new ArrayList<>(properties.getBatchSize());
+    while (running || !queue.isEmpty()) {
+      try {
+        PendingNotification first = queue.poll(100, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        queue.drainTo(batch, properties.getBatchSize() - 1);
+        dispatch(batch);
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (RuntimeException ex) {
+        log.error("Failed to dispatch {} notifications", batch.size(), ex);
+      } finally {
+        batch.clear();
+      }
+    }
+  }
+
+  private void dispatch(List<PendingNotification> batch) {
+    long lag = System.nanoTime() - batch.get(0).enqueuedAt;
+    lastDispatchLagNanos.set(lag);
+    maxDispatchLagNanos.accumulateAndGet(lag, Math::max);
+
+    //Merge everything queued for the same account into one message, keeping arrival order.
+    Map<String, MergedNotification> merged = new LinkedHashMap<>();
+    for (PendingNotification notification : batch) {
+      MergedNotification message = merged.get(notification.account.getAccountId());
+      if (message == null) {
+        merged.put(notification.account.getAccountId(), new MergedNotification(notification));
+      } else {
+        message.add(notification);
+      }
+    }
+
+    for (MergedNotification message : merged.values()) {
+      delegate.notifyAboutTransfer(message.account, message.description.toString());
+    }
+    delivered.add(batch.size());
+    messagesSent.add(merged.size());
+  }
+
+  @PreDestroy
+  public void shutdown() throws InterruptedException {
+    //Dispatchers keep going until their queue is empty, so nothing accepted is lost on shutdown.
+    running = false;
+    for (Thread dispatcher : dispatchers) {
+      dispatcher.join(TimeUnit.SECONDS.toMillis(5));
+    }
+  }
+
+  @ManagedAttribute(description = "Notifications waiting to be dispatched")
+  public int getQueueDepth() {
+    int depth = 0;
+    for (BlockingQueue<PendingNotification> queue : queues) {
+      depth += queue.size();
+    }
+    return depth;
+  }
+
+  @ManagedAttribute(description = "Notifications accepted from the transfer path")
+  public long getPublished() {
+    return published.sum();
+  }
+
+  @ManagedAttribute(description = "Notifications dropped because a queue was full")
+  public long getDropped() {
+    return dropped.sum();
+  }
+
+  @ManagedAttribute(description = "Notifications handed to the delivery backend")
+  public long getDelivered() {
+    return delivered.sum();
+  }
+
+  @ManagedAttribute(description = "Messages sent after merging notifications per account")
+  public long getMessagesSent() {
+    return messagesSent.sum();
+  }
+
+  @ManagedAttribute(description = "Age of the oldest notification in the last dispatched batch")
+  public long getLastDispatchLagMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(lastDispatchLagNanos.get());
+  }
+
+  @ManagedAttribute(description = "Largest dispatch lag seen since startup")
+  public long getMaxDispatchLagMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(maxDispatchLagNanos.get());
+  }
+
+  private static final class PendingNotification {
+
+    private final Account account;
+
+    private final String description;
+
+    private final long enqueuedAt;
+
+    private PendingNotification(Account account, String description, long enqueuedAt) {
+      this.account = account;
+      this.description = description;
+      this.enqueuedAt = enqueuedAt;
+    }
+  }
+
+  private static final class MergedNotification {
+
+    private final Account account;
+
+    private final StringBuilder description;
+
+    private MergedNotification(PendingNotification first) {
+      this.account = first.account;
+      this.description = new StringBuilder(first.description);
+    }
+
+    private void add(PendingNotification next) {
+      description.append(' ').append(next.description);
+    }
+  }
+}
@@ -0,0 +1,102 @@
+package com.db.awmd.challenge.service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limit on transfers in flight that adapts to latency the way TCP Vegas adapts its window. The
+ * lowest latency seen stands for an unloaded system, and limit * (1 - minLatency / latency)
+ * estimates how many of the transfers in flight are queueing rather than being served. The limit
+ * grows while that queue is short and shrinks once it is long, so excess requests are turned away
+ * at the door instead of piling up on locks and threads. Samples taken while less than half the
+ * limit is in use say nothing about the limit and are ignored.
+ */
+class ConcurrencyLimiter {
+
+  //Every so many samples the lowest latency is forgotten, so a slower steady state is learned.
+  private static final long PROBE_INTERVAL = 10_000;
+
+  private final int minLimit;
+
+  private final int maxLimit;
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  //Double bits, so the limit can move by less than one per sample.
+  private final AtomicLong limit;
+
+  private final AtomicLong minLatency = new AtomicLong(Long.MAX_VALUE);
+
+  private final AtomicLong samples = new AtomicLong();
+
+  ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+    this.minLimit = Math.max(1, minLimit);
+    this.maxLimit = Math.max(this.minLimit, maxLimit);
+    this.limit = new AtomicLong(Double.doubleToLongBits(clamp(initialLimit)));
+  }
+
+  boolean tryAcquire() {
+    int current = getLimit();
+    while (true) {
+      int count = inFlight.get();
+      if (count >= current) {
+        return false;
+      }
+      if (inFlight.compareAndSet(count, count + 1)) {
+        return true;
+      }
+    }
+  }
+
+  void release(long latencyNanos) {
+    int count = inFlight.getAndDecrement();
+    sample(Math.max(1, latencyNanos), count);
+  }
+
+  int getLimit() {
+    return (int) Double.longBitsToDouble(limit.get());
+  }
+
+  int getInFlight() {
+    return inFlight.get();
+  }
+
+  private void sample(long latency, int count) {
+    long min;
+    if (samples.incrementAndGet() % PROBE_INTERVAL == 0) {
+      minLatency.set(min = latency);
+    } else {
+      while ((min = minLatency.get()) > latency && !minLatency.compareAndSet(min, latency)) {
+        //Raced with another sample; read again.
+      }
+      min = Math.min(min, latency);
+    }
+
+    while (true) {
+      long bits = limit.get();
+      double current = Double.longBitsToDouble(bits);
+      if (count * 2 < current) {
+        return;
+      }
+      double queue = Math.ceil(current * (1 - (double) min / latency));
+      double step = Math.max(1, Math.log10(current));
+      double next;
+      if (queue <= step) {
+        next = current + 6 * step;
+      } else if (queue < 3 * step) {
+        next = current + step;
+      } else if (queue > 6 * step) {
+        next = current - step;
+      } else {
+        return;
+      }
+      if (limit.compareAndSet(bits, Double.doubleToLongBits(clamp(next)))) {
+        return;
+      }
+    }
+  }
+
+  private double clamp(double value) {
+    return Math.max(minLimit, Math.min(maxLimit, value));
+  }
+}
@@ -0,0 +1,195 @@
+package com.db.awmd.challenge.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Approximate top-K of the most frequently touched accounts. Frequencies come from a count-min
+ * sketch; a small direct-mapped candidate table keeps, per slot, the id with the highest
+ * estimate seen there.
+ *
+ * <p>Each thread counts into its own sketch, so recording a hot account never writes a cell
+ * another thread writes. Recording compares candidates by the recording thread's own counts
+ * only, so its cost does not grow with the number of threads; pooled threads see much the same
+ * mix of accounts, so their own counts rank ids as the sums would. Only {@link #estimate} and
+ * {@link #top} sum the sketches. Counts are halved once per period, so the ranking follows the
+ * recent load rather than everything since startup.
+ */
+class HotAccountSketch {
+
+  private static final int DEPTH = 4;
+
+  private static final int[] SEEDS = {0x9E3779B1, 0x85EBCA77, 0xC2B2AE3D, 0x27D4EB2F, 0x165667B1};
+
+  private final int widthMask;
+
+  private final long halvingNanos;
+
+  private final LongSupplier clock;
+
+  private final long started;
+
+  private final ThreadLocal<Counts> local = ThreadLocal.withInitial(this::register);
+
+  private final List<Counts> threads = new CopyOnWriteArrayList<>();
+
+  //Counts of threads that have died, folded in by prune().
+  private final Counts retired;
+
+  private final int candidateMask;
+
+  private final AtomicReferenceArray<String> candidates;
+
+  HotAccountSketch(int width, int candidateSlots, long halvingNanos) {
+    this(width, candidateSlots, halvingNanos, System::nanoTime);
+  }
+
+  HotAccountSketch(int width, int candidateSlots, long halvingNanos, LongSupplier clock) {
+    this.widthMask = width - 1;
+    this.halvingNanos = halvingNanos;
+    this.clock = clock;
+    this.started = clock.getAsLong();
+    this.retired = new Counts(null, DEPTH * width, 0);
+    this.candidateMask = candidateSlots - 1;
+    this.candidates = new AtomicReferenceArray<>(candidateSlots);
+  }
+
+  void record(String accountId) {
+    Counts counts = local.get();
+    long epoch = epoch();
+    if (counts.epoch != epoch) {
+      counts.decayTo(epoch);
+    }
+    int hash = accountId.hashCode();
+    long estimate = Long.MAX_VALUE;
+    for (int row = 0; row < DEPTH; row++) {
+      //Only the owning thread writes its cells, so an ordered store is enough.
+      int cell = row * (widthMask + 1) + index(hash, row, widthMask);
+      long count = counts.cells.get(cell) + 1;
+      counts.cells.lazySet(cell, count);
+      estimate = Math.min(estimate, count);
+    }
+    int slot = index(hash, DEPTH, candidateMask);
+    String current = candidates.get(slot);
+    if (current == null || (!current.equals(accountId) && localEstimate(counts, current) < estimate)) {
+      candidates.compareAndSet(slot, current, accountId);
+    }
+  }
+
+  //The estimate from the calling thread's own sketch, already decayed to the current epoch.
+  private long localEstimate(Counts counts, String accountId) {
+    int hash = accountId.hashCode();
+    long estimate = Long.MAX_VALUE;
+    for (int row = 0; row < DEPTH; row++) {
+      estimate = Math.min(estimate, counts.cells.get(row * (widthMask + 1) + index(hash, row, widthMask)));
+    }
+    return estimate;
+  }
+
+  long estimate(String accountId) {
+    int hash = accountId.hashCode();
+    long epoch = epoch();
+    long estimate = Long.MAX_VALUE;
+    for (int row = 0; row < DEPTH; row++) {
+      int cell = row * (widthMask + 1) + index(hash, row, widthMask);
+      long sum = retired.get(cell, epoch);
+      for (Counts counts : threads) {
+        sum += counts.get(cell, epoch);
+      }
+      estimate = Math.min(estimate, sum);
+    }
+    return estimate;
+  }
+
+  //Highest estimates first; allocates, so meant for the reporting side only.
+  Map<String, Long> top(int k) {
+    prune();
+    List<String> ids = new ArrayList<>();
+    for (int i = 0; i <= candidateMask; i++) {
+      String id = candidates.get(i);
+      if (id != null) {
+        ids.add(id);
+      }
+    }
+    Map<String, Long> top = new LinkedHashMap<>();
+    ids.stream()
+      .sorted(Comparator.comparingLong(this::estimate).reversed())
+      .limit(k)
+      .forEach(id -> top.put(id, estimate(id)));
+    return top;
+  }
+
+  private Counts register() {
+    prune();
+    Counts counts = new Counts(Thread.currentThread(), DEPTH * (widthMask + 1), epoch());
+    threads.add(counts);
+    return counts;
+  }
+
+  //Folds the sketches of dead threads into retired, so pooled threads coming and going do not
+  //keep their sketches alive.
+  private synchronized void prune() {
+    long epoch = epoch();
+    retired.decayTo(epoch);
+    for (Counts counts : threads) {
+      if (!counts.owner.isAlive()) {
+        for (int cell = 0; cell < counts.cells.length(); cell++) {
+          retired.cells.addAndGet(cell, counts.get(cell, epoch));
+        }
+        threads.remove(counts);
+      }
+    }
+  }
+
+  private long epoch() {
+    return (clock.getAsLong() - started) / halvingNanos;
+  }
+
+  private static int index(int hash, int row, int mask) {
+    int mixed = hash * SEEDS[row];
+    return (mixed ^ (mixed >>> 15)) & mask;
+  }
+
+  private static final class Counts {
+
+    final Thread owner;
+
+    final AtomicLongArray cells;
+
+    //Halvings applied to cells so far; written only by the owner, or under prune() for retired.
+    volatile long epoch;
+
+    Counts(Thread owner, int cells, long epoch) {
+      this.owner = owner;
+      this.cells = new AtomicLongArray(cells);
+      this.epoch = epoch;
+    }
+
+    //A cell as of epoch, including the halvings the owner has not applied yet.
+    long get(int cell, long epoch) {
+      return cells.get(cell) >>> halvings(epoch);
+    }
+
+    void decayTo(long epoch) {
+      int shift = halvings(epoch);
+      if (shift == 0) {
+        return;
+      }
+      for (int cell = 0; cell < cells.length(); cell++) {
+        cells.lazySet(cell, cells.get(cell) >>> shift);
+      }
+      this.epoch = epoch;
+    }
+
+    private int halvings(long epoch) {
+      return (int) Math.max(0, Math.min(63, epoch - this.epoch));
+    }
+  }
+}
@@ -0,0 +1,197 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.config.TransferEngineProperties;
+import com.db.awmd.challenge.domain.Transaction;
+import com.db.awmd.challenge.domain.TransactionDetails;
+import com.db.awmd.challenge.exception.IdempotencyKeyReusedException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+/**
+ * Remembers the outcome of transfers sent with an idempotency key, so a retried request gets the
+ * original {@link TransactionDetails} back instead of moving the money again. Keys live in
+ * segments of insertion-ordered maps, each behind its own monitor; because insertion order is
+ * also age order, expired and surplus keys are always at the head of a segment and are dropped
+ * as new keys arrive, so the cache never holds more than maxKeys entries.
+ *
+ * <p>The first request for a key runs the transfer; concurrent requests with the same key wait
+ * for its result. Only successful transfers are remembered: a rejected transfer changed nothing,
+ * so its key is released and a retry runs again.
+ */
+@Service
+@ManagedResource(objectName = "com.db.awmd.challenge:type=IdempotencyCache")
+public class IdempotencyCache {
+
+  private static final int SEGMENTS = 64;
+
+  private final Segment[] segments = new Segment[SEGMENTS];
+
+  private final long ttlNanos;
+
+  private final LongSupplier clock;
+
+  private final LongAdder hits = new LongAdder();
+
+  private final LongAdder misses = new LongAdder();
+
+  private final LongAdder evictions = new LongAdder();
+
+  @Autowired
+  public IdempotencyCache(TransferEngineProperties properties) {
+    this(properties.getIdempotency().getMaxKeys(),
+      TimeUnit.SECONDS.toNanos(properties.getIdempotency().getTtlSeconds()), System::nanoTime);
+  }
+
+  IdempotencyCache(int maxKeys, long ttlNanos, LongSupplier clock) {
+    this.ttlNanos = ttlNanos;
+    this.clock = clock;
+    int capacity = Math.max(1, maxKeys / SEGMENTS);
+    for (int i = 0; i < SEGMENTS; i++) {
+      segments[i] = new Segment(capacity);
+    }
+  }
+
+  /**
+   * Runs the transfer once per key. Throws IdempotencyKeyReusedException when the key was first
+   * used for a different transfer.
+   */
+  public TransactionDetails execute(String key, Transaction transaction, Supplier<TransactionDetails> transfer) {
+    Segment segment = segmentOf(key);
+    long now = clock.getAsLong();
+    Entry entry;
+    boolean first = false;
+    synchronized (segment) {
+      segment.expire(now);
+      entry = segment.entries.get(key);
+      if (entry == null) {
+        segment.makeRoom();
+        entry = new Entry(transaction, now);
+        segment.entries.put(key, entry);
+        first = true;
+      }
+    }
+
+    if (!first) {
+      hits.increment();
+      if (!sameTransfer(entry.transaction, transaction)) {
+        throw new IdempotencyKeyReusedException("Idempotency key " + key + " was used for a different transfer.");
+      }
+      try {
+        return entry.result.join();
+      } catch (CompletionException ce) {
+        throw ce.getCause() instanceof RuntimeException ? (RuntimeException) ce.getCause() : ce;
+      }
+    }
+
+    misses.increment();
+    try {
+      TransactionDetails details = transfer.get();
+      entry.result.complete(details);
+      return details;
+    } catch (RuntimeException ex) {
+      synchronized (segment) {
+        segment.entries.remove(key, entry);
+      }
+      entry.result.completeExceptionally(ex);
+      throw ex;
+    }
+  }
+
+  /** Whether a request with key would be answered from a remembered or in-flight transfer. */
+  public boolean contains(String key) {
+    Segment segment = segmentOf(key);
+    long now = clock.getAsLong();
+    synchronized (segment) {
+      segment.expire(now);
+      return segment.entries.containsKey(key);
+    }
+  }
+
+  private Segment segmentOf(String key) {
+    return segments[(key.hashCode() ^ (key.hashCode() >>> 16)) & (SEGMENTS - 1)];
+  }
+
+  private static boolean sameTransfer(Transaction a, Transaction b) {
+    return a.getSenderId().equals(b.getSenderId()) && a.getReceiverId().equals(b.getReceiverId())
+      && a.getAmount().compareTo(b.getAmount()) == 0;
+  }
+
+  @ManagedAttribute(description = "Keys currently remembered")
+  public int getSize() {
+    int size = 0;
+    for (Segment segment : segments) {
+      synchronized (segment) {
+        size += segment.entries.size();
+      }
+    }
+    return size;
+  }
+
+  @ManagedAttribute(description = "Requests answered from a remembered or in-flight key")
+  public long getHits() {
+    return hits.sum();
+  }
+
+  @ManagedAttribute(description = "Requests that ran their transfer")
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  @ManagedAttribute(description = "Keys dropped before their TTL to stay within maxKeys")
+  public long getEvictions() {
+    return evictions.sum();
+  }
+
+  private final class Segment {
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    private final int capacity;
+
+    private Segment(int capacity) {
+      this.capacity = capacity;
+    }
+
+    //Callers hold the segment's monitor.
+    private void expire(long now) {
+      Iterator<Entry> oldest = entries.values().iterator();
+      while (oldest.hasNext() && now - oldest.next().createdAt >= ttlNanos) {
+        oldest.remove();
+      }
+    }
+
+    private void makeRoom() {
+      Iterator<Entry> oldest = entries.values().iterator();
+      while (entries.size() >= capacity && oldest.hasNext()) {
+        oldest.next();
+        oldest.remove();
+        evictions.increment();
+      }
+    }
+  }
+
+  private static final class Entry {
+
+    private final Transaction transaction;
+
+    private final long createdAt;
+
+    private final CompletableFuture<TransactionDetails> result = new CompletableFuture<>();
+
+    private Entry(Transaction transaction, long createdAt) {
+      this.transaction = transaction;
+      this.createdAt = createdAt;
+    }
+  }
+}
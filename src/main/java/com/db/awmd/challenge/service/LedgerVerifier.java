@@ -0,0 +1,161 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.LedgerStatus;
+import com.db.awmd.challenge.domain.LedgerTotals;
+import com.db.awmd.challenge.domain.MinorUnits;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+/**
+ * Checks in the background that money is conserved, without stopping transfers:
+ *
+ * <ul>
+ *   <li>every ledger.check-interval-millis, that the running total of all balances equals the
+ *   total accounts were created with, which catches any credit without its debit;</li>
+ *   <li>every ledger.reconcile-interval-seconds, that the running total equals the sum of the
+ *   balances read account by account, which catches balances changed behind LedgerTotals.</li>
+ * </ul>
+ *
+ * Both only count when no change was in flight while they read, see {@link LedgerTotals#read()};
+ * otherwise they retry a few times and then report the check as busy.
+ */
+@Slf4j
+@Service
+@ManagedResource(objectName = "com.db.awmd.challenge:type=LedgerVerifier")
+public class LedgerVerifier {
+
+  public enum Result {
+    CONSISTENT, VIOLATED, BUSY
+  }
+
+  private static final int CHECK_ATTEMPTS = 100;
+
+  private static final int RECONCILE_ATTEMPTS = 3;
+
+  private final AccountsService accountsService;
+
+  private final MinorUnits minorUnits;
+
+  private final long checkIntervalMillis;
+
+  private final long reconcileIntervalSeconds;
+
+  private final LongAdder checks = new LongAdder();
+
+  private final LongAdder violations = new LongAdder();
+
+  private final LongAdder busy = new LongAdder();
+
+  private volatile long lastConsistentAt;
+
+  private ScheduledExecutorService scheduler;
+
+  @Autowired
+  public LedgerVerifier(AccountsService accountsService, MinorUnits minorUnits,
+    @Value("${ledger.check-interval-millis:1000}") long checkIntervalMillis,
+    @Value("${ledger.reconcile-interval-seconds:60}") long reconcileIntervalSeconds) {
+    this.accountsService = accountsService;
+    this.minorUnits = minorUnits;
+    this.checkIntervalMillis = checkIntervalMillis;
+    this.reconcileIntervalSeconds = reconcileIntervalSeconds;
+  }
+
+  @PostConstruct
+  public void start() {
+    if (checkIntervalMillis <= 0 && reconcileIntervalSeconds <= 0) {
+      return;
+    }
+    scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "ledger-verifier");
+      thread.setDaemon(true);
+      return thread;
+    });
+    if (checkIntervalMillis > 0) {
+      scheduler.scheduleWithFixedDelay(this::checkConservation, checkIntervalMillis, checkIntervalMillis,
+        TimeUnit.MILLISECONDS);
+    }
+    if (reconcileIntervalSeconds > 0) {
+      scheduler.scheduleWithFixedDelay(this::reconcile, reconcileIntervalSeconds, reconcileIntervalSeconds,
+        TimeUnit.SECONDS);
+    }
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+    }
+  }
+
+  public Result checkConservation() {
+    for (int attempt = 0; attempt < CHECK_ATTEMPTS; attempt++) {
+      LedgerTotals.Reading reading = LedgerTotals.read();
+      if (reading != null) {
+        return record(reading.getBalances(), reading.getCreated(), "created balances");
+      }
+      Thread.yield();
+    }
+    busy.increment();
+    return Result.BUSY;
+  }
+
+  //Walks every account, so it is O(accounts); the running total is read inside the same window.
+  public Result reconcile() {
+    long[] sums = new long[2];
+    for (int attempt = 0; attempt < RECONCILE_ATTEMPTS; attempt++) {
+      boolean consistent = LedgerTotals.quiescent(() -> {
+        sums[1] = 0;
+        accountsService.forEachAccount(account -> sums[1] = MinorUnits.add(sums[1], account.getBalanceMinor()));
+        sums[0] = LedgerTotals.getBalances();
+      });
+      if (consistent) {
+        return record(sums[0], sums[1], "account balances");
+      }
+    }
+    busy.increment();
+    return Result.BUSY;
+  }
+
+  //Answered from the counters alone, whatever the number of accounts.
+  public LedgerStatus getStatus() {
+    return new LedgerStatus(LedgerTotals.getBalances(), LedgerTotals.getCreated(), minorUnits.getScale(),
+      LedgerTotals.getInFlight(), checks.sum(), violations.sum(), busy.sum(), lastConsistentAt);
+  }
+
+  @ManagedAttribute(description = "Checks that compared the totals")
+  public long getChecks() {
+    return checks.sum();
+  }
+
+  @ManagedAttribute(description = "Checks that found money created or lost")
+  public long getViolations() {
+    return violations.sum();
+  }
+
+  @ManagedAttribute(description = "Checks skipped because changes kept overlapping them")
+  public long getBusy() {
+    return busy.sum();
+  }
+
+  private Result record(long total, long expected, String against) {
+    checks.increment();
+    if (total != expected) {
+      violations.increment();
+      log.error("Ledger total {} does not match {} of {} (difference {} minor units)",
+        minorUnits.toBigDecimal(total), against, minorUnits.toBigDecimal(expected), total - expected);
+      return Result.VIOLATED;
+    }
+    lastConsistentAt = System.currentTimeMillis();
+    return Result.CONSISTENT;
+  }
+}
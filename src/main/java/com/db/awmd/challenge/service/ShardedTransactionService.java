@@ -0,0 +1,646 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.config.JournalProperties;
+import com.db.awmd.challenge.config.TransactionIdConfiguration;
+import com.db.awmd.challenge.config.TransferEngineProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BatchMode;
+import com.db.awmd.challenge.domain.BatchTransferResult;
+import com.db.awmd.challenge.domain.FanOutTransfer;
+import com.db.awmd.challenge.domain.FanOutTransferResult;
+import com.db.awmd.challenge.domain.HoldDetails;
+import com.db.awmd.challenge.domain.LedgerTotals;
+import com.db.awmd.challenge.domain.MinorUnits;
+import com.db.awmd.challenge.domain.Transaction;
+import com.db.awmd.challenge.domain.TransactionDetails;
+import com.db.awmd.challenge.domain.TransactionIds;
+import com.db.awmd.challenge.exception.InvalidAccountException;
+import com.db.awmd.challenge.repository.TransactionHistory;
+import com.db.awmd.challenge.repository.TransactionJournal;
+import com.db.awmd.challenge.service.TransferMetrics.Phase;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transfer engine without account locks. Accounts are split into shards by id hash and only the
+ * shard's owner thread changes their balances, so a transfer inside one shard is a plain
+ * debit/credit. A transfer across shards is a two-step exchange: the sender's shard reserves the
+ * amount by debiting it, then the receiver's shard credits it, journals the transfer and hands
+ * the result back to the sender's shard, which publishes the sender; the receiver's shard then
+ * publishes the receiver and completes the caller's future. A failed credit sends the reservation
+ * back instead.
+ *
+ * <p>Snapshots only show committed transfers, sender before receiver: each shard keeps what its
+ * accounts' balances hold that may not be published yet, reservations that may still be sent
+ * back and credits whose sender is not published yet, and leaves it out of their snapshots.
+ */
+@Slf4j
+@Service
+@DependsOn(TransactionIdConfiguration.BEAN_NAME)
+@ConditionalOnProperty(name = "transfer.engine", havingValue = "SHARDED")
+@EnableConfigurationProperties(TransferEngineProperties.class)
+public class ShardedTransactionService implements TransactionService {
+
+    private static final int DRAIN_BATCH = 256;
+
+    private final AccountsService accountsService;
+
+    private final NotificationService notificationService;
+
+    private final TransactionJournal journal;
+
+    private final TransactionHistory history;
+
+    private final TransferMetrics metrics;
+
+    private final JournalProperties journalProperties;
+
+    private final MinorUnits minorUnits;
+
+    private final Shard[] shards;
+
+    @Autowired
+    public ShardedTransactionService(AccountsService accountsService, NotificationService notificationService,
+                                     TransactionJournal journal, TransactionHistory history, TransferMetrics metrics,
+                                     TransferEngineProperties properties, JournalProperties journalProperties,
+                                     MinorUnits minorUnits) {
+        this.accountsService = accountsService;
+        this.notificationService = notificationService;
+        this.journal = journal;
+        this.history = history;
+        this.metrics = metrics;
+        this.journalProperties = journalProperties;
+        this.minorUnits = minorUnits;
+
+        int count = properties.getShards() > 0 ? properties.getShards() : Runtime.getRuntime().availableProcessors();
+        this.shards = new Shard[count];
+        for(int i = 0; i < count; i++) {
+            shards[i] = new Shard(i, Math.max(1, properties.getShardQueueCapacity()));
+        }
+        log.info("Sharded transfer engine with {} shards", count);
+    }
+
+    //Account snapshots read balance and journal lsn under the account lock, which shard owners
+    //never take, so a snapshot could pair a new balance with an old lsn.
+    @PostConstruct
+    public void checkSnapshots() {
+        if(journal.isEnabled() && journalProperties.getSnapshotIntervalSeconds() > 0) {
+            throw new IllegalStateException("Account snapshots are not supported with the sharded transfer engine.");
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        for(Shard shard : shards) {
+            shard.running = false;
+        }
+        for(Shard shard : shards) {
+            shard.owner.join(TimeUnit.SECONDS.toMillis(5));
+            shard.drain();
+        }
+    }
+
+    @Override
+    public TransactionDetails transferAmount(Transaction transaction) {
+        long started = System.nanoTime();
+        try {
+            String transactionId = transfer(started, transaction.getSenderId(), transaction.getReceiverId(),
+                    transaction.getAmountMinor(minorUnits), transaction.getAmount());
+            return TransactionServiceImpl.succeeded(transaction, transactionId);
+        } catch (RuntimeException ex) {
+            metrics.rejected(ex);
+            throw ex;
+        }
+    }
+
+    @Override
+    public String transfer(String senderId, String receiverId, long amount) {
+        long started = System.nanoTime();
+        try {
+            return transfer(started, senderId, receiverId, amount, null);
+        } catch (RuntimeException ex) {
+            metrics.rejected(ex);
+            throw ex;
+        }
+    }
+
+    //Body of both transfer methods; notified is the amount as the caller gave it, if it did.
+    private String transfer(long started, String senderId, String receiverId, long amount, BigDecimal notified) {
+        //Validate accounts
+        Account sender = findAccount(senderId);
+        Account receiver = findAccount(receiverId);
+
+        //Same account transfer not allowed.
+        if(sender.getAccountId().equals(receiver.getAccountId())) {
+            throw new InvalidAccountException("Same Account transfer not supported.");
+        }
+        metrics.touched(sender.getAccountId());
+        metrics.touched(receiver.getAccountId());
+        long phaseStarted = System.nanoTime();
+        metrics.record(Phase.LOOKUP, phaseStarted - started);
+
+        long lsn = await(submit(sender, receiver, amount));
+
+        phaseStarted = System.nanoTime();
+        journal.awaitDurable(lsn);
+
+        //Notify
+        long notifyStarted = System.nanoTime();
+        metrics.record(Phase.DURABLE, notifyStarted - phaseStarted);
+        String transactionId = TransactionIds.next();
+        history.record(transactionId, sender.getAccountId(), receiver.getAccountId(), amount);
+        notifyParties(sender, receiver, notified != null ? notified : minorUnits.toBigDecimal(amount));
+        long finished = System.nanoTime();
+        metrics.record(Phase.NOTIFY, finished - notifyStarted);
+        metrics.record(Phase.TOTAL, finished - started);
+        return transactionId;
+    }
+
+    //As in a BEST_EFFORT batch, transfers are submitted without waiting for each other, except
+    //that a transfer waits for an earlier one crediting its sender.
+    @Override
+    public void transferEach(int count, String[] senderIds, String[] receiverIds, long[] amounts,
+                             String[] transactionIds, RuntimeException[] failures) {
+        long started = System.nanoTime();
+        Account[] senders = new Account[count];
+        Account[] receivers = new Account[count];
+        List<CompletableFuture<Long>> submitted = new ArrayList<>(count);
+        Map<String, CompletableFuture<Long>> lastCredit = new HashMap<>();
+        for(int i = 0; i < count; i++) {
+            transactionIds[i] = null;
+            failures[i] = null;
+            CompletableFuture<Long> result = null;
+            try {
+                senders[i] = findAccount(senderIds[i]);
+                receivers[i] = findAccount(receiverIds[i]);
+                if(senders[i].getAccountId().equals(receivers[i].getAccountId())) {
+                    throw new InvalidAccountException("Same Account transfer not supported.");
+                }
+                metrics.touched(senders[i].getAccountId());
+                metrics.touched(receivers[i].getAccountId());
+                CompletableFuture<Long> credit = lastCredit.get(senders[i].getAccountId());
+                if(credit != null) {
+                    credit.handle((lsn, ex) -> lsn).join();
+                }
+                result = submit(senders[i], receivers[i], amounts[i]);
+                lastCredit.put(receivers[i].getAccountId(), result);
+            } catch (RuntimeException ex) {
+                metrics.rejected(ex);
+                failures[i] = ex;
+            }
+            submitted.add(result);
+        }
+
+        long lastLsn = 0;
+        for(int i = 0; i < count; i++) {
+            if(submitted.get(i) == null) {
+                continue;
+            }
+            try {
+                lastLsn = Math.max(lastLsn, await(submitted.get(i)));
+            } catch (RuntimeException ex) {
+                metrics.rejected(ex);
+                failures[i] = ex;
+            }
+        }
+        long phaseStarted = System.nanoTime();
+        journal.awaitDurable(lastLsn);
+
+        long notifyStarted = System.nanoTime();
+        metrics.record(Phase.DURABLE, notifyStarted - phaseStarted);
+        for(int i = 0; i < count; i++) {
+            if(failures[i] == null) {
+                transactionIds[i] = TransactionIds.next();
+                history.record(transactionIds[i], senders[i].getAccountId(), receivers[i].getAccountId(), amounts[i]);
+                notifyParties(senders[i], receivers[i], minorUnits.toBigDecimal(amounts[i]));
+            }
+        }
+        long finished = System.nanoTime();
+        metrics.record(Phase.NOTIFY, finished - notifyStarted);
+        metrics.record(Phase.TOTAL, finished - started);
+    }
+
+    /**
+     * Only BEST_EFFORT batches are supported: an ALL_OR_NOTHING batch would need every shard it
+     * touches to stop for the whole batch. Items are submitted without waiting for each other,
+     * except that an item waits for an earlier item crediting its sender, so money moved within the
+     * batch is there when it is spent.
+     */
+    @Override
+    public BatchTransferResult transferBatch(List<Transaction> transactions, BatchMode mode) {
+        TransactionDetails[] results = new TransactionDetails[transactions.size()];
+        if(mode == BatchMode.ALL_OR_NOTHING) {
+            for(int i = 0; i < results.length; i++) {
+                results[i] = TransactionServiceImpl.failed(transactions.get(i),
+                        "ALL_OR_NOTHING batches need the LOCKING transfer engine.");
+            }
+            return BatchTransferResult.builder()
+                    .mode(mode)
+                    .committed(false)
+                    .succeeded(0)
+                    .failed(results.length)
+                    .results(Arrays.asList(results))
+                    .build();
+        }
+
+        Account[] senders = new Account[transactions.size()];
+        Account[] receivers = new Account[transactions.size()];
+        List<CompletableFuture<Long>> submitted = new ArrayList<>(transactions.size());
+        Map<String, Account> accounts = new HashMap<>();
+        Map<String, CompletableFuture<Long>> lastCredit = new HashMap<>();
+        for(int i = 0; i < transactions.size(); i++) {
+            Transaction transaction = transactions.get(i);
+            CompletableFuture<Long> result = null;
+            try {
+                long amount = transaction.getAmountMinor(minorUnits);
+                senders[i] = accounts.computeIfAbsent(transaction.getSenderId(), this::findAccount);
+                receivers[i] = accounts.computeIfAbsent(transaction.getReceiverId(), this::findAccount);
+                if(senders[i].getAccountId().equals(receivers[i].getAccountId())) {
+                    throw new InvalidAccountException("Same Account transfer not supported.");
+                }
+                CompletableFuture<Long> credit = lastCredit.get(transaction.getSenderId());
+                if(credit != null) {
+                    //Only the wait matters here; a failed credit is reported against its own item.
+                    credit.handle((lsn, ex) -> lsn).join();
+                }
+                result = submit(senders[i], receivers[i], amount);
+                lastCredit.put(transaction.getReceiverId(), result);
+            } catch (InvalidAccountException | IllegalArgumentException ex) {
+                results[i] = TransactionServiceImpl.failed(transaction, ex.getMessage());
+            }
+            submitted.add(result);
+        }
+
+        long lastLsn = 0;
+        int succeeded = 0;
+        for(int i = 0; i < transactions.size(); i++) {
+            if(submitted.get(i) == null) {
+                continue;
+            }
+            try {
+                lastLsn = Math.max(lastLsn, await(submitted.get(i)));
+                results[i] = TransactionServiceImpl.succeeded(transactions.get(i));
+                succeeded++;
+            } catch (RuntimeException ex) {
+                results[i] = TransactionServiceImpl.failed(transactions.get(i), ex.getMessage());
+            }
+        }
+        journal.awaitDurable(lastLsn);
+
+        for(int i = 0; i < transactions.size(); i++) {
+            if(results[i].getTransactionId() != null) {
+                history.record(results[i].getTransactionId(), senders[i].getAccountId(), receivers[i].getAccountId(),
+                        transactions.get(i).getAmountMinor(minorUnits));
+                notifyParties(senders[i], receivers[i], transactions.get(i).getAmount());
+            }
+        }
+
+        return BatchTransferResult.builder()
+                .mode(mode)
+                .committed(true)
+                .succeeded(succeeded)
+                .failed(transactions.size() - succeeded)
+                .results(Arrays.asList(results))
+                .build();
+    }
+
+    //Hands the transfer to the sender's shard; the future completes with the journal lsn.
+    private CompletableFuture<Long> submit(Account sender, Account receiver, long amount) {
+        Transfer transfer = new Transfer(sender, receiver, amount, shardOf(sender), shardOf(receiver));
+        transfer.home.acquire();
+        transfer.submitted = System.nanoTime();
+        transfer.home.execute(transfer, transfer::reserve);
+        return transfer.result;
+    }
+
+    private static long await(CompletableFuture<Long> result) {
+        try {
+            return result.join();
+        } catch (CompletionException ce) {
+            if(ce.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ce.getCause();
+            }
+            throw ce;
+        }
+    }
+
+    private Shard shardOf(Account account) {
+        int hash = account.getAccountId().hashCode();
+        return shards[((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % shards.length];
+    }
+
+    //Not supported: an atomic fan-out would need every shard it touches to stop until it is done,
+    //the same reason ALL_OR_NOTHING batches are refused.
+    @Override
+    public FanOutTransferResult transferFanOut(FanOutTransfer transfer) {
+        List<Transaction> transactions = transfer.getTransactions();
+        TransactionDetails[] results = new TransactionDetails[transactions.size()];
+        for(int i = 0; i < results.length; i++) {
+            results[i] = TransactionServiceImpl.failed(transactions.get(i),
+                    "Fan-out transfers need the LOCKING transfer engine.");
+        }
+        return FanOutTransferResult.builder()
+                .committed(false)
+                .total(BigDecimal.ZERO)
+                .succeeded(0)
+                .failed(results.length)
+                .results(Arrays.asList(results))
+                .build();
+    }
+
+    //Not supported: holds change the sender's balance outside its shard's owner thread.
+    @Override
+    public HoldDetails hold(Transaction transaction, long ttlMillis) {
+        throw new UnsupportedOperationException("Holds need the LOCKING transfer engine.");
+    }
+
+    @Override
+    public TransactionDetails capture(String holdId) {
+        throw new UnsupportedOperationException("Holds need the LOCKING transfer engine.");
+    }
+
+    @Override
+    public HoldDetails release(String holdId) {
+        throw new UnsupportedOperationException("Holds need the LOCKING transfer engine.");
+    }
+
+    private Account findAccount(String accountId) {
+        Account account = accountsService.getAccount(accountId);
+        if(account == null) {
+            throw new InvalidAccountException(String.format("Account does not exists for id = %s", accountId));
+        }
+        return account;
+    }
+
+    private void notifyParties(Account sender, Account receiver, BigDecimal amount) {
+        notificationService.notifyAboutTransfer(sender, String.format("Debited %s amount!!", amount));
+        notificationService.notifyAboutTransfer(receiver, String.format("Credited %s amount!!", amount));
+    }
+
+    //One transfer moving between its two shards. Each step runs on the owner of the accounts it
+    //changes, so no step needs a lock.
+    private final class Transfer {
+
+        private final Account sender;
+
+        private final Account receiver;
+
+        private final long amount;
+
+        private final Shard home;
+
+        private final Shard away;
+
+        private final CompletableFuture<Long> result = new CompletableFuture<>();
+
+        //Step to run when the transfer is taken off its current shard's queue.
+        private Runnable next;
+
+        private long submitted;
+
+        private long started;
+
+        private Transfer(Account sender, Account receiver, long amount, Shard home, Shard away) {
+            this.sender = sender;
+            this.receiver = receiver;
+            this.amount = amount;
+            this.home = home;
+            this.away = away;
+        }
+
+        //On the sender's shard. A transfer inside the shard completes here. A transfer between
+        //shards stays open in LedgerTotals from its debit until its credit, or until the debit
+        //is returned.
+        private void reserve() {
+            started = System.nanoTime();
+            metrics.record(Phase.LOCK, started - submitted);
+            LedgerTotals.beginChange();
+            try {
+                if(home == away) {
+                    long lsn;
+                    try {
+                        lsn = applyAndLog();
+                    } finally {
+                        LedgerTotals.endChange();
+                    }
+                    home.publish(sender);
+                    home.publish(receiver);
+                    finish(lsn);
+                    return;
+                }
+                sender.applyDebit(amount);
+                home.addUnpublished(sender, amount);
+            } catch (RuntimeException ex) {
+                if(home != away) {
+                    LedgerTotals.endChange();
+                }
+                fail(ex);
+                return;
+            }
+            away.execute(this, this::commit);
+        }
+
+        //On the receiver's shard.
+        private void commit() {
+            long lsn;
+            try {
+                receiver.applyCredit(amount);
+                try {
+                    lsn = journal.appendTransfer(sender.getAccountId(), receiver.getAccountId(), amount);
+                } catch (RuntimeException ex) {
+                    receiver.revertCredit(amount);
+                    throw ex;
+                }
+            } catch (RuntimeException ex) {
+                //Sender snapshots never showed the reservation, so there is nothing to publish.
+                home.execute(this, () -> {
+                    sender.applyCredit(amount);
+                    home.addUnpublished(sender, -amount);
+                    LedgerTotals.endChange();
+                    fail(ex);
+                });
+                return;
+            }
+            LedgerTotals.endChange();
+            receiver.setJournalLsn(lsn);
+            away.addUnpublished(receiver, -amount);
+            home.execute(this, () -> {
+                //A later transfer inside the sender's shard may already have a higher lsn.
+                sender.setJournalLsn(Math.max(sender.getJournalLsn(), lsn));
+                home.addUnpublished(sender, -amount);
+                home.publish(sender);
+                away.execute(this, () -> {
+                    away.addUnpublished(receiver, amount);
+                    away.publish(receiver);
+                    finish(lsn);
+                });
+            });
+        }
+
+        private long applyAndLog() {
+            sender.applyDebit(amount);
+            try {
+                receiver.applyCredit(amount);
+            } catch (RuntimeException ex) {
+                sender.applyCredit(amount);
+                throw ex;
+            }
+            long lsn;
+            try {
+                lsn = journal.appendTransfer(sender.getAccountId(), receiver.getAccountId(), amount);
+            } catch (RuntimeException ex) {
+                receiver.revertCredit(amount);
+                sender.applyCredit(amount);
+                throw ex;
+            }
+            sender.setJournalLsn(lsn);
+            receiver.setJournalLsn(lsn);
+            return lsn;
+        }
+
+        private void finish(long lsn) {
+            metrics.record(Phase.UPDATE, System.nanoTime() - started);
+            home.permits.release();
+            result.complete(lsn);
+        }
+
+        private void fail(RuntimeException ex) {
+            home.permits.release();
+            result.completeExceptionally(ex);
+        }
+
+        //A step threw where it did not expect to, or its shard stopped before running it.
+        private void abort(RuntimeException ex) {
+            if(!result.isDone()) {
+                fail(ex);
+            }
+        }
+    }
+
+    /**
+     * A shard's owner thread and its queue. Submitters take a permit first, which bounds the
+     * transfers in flight per shard; steps sent between shards skip the permit so two owners can
+     * never wait on each other.
+     */
+    private static final class Shard {
+
+        private final BlockingQueue<Transfer> queue = new LinkedBlockingQueue<>();
+
+        private final Semaphore permits;
+
+        private final Thread owner;
+
+        //Owner thread only. By account id, what publishing adds to the balance: reservations not
+        //yet committed, less credits whose sender is not published yet. Zero entries are removed.
+        private final Map<String, Long> unpublished = new HashMap<>();
+
+        private volatile boolean running = true;
+
+        private Shard(int index, int capacity) {
+            this.permits = new Semaphore(capacity);
+            this.owner = new Thread(this::run, "transfer-shard-" + index);
+            owner.setDaemon(true);
+            owner.start();
+        }
+
+        //Waits for a permit, giving up once the shard is shut down.
+        private void acquire() {
+            try {
+                while(!permits.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+                    checkRunning();
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for " + owner.getName() + ".");
+            }
+            if(!running) {
+                permits.release();
+                checkRunning();
+            }
+        }
+
+        private void addUnpublished(Account account, long amount) {
+            String accountId = account.getAccountId();
+            long pending = unpublished.getOrDefault(accountId, 0L) + amount;
+            if(pending == 0) {
+                unpublished.remove(accountId);
+            } else {
+                unpublished.put(accountId, pending);
+            }
+        }
+
+        //Publishes what the account holds once the transfers still in flight through it are settled.
+        private void publish(Account account) {
+            account.publish(unpublished.getOrDefault(account.getAccountId(), 0L));
+        }
+
+        private void checkRunning() {
+            if(!running) {
+                throw new IllegalStateException("The transfer engine is shut down.");
+            }
+        }
+
+        private void execute(Transfer transfer, Runnable step) {
+            transfer.next = step;
+            queue.add(transfer);
+            //The owner has already stopped, so nobody else will take the step.
+            if(!running && !owner.isAlive()) {
+                drain();
+            }
+        }
+
+        //Fails the transfers left behind by a stopped owner.
+        private void drain() {
+            Transfer transfer;
+            while((transfer = queue.poll()) != null) {
+                transfer.abort(new IllegalStateException("The transfer engine is shut down."));
+            }
+        }
+
+        private void run() {
+            List<Transfer> batch = new ArrayList<>(DRAIN_BATCH);
+            while(running || !queue.isEmpty()) {
+                try {
+                    Transfer first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if(first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, DRAIN_BATCH - 1);
+                    for(Transfer transfer : batch) {
+                        try {
+                            transfer.next.run();
+                        } catch (RuntimeException ex) {
+                            log.error("Transfer step failed on {}", owner.getName(), ex);
+                            transfer.abort(ex);
+                        }
+                    }
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } finally {
+                    batch.clear();
+                }
+            }
+        }
+    }
+}
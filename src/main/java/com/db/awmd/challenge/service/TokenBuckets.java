@@ -0,0 +1,135 @@
+package com.db.awmd.challenge.service;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Token buckets by key, in the form of the generic cell rate algorithm: a bucket is the single
+ * time at which it will be full again, so taking a token is one CAS and no refill ever has to run.
+ * A bucket that is full again carries no state and can be dropped for free. Once more than
+ * maxKeys buckets are held, one caller sweeps those out, and if that is not enough it drops
+ * others down to three quarters of maxKeys, so sweeps stay rare even under a flood of new keys.
+ */
+class TokenBuckets {
+
+  //Time at which a new bucket is full.
+  private static final long FULL = Long.MIN_VALUE;
+
+  private final long intervalNanos;
+
+  private final long capacityNanos;
+
+  private final int maxKeys;
+
+  private final LongSupplier clock;
+
+  private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+  private final AtomicBoolean sweeping = new AtomicBoolean();
+
+  private final LongAdder evictions = new LongAdder();
+
+  TokenBuckets(double ratePerSecond, int burst, int maxKeys, LongSupplier clock) {
+    this.intervalNanos = ratePerSecond > 0 ? Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond)) : 0;
+    this.capacityNanos = intervalNanos * Math.max(1, burst);
+    this.maxKeys = Math.max(1, maxKeys);
+    this.clock = clock;
+  }
+
+  /** Takes a token for key: 0 if there was one, else the nanoseconds until there will be. */
+  long tryAcquire(String key) {
+    return tryAcquire(key, 1);
+  }
+
+  /**
+   * Takes tokens for key at once, or none: 0 if there were enough, else the nanoseconds until
+   * there will be. More tokens than the burst need a full bucket and leave it in debt for the
+   * rest, so the key still pays its rate for every token.
+   */
+  long tryAcquire(String key, int tokens) {
+    if (intervalNanos == 0) {
+      return 0;
+    }
+    AtomicLong bucket = buckets.get(key);
+    if (bucket == null) {
+      bucket = insert(key);
+    }
+    long cost = cost(tokens);
+    //What must fit under the capacity now; any cost beyond it is carried as debt.
+    long admitted = Math.min(cost, capacityNanos);
+    long now = clock.getAsLong();
+    while (true) {
+      long full = bucket.get();
+      long start = Math.max(full, now);
+      if (start - now + admitted > capacityNanos) {
+        return start - now + admitted - capacityNanos;
+      }
+      long next = start + cost;
+      if (bucket.compareAndSet(full, next)) {
+        return 0;
+      }
+    }
+  }
+
+  /** Gives back tokens taken by tryAcquire, for a request turned away after taking them. */
+  void release(String key, int tokens) {
+    if (intervalNanos == 0) {
+      return;
+    }
+    AtomicLong bucket = buckets.get(key);
+    if (bucket != null) {
+      long cost = cost(tokens);
+      //A bucket swept away and started again has nothing to give back.
+      bucket.updateAndGet(full -> full == FULL ? FULL : full - cost);
+    }
+  }
+
+  private long cost(int tokens) {
+    return tokens * intervalNanos;
+  }
+
+  int size() {
+    return buckets.size();
+  }
+
+  long getEvictions() {
+    return evictions.sum();
+  }
+
+  private AtomicLong insert(String key) {
+    AtomicLong created = new AtomicLong(FULL);
+    AtomicLong existing = buckets.putIfAbsent(key, created);
+    if (existing != null) {
+      return existing;
+    }
+    if (buckets.size() > maxKeys && sweeping.compareAndSet(false, true)) {
+      try {
+        sweep(key);
+      } finally {
+        sweeping.set(false);
+      }
+    }
+    return created;
+  }
+
+  //Keeps the bucket just inserted for key, which is full but about to be charged.
+  private void sweep(String key) {
+    long now = clock.getAsLong();
+    buckets.entrySet().removeIf(entry -> entry.getValue().get() <= now && !entry.getKey().equals(key));
+    //Still over: every bucket is in use, so some lose their state and start full again.
+    if (buckets.size() > maxKeys) {
+      Iterator<String> iterator = buckets.keySet().iterator();
+      while (buckets.size() > maxKeys - maxKeys / 4 && iterator.hasNext()) {
+        if (!iterator.next().equals(key)) {
+          iterator.remove();
+          evictions.increment();
+        }
+      }
+    }
+  }
+}
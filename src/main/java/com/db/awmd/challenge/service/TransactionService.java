@@ -1,10 +1,39 @@
 package com.db.awmd.challenge.service;
 
+import com.db.awmd.challenge.domain.BatchMode;
+import com.db.awmd.challenge.domain.BatchTransferResult;
+import com.db.awmd.challenge.domain.FanOutTransfer;
+import com.db.awmd.challenge.domain.FanOutTransferResult;
+import com.db.awmd.challenge.domain.HoldDetails;
 import com.db.awmd.challenge.domain.Transaction;
 import com.db.awmd.challenge.domain.TransactionDetails;
 
-import java.math.BigDecimal;
+import java.util.List;
 
 public interface TransactionService {
     TransactionDetails transferAmount(Transaction transaction);
+
+    //transferAmount for callers that already hold the amount in MinorUnits and only need the
+    //transaction id back, e.g. the binary transfer protocol.
+    String transfer(String senderId, String receiverId, long amount);
+
+    //transfer for the first count of many independent transfers: each one succeeds or fails on its
+    //own, as if made one after another, and all of them wait for the journal once. Sets
+    //transactionIds[i], or failures[i] when transfer i failed.
+    void transferEach(int count, String[] senderIds, String[] receiverIds, long[] amounts,
+                      String[] transactionIds, RuntimeException[] failures);
+
+    BatchTransferResult transferBatch(List<Transaction> transactions, BatchMode mode);
+
+    //Debits the sum of all legs from the sender once and credits every receiver; all legs or none.
+    FanOutTransferResult transferFanOut(FanOutTransfer transfer);
+
+    //Sets the amount aside on the sender until the hold is captured, released or expires.
+    HoldDetails hold(Transaction transaction, long ttlMillis);
+
+    //Completes the held transfer to its receiver.
+    TransactionDetails capture(String holdId);
+
+    //Makes the held amount available to the sender again.
+    HoldDetails release(String holdId);
 }
@@ -1,56 +1,844 @@
 package com.db.awmd.challenge.service;
 
+import com.db.awmd.challenge.config.TransactionIdConfiguration;
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountLocks;
+import com.db.awmd.challenge.domain.BatchMode;
+import com.db.awmd.challenge.domain.BatchTransferResult;
+import com.db.awmd.challenge.domain.FanOutTransfer;
+import com.db.awmd.challenge.domain.FanOutTransferResult;
+import com.db.awmd.challenge.domain.HoldDetails;
+import com.db.awmd.challenge.domain.LedgerTotals;
+import com.db.awmd.challenge.domain.MinorUnits;
 import com.db.awmd.challenge.domain.Transaction;
 import com.db.awmd.challenge.domain.TransactionDetails;
+import com.db.awmd.challenge.domain.TransactionIds;
+import com.db.awmd.challenge.exception.HoldNotFoundException;
 import com.db.awmd.challenge.exception.InsufficientBalanceException;
 import com.db.awmd.challenge.exception.InvalidAccountException;
+import com.db.awmd.challenge.repository.HoldRegistry;
+import com.db.awmd.challenge.repository.HoldRegistry.Hold;
+import com.db.awmd.challenge.repository.TransactionHistory;
+import com.db.awmd.challenge.repository.TransactionJournal;
+import com.db.awmd.challenge.service.TransferMetrics.Phase;
 import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.DependsOn;
 import org.springframework.stereotype.Service;
 
-import java.util.UUID;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.IntStream;
 
 @Service
+@DependsOn(TransactionIdConfiguration.BEAN_NAME)
 @RequiredArgsConstructor
+@ConditionalOnProperty(name = "transfer.engine", havingValue = "LOCKING", matchIfMissing = true)
 public class TransactionServiceImpl implements TransactionService {
 
+    private static final String ROLLED_BACK = "Batch rolled back.";
+
+    private static final String FAN_OUT_ROLLED_BACK = "Fan-out rolled back.";
+
     private final AccountsService accountsService;
 
     private final NotificationService notificationService;
 
+    private final TransactionJournal journal;
+
+    private final TransactionHistory history;
+
+    private final HoldRegistry holds;
+
+    private final TransferMetrics metrics;
+
+    private final MinorUnits minorUnits;
+
     @Override
     public TransactionDetails transferAmount(Transaction transaction) throws InsufficientBalanceException {
-        //Validate accounts
-        Account sender = accountsService.getAccount(transaction.getSenderId());
-        if(sender == null) {
-            throw new InvalidAccountException(String.format("Account does not exists for id = %s", transaction.getSenderId()));
+        long started = System.nanoTime();
+        try {
+            String transactionId = transfer(started, transaction.getSenderId(), transaction.getReceiverId(),
+                    transaction.getAmountMinor(minorUnits), transaction.getAmount());
+            return succeeded(transaction, transactionId);
+        } catch (RuntimeException ex) {
+            metrics.rejected(ex);
+            throw ex;
         }
+    }
 
-        Account receiver = accountsService.getAccount(transaction.getReceiverId());
-        if(receiver == null) {
-            throw new InvalidAccountException(String.format("Account does not exists for id = %s", transaction.getReceiverId()));
+    @Override
+    public String transfer(String senderId, String receiverId, long amount) {
+        long started = System.nanoTime();
+        try {
+            return transfer(started, senderId, receiverId, amount, null);
+        } catch (RuntimeException ex) {
+            metrics.rejected(ex);
+            throw ex;
         }
+    }
+
+    //Body of both transfer methods; notified is the amount as the caller gave it, if it did.
+    private String transfer(long started, String senderId, String receiverId, long amount, BigDecimal notified) {
+        //Validate accounts
+        Account sender = findAccount(senderId);
+        Account receiver = findAccount(receiverId);
 
         //Same account transfer not allowed.
         if(sender.getAccountId().equals(receiver.getAccountId())) {
             throw new InvalidAccountException("Same Account transfer not supported.");
         }
+        metrics.touched(sender.getAccountId());
+        metrics.touched(receiver.getAccountId());
+        long phaseStarted = System.nanoTime();
+        metrics.record(Phase.LOOKUP, phaseStarted - started);
+
+        long lsn = applyTransfer(sender, receiver, amount);
 
-        sender.debit(transaction.getAmount());
+        //Acknowledge only once the transfer is durable; the account locks are already released.
+        phaseStarted = System.nanoTime();
+        journal.awaitDurable(lsn);
+
+        //Notify
+        long notifyStarted = System.nanoTime();
+        metrics.record(Phase.DURABLE, notifyStarted - phaseStarted);
+        String transactionId = TransactionIds.next();
+        history.record(transactionId, sender.getAccountId(), receiver.getAccountId(), amount);
+        notifyParties(sender, receiver, notified != null ? notified : minorUnits.toBigDecimal(amount));
+        long finished = System.nanoTime();
+        metrics.record(Phase.NOTIFY, finished - notifyStarted);
+        metrics.record(Phase.TOTAL, finished - started);
+        return transactionId;
+    }
 
-        receiver.credit(transaction.getAmount());
+    @Override
+    public void transferEach(int count, String[] senderIds, String[] receiverIds, long[] amounts,
+                             String[] transactionIds, RuntimeException[] failures) {
+        long started = System.nanoTime();
+        Account[] senders = new Account[count];
+        Account[] receivers = new Account[count];
+        long lastLsn = 0;
+        for(int i = 0; i < count; i++) {
+            transactionIds[i] = null;
+            failures[i] = null;
+            try {
+                senders[i] = findAccount(senderIds[i]);
+                receivers[i] = findAccount(receiverIds[i]);
+                if(senders[i].getAccountId().equals(receivers[i].getAccountId())) {
+                    throw new InvalidAccountException("Same Account transfer not supported.");
+                }
+                metrics.touched(senders[i].getAccountId());
+                metrics.touched(receivers[i].getAccountId());
+                lastLsn = Math.max(lastLsn, applyTransfer(senders[i], receivers[i], amounts[i]));
+            } catch (RuntimeException ex) {
+                metrics.rejected(ex);
+                failures[i] = ex;
+            }
+        }
+
+        //One wait covers every transfer above; the account locks are already released.
+        long phaseStarted = System.nanoTime();
+        journal.awaitDurable(lastLsn);
+
+        long notifyStarted = System.nanoTime();
+        metrics.record(Phase.DURABLE, notifyStarted - phaseStarted);
+        for(int i = 0; i < count; i++) {
+            if(failures[i] == null) {
+                transactionIds[i] = TransactionIds.next();
+                history.record(transactionIds[i], senders[i].getAccountId(), receivers[i].getAccountId(), amounts[i]);
+                notifyParties(senders[i], receivers[i], minorUnits.toBigDecimal(amounts[i]));
+            }
+        }
+        long finished = System.nanoTime();
+        metrics.record(Phase.NOTIFY, finished - notifyStarted);
+        metrics.record(Phase.TOTAL, finished - started);
+    }
+
+    @Override
+    public BatchTransferResult transferBatch(List<Transaction> transactions, BatchMode mode) {
+        TransactionDetails[] results = new TransactionDetails[transactions.size()];
+        Account[] senders = new Account[transactions.size()];
+        Account[] receivers = new Account[transactions.size()];
+        long[] amounts = new long[transactions.size()];
+
+        //Validate every item up front; accounts are looked up once per batch.
+        Map<String, Account> accounts = new HashMap<>();
+        List<Integer> accepted = new ArrayList<>();
+        for(int i = 0; i < transactions.size(); i++) {
+            Transaction transaction = transactions.get(i);
+            try {
+                senders[i] = accounts.computeIfAbsent(transaction.getSenderId(), this::findAccount);
+                receivers[i] = accounts.computeIfAbsent(transaction.getReceiverId(), this::findAccount);
+                if(senders[i].getAccountId().equals(receivers[i].getAccountId())) {
+                    throw new InvalidAccountException("Same Account transfer not supported.");
+                }
+                amounts[i] = transaction.getAmountMinor(minorUnits);
+                accepted.add(i);
+            } catch (InvalidAccountException | IllegalArgumentException iae) {
+                results[i] = failed(transaction, iae.getMessage());
+            }
+        }
+
+        if(mode == BatchMode.ALL_OR_NOTHING && accepted.size() < transactions.size()) {
+            return rolledBack(mode, transactions, results);
+        }
+
+        List<List<Integer>> groups = groupByAccounts(transactions, accepted);
+        LongAccumulator lastLsn = new LongAccumulator(Long::max, 0);
+        if(mode == BatchMode.BEST_EFFORT) {
+            //Groups share no account, so each one takes only its own locks and runs in parallel.
+            groups.parallelStream().forEach(group -> {
+                List<Lock> locked = lockAll(accountsOf(group, senders, receivers));
+                try {
+                    for(int i : group) {
+                        try {
+                            lastLsn.accumulate(applyAndPublish(senders[i], receivers[i], amounts[i]));
+                            results[i] = succeeded(transactions.get(i));
+                        } catch (RuntimeException ex) {
+                            results[i] = failed(transactions.get(i), ex.getMessage());
+                        }
+                    }
+                } finally {
+                    unlockAll(locked);
+                }
+            });
+        } else {
+            //The batch is journaled as one record in group order; encoding it first means an id or
+            //size the journal cannot take fails the batch before anything is applied.
+            Account[] legSenders = new Account[accepted.size()];
+            Account[] legReceivers = new Account[accepted.size()];
+            long[] legAmounts = new long[accepted.size()];
+            int leg = 0;
+            for(List<Integer> group : groups) {
+                for(int i : group) {
+                    legSenders[leg] = senders[i];
+                    legReceivers[leg] = receivers[i];
+                    legAmounts[leg++] = amounts[i];
+                }
+            }
+            TransactionJournal.Transfers legs;
+            try {
+                legs = journal.encodeTransfers(idsOf(legSenders), idsOf(legReceivers), legAmounts);
+            } catch (IllegalArgumentException iae) {
+                for(int i : accepted) {
+                    results[i] = failed(transactions.get(i), iae.getMessage());
+                }
+                return rolledBack(mode, transactions, results);
+            }
+
+            //Every account stays locked until the outcome of the whole batch is known.
+            List<Lock> locked = lockAll(accounts.values());
+            try {
+                boolean[] applied = new boolean[groups.size()];
+                IntStream.range(0, groups.size()).parallel().forEach(g ->
+                        applied[g] = applyGroup(groups.get(g), transactions, amounts, senders, receivers, results));
+                if(!allTrue(applied)) {
+                    IntStream.range(0, groups.size()).parallel()
+                            .filter(g -> applied[g])
+                            .forEach(g -> undoGroup(groups.get(g), groups.get(g).size(), amounts, senders, receivers));
+                    return rolledBack(mode, transactions, results);
+                }
+                logGroups(groups, amounts, senders, receivers, legs, legSenders, legReceivers, lastLsn);
+                accounts.values().forEach(Account::publish);
+            } finally {
+                unlockAll(locked);
+            }
+        }
+        journal.awaitDurable(lastLsn.get());
+
+        int succeeded = 0;
+        for(int i : accepted) {
+            if(results[i].getTransactionId() != null) {
+                succeeded++;
+                history.record(results[i].getTransactionId(), senders[i].getAccountId(), receivers[i].getAccountId(), amounts[i]);
+                notifyParties(senders[i], receivers[i], transactions.get(i).getAmount());
+            }
+        }
+
+        return BatchTransferResult.builder()
+                .mode(mode)
+                .committed(true)
+                .succeeded(succeeded)
+                .failed(transactions.size() - succeeded)
+                .results(Arrays.asList(results))
+                .build();
+    }
+
+    /**
+     * Checks the sum of the legs against the sender once and debits it in one step, then credits
+     * the receivers in parallel, one task per distinct receiver. As in an ALL_OR_NOTHING batch,
+     * every account stays locked until the whole fan-out is journaled, so no reader that takes the
+     * locks sees part of it; a failure anywhere puts every balance back.
+     */
+    @Override
+    public FanOutTransferResult transferFanOut(FanOutTransfer transfer) {
+        List<Transaction> transactions = transfer.getTransactions();
+        TransactionDetails[] results = new TransactionDetails[transactions.size()];
+        Account[] receivers = new Account[transactions.size()];
+        long[] amounts = new long[transactions.size()];
+
+        //Validate every leg up front and add up the total the sender needs.
+        Map<String, Account> accounts = new HashMap<>();
+        Account sender;
+        try {
+            sender = findAccount(transfer.getSenderId());
+        } catch (InvalidAccountException iae) {
+            for(int i = 0; i < results.length; i++) {
+                results[i] = failed(transactions.get(i), iae.getMessage());
+            }
+            return fanOutResult(false, 0, results);
+        }
+        accounts.put(sender.getAccountId(), sender);
+        long total = 0;
+        boolean valid = true;
+        for(int i = 0; i < transactions.size(); i++) {
+            Transaction transaction = transactions.get(i);
+            try {
+                receivers[i] = accounts.computeIfAbsent(transaction.getReceiverId(), this::findAccount);
+                if(receivers[i] == sender) {
+                    throw new InvalidAccountException("Same Account transfer not supported.");
+                }
+                amounts[i] = transaction.getAmountMinor(minorUnits);
+                total = MinorUnits.add(total, amounts[i]);
+            } catch (InvalidAccountException | IllegalArgumentException | ArithmeticException ex) {
+                results[i] = failed(transaction, ex.getMessage());
+                valid = false;
+            }
+        }
+        if(!valid) {
+            for(int i = 0; i < results.length; i++) {
+                if(results[i] == null) {
+                    results[i] = failed(transactions.get(i), FAN_OUT_ROLLED_BACK);
+                }
+            }
+            return fanOutResult(false, total, results);
+        }
 
-        //Create random transactionId
-        TransactionDetails transactionDetails = TransactionDetails.builder()
-                .transactionId(UUID.randomUUID().toString())
+        //Legs paying the same receiver are credited by the same task.
+        Map<String, List<Integer>> byReceiver = new LinkedHashMap<>();
+        for(int i = 0; i < receivers.length; i++) {
+            byReceiver.computeIfAbsent(receivers[i].getAccountId(), id -> new ArrayList<>()).add(i);
+        }
+        List<List<Integer>> groups = new ArrayList<>(byReceiver.values());
+
+        //Every leg goes into one FAN_OUT journal record, which names the sender once; an id or size
+        //it cannot take fails before any balance changes.
+        Account[] senders = new Account[receivers.length];
+        Arrays.fill(senders, sender);
+        TransactionJournal.Transfers legs;
+        try {
+            legs = journal.encodeFanOut(sender.getAccountId(), idsOf(receivers), amounts);
+        } catch (IllegalArgumentException iae) {
+            for(int i = 0; i < results.length; i++) {
+                results[i] = failed(transactions.get(i), iae.getMessage());
+            }
+            return fanOutResult(false, total, results);
+        }
+
+        long lastLsn;
+        List<Lock> locked = lockAll(accounts.values());
+        try {
+            lastLsn = applyFanOut(sender, senders, receivers, amounts, total, groups, legs);
+            accounts.values().forEach(Account::publish);
+        } catch (RuntimeException ex) {
+            for(int i = 0; i < results.length; i++) {
+                results[i] = failed(transactions.get(i), ex.getMessage());
+            }
+            return fanOutResult(false, total, results);
+        } finally {
+            unlockAll(locked);
+        }
+        journal.awaitDurable(lastLsn);
+
+        notificationService.notifyAboutTransfer(sender,
+                String.format("Debited %s amount!!", minorUnits.toBigDecimal(total)));
+        for(int i = 0; i < results.length; i++) {
+            results[i] = succeeded(transactions.get(i));
+            history.record(results[i].getTransactionId(), sender.getAccountId(), receivers[i].getAccountId(), amounts[i]);
+            notificationService.notifyAboutTransfer(receivers[i],
+                    String.format("Credited %s amount!!", transactions.get(i).getAmount()));
+        }
+        return fanOutResult(true, total, results);
+    }
+
+    /**
+     * Takes the amount out of the sender's available balance without moving it: the sender's
+     * balance is unchanged until the hold is captured. The sender's lock is only held while the
+     * amount is set aside, so the outside check that decides between capture and release can take
+     * as long as the hold's ttl.
+     */
+    @Override
+    public HoldDetails hold(Transaction transaction, long ttlMillis) {
+        long amount = transaction.getAmountMinor(minorUnits);
+        Account sender = findAccount(transaction.getSenderId());
+        Account receiver = findAccount(transaction.getReceiverId());
+        if(sender.getAccountId().equals(receiver.getAccountId())) {
+            throw new InvalidAccountException("Same Account transfer not supported.");
+        }
+        if(ttlMillis < 1) {
+            throw new IllegalArgumentException("Hold ttl must be positive.");
+        }
+
+        sender.hold(amount);
+        Hold hold = holds.open(sender, receiver, amount, ttlMillis);
+        return HoldDetails.builder()
+                .holdId(hold.getHoldId())
+                .transaction(transaction)
+                .expiresAt(hold.getExpiresAt())
+                .message("Amount held.")
+                .build();
+    }
+
+    //Applied like a transfer under both account locks, except that the debit comes out of the hold.
+    @Override
+    public TransactionDetails capture(String holdId) {
+        Hold hold = closeHold(holdId);
+        Account sender = hold.getSender();
+        Account receiver = hold.getReceiver();
+        long amount = hold.getAmount();
+
+        long lsn;
+        List<Lock> locked = lockAll(Arrays.asList(sender, receiver));
+        try {
+            LedgerTotals.beginChange();
+            try {
+                sender.applyCapture(amount);
+                try {
+                    receiver.applyCredit(amount);
+                } catch (RuntimeException ex) {
+                    //The hold is closed, so the money goes back to the sender's available balance.
+                    sender.applyCredit(amount);
+                    throw ex;
+                }
+            } finally {
+                LedgerTotals.endChange();
+            }
+            try {
+                lsn = logTransfer(sender, receiver, amount);
+            } catch (RuntimeException ex) {
+                revertLegs(sender, receiver, amount);
+                throw ex;
+            }
+            sender.publish();
+            receiver.publish();
+        } finally {
+            unlockAll(locked);
+        }
+        journal.awaitDurable(lsn);
+
+        Transaction transaction = heldTransaction(hold);
+        TransactionDetails details = succeeded(transaction);
+        history.record(details.getTransactionId(), sender.getAccountId(), receiver.getAccountId(), amount);
+        notifyParties(sender, receiver, transaction.getAmount());
+        return details;
+    }
+
+    @Override
+    public HoldDetails release(String holdId) {
+        Hold hold = closeHold(holdId);
+        hold.getSender().releaseHold(hold.getAmount());
+        return HoldDetails.builder()
+                .holdId(holdId)
+                .transaction(heldTransaction(hold))
+                .expiresAt(hold.getExpiresAt())
+                .message("Hold released.")
+                .build();
+    }
+
+    private Hold closeHold(String holdId) {
+        Hold hold = holds.close(holdId);
+        if(hold == null) {
+            throw new HoldNotFoundException(String.format("No open hold for id = %s", holdId));
+        }
+        return hold;
+    }
+
+    private Transaction heldTransaction(Hold hold) {
+        return new Transaction(hold.getSender().getAccountId(), hold.getReceiver().getAccountId(),
+                minorUnits.toBigDecimal(hold.getAmount()));
+    }
+
+    private Account findAccount(String accountId) {
+        Account account = accountsService.getAccount(accountId);
+        if(account == null) {
+            throw new InvalidAccountException(String.format("Account does not exists for id = %s", accountId));
+        }
+        return account;
+    }
+
+    //Applies both legs while holding both account locks, so no reader that takes the locks can see
+    //the money in neither account. Locks are always taken in AccountLocks.LOCK_ORDER, which rules
+    //out deadlock between opposing A->B and B->A transfers; accounts on the same stripe take it once.
+    private long applyTransfer(Account sender, Account receiver, long amount) {
+        boolean senderFirst = AccountLocks.LOCK_ORDER.compare(sender, receiver) < 0;
+        Lock first = (senderFirst ? sender : receiver).getLock();
+        Lock second = (senderFirst ? receiver : sender).getLock();
+
+        long lockStarted = System.nanoTime();
+        acquire(first);
+        try {
+            if(second == first) {
+                return timedApply(lockStarted, sender, receiver, amount);
+            }
+            acquire(second);
+            try {
+                return timedApply(lockStarted, sender, receiver, amount);
+            } finally {
+                second.unlock();
+            }
+        } finally {
+            first.unlock();
+        }
+    }
+
+    //Counts the acquisition, and times the wait when the lock was not free straight away.
+    private void acquire(Lock lock) {
+        if(lock.tryLock()) {
+            metrics.lockAcquired(false, 0);
+            return;
+        }
+        long waitStarted = System.nanoTime();
+        lock.lock();
+        metrics.lockAcquired(true, System.nanoTime() - waitStarted);
+    }
+
+    private long timedApply(long lockStarted, Account sender, Account receiver, long amount) {
+        long updateStarted = System.nanoTime();
+        metrics.record(Phase.LOCK, updateStarted - lockStarted);
+        long lsn = applyAndPublish(sender, receiver, amount);
+        metrics.record(Phase.UPDATE, System.nanoTime() - updateStarted);
+        return lsn;
+    }
+
+    private long applyAndPublish(Account sender, Account receiver, long amount) {
+        long lsn = applyAndLog(sender, receiver, amount);
+        sender.publish();
+        receiver.publish();
+        return lsn;
+    }
+
+    //Applies both legs and appends the transfer to the journal while the caller still holds both
+    //locks, so the journal sees each account's transfers in the order they were applied.
+    private long applyAndLog(Account sender, Account receiver, long amount) {
+        applyLegs(sender, receiver, amount);
+        try {
+            return logTransfer(sender, receiver, amount);
+        } catch (RuntimeException ex) {
+            revertLegs(sender, receiver, amount);
+            throw ex;
+        }
+    }
+
+    //Journals an applied ALL_OR_NOTHING batch as one record, undoing every group if the journal fails.
+    private void logGroups(List<List<Integer>> groups, long[] amounts, Account[] senders, Account[] receivers,
+                           TransactionJournal.Transfers legs, Account[] legSenders, Account[] legReceivers,
+                           LongAccumulator lastLsn) {
+        try {
+            lastLsn.accumulate(logTransfers(legs, legSenders, legReceivers));
+        } catch (RuntimeException ex) {
+            groups.forEach(group -> undoGroup(group, group.size(), amounts, senders, receivers));
+            throw ex;
+        }
+    }
+
+    //Stamps both accounts with the record's lsn so snapshots know which records they already hold.
+    private long logTransfer(Account sender, Account receiver, long amount) {
+        long lsn = journal.appendTransfer(sender.getAccountId(), receiver.getAccountId(), amount);
+        sender.setJournalLsn(lsn);
+        receiver.setJournalLsn(lsn);
+        return lsn;
+    }
+
+    //Journals transfers that commit together as one record. Transfer i gets the record's first lsn
+    //+ i, which is what replay gives it too.
+    private long logTransfers(TransactionJournal.Transfers transfers, Account[] senders, Account[] receivers) {
+        if(transfers.getCount() == 0) {
+            return 0;
+        }
+        long first = journal.appendTransfers(transfers);
+        if(first == 0) {
+            return 0;
+        }
+        for(int i = 0; i < transfers.getCount(); i++) {
+            senders[i].setJournalLsn(first + i);
+            receivers[i].setJournalLsn(first + i);
+        }
+        return first + transfers.getCount() - 1;
+    }
+
+    private static String[] idsOf(Account[] accounts) {
+        String[] ids = new String[accounts.length];
+        for(int i = 0; i < accounts.length; i++) {
+            ids[i] = accounts[i].getAccountId();
+        }
+        return ids;
+    }
+
+    //Caller must hold the locks of both accounts, and publishes them once the transfer is committed.
+    private void applyLegs(Account sender, Account receiver, long amount) {
+        LedgerTotals.beginChange();
+        try {
+            sender.applyDebit(amount);
+            try {
+                receiver.applyCredit(amount);
+            } catch (RuntimeException ex) {
+                //Put the money back so a failed credit leaves both balances untouched.
+                sender.applyCredit(amount);
+                throw ex;
+            }
+        } finally {
+            LedgerTotals.endChange();
+        }
+    }
+
+    //Undoes applyLegs of a transfer that will not commit, with revertCredit so that credit-only
+    //receivers can be rolled back too. Caller holds both locks.
+    private static void revertLegs(Account sender, Account receiver, long amount) {
+        LedgerTotals.beginChange();
+        try {
+            receiver.revertCredit(amount);
+            sender.applyCredit(amount);
+        } finally {
+            LedgerTotals.endChange();
+        }
+    }
+
+    //Caller holds every lock. Journals the legs as one record and returns the last lsn; if it
+    //throws, every balance is as it was.
+    private long applyFanOut(Account sender, Account[] senders, Account[] receivers, long[] amounts, long total,
+                             List<List<Integer>> groups, TransactionJournal.Transfers legs) {
+        LedgerTotals.beginChange();
+        try {
+            sender.applyDebit(total);
+            try {
+                creditFanOut(receivers, amounts, groups);
+            } catch (RuntimeException ex) {
+                sender.applyCredit(total);
+                throw ex;
+            }
+        } finally {
+            LedgerTotals.endChange();
+        }
+
+        try {
+            return logTransfers(legs, senders, receivers);
+        } catch (RuntimeException ex) {
+            LedgerTotals.beginChange();
+            try {
+                groups.parallelStream().forEach(group -> revertCredits(group, group.size(), receivers, amounts));
+                sender.applyCredit(total);
+            } finally {
+                LedgerTotals.endChange();
+            }
+            throw ex;
+        }
+    }
+
+    //Credits every receiver group in parallel; on any failure takes back the groups already credited
+    //and rethrows the first failure.
+    private void creditFanOut(Account[] receivers, long[] amounts, List<List<Integer>> groups) {
+        RuntimeException[] failures = new RuntimeException[groups.size()];
+        IntStream.range(0, groups.size()).parallel().forEach(g -> {
+            List<Integer> group = groups.get(g);
+            for(int k = 0; k < group.size(); k++) {
+                int i = group.get(k);
+                try {
+                    receivers[i].applyCredit(amounts[i]);
+                } catch (RuntimeException ex) {
+                    revertCredits(group, k, receivers, amounts);
+                    failures[g] = ex;
+                    return;
+                }
+            }
+        });
+        for(RuntimeException failure : failures) {
+            if(failure != null) {
+                IntStream.range(0, groups.size()).parallel()
+                        .filter(g -> failures[g] == null)
+                        .forEach(g -> revertCredits(groups.get(g), groups.get(g).size(), receivers, amounts));
+                throw failure;
+            }
+        }
+    }
+
+    //Takes back the first count credits of a receiver group; the locks kept the money there.
+    private static void revertCredits(List<Integer> group, int count, Account[] receivers, long[] amounts) {
+        for(int k = count - 1; k >= 0; k--) {
+            int i = group.get(k);
+            receivers[i].revertCredit(amounts[i]);
+        }
+    }
+
+    //Applies a group in order and undoes it on the first failure. Returns whether it was applied.
+    private boolean applyGroup(List<Integer> group, List<Transaction> transactions, long[] amounts,
+                               Account[] senders, Account[] receivers, TransactionDetails[] results) {
+        for(int k = 0; k < group.size(); k++) {
+            int i = group.get(k);
+            try {
+                applyLegs(senders[i], receivers[i], amounts[i]);
+                results[i] = succeeded(transactions.get(i));
+            } catch (RuntimeException ex) {
+                results[i] = failed(transactions.get(i), ex.getMessage());
+                undoGroup(group, k, amounts, senders, receivers);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //Reverts the first count items of a group, newest first, so every reversal finds the funds it
+    //needs on the receiving side.
+    private void undoGroup(List<Integer> group, int count, long[] amounts,
+                           Account[] senders, Account[] receivers) {
+        for(int k = count - 1; k >= 0; k--) {
+            int i = group.get(k);
+            revertLegs(senders[i], receivers[i], amounts[i]);
+        }
+    }
+
+    //Splits the accepted items into groups that share no account (connected components over
+    //sender/receiver pairs), keeping submission order inside each group.
+    private List<List<Integer>> groupByAccounts(List<Transaction> transactions, List<Integer> accepted) {
+        Map<String, Integer> index = new HashMap<>();
+        int[] parent = new int[accepted.size() * 2];
+        for(int i : accepted) {
+            union(parent, indexOf(index, parent, transactions.get(i).getSenderId()),
+                    indexOf(index, parent, transactions.get(i).getReceiverId()));
+        }
+
+        Map<Integer, List<Integer>> groups = new LinkedHashMap<>();
+        for(int i : accepted) {
+            int root = find(parent, index.get(transactions.get(i).getSenderId()));
+            groups.computeIfAbsent(root, r -> new ArrayList<>()).add(i);
+        }
+        return new ArrayList<>(groups.values());
+    }
+
+    private static int indexOf(Map<String, Integer> index, int[] parent, String accountId) {
+        return index.computeIfAbsent(accountId, id -> {
+            int next = index.size();
+            parent[next] = next;
+            return next;
+        });
+    }
+
+    private static int find(int[] parent, int node) {
+        while(parent[node] != node) {
+            parent[node] = parent[parent[node]];
+            node = parent[node];
+        }
+        return node;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        parent[find(parent, a)] = find(parent, b);
+    }
+
+    private static boolean allTrue(boolean[] values) {
+        for(boolean value : values) {
+            if(!value) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Collection<Account> accountsOf(List<Integer> group, Account[] senders, Account[] receivers) {
+        Map<String, Account> accounts = new HashMap<>();
+        for(int i : group) {
+            accounts.put(senders[i].getAccountId(), senders[i]);
+            accounts.put(receivers[i].getAccountId(), receivers[i]);
+        }
+        return accounts.values();
+    }
+
+    //Takes every distinct lock of the accounts once, in the same order used by single transfers.
+    //Only one account per lock is sorted, so a large fan-out over striped locks sorts at most one
+    //account per stripe.
+    private static List<Lock> lockAll(Collection<Account> accounts) {
+        Map<Lock, Account> byLock = new IdentityHashMap<>();
+        for(Account account : accounts) {
+            byLock.putIfAbsent(account.getLock(), account);
+        }
+        List<Account> ordered = new ArrayList<>(byLock.values());
+        ordered.sort(AccountLocks.LOCK_ORDER);
+        List<Lock> locked = new ArrayList<>(ordered.size());
+        try {
+            for(Account account : ordered) {
+                Lock lock = account.getLock();
+                lock.lock();
+                locked.add(lock);
+            }
+        } catch (RuntimeException ex) {
+            unlockAll(locked);
+            throw ex;
+        }
+        return locked;
+    }
+
+    private static void unlockAll(List<Lock> locked) {
+        for(int i = locked.size() - 1; i >= 0; i--) {
+            locked.get(i).unlock();
+        }
+    }
+
+    private void notifyParties(Account sender, Account receiver, BigDecimal amount) {
+        notificationService.notifyAboutTransfer(sender, String.format("Debited %s amount!!", amount));
+        notificationService.notifyAboutTransfer(receiver, String.format("Credited %s amount!!", amount));
+    }
+
+    static TransactionDetails succeeded(Transaction transaction) {
+        return succeeded(transaction, TransactionIds.next());
+    }
+
+    static TransactionDetails succeeded(Transaction transaction, String transactionId) {
+        return TransactionDetails.builder()
+                .transactionId(transactionId)
                 .transaction(transaction)
                 .message("Transaction Successful!!")
                 .build();
+    }
 
-        //Notify
-        notificationService.notifyAboutTransfer(sender, String.format("Debited %s amount!!", transaction.getAmount()));
-        notificationService.notifyAboutTransfer(receiver, String.format("Credited %s amount!!", transaction.getAmount()));
+    static TransactionDetails failed(Transaction transaction, String message) {
+        return TransactionDetails.builder()
+                .transaction(transaction)
+                .message(message)
+                .build();
+    }
 
-        return transactionDetails;
+    private FanOutTransferResult fanOutResult(boolean committed, long total, TransactionDetails[] results) {
+        return FanOutTransferResult.builder()
+                .committed(committed)
+                .total(minorUnits.toBigDecimal(total))
+                .succeeded(committed ? results.length : 0)
+                .failed(committed ? 0 : results.length)
+                .results(Arrays.asList(results))
+                .build();
+    }
+
+    private static BatchTransferResult rolledBack(BatchMode mode, List<Transaction> transactions,
+                                                  TransactionDetails[] results) {
+        //Items that failed keep their own reason; everything else is reported as rolled back.
+        for(int i = 0; i < results.length; i++) {
+            if(results[i] == null || results[i].getTransactionId() != null) {
+                results[i] = failed(transactions.get(i), ROLLED_BACK);
+            }
+        }
+        return BatchTransferResult.builder()
+                .mode(mode)
+                .committed(false)
+                .succeeded(0)
+                .failed(results.length)
+                .results(Arrays.asList(results))
+                .build();
     }
 }
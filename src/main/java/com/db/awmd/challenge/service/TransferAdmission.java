@@ -0,0 +1,191 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.config.AdmissionProperties;
+import com.db.awmd.challenge.domain.Transaction;
+import com.db.awmd.challenge.exception.TransferRejectedException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+/**
+ * Admission control in front of the {@link TransactionService}. A transfer needs a token from its
+ * client's bucket and from the buckets of both its accounts, whose locks it is about to take, and
+ * a place under the adaptive {@link ConcurrencyLimiter}. A transfer that does not get all of them
+ * is rejected straight away, so a client hammering one account is turned back at its own rate
+ * instead of tying up request threads in the queue for that account's lock. Off unless
+ * admission.enabled is set.
+ */
+@Service
+@EnableConfigurationProperties(AdmissionProperties.class)
+@ManagedResource(objectName = "com.db.awmd.challenge:type=TransferAdmission")
+public class TransferAdmission {
+
+  private final boolean enabled;
+
+  private final TokenBuckets clients;
+
+  private final TokenBuckets accounts;
+
+  private final ConcurrencyLimiter limiter;
+
+  private final LongSupplier clock;
+
+  private final LongAdder rejectedByClient = new LongAdder();
+
+  private final LongAdder rejectedByAccount = new LongAdder();
+
+  private final LongAdder rejectedByLimit = new LongAdder();
+
+  @Autowired
+  public TransferAdmission(AdmissionProperties properties) {
+    this(properties, System::nanoTime);
+  }
+
+  TransferAdmission(AdmissionProperties properties, LongSupplier clock) {
+    this.enabled = properties.isEnabled();
+    this.clients = new TokenBuckets(properties.getClient().getRatePerSecond(), properties.getClient().getBurst(),
+      properties.getMaxKeys(), clock);
+    this.accounts = new TokenBuckets(properties.getAccount().getRatePerSecond(), properties.getAccount().getBurst(),
+      properties.getMaxKeys(), clock);
+    this.limiter = new ConcurrencyLimiter(properties.getLimit().getInitial(), properties.getLimit().getMin(),
+      properties.getLimit().getMax());
+    this.clock = clock;
+  }
+
+  /**
+   * Admits one transfer or throws TransferRejectedException without waiting. An admitted transfer
+   * must be passed to {@link #complete(long)} with the returned ticket once it has finished,
+   * whatever its outcome. A rejected transfer keeps no token.
+   */
+  public long admit(String clientId, String senderId, String receiverId) {
+    if (!enabled) {
+      return 0;
+    }
+    acquireClient(clientId, 1);
+    long wait = accounts.tryAcquire(senderId);
+    if (wait == 0 && (wait = accounts.tryAcquire(receiverId)) > 0) {
+      accounts.release(senderId, 1);
+    }
+    if (wait > 0) {
+      throw rejectedByAccount(clientId, 1, wait);
+    }
+    if (!limiter.tryAcquire()) {
+      accounts.release(receiverId, 1);
+      accounts.release(senderId, 1);
+      throw rejectedByLimit(clientId, 1);
+    }
+    return clock.getAsLong();
+  }
+
+  /**
+   * Admits the transfers of one request, such as a batch or a fan-out, as a whole: the client and
+   * every account pay a token per transfer they take part in, and the request takes one place
+   * under the limiter. Otherwise as {@link #admit(String, String, String)}.
+   */
+  public long admit(String clientId, List<Transaction> transactions) {
+    if (!enabled) {
+      return 0;
+    }
+    Map<String, Integer> tokens = new LinkedHashMap<>();
+    for (Transaction transaction : transactions) {
+      tokens.merge(transaction.getSenderId(), 1, Integer::sum);
+      tokens.merge(transaction.getReceiverId(), 1, Integer::sum);
+    }
+    acquireClient(clientId, transactions.size());
+    List<String> taken = new ArrayList<>(tokens.size());
+    for (Map.Entry<String, Integer> account : tokens.entrySet()) {
+      long wait = accounts.tryAcquire(account.getKey(), account.getValue());
+      if (wait > 0) {
+        taken.forEach(accountId -> accounts.release(accountId, tokens.get(accountId)));
+        throw rejectedByAccount(clientId, transactions.size(), wait);
+      }
+      taken.add(account.getKey());
+    }
+    if (!limiter.tryAcquire()) {
+      taken.forEach(accountId -> accounts.release(accountId, tokens.get(accountId)));
+      throw rejectedByLimit(clientId, transactions.size());
+    }
+    return clock.getAsLong();
+  }
+
+  private void acquireClient(String clientId, int tokens) {
+    long wait = clientId == null ? 0 : clients.tryAcquire(clientId, tokens);
+    if (wait > 0) {
+      rejectedByClient.increment();
+      throw new TransferRejectedException("Too many transfers from client " + clientId + ".", toMillis(wait));
+    }
+  }
+
+  //The client's tokens go back too: a rejected request has not sent anything.
+  private TransferRejectedException rejectedByAccount(String clientId, int tokens, long wait) {
+    releaseClient(clientId, tokens);
+    rejectedByAccount.increment();
+    return new TransferRejectedException("Too many transfers for these accounts.", toMillis(wait));
+  }
+
+  private TransferRejectedException rejectedByLimit(String clientId, int tokens) {
+    releaseClient(clientId, tokens);
+    rejectedByLimit.increment();
+    return new TransferRejectedException("Too many transfers in progress.", 0);
+  }
+
+  private void releaseClient(String clientId, int tokens) {
+    if (clientId != null) {
+      clients.release(clientId, tokens);
+    }
+  }
+
+  public void complete(long ticket) {
+    if (enabled) {
+      limiter.release(clock.getAsLong() - ticket);
+    }
+  }
+
+  private static long toMillis(long nanos) {
+    return Math.max(1, TimeUnit.NANOSECONDS.toMillis(nanos));
+  }
+
+  @ManagedAttribute(description = "Transfers allowed in flight at once")
+  public int getLimit() {
+    return limiter.getLimit();
+  }
+
+  @ManagedAttribute(description = "Admitted transfers not yet completed")
+  public int getInFlight() {
+    return limiter.getInFlight();
+  }
+
+  @ManagedAttribute(description = "Transfers rejected by their client's bucket")
+  public long getRejectedByClient() {
+    return rejectedByClient.sum();
+  }
+
+  @ManagedAttribute(description = "Transfers rejected by an account's bucket")
+  public long getRejectedByAccount() {
+    return rejectedByAccount.sum();
+  }
+
+  @ManagedAttribute(description = "Transfers rejected by the concurrency limit")
+  public long getRejectedByLimit() {
+    return rejectedByLimit.sum();
+  }
+
+  @ManagedAttribute(description = "Accounts and clients with a token bucket")
+  public int getBuckets() {
+    return accounts.size() + clients.size();
+  }
+
+  @ManagedAttribute(description = "Buckets dropped while still in use to stay within admission.max-keys")
+  public long getBucketEvictions() {
+    return accounts.getEvictions() + clients.getEvictions();
+  }
+}
@@ -0,0 +1,184 @@
+package com.db.awmd.challenge.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.HdrHistogram.AtomicHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+/**
+ * Hot-path metrics for {@link TransactionService#transferAmount}: a latency histogram per
+ * phase, lock acquisition and contention counts, the hottest accounts and rejections by exception
+ * type. Recording uses fixed-size atomic histograms and counters only, so it takes no locks and
+ * allocates nothing. Served at /metrics and over JMX.
+ */
+@Service
+@ManagedResource(objectName = "com.db.awmd.challenge:type=TransferMetrics")
+public class TransferMetrics {
+
+  //LOCK is the wait for exclusive access to the accounts: their locks, or the shard queue with
+  //the SHARDED engine.
+  public enum Phase {
+    LOOKUP, LOCK, UPDATE, DURABLE, NOTIFY, TOTAL
+  }
+
+  private static final long HIGHEST_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+  private static final int TOP_ACCOUNTS = 10;
+
+  private final AtomicHistogram[] phases = new AtomicHistogram[Phase.values().length];
+
+  private final AtomicHistogram lockWait = histogram();
+
+  private final LongAdder lockAcquisitions = new LongAdder();
+
+  private final LongAdder contendedAcquisitions = new LongAdder();
+
+  private final Map<String, LongAdder> rejections = new ConcurrentHashMap<>();
+
+  //32 KB of counters per recording thread; counts halve every minute.
+  private final HotAccountSketch hotAccounts = new HotAccountSketch(1 << 10, 1 << 8, TimeUnit.MINUTES.toNanos(1));
+
+  public TransferMetrics() {
+    for (int i = 0; i < phases.length; i++) {
+      phases[i] = histogram();
+    }
+  }
+
+  public void record(Phase phase, long nanos) {
+    phases[phase.ordinal()].recordValue(clamp(nanos));
+  }
+
+  public void lockAcquired(boolean contended, long waitNanos) {
+    lockAcquisitions.increment();
+    if (contended) {
+      contendedAcquisitions.increment();
+      lockWait.recordValue(clamp(waitNanos));
+    }
+  }
+
+  public void touched(String accountId) {
+    hotAccounts.record(accountId);
+  }
+
+  public void rejected(RuntimeException ex) {
+    //The map only grows by one entry per exception type; after that this is a lock-free get.
+    LongAdder count = rejections.get(ex.getClass().getSimpleName());
+    if (count == null) {
+      count = rejections.computeIfAbsent(ex.getClass().getSimpleName(), name -> new LongAdder());
+    }
+    count.increment();
+  }
+
+  /** Everything recorded so far, with latencies in microseconds. */
+  public Map<String, Object> report() {
+    Map<String, Object> report = new LinkedHashMap<>();
+    Map<String, Object> phaseReport = new LinkedHashMap<>();
+    for (Phase phase : Phase.values()) {
+      phaseReport.put(phase.name().toLowerCase(), summary(phases[phase.ordinal()]));
+    }
+    report.put("phases", phaseReport);
+
+    Map<String, Object> locks = new LinkedHashMap<>();
+    locks.put("acquisitions", lockAcquisitions.sum());
+    locks.put("contended", contendedAcquisitions.sum());
+    locks.put("wait", summary(lockWait));
+    report.put("locks", locks);
+
+    report.put("hotAccounts", hotAccounts.top(TOP_ACCOUNTS));
+
+    Map<String, Long> rejected = new LinkedHashMap<>();
+    rejections.forEach((type, count) -> rejected.put(type, count.sum()));
+    report.put("rejections", rejected);
+    return report;
+  }
+
+  @ManagedAttribute
+  public long getTransfers() {
+    return phases[Phase.TOTAL.ordinal()].getTotalCount();
+  }
+
+  @ManagedAttribute
+  public double getTotalP99Micros() {
+    return p99Micros(Phase.TOTAL);
+  }
+
+  @ManagedAttribute
+  public double getLookupP99Micros() {
+    return p99Micros(Phase.LOOKUP);
+  }
+
+  @ManagedAttribute
+  public double getLockP99Micros() {
+    return p99Micros(Phase.LOCK);
+  }
+
+  @ManagedAttribute
+  public double getUpdateP99Micros() {
+    return p99Micros(Phase.UPDATE);
+  }
+
+  @ManagedAttribute
+  public double getDurableP99Micros() {
+    return p99Micros(Phase.DURABLE);
+  }
+
+  @ManagedAttribute
+  public double getNotifyP99Micros() {
+    return p99Micros(Phase.NOTIFY);
+  }
+
+  @ManagedAttribute
+  public long getLockAcquisitions() {
+    return lockAcquisitions.sum();
+  }
+
+  @ManagedAttribute
+  public long getContendedLockAcquisitions() {
+    return contendedAcquisitions.sum();
+  }
+
+  @ManagedAttribute
+  public double getLockWaitP99Micros() {
+    return lockWait.getValueAtPercentile(99) / 1000.0;
+  }
+
+  @ManagedAttribute
+  public String getHotAccounts() {
+    return hotAccounts.top(TOP_ACCOUNTS).toString();
+  }
+
+  @ManagedAttribute
+  public String getRejections() {
+    return report().get("rejections").toString();
+  }
+
+  private double p99Micros(Phase phase) {
+    return phases[phase.ordinal()].getValueAtPercentile(99) / 1000.0;
+  }
+
+  private static Map<String, Object> summary(Histogram histogram) {
+    Map<String, Object> summary = new LinkedHashMap<>();
+    summary.put("count", histogram.getTotalCount());
+    summary.put("mean", histogram.getMean() / 1000.0);
+    summary.put("p50", histogram.getValueAtPercentile(50) / 1000.0);
+    summary.put("p99", histogram.getValueAtPercentile(99) / 1000.0);
+    summary.put("p999", histogram.getValueAtPercentile(99.9) / 1000.0);
+    summary.put("max", histogram.getMaxValue() / 1000.0);
+    return summary;
+  }
+
+  //Fixed range and precision, so the histogram never resizes while recording.
+  private static AtomicHistogram histogram() {
+    return new AtomicHistogram(HIGHEST_NANOS, 2);
+  }
+
+  private static long clamp(long nanos) {
+    return Math.max(0, Math.min(nanos, HIGHEST_NANOS));
+  }
+}
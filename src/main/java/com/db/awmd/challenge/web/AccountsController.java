@@ -1,11 +1,21 @@
 package com.db.awmd.challenge.web;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountImportResult;
+import com.db.awmd.challenge.domain.AccountSnapshot;
+import com.db.awmd.challenge.domain.AccountsFormat;
+import com.db.awmd.challenge.domain.TransactionHistoryPage;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.repository.TransactionHistory;
+import com.db.awmd.challenge.service.AccountsBulkService;
 import com.db.awmd.challenge.service.AccountsService;
+import java.io.IOException;
+import java.io.InputStream;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -13,7 +23,9 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
@@ -21,11 +33,20 @@ import org.springframework.web.bind.annotation.RestController;
 @Slf4j
 public class AccountsController {
 
+  static final int MAX_HISTORY_LIMIT = 1000;
+
   private final AccountsService accountsService;
 
+  private final TransactionHistory transactionHistory;
+
+  private final AccountsBulkService accountsBulkService;
+
   @Autowired
-  public AccountsController(AccountsService accountsService) {
+  public AccountsController(AccountsService accountsService, TransactionHistory transactionHistory,
+    AccountsBulkService accountsBulkService) {
     this.accountsService = accountsService;
+    this.transactionHistory = transactionHistory;
+    this.accountsBulkService = accountsBulkService;
   }
 
   @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
@@ -34,17 +55,67 @@ public class AccountsController {
 
     try {
     this.accountsService.createAccount(account);
-    } catch (DuplicateAccountIdException daie) {
+    } catch (DuplicateAccountIdException | IllegalArgumentException daie) {
       return new ResponseEntity<>(daie.getMessage(), HttpStatus.BAD_REQUEST);
     }
 
     return new ResponseEntity<>(HttpStatus.CREATED);
   }
 
+  //The body is read line by line as it arrives; see AccountsFormat for the line formats.
+  @PostMapping(path = "/import", consumes = {"application/x-ndjson", "text/csv"})
+  public ResponseEntity<AccountImportResult> importAccounts(InputStream body,
+    @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType) throws IOException {
+    AccountsFormat format = AccountsFormat.of(contentType);
+    log.info("Importing accounts as {}", format);
+    return ResponseEntity.ok(this.accountsBulkService.importAccounts(body, format));
+  }
+
+  //Streamed without a Content-Length, so the response is sent chunked as accounts are written.
+  @GetMapping(path = "/export")
+  public void exportAccounts(@RequestParam(defaultValue = "NDJSON") AccountsFormat format,
+    HttpServletResponse response) throws IOException {
+    log.info("Exporting accounts as {}", format);
+    response.setContentType(format.getMediaType().toString());
+    long count = this.accountsBulkService.exportAccounts(response.getOutputStream(), format);
+    log.info("Exported {} accounts", count);
+  }
+
+  //Served from the account's last published snapshot, so reads take no lock and never show a
+  //transfer half applied. Accounts of the off-heap store publish none; theirs is read under the
+  //account's lock and, having no version, is sent without an ETag, so it is never answered with 304.
   @GetMapping(path = "/{accountId}")
-  public Account getAccount(@PathVariable String accountId) {
+  public ResponseEntity<AccountSnapshot> getAccount(@PathVariable String accountId) {
     log.info("Retrieving account for id {}", accountId);
-    return this.accountsService.getAccount(accountId);
+    Account account = this.accountsService.getAccount(accountId);
+    if (account == null) {
+      return ResponseEntity.ok(null);
+    }
+    AccountSnapshot snapshot = account.getSnapshot();
+    if (snapshot.getVersion() == AccountSnapshot.UNVERSIONED) {
+      return ResponseEntity.ok(snapshot);
+    }
+    return ResponseEntity.ok().eTag(Long.toString(snapshot.getVersion())).body(snapshot);
+  }
+
+  //from and to are epoch milliseconds, both inclusive; pass a page's nextCursor back as cursor to
+  //continue after it.
+  @GetMapping(path = "/{accountId}/transactions")
+  public ResponseEntity<Object> getTransactions(@PathVariable String accountId,
+                                                @RequestParam(defaultValue = "0") long from,
+                                                @RequestParam(defaultValue = "" + Long.MAX_VALUE) long to,
+                                                @RequestParam(defaultValue = "100") int limit,
+                                                @RequestParam(defaultValue = "-1") long cursor) {
+    log.info("Retrieving transactions for id {}", accountId);
+    if (limit < 1) {
+      return new ResponseEntity<>("limit must be positive.", HttpStatus.BAD_REQUEST);
+    }
+    if (this.accountsService.getAccount(accountId) == null) {
+      return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+    }
+    TransactionHistoryPage page = this.transactionHistory.query(accountId, from, to, cursor,
+      Math.min(limit, MAX_HISTORY_LIMIT));
+    return ResponseEntity.ok(page);
   }
 
 }
@@ -0,0 +1,305 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.MinorUnits;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.exception.InvalidAccountException;
+import com.db.awmd.challenge.exception.TransferRejectedException;
+import com.db.awmd.challenge.service.TransactionService;
+import com.db.awmd.challenge.service.TransferAdmission;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Compact binary transfer protocol for high-frequency clients. Frames have a fixed layout,
+ * big-endian numbers and length-prefixed account ids:
+ *
+ * <pre>
+ *   request:  int length | long correlationId | byte senderLength | sender | byte receiverLength | receiver | long amount
+ *   response: int length | long correlationId | byte status | byte idLength | transactionId
+ * </pre>
+ *
+ * length counts the bytes after it, amount is in MinorUnits and the correlation id is echoed
+ * back unchanged. Ids are UTF-8. Status is one of the constants below; the transaction id is
+ * empty unless the status is OK.
+ *
+ * <p>Decoding allocates nothing per frame: frames are read straight out of the caller's buffer,
+ * account ids go through a reused scratch array and come back as the String already cached for
+ * the same bytes, and the amount never becomes a BigDecimal. Not thread-safe: each thread or
+ * connection owns one handler.
+ */
+@Slf4j
+public class BinaryTransferHandler {
+
+  public static final byte OK = 0;
+
+  public static final byte INVALID_ACCOUNT = 1;
+
+  public static final byte INSUFFICIENT_BALANCE = 2;
+
+  public static final byte BAD_REQUEST = 3;
+
+  public static final byte ERROR = 4;
+
+  //Turned away by TransferAdmission; nothing was executed, so the frame may be sent again later.
+  public static final byte TOO_MANY_REQUESTS = 5;
+
+  public static final int MAX_ID_LENGTH = 255;
+
+  //correlationId + both id lengths + amount, around ids of at least one byte.
+  public static final int MIN_REQUEST_LENGTH = 8 + 1 + 1 + 1 + 1 + 8;
+
+  public static final int MAX_REQUEST_LENGTH = 8 + 1 + MAX_ID_LENGTH + 1 + MAX_ID_LENGTH + 8;
+
+  public static final int MAX_RESPONSE_FRAME = 4 + 8 + 1 + 1 + MAX_ID_LENGTH;
+
+  //Most frames handed to the transaction service in one call.
+  public static final int MAX_BATCH = 64;
+
+  //Direct-mapped, so a collision only costs a new String.
+  private static final int ID_CACHE_SIZE = 1 << 12;
+
+  private final TransactionService transactionService;
+
+  //Null when transfers are not subject to admission control.
+  private final TransferAdmission admission;
+
+  private final byte[] scratch = new byte[MAX_ID_LENGTH];
+
+  //Per frame of the batch being handled: the response status, or where the frame went in the
+  //transfer arrays below when it was handed to the transaction service.
+  private final long[] correlationIds = new long[MAX_BATCH];
+
+  private final byte[] statuses = new byte[MAX_BATCH];
+
+  private final int[] batchIndex = new int[MAX_BATCH];
+
+  private final String[] senderIds = new String[MAX_BATCH];
+
+  private final String[] receiverIds = new String[MAX_BATCH];
+
+  private final long[] amounts = new long[MAX_BATCH];
+
+  private final long[] tickets = new long[MAX_BATCH];
+
+  private final String[] transactionIds = new String[MAX_BATCH];
+
+  private final RuntimeException[] failures = new RuntimeException[MAX_BATCH];
+
+  private final String[] ids = new String[ID_CACHE_SIZE];
+
+  public BinaryTransferHandler(TransactionService transactionService) {
+    this(transactionService, null);
+  }
+
+  public BinaryTransferHandler(TransactionService transactionService, TransferAdmission admission) {
+    this.transactionService = transactionService;
+    this.admission = admission;
+  }
+
+  /**
+   * Length of the well-formed frames at the start of in, not counting a trailing partial frame,
+   * or -1 if a frame is malformed. Leaves in's position unchanged.
+   */
+  public static int completeFrames(ByteBuffer in) {
+    int position = in.position();
+    while (in.limit() - position >= 4) {
+      int length = in.getInt(position);
+      if (!wellFormed(in, position, length)) {
+        return -1;
+      }
+      if (in.limit() - position - 4 < length) {
+        break;
+      }
+      position += 4 + length;
+    }
+    return position - in.position();
+  }
+
+  /**
+   * Executes every complete request frame in in while out has room for another response, and
+   * writes one response frame per request. Leaves in positioned after the last frame handled;
+   * call again once out has been drained. Frames must already have passed
+   * {@link #completeFrames(ByteBuffer)}. clientId is the sender of the frames, for admission
+   * control. Returns the number of frames handled.
+   *
+   * <p>Up to {@link #MAX_BATCH} frames go to the transaction service in one
+   * {@link TransactionService#transferEach} call, so the transfers of one read share a single
+   * wait for the journal.
+   */
+  public int handle(ByteBuffer in, ByteBuffer out, String clientId) {
+    int handled = 0;
+    while (hasCompleteFrame(in) && out.remaining() >= MAX_RESPONSE_FRAME) {
+      int room = Math.min(MAX_BATCH, out.remaining() / MAX_RESPONSE_FRAME);
+      int frames = 0;
+      int batched = 0;
+      while (frames < room && hasCompleteFrame(in)) {
+        in.position(in.position() + 4);
+        correlationIds[frames] = in.getLong();
+        String senderId = readId(in);
+        String receiverId = readId(in);
+        long amount = in.getLong();
+
+        batchIndex[frames] = -1;
+        if (amount < MinorUnits.MIN_TRANSFER_AMOUNT) {
+          statuses[frames] = BAD_REQUEST;
+        } else if (admit(clientId, senderId, receiverId, batched)) {
+          senderIds[batched] = senderId;
+          receiverIds[batched] = receiverId;
+          amounts[batched] = amount;
+          batchIndex[frames] = batched++;
+        } else {
+          statuses[frames] = TOO_MANY_REQUESTS;
+        }
+        frames++;
+      }
+
+      execute(batched);
+      for (int i = 0; i < frames; i++) {
+        int index = batchIndex[i];
+        if (index < 0) {
+          writeResponse(out, correlationIds[i], statuses[i], null);
+        } else {
+          byte status = status(failures[index]);
+          if (status == ERROR) {
+            log.error("Binary transfer {} from {} to {} failed", correlationIds[i], senderIds[index],
+              receiverIds[index], failures[index]);
+          }
+          writeResponse(out, correlationIds[i], status, status == OK ? transactionIds[index] : null);
+        }
+      }
+      handled += frames;
+    }
+    return handled;
+  }
+
+  private boolean admit(String clientId, String senderId, String receiverId, int index) {
+    if (admission == null) {
+      return true;
+    }
+    try {
+      tickets[index] = admission.admit(clientId, senderId, receiverId);
+      return true;
+    } catch (TransferRejectedException tre) {
+      return false;
+    }
+  }
+
+  private void execute(int count) {
+    if (count == 0) {
+      return;
+    }
+    try {
+      transactionService.transferEach(count, senderIds, receiverIds, amounts, transactionIds, failures);
+    } catch (RuntimeException ex) {
+      //Whatever went wrong, no transfer of the batch can be acknowledged.
+      Arrays.fill(failures, 0, count, ex);
+    } finally {
+      if (admission != null) {
+        for (int i = 0; i < count; i++) {
+          admission.complete(tickets[i]);
+        }
+      }
+    }
+  }
+
+  private static byte status(RuntimeException failure) {
+    if (failure == null) {
+      return OK;
+    } else if (failure instanceof InvalidAccountException) {
+      return INVALID_ACCOUNT;
+    } else if (failure instanceof InsufficientBalanceException) {
+      return INSUFFICIENT_BALANCE;
+    } else if (failure instanceof IllegalArgumentException || failure instanceof ArithmeticException) {
+      return BAD_REQUEST;
+    }
+    return ERROR;
+  }
+
+  public static boolean hasCompleteFrame(ByteBuffer in) {
+    return in.remaining() >= 4 && in.remaining() - 4 >= in.getInt(in.position());
+  }
+
+  /** Writes a request frame, for clients of the protocol. */
+  public static void writeRequest(ByteBuffer out, long correlationId, String senderId, String receiverId, long amount) {
+    byte[] sender = senderId.getBytes(StandardCharsets.UTF_8);
+    byte[] receiver = receiverId.getBytes(StandardCharsets.UTF_8);
+    if (sender.length == 0 || sender.length > MAX_ID_LENGTH || receiver.length == 0 || receiver.length > MAX_ID_LENGTH) {
+      throw new IllegalArgumentException("Account ids must be 1 to " + MAX_ID_LENGTH + " bytes long.");
+    }
+    out.putInt(8 + 1 + sender.length + 1 + receiver.length + 8);
+    out.putLong(correlationId);
+    out.put((byte) sender.length).put(sender);
+    out.put((byte) receiver.length).put(receiver);
+    out.putLong(amount);
+  }
+
+  private static boolean wellFormed(ByteBuffer in, int position, int length) {
+    if (length < MIN_REQUEST_LENGTH || length > MAX_REQUEST_LENGTH) {
+      return false;
+    }
+    //Both id lengths must add up to the frame length, as far as the frame has arrived.
+    int senderLengthAt = position + 4 + 8;
+    if (senderLengthAt >= in.limit()) {
+      return true;
+    }
+    int senderLength = in.get(senderLengthAt) & 0xFF;
+    int receiverLengthAt = senderLengthAt + 1 + senderLength;
+    if (senderLength == 0 || receiverLengthAt >= position + 4 + length) {
+      return false;
+    }
+    if (receiverLengthAt >= in.limit()) {
+      return true;
+    }
+    int receiverLength = in.get(receiverLengthAt) & 0xFF;
+    return receiverLength > 0 && 8 + 1 + senderLength + 1 + receiverLength + 8 == length;
+  }
+
+  private String readId(ByteBuffer in) {
+    int length = in.get() & 0xFF;
+    in.get(scratch, 0, length);
+    int hash = 0;
+    boolean ascii = true;
+    for (int i = 0; i < length; i++) {
+      hash = 31 * hash + scratch[i];
+      ascii &= scratch[i] >= 0;
+    }
+    //Cached Strings are compared char by char, which only matches bytes for ASCII.
+    if (!ascii) {
+      return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+    int slot = (hash ^ (hash >>> 16)) & (ID_CACHE_SIZE - 1);
+    String cached = ids[slot];
+    if (cached != null && matches(cached, length)) {
+      return cached;
+    }
+    String id = new String(scratch, 0, length, StandardCharsets.US_ASCII);
+    ids[slot] = id;
+    return id;
+  }
+
+  private boolean matches(String cached, int length) {
+    if (cached.length() != length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (cached.charAt(i) != scratch[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  //Transaction ids are ASCII in both TransactionIdTypes, so each char is one byte.
+  private static void writeResponse(ByteBuffer out, long correlationId, byte status, String transactionId) {
+    int idLength = transactionId == null ? 0 : transactionId.length();
+    out.putInt(8 + 1 + 1 + idLength);
+    out.putLong(correlationId);
+    out.put(status);
+    out.put((byte) idLength);
+    for (int i = 0; i < idLength; i++) {
+      out.put((byte) transactionId.charAt(i));
+    }
+  }
+}
@@ -0,0 +1,27 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.LedgerStatus;
+import com.db.awmd.challenge.service.LedgerVerifier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/v1/ledger")
+public class LedgerController {
+
+  private final LedgerVerifier ledgerVerifier;
+
+  @Autowired
+  public LedgerController(LedgerVerifier ledgerVerifier) {
+    this.ledgerVerifier = ledgerVerifier;
+  }
+
+  //Read from running totals, so it costs the same at any number of accounts.
+  @GetMapping(path = "/total")
+  public ResponseEntity<LedgerStatus> getTotal() {
+    return ResponseEntity.ok(this.ledgerVerifier.getStatus());
+  }
+}
@@ -0,0 +1,26 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.service.TransferMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/metrics")
+public class MetricsController {
+
+    private final TransferMetrics transferMetrics;
+
+    @Autowired
+    public MetricsController(TransferMetrics transferMetrics) {
+        this.transferMetrics = transferMetrics;
+    }
+
+    @GetMapping
+    public Map<String, Object> getMetrics() {
+        return transferMetrics.report();
+    }
+}
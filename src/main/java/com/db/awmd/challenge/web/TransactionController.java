@@ -1,40 +1,212 @@
 package com.db.awmd.challenge.web;
 
+import com.db.awmd.challenge.config.TransferEngineProperties;
+import com.db.awmd.challenge.domain.BatchMode;
+import com.db.awmd.challenge.domain.BatchTransferResult;
+import com.db.awmd.challenge.domain.FanOutTransfer;
+import com.db.awmd.challenge.domain.FanOutTransferResult;
+import com.db.awmd.challenge.domain.HoldDetails;
 import com.db.awmd.challenge.domain.Transaction;
 import com.db.awmd.challenge.domain.TransactionDetails;
+import com.db.awmd.challenge.exception.HoldNotFoundException;
+import com.db.awmd.challenge.exception.IdempotencyKeyReusedException;
 import com.db.awmd.challenge.exception.InsufficientBalanceException;
 import com.db.awmd.challenge.exception.InvalidAccountException;
+import com.db.awmd.challenge.exception.TransferRejectedException;
+import com.db.awmd.challenge.repository.HoldRegistry;
+import com.db.awmd.challenge.repository.HoldRegistry.Hold;
+import com.db.awmd.challenge.service.IdempotencyCache;
 import com.db.awmd.challenge.service.TransactionService;
+import com.db.awmd.challenge.service.TransferAdmission;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.validation.ConstraintViolation;
 import javax.validation.Valid;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/v1/transaction")
 @Slf4j
 public class TransactionController {
 
+    public static final String NDJSON_VALUE = "application/x-ndjson";
+
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
+    //Names the caller for admission control; the remote address stands in when it is missing.
+    public static final String CLIENT_ID = "X-Client-Id";
+
+    public static final int MAX_BINARY_BODY = 1 << 20;
+
+    public static final int MAX_NDJSON_ITEMS = 10_000;
+
     private final TransactionService transactionService;
 
+    private final ObjectMapper objectMapper;
+
+    private final Validator validator;
+
+    private final Executor transferExecutor;
+
+    //Async transfers that have not started within this are dropped, see transfer.async.timeout-millis.
+    private final long asyncTimeoutNanos;
+
+    private final IdempotencyCache idempotencyCache;
+
+    private final TransferAdmission transferAdmission;
+
+    private final HoldRegistry holdRegistry;
+
+    //Longest ttl a hold may ask for, see holds.max-ttl-seconds.
+    private final long maxHoldTtlSeconds;
+
+    //Each request thread keeps its own buffers and BinaryTransferHandler for /binary.
+    private final ThreadLocal<BinaryBuffers> binaryBuffers;
+
     @Autowired
-    public TransactionController(TransactionService transactionService) {
+    public TransactionController(TransactionService transactionService, ObjectMapper objectMapper, Validator validator,
+                                 @Qualifier("transferExecutor") Executor transferExecutor, IdempotencyCache idempotencyCache,
+                                 TransferAdmission transferAdmission, HoldRegistry holdRegistry,
+                                 TransferEngineProperties transferEngineProperties,
+                                 @Value("${holds.max-ttl-seconds:86400}") long maxHoldTtlSeconds) {
         this.transactionService = transactionService;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.transferExecutor = transferExecutor;
+        this.asyncTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(transferEngineProperties.getAsync().getTimeoutMillis());
+        this.idempotencyCache = idempotencyCache;
+        this.transferAdmission = transferAdmission;
+        this.holdRegistry = holdRegistry;
+        this.maxHoldTtlSeconds = maxHoldTtlSeconds;
+        this.binaryBuffers = ThreadLocal.withInitial(() -> new BinaryBuffers(transactionService, transferAdmission));
     }
 
     @PostMapping(path = "/transfer",consumes = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<TransactionDetails> transact(@RequestBody @Valid Transaction transaction) {
+    public ResponseEntity<TransactionDetails> transact(@RequestBody @Valid Transaction transaction,
+                                                       @RequestHeader(name = IDEMPOTENCY_KEY, required = false) String idempotencyKey,
+                                                       HttpServletRequest request) {
+        String clientId = clientId(request);
+        return transfer(transaction, idempotencyKey, () -> admitted(clientId, transaction));
+    }
+
+    //Same as transact, but the request thread is released while the transfer runs on the
+    //transferExecutor, see transfer.async. A full executor queue is answered with 503 straight away,
+    //and a transfer still queued when its request timed out is dropped rather than run unseen.
+    @PostMapping(path = "/transfer/async", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<TransactionDetails>> transactAsync(@RequestBody @Valid Transaction transaction,
+                                                                               @RequestHeader(name = IDEMPOTENCY_KEY, required = false) String idempotencyKey,
+                                                                               HttpServletRequest request) {
+        //Admitted on the request thread, so a rejection never waits for the executor. A replayed
+        //idempotency key is answered from the cache, so it is only admitted should the transfer
+        //run after all because the one it replays failed.
+        String clientId = clientId(request);
+        boolean replay = idempotencyKey != null && this.idempotencyCache.contains(idempotencyKey);
+        long ticket;
+        try {
+            ticket = replay ? 0 : this.transferAdmission.admit(clientId, transaction.getSenderId(), transaction.getReceiverId());
+        } catch (TransferRejectedException tre) {
+            return CompletableFuture.completedFuture(tooManyRequests(transaction, TransactionDetails.builder().message(tre.getMessage()).build(), tre));
+        }
+        long deadline = System.nanoTime() + asyncTimeoutNanos;
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    if(System.nanoTime() - deadline > 0) {
+                        log.warn("Dropping transaction {} that waited past the async timeout", transaction);
+                        return serviceUnavailable("Transfer timed out waiting to run.");
+                    }
+                    return transfer(transaction, idempotencyKey, replay
+                            ? () -> admitted(clientId, transaction)
+                            : () -> this.transactionService.transferAmount(transaction));
+                } finally {
+                    if(!replay) {
+                        this.transferAdmission.complete(ticket);
+                    }
+                }
+            }, transferExecutor);
+        } catch (RejectedExecutionException ree) {
+            if(!replay) {
+                this.transferAdmission.complete(ticket);
+            }
+            log.debug("Rejected {} : transfer executor is full", transaction);
+            return CompletableFuture.completedFuture(serviceUnavailable("Too many transfers waiting to run."));
+        }
+    }
+
+    private static ResponseEntity<TransactionDetails> serviceUnavailable(String message) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, "1");
+        return new ResponseEntity<TransactionDetails>(TransactionDetails.builder().message(message).build(), headers,
+                HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    //Runs a transfer under admission control. Through the idempotency cache this only happens for
+    //a transfer that actually runs, so a replay takes no tokens.
+    private TransactionDetails admitted(String clientId, Transaction transaction) {
+        long ticket = this.transferAdmission.admit(clientId, transaction.getSenderId(), transaction.getReceiverId());
+        try {
+            return this.transactionService.transferAmount(transaction);
+        } finally {
+            this.transferAdmission.complete(ticket);
+        }
+    }
+
+    private static String clientId(HttpServletRequest request) {
+        String clientId = request.getHeader(CLIENT_ID);
+        return clientId != null ? clientId : request.getRemoteAddr();
+    }
+
+    private static <T> ResponseEntity<T> tooManyRequests(Object request, T body, TransferRejectedException tre) {
+        //Rejections come at the rate of the overload; TransferAdmission counts them.
+        log.debug("Rejected {} : {}", request, tre.getMessage());
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, Long.toString(Math.max(1, TimeUnit.MILLISECONDS.toSeconds(tre.getRetryAfterMillis() + 999))));
+        return new ResponseEntity<T>(body, headers, HttpStatus.TOO_MANY_REQUESTS);
+    }
+
+    //A retry carrying the idempotency key of an earlier transfer gets that transfer's details back.
+    private ResponseEntity<TransactionDetails> transfer(Transaction transaction, String idempotencyKey,
+                                                        Supplier<TransactionDetails> transfer) {
         log.info("Starting transaction {}", transaction);
 
         try {
-            TransactionDetails details = this.transactionService.transferAmount(transaction);
+            TransactionDetails details = idempotencyKey == null
+                    ? transfer.get()
+                    : this.idempotencyCache.execute(idempotencyKey, transaction, transfer);
             log.info("Transaction Completed Successfully : {}", transaction);
             return new ResponseEntity<TransactionDetails>(details ,HttpStatus.OK);
 
+        } catch (TransferRejectedException tre) {
+            return tooManyRequests(transaction, TransactionDetails.builder().message(tre.getMessage()).build(), tre);
+
         } catch (InvalidAccountException iae) {
             log.error("Error for transaction {} : {}", transaction, iae);
             return new ResponseEntity<TransactionDetails>(TransactionDetails.builder().message(iae.getMessage()).build(), HttpStatus.NOT_FOUND);
@@ -43,9 +215,267 @@ public class TransactionController {
             log.error("Error for transaction {} : {}", transaction, ibe);
             return new ResponseEntity<TransactionDetails>(TransactionDetails.builder().message(ibe.getMessage()).build(), HttpStatus.BAD_REQUEST);
 
+        } catch (IdempotencyKeyReusedException ikr) {
+            log.error("Error for transaction {} : {}", transaction, ikr);
+            return new ResponseEntity<TransactionDetails>(TransactionDetails.builder().message(ikr.getMessage()).build(), HttpStatus.UNPROCESSABLE_ENTITY);
+
+        } catch (IllegalArgumentException | ArithmeticException iae) {
+            //Amounts finer than the currency's minor unit, or balances that would overflow.
+            log.error("Error for transaction {} : {}", transaction, iae);
+            return new ResponseEntity<TransactionDetails>(TransactionDetails.builder().message(iae.getMessage()).build(), HttpStatus.BAD_REQUEST);
+
         } catch (Exception ex) {
             log.error("Error for transaction {} : {}", transaction, ex);
             return new ResponseEntity<TransactionDetails>(TransactionDetails.builder().message(ex.getMessage()).build(), HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
+
+    @PostMapping(path = "/transfers", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<BatchTransferResult> transactBatch(@RequestBody List<Transaction> transactions,
+                                                             @RequestParam(defaultValue = "BEST_EFFORT") BatchMode mode,
+                                                             HttpServletRequest request) {
+        log.info("Starting {} batch of {} transactions", mode, transactions.size());
+
+        //@Valid does not reach into collections, so each item is validated here instead.
+        List<Transaction> valid = new ArrayList<>(transactions.size());
+        List<Integer> validIndexes = new ArrayList<>(transactions.size());
+        TransactionDetails[] invalid = new TransactionDetails[transactions.size()];
+        for(int i = 0; i < transactions.size(); i++) {
+            Set<ConstraintViolation<Transaction>> violations = validator.validate(transactions.get(i));
+            if(violations.isEmpty()) {
+                valid.add(transactions.get(i));
+                validIndexes.add(i);
+            } else {
+                invalid[i] = TransactionDetails.builder()
+                        .transaction(transactions.get(i))
+                        .message(violations.stream()
+                                .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                                .sorted()
+                                .collect(Collectors.joining(", ")))
+                        .build();
+            }
+        }
+
+        if(mode == BatchMode.ALL_OR_NOTHING && valid.size() < transactions.size()) {
+            log.error("Rejected batch of {} transactions: {} invalid", transactions.size(), transactions.size() - valid.size());
+            return new ResponseEntity<BatchTransferResult>(merge(mode, false, invalid, Collections.emptyList(),
+                    Collections.emptyList(), transactions), HttpStatus.BAD_REQUEST);
+        }
+
+        //The batch is admitted as a whole: all of its valid items run, or none do.
+        long ticket;
+        try {
+            ticket = this.transferAdmission.admit(clientId(request), valid);
+        } catch (TransferRejectedException tre) {
+            List<TransactionDetails> rejected = valid.stream()
+                    .map(transaction -> TransactionDetails.builder().transaction(transaction).message(tre.getMessage()).build())
+                    .collect(Collectors.toList());
+            return tooManyRequests("batch of " + transactions.size() + " transactions",
+                    merge(mode, false, invalid, validIndexes, rejected, transactions), tre);
+        }
+        BatchTransferResult result;
+        try {
+            result = transactionService.transferBatch(valid, mode);
+        } finally {
+            this.transferAdmission.complete(ticket);
+        }
+        log.info("Batch completed, committed = {}, succeeded = {}", result.isCommitted(), result.getSucceeded());
+        return new ResponseEntity<BatchTransferResult>(merge(mode, result.isCommitted(), invalid, validIndexes, result.getResults(), transactions),
+                result.isCommitted() ? HttpStatus.OK : HttpStatus.BAD_REQUEST);
+    }
+
+    @PostMapping(path = "/transfers", consumes = NDJSON_VALUE)
+    public ResponseEntity<BatchTransferResult> transactBatchNdjson(InputStream body,
+                                                                   @RequestParam(defaultValue = "BEST_EFFORT") BatchMode mode,
+                                                                   HttpServletRequest request) throws IOException {
+        //One Transaction per line. Lines are parsed one at a time, but the whole batch is collected
+        //before any of it runs, so a body with more than MAX_NDJSON_ITEMS lines is turned away unread.
+        List<Transaction> transactions = new ArrayList<>();
+        try (MappingIterator<Transaction> iterator = objectMapper.readerFor(Transaction.class).readValues(body)) {
+            while(iterator.hasNext()) {
+                if(transactions.size() == MAX_NDJSON_ITEMS) {
+                    log.error("Rejected {} batch: more than {} transactions", mode, MAX_NDJSON_ITEMS);
+                    return new ResponseEntity<BatchTransferResult>(HttpStatus.PAYLOAD_TOO_LARGE);
+                }
+                transactions.add(iterator.next());
+            }
+        }
+        return transactBatch(transactions, mode, request);
+    }
+
+    //Fixed-layout frames for high-frequency clients, see BinaryTransferHandler. A body may carry many
+    //request frames and gets one response frame per request, in order. Nothing is executed unless
+    //every frame in the body is well-formed.
+    @PostMapping(path = "/binary", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public void transactBinary(InputStream body, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        BinaryBuffers buffers = binaryBuffers.get();
+        ByteBuffer in = buffers.read(body);
+        if(in == null) {
+            response.setStatus(HttpStatus.PAYLOAD_TOO_LARGE.value());
+            return;
+        }
+        if(BinaryTransferHandler.completeFrames(in) != in.remaining()) {
+            log.error("Rejected binary transfer body of {} bytes: malformed or truncated frame", in.remaining());
+            response.setStatus(HttpStatus.BAD_REQUEST.value());
+            return;
+        }
+
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+        OutputStream out = response.getOutputStream();
+        String clientId = clientId(request);
+        while(in.hasRemaining()) {
+            buffers.out.clear();
+            buffers.handler.handle(in, buffers.out, clientId);
+            out.write(buffers.out.array(), 0, buffers.out.position());
+        }
+    }
+
+    //One sender paying many receivers, applied as a whole; see TransactionService.transferFanOut.
+    @PostMapping(path = "/fan-out", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<FanOutTransferResult> transactFanOut(@RequestBody @Valid FanOutTransfer transfer,
+                                                               HttpServletRequest request) {
+        log.info("Starting fan-out of {} legs from {}", transfer.getLegs().size(), transfer.getSenderId());
+
+        List<Transaction> transactions = transfer.getTransactions();
+        long ticket;
+        try {
+            ticket = this.transferAdmission.admit(clientId(request), transactions);
+        } catch (TransferRejectedException tre) {
+            return tooManyRequests(transfer, FanOutTransferResult.builder()
+                    .committed(false)
+                    .total(BigDecimal.ZERO)
+                    .succeeded(0)
+                    .failed(transactions.size())
+                    .results(transactions.stream()
+                            .map(transaction -> TransactionDetails.builder().transaction(transaction).message(tre.getMessage()).build())
+                            .collect(Collectors.toList()))
+                    .build(), tre);
+        }
+        FanOutTransferResult result;
+        try {
+            result = transactionService.transferFanOut(transfer);
+        } finally {
+            this.transferAdmission.complete(ticket);
+        }
+        log.info("Fan-out completed, committed = {}, total = {}", result.isCommitted(), result.getTotal());
+        return new ResponseEntity<FanOutTransferResult>(result, result.isCommitted() ? HttpStatus.OK : HttpStatus.BAD_REQUEST);
+    }
+
+    //Sets the amount aside on the sender; capture or release it before ttlSeconds run out.
+    @PostMapping(path = "/holds", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> hold(@RequestBody @Valid Transaction transaction,
+                                  @RequestParam(defaultValue = "60") long ttlSeconds,
+                                  HttpServletRequest request) {
+        log.info("Holding {} for {} s", transaction, ttlSeconds);
+        if(ttlSeconds < 1 || ttlSeconds > maxHoldTtlSeconds) {
+            log.error("Rejected hold of {} : ttlSeconds {} outside 1..{}", transaction, ttlSeconds, maxHoldTtlSeconds);
+            return new ResponseEntity<>(HoldDetails.builder()
+                    .message("ttlSeconds must be between 1 and " + maxHoldTtlSeconds + ".").build(), HttpStatus.BAD_REQUEST);
+        }
+        return admittedHold(clientId(request), transaction.getSenderId(), transaction.getReceiverId(),
+                () -> this.transactionService.hold(transaction, TimeUnit.SECONDS.toMillis(ttlSeconds)), HttpStatus.CREATED);
+    }
+
+    @PostMapping(path = "/holds/{holdId}/capture")
+    public ResponseEntity<?> capture(@PathVariable String holdId, HttpServletRequest request) {
+        log.info("Capturing hold {}", holdId);
+        Hold hold = this.holdRegistry.get(holdId);
+        if(hold == null) {
+            //Nothing to move; the service reports the unknown hold.
+            return holdResponse(() -> this.transactionService.capture(holdId), HttpStatus.OK);
+        }
+        return admittedHold(clientId(request), hold.getSender().getAccountId(), hold.getReceiver().getAccountId(),
+                () -> this.transactionService.capture(holdId), HttpStatus.OK);
+    }
+
+    @DeleteMapping(path = "/holds/{holdId}")
+    public ResponseEntity<?> release(@PathVariable String holdId) {
+        log.info("Releasing hold {}", holdId);
+        return holdResponse(() -> this.transactionService.release(holdId), HttpStatus.OK);
+    }
+
+    private ResponseEntity<?> admittedHold(String clientId, String senderId, String receiverId, Supplier<?> action,
+                                           HttpStatus status) {
+        long ticket;
+        try {
+            ticket = this.transferAdmission.admit(clientId, senderId, receiverId);
+        } catch (TransferRejectedException tre) {
+            return tooManyRequests(senderId + " -> " + receiverId, HoldDetails.builder().message(tre.getMessage()).build(), tre);
+        }
+        try {
+            return holdResponse(action, status);
+        } finally {
+            this.transferAdmission.complete(ticket);
+        }
+    }
+
+    private static ResponseEntity<?> holdResponse(Supplier<?> action, HttpStatus status) {
+        try {
+            return new ResponseEntity<>(action.get(), status);
+
+        } catch (InvalidAccountException | HoldNotFoundException nfe) {
+            log.error("Hold failed : {}", nfe.getMessage());
+            return new ResponseEntity<>(HoldDetails.builder().message(nfe.getMessage()).build(), HttpStatus.NOT_FOUND);
+
+        } catch (InsufficientBalanceException | IllegalArgumentException | ArithmeticException
+                 | UnsupportedOperationException ex) {
+            //Also holds on a balance engine or transfer engine that does not support them.
+            log.error("Hold failed : {}", ex.getMessage());
+            return new ResponseEntity<>(HoldDetails.builder().message(ex.getMessage()).build(), HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    //Puts the service results back at the positions of the items that passed validation.
+    private static BatchTransferResult merge(BatchMode mode, boolean committed, TransactionDetails[] invalid,
+                                             List<Integer> validIndexes, List<TransactionDetails> serviceResults,
+                                             List<Transaction> transactions) {
+        TransactionDetails[] results = invalid.clone();
+        for(int k = 0; k < validIndexes.size(); k++) {
+            results[validIndexes.get(k)] = serviceResults.get(k);
+        }
+        int succeeded = 0;
+        for(int i = 0; i < results.length; i++) {
+            if(results[i] == null) {
+                results[i] = TransactionDetails.builder().transaction(transactions.get(i)).message("Batch rolled back.").build();
+            } else if(results[i].getTransactionId() != null) {
+                succeeded++;
+            }
+        }
+        return BatchTransferResult.builder()
+                .mode(mode)
+                .committed(committed)
+                .succeeded(succeeded)
+                .failed(results.length - succeeded)
+                .results(Arrays.asList(results))
+                .build();
+    }
+
+    private static class BinaryBuffers {
+
+        private final BinaryTransferHandler handler;
+
+        private final ByteBuffer out = ByteBuffer.allocate(64 * BinaryTransferHandler.MAX_RESPONSE_FRAME);
+
+        private byte[] body = new byte[64 * 1024];
+
+        private BinaryBuffers(TransactionService transactionService, TransferAdmission transferAdmission) {
+            this.handler = new BinaryTransferHandler(transactionService, transferAdmission);
+        }
+
+        //The whole body, or null if it is longer than MAX_BINARY_BODY.
+        private ByteBuffer read(InputStream in) throws IOException {
+            int length = 0;
+            for(int read; (read = in.read(body, length, body.length - length)) != -1; ) {
+                length += read;
+                if(length == body.length) {
+                    if(body.length == MAX_BINARY_BODY) {
+                        return in.read() == -1 ? ByteBuffer.wrap(body, 0, length) : null;
+                    }
+                    body = Arrays.copyOf(body, Math.min(2 * body.length, MAX_BINARY_BODY));
+                }
+            }
+            return ByteBuffer.wrap(body, 0, length);
+        }
+    }
 }
@@ -0,0 +1,436 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.config.GatewayProperties;
+import com.db.awmd.challenge.service.TransactionService;
+import com.db.awmd.challenge.service.TransferAdmission;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Plain TCP transport for {@link BinaryTransferHandler} frames, for internal clients whose
+ * transfers would otherwise each pay for HTTP framing.
+ *
+ * <p>Clients may pipeline: frames go out back to back without waiting for responses, and the
+ * responses come back in request order on the same connection. An acceptor thread hands new
+ * connections round robin to the I/O threads. Each I/O thread owns its connections and runs a
+ * selector loop: whatever arrives in one read is decoded and executed as a batch, and the
+ * responses are queued in pooled buffers that go out in one gathering write.
+ *
+ * <p>Transfers run on the I/O thread itself, with no hand-off to a worker: a batch that waits for
+ * account locks or for the journal to reach disk blocks every other connection of that thread
+ * until it is done. That keeps each connection's responses in order for free and costs nothing
+ * when transfers are quick, but a slow journal shows up as latency on all connections of a
+ * thread; size gateway.io-threads for that rather than for the network alone.
+ *
+ * <p>A connection with more than gateway.max-pending-bytes of responses waiting is not read again
+ * until the client has taken them, so a client that stops reading only stalls itself. A malformed
+ * frame closes the connection. Transfers go through {@link TransferAdmission} with the client's
+ * address as its client id. The gateway has no authentication, so it listens on loopback
+ * unless gateway.address says otherwise. On shutdown no more requests are read, and connections are closed
+ * once the responses to what was already read have been written, or when the timeout runs out.
+ */
+@Slf4j
+@Component
+@EnableConfigurationProperties(GatewayProperties.class)
+@ManagedResource(objectName = "com.db.awmd.challenge:type=TransferGateway")
+public class TransferGateway {
+
+  //Read buffer per connection and pooled response buffer; far larger than any frame.
+  private static final int BUFFER_SIZE = 16 * 1024;
+
+  private final GatewayProperties properties;
+
+  private final TransactionService transactionService;
+
+  private final TransferAdmission admission;
+
+  private final int maxPendingBuffers;
+
+  private final AtomicInteger connections = new AtomicInteger();
+
+  private final LongAdder rejected = new LongAdder();
+
+  private final LongAdder requests = new LongAdder();
+
+  private ServerSocketChannel server;
+
+  private IoThread[] ioThreads = new IoThread[0];
+
+  private volatile boolean stopping;
+
+  @Autowired
+  public TransferGateway(GatewayProperties properties, TransactionService transactionService,
+    TransferAdmission admission) {
+    this.properties = properties;
+    this.transactionService = transactionService;
+    this.admission = admission;
+    this.maxPendingBuffers = Math.max(1, properties.getMaxPendingBytes() / BUFFER_SIZE);
+  }
+
+  @PostConstruct
+  public void start() throws IOException {
+    if (!properties.isEnabled()) {
+      return;
+    }
+    int threads = properties.getIoThreads() > 0 ? properties.getIoThreads() : Runtime.getRuntime().availableProcessors();
+    server = ServerSocketChannel.open();
+    server.bind(new InetSocketAddress(properties.getAddress(), properties.getPort()));
+    ioThreads = new IoThread[threads];
+    for (int i = 0; i < threads; i++) {
+      ioThreads[i] = new IoThread(i);
+      ioThreads[i].start();
+    }
+    Thread acceptor = new Thread(this::accept, "gateway-acceptor");
+    acceptor.setDaemon(true);
+    acceptor.start();
+    log.info("Transfer gateway listening on {}:{} with {} I/O threads", properties.getAddress(), getPort(), threads);
+  }
+
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    if (server == null || stopping) {
+      return;
+    }
+    stopping = true;
+    try {
+      server.close();
+    } catch (IOException ioe) {
+      log.warn("Closing the gateway socket failed", ioe);
+    }
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(properties.getShutdownTimeoutMillis());
+    for (IoThread ioThread : ioThreads) {
+      ioThread.selector.wakeup();
+    }
+    for (IoThread ioThread : ioThreads) {
+      ioThread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+      if (ioThread.isAlive()) {
+        log.warn("{} connections still open on {} after the shutdown timeout, closing them", ioThread.open, ioThread.getName());
+        ioThread.forced = true;
+        ioThread.selector.wakeup();
+        ioThread.join();
+      }
+    }
+  }
+
+  //The bound port, which is the configured one unless that was 0; -1 when not listening.
+  @ManagedAttribute(description = "Port the gateway listens on")
+  public int getPort() {
+    return server == null ? -1 : server.socket().getLocalPort();
+  }
+
+  @ManagedAttribute(description = "Open client connections")
+  public int getConnections() {
+    return connections.get();
+  }
+
+  @ManagedAttribute(description = "Connections closed on accept because gateway.max-connections were open")
+  public long getRejectedConnections() {
+    return rejected.sum();
+  }
+
+  @ManagedAttribute(description = "Transfer frames answered")
+  public long getRequests() {
+    return requests.sum();
+  }
+
+  private void accept() {
+    int next = 0;
+    while (!stopping) {
+      SocketChannel channel;
+      try {
+        channel = server.accept();
+      } catch (ClosedChannelException cce) {
+        return;
+      } catch (IOException ioe) {
+        //Typically out of file descriptors; back off rather than spin.
+        log.warn("Accepting a gateway connection failed", ioe);
+        sleepQuietly(10);
+        continue;
+      }
+      if (connections.incrementAndGet() > properties.getMaxConnections()) {
+        connections.decrementAndGet();
+        rejected.increment();
+        closeQuietly(channel);
+        continue;
+      }
+      ioThreads[next].add(channel);
+      next = (next + 1) % ioThreads.length;
+    }
+  }
+
+  private static void sleepQuietly(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void closeQuietly(SocketChannel channel) {
+    try {
+      channel.close();
+    } catch (IOException ioe) {
+      log.debug("Closing a gateway connection failed", ioe);
+    }
+  }
+
+  private final class IoThread extends Thread {
+
+    private final Selector selector;
+
+    private final Queue<SocketChannel> added = new ConcurrentLinkedQueue<>();
+
+    //Handlers are not thread-safe; this one is shared by all connections of the thread.
+    private final BinaryTransferHandler handler = new BinaryTransferHandler(transactionService, admission);
+
+    private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+
+    private int open;
+
+    private volatile boolean forced;
+
+    private IoThread(int index) throws IOException {
+      super("gateway-io-" + index);
+      this.selector = Selector.open();
+    }
+
+    private void add(SocketChannel channel) {
+      added.add(channel);
+      selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (!forced) {
+          selector.select();
+          register();
+          Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+          while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            ((Connection) key.attachment()).ready();
+          }
+          if (stopping) {
+            for (SelectionKey key : selector.keys()) {
+              if (key.isValid()) {
+                ((Connection) key.attachment()).drain();
+              }
+            }
+            if (open == 0) {
+              break;
+            }
+          }
+        }
+      } catch (IOException ioe) {
+        log.error("Gateway selector failed", ioe);
+      } finally {
+        for (SelectionKey key : selector.keys()) {
+          ((Connection) key.attachment()).close();
+        }
+        try {
+          selector.close();
+        } catch (IOException ioe) {
+          log.debug("Closing the gateway selector failed", ioe);
+        }
+      }
+    }
+
+    private void register() {
+      for (SocketChannel channel; (channel = added.poll()) != null; ) {
+        try {
+          if (stopping) {
+            throw new ClosedChannelException();
+          }
+          channel.configureBlocking(false);
+          channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+          Connection connection = new Connection(this, channel);
+          connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+          open++;
+        } catch (IOException ioe) {
+          connections.decrementAndGet();
+          closeQuietly(channel);
+        }
+      }
+    }
+
+    private ByteBuffer take() {
+      ByteBuffer buffer = free.poll();
+      return buffer != null ? buffer : ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    private void release(ByteBuffer buffer) {
+      //Keep enough for a few busy connections; the rest go to the garbage collector.
+      if (free.size() < 4 * maxPendingBuffers) {
+        buffer.clear();
+        free.add(buffer);
+      }
+    }
+  }
+
+  private final class Connection {
+
+    private final IoThread ioThread;
+
+    private final SocketChannel channel;
+
+    private final String clientId;
+
+    private final ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    //Responses to write, in order, each flipped for reading.
+    private final ByteBuffer[] pending = new ByteBuffer[maxPendingBuffers + 1];
+
+    private int pendingCount;
+
+    //Response buffer being filled, not yet in pending.
+    private ByteBuffer filling;
+
+    private SelectionKey key;
+
+    //Complete frames left unanswered while pending was full.
+    private boolean backlog;
+
+    private boolean endOfInput;
+
+    private boolean closed;
+
+    private Connection(IoThread ioThread, SocketChannel channel) throws IOException {
+      this.ioThread = ioThread;
+      this.channel = channel;
+      SocketAddress remote = channel.getRemoteAddress();
+      this.clientId = remote instanceof InetSocketAddress
+        ? ((InetSocketAddress) remote).getAddress().getHostAddress() : String.valueOf(remote);
+    }
+
+    private void ready() {
+      try {
+        if (key.isValid() && key.isReadable() && channel.read(in) < 0) {
+          endOfInput = true;
+        }
+        if (key.isValid()) {
+          process();
+        }
+      } catch (IOException ioe) {
+        log.debug("Gateway connection failed", ioe);
+        close();
+      }
+    }
+
+    //Executes the complete frames read so far and writes the responses. Whenever a write makes
+    //room for more responses, the frames left over go next, so a backlog never waits for a read.
+    private void process() throws IOException {
+      in.flip();
+      if (BinaryTransferHandler.completeFrames(in) < 0) {
+        log.warn("Closing gateway connection from {}: malformed frame", clientId);
+        close();
+        return;
+      }
+      do {
+        while (BinaryTransferHandler.hasCompleteFrame(in)) {
+          if (filling == null || filling.remaining() < BinaryTransferHandler.MAX_RESPONSE_FRAME) {
+            if (filling != null) {
+              queue();
+            }
+            if (pendingCount >= maxPendingBuffers) {
+              break;
+            }
+            filling = ioThread.take();
+          }
+          requests.add(ioThread.handler.handle(in, filling, clientId));
+        }
+        backlog = BinaryTransferHandler.hasCompleteFrame(in);
+        write();
+      } while (backlog && pendingCount < maxPendingBuffers);
+      in.compact();
+      updateInterest();
+    }
+
+    private void queue() {
+      filling.flip();
+      pending[pendingCount++] = filling;
+      filling = null;
+    }
+
+    private void write() throws IOException {
+      if (filling != null && filling.position() > 0) {
+        queue();
+      }
+      if (pendingCount > 0) {
+        channel.write(pending, 0, pendingCount);
+        int written = 0;
+        while (written < pendingCount && !pending[written].hasRemaining()) {
+          ioThread.release(pending[written++]);
+        }
+        System.arraycopy(pending, written, pending, 0, pendingCount - written);
+        for (int i = pendingCount - written; i < pendingCount; i++) {
+          pending[i] = null;
+        }
+        pendingCount -= written;
+      }
+    }
+
+    //A backlog only remains while pending is full, so OP_WRITE stays set until it can be handled.
+    private void updateInterest() {
+      boolean reading = !endOfInput && !stopping;
+      if (!reading && pendingCount == 0 && !backlog) {
+        //Nothing more will be read, and everything read has been answered.
+        close();
+        return;
+      }
+      int ops = pendingCount > 0 ? SelectionKey.OP_WRITE : 0;
+      if (reading && pendingCount < maxPendingBuffers) {
+        ops |= SelectionKey.OP_READ;
+      }
+      key.interestOps(ops);
+    }
+
+    private void drain() {
+      try {
+        process();
+      } catch (IOException ioe) {
+        close();
+      }
+    }
+
+    private void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      key.cancel();
+      closeQuietly(channel);
+      connections.decrementAndGet();
+      ioThread.open--;
+      for (int i = 0; i < pendingCount; i++) {
+        ioThread.release(pending[i]);
+      }
+      if (filling != null) {
+        ioThread.release(filling);
+      }
+    }
+  }
+}
@@ -4,11 +4,20 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.standaloneSetup;
 import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transaction;
+import com.db.awmd.challenge.repository.OffHeapAccountsRepository;
+import com.db.awmd.challenge.repository.TransactionHistory;
+import com.db.awmd.challenge.repository.TransactionJournal;
 import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.TransactionService;
+import com.db.awmd.challenge.web.AccountsController;
 import java.math.BigDecimal;
 import org.junit.Before;
 import org.junit.Test;
@@ -31,6 +40,9 @@ public class AccountsControllerTest {
   @Autowired
   private AccountsService accountsService;
 
+  @Autowired
+  private TransactionService transactionService;
+
   @Autowired
   private WebApplicationContext webApplicationContext;
 
@@ -99,6 +111,143 @@ public class AccountsControllerTest {
     this.mockMvc.perform(get("/v1/accounts/" + uniqueAccountId))
       .andExpect(status().isOk())
       .andExpect(
-        content().string("{\"accountId\":\"" + uniqueAccountId + "\",\"balance\":123.45}"));
+        content().string("{\"accountId\":\"" + uniqueAccountId + "\",\"balance\":123.45,\"availableBalance\":123.45}"));
+  }
+
+  @Test
+  public void getAccountServesLastPublishedSnapshot() throws Exception {
+    String uniqueAccountId = "Id-" + System.currentTimeMillis();
+    Account account = new Account(uniqueAccountId, new BigDecimal("123.45"));
+    this.accountsService.createAccount(account);
+
+    //A change that has not been published yet is not visible to readers.
+    account.applyDebit(2340);
+    this.mockMvc.perform(get("/v1/accounts/" + uniqueAccountId))
+      .andExpect(status().isOk())
+      .andExpect(header().string("ETag", "\"1\""))
+      .andExpect(
+        content().string("{\"accountId\":\"" + uniqueAccountId + "\",\"balance\":123.45,\"availableBalance\":123.45}"));
+
+    account.publish();
+    this.mockMvc.perform(get("/v1/accounts/" + uniqueAccountId))
+      .andExpect(status().isOk())
+      .andExpect(header().string("ETag", "\"2\""))
+      .andExpect(
+        content().string("{\"accountId\":\"" + uniqueAccountId + "\",\"balance\":100.05,\"availableBalance\":100.05}"));
+  }
+
+  @Test
+  public void getOffHeapAccountSendsNoETag() throws Exception {
+    //Views of the off-heap store publish no snapshots, so they have no version to compare.
+    OffHeapAccountsRepository repository = new OffHeapAccountsRepository(16, TransactionJournal.disabled());
+    repository.createAccount(new Account("Id-1", new BigDecimal("123.45")));
+    MockMvc offHeapMvc = standaloneSetup(new AccountsController(new AccountsService(repository),
+      TransactionHistory.disabled(), null)).build();
+    repository.getAccount("Id-1").debit(new BigDecimal("23.40"));
+
+    offHeapMvc.perform(get("/v1/accounts/Id-1").header("If-None-Match", "\"0\""))
+      .andExpect(status().isOk())
+      .andExpect(header().doesNotExist("ETag"))
+      .andExpect(content().string("{\"accountId\":\"Id-1\",\"balance\":100.05,\"availableBalance\":100.05}"));
+  }
+
+  @Test
+  public void getTransactionsPagesThroughHistory() throws Exception {
+    String sender = "Id-" + System.nanoTime();
+    String receiver = "Id-" + System.nanoTime();
+    this.accountsService.createAccount(new Account(sender, new BigDecimal(100)));
+    this.accountsService.createAccount(new Account(receiver, new BigDecimal(100)));
+    for (int i = 1; i <= 3; i++) {
+      this.transactionService.transferAmount(new Transaction(sender, receiver, new BigDecimal(i)));
+    }
+
+    String firstPage = this.mockMvc.perform(get("/v1/accounts/" + receiver + "/transactions?limit=2"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.transactions.length()").value(2))
+      .andExpect(jsonPath("$.transactions[0].senderId").value(sender))
+      .andExpect(jsonPath("$.transactions[0].amount").value(1))
+      .andExpect(jsonPath("$.transactions[1].amount").value(2))
+      .andReturn().getResponse().getContentAsString();
+    String cursor = firstPage.replaceAll(".*\"nextCursor\":(\\d+).*", "$1");
+
+    this.mockMvc.perform(get("/v1/accounts/" + receiver + "/transactions?limit=2&cursor=" + cursor))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.transactions.length()").value(1))
+      .andExpect(jsonPath("$.transactions[0].amount").value(3))
+      .andExpect(jsonPath("$.nextCursor").doesNotExist());
+  }
+
+  @Test
+  public void getTransactionsUnknownAccount() throws Exception {
+    this.mockMvc.perform(get("/v1/accounts/Id-unknown/transactions"))
+      .andExpect(status().isNotFound());
+  }
+
+  @Test
+  public void importAccountsNdjson() throws Exception {
+    String id = "Id-" + System.nanoTime();
+    this.accountsService.createAccount(new Account(id + "-taken", new BigDecimal(5)));
+
+    this.mockMvc.perform(post("/v1/accounts/import").contentType("application/x-ndjson")
+      .content("{\"accountId\":\"" + id + "-a\",\"balance\":100.25}\n"
+        + "\n"
+        + "{\"accountId\":\"" + id + "-taken\",\"balance\":1}\n"
+        + "{\"accountId\":\"" + id + "-b\",\"balance\":-1}\n"
+        + "not json\n"
+        + "{\"accountId\":\"" + id + "-c\",\"balance\":7}"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.created").value(2))
+      .andExpect(jsonPath("$.duplicates").value(1))
+      .andExpect(jsonPath("$.invalid").value(2))
+      .andExpect(jsonPath("$.errors.length()").value(3));
+
+    assertThat(accountsService.getAccount(id + "-a").getBalance()).isEqualByComparingTo("100.25");
+    assertThat(accountsService.getAccount(id + "-c").getBalance()).isEqualByComparingTo("7");
+    assertThat(accountsService.getAccount(id + "-taken").getBalance()).isEqualByComparingTo("5");
+    assertThat(accountsService.getAccount(id + "-b")).isNull();
+  }
+
+  @Test
+  public void importAccountsCsv() throws Exception {
+    this.mockMvc.perform(post("/v1/accounts/import").contentType("text/csv")
+      .content("accountId,balance\nId-1,10\n\"Id,2\",20.5\nId-3,abc\n"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.created").value(2))
+      .andExpect(jsonPath("$.invalid").value(1));
+
+    assertThat(accountsService.getAccount("Id,2").getBalance()).isEqualByComparingTo("20.5");
+  }
+
+  @Test
+  public void exportAccounts() throws Exception {
+    this.accountsService.createAccount(new Account("Id-1", new BigDecimal("10.50")));
+    this.accountsService.createAccount(new Account("Id,2", new BigDecimal(20)));
+
+    String ndjson = this.mockMvc.perform(get("/v1/accounts/export"))
+      .andExpect(status().isOk())
+      .andExpect(content().contentType("application/x-ndjson"))
+      .andReturn().getResponse().getContentAsString();
+    assertThat(ndjson.split("\n")).containsExactlyInAnyOrder(
+      "{\"accountId\":\"Id-1\",\"balance\":10.5}", "{\"accountId\":\"Id,2\",\"balance\":20}");
+
+    String csv = this.mockMvc.perform(get("/v1/accounts/export?format=CSV"))
+      .andExpect(status().isOk())
+      .andReturn().getResponse().getContentAsString();
+    assertThat(csv).startsWith("accountId,balance\n");
+    assertThat(csv).contains("Id-1,10.5\n", "\"Id,2\",20\n");
+  }
+
+  @Test
+  public void getLedgerTotal() throws Exception {
+    this.mockMvc.perform(post("/v1/accounts").contentType(MediaType.APPLICATION_JSON)
+      .content("{\"accountId\":\"Id-1\",\"balance\":1000.25}")).andExpect(status().isCreated());
+    this.mockMvc.perform(post("/v1/accounts").contentType(MediaType.APPLICATION_JSON)
+      .content("{\"accountId\":\"Id-2\",\"balance\":500}")).andExpect(status().isCreated());
+
+    this.mockMvc.perform(get("/v1/ledger/total"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.total").value(1500.25))
+      .andExpect(jsonPath("$.createdTotal").value(1500.25))
+      .andExpect(jsonPath("$.inFlight").value(0));
   }
 }
@@ -0,0 +1,161 @@
+package com.db.awmd.challenge.domain;
+
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class AtomicBalanceEngineTest {
+
+    @Test
+    public void debitOfTheWholeBalanceSucceedsAndOneMoreFails() {
+        //Arrange
+        AtomicBalanceEngine engine = new AtomicBalanceEngine(100);
+
+        //Act
+        engine.debit(100);
+
+        //Assert
+        Assert.assertEquals(0, engine.getBalance());
+        try {
+            engine.debit(1);
+            Assert.fail("Debit beyond the balance succeeded");
+        } catch (InsufficientBalanceException expected) {
+            Assert.assertEquals(0, engine.getBalance());
+        }
+    }
+
+    @Test
+    public void heldMoneyCannotBeDebited() {
+        //Arrange
+        AtomicBalanceEngine engine = new AtomicBalanceEngine(100);
+        engine.hold(40);
+
+        //Act and Assert
+        try {
+            engine.debit(61);
+            Assert.fail("Debit of held money succeeded");
+        } catch (InsufficientBalanceException expected) {
+            Assert.assertEquals(100, engine.getBalance());
+        }
+        try {
+            engine.hold(61);
+            Assert.fail("Hold of held money succeeded");
+        } catch (InsufficientBalanceException expected) {
+            Assert.assertEquals(40, engine.getHeld());
+        }
+        engine.debit(60);
+        Assert.assertEquals(40, engine.getBalance());
+        Assert.assertEquals(40, engine.getHeld());
+    }
+
+    @Test
+    public void releaseAndCaptureMoveHeldMoney() {
+        //Arrange
+        AtomicBalanceEngine engine = new AtomicBalanceEngine(100);
+        engine.hold(30);
+        engine.hold(20);
+
+        //Act
+        engine.releaseHold(30);
+        engine.captureHold(20);
+
+        //Assert
+        //Captured money leaves the hold; the ledger balance is available plus held.
+        Assert.assertEquals(0, engine.getHeld());
+        Assert.assertEquals(80, engine.getBalance());
+    }
+
+    @Test
+    public void concurrentDebitsNeverOverdraw() throws Exception {
+        //Arrange
+        AtomicBalanceEngine engine = new AtomicBalanceEngine(10_000);
+        AtomicLong debited = new AtomicLong();
+        AtomicBoolean negativeSeen = new AtomicBoolean();
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        List<Future<?>> results = new ArrayList<>();
+
+        //Act
+        for(int t = 0; t < 8; t++) {
+            results.add(executorService.submit(() -> {
+                for(int i = 0; i < 5_000; i++) {
+                    try {
+                        engine.debit(3);
+                        debited.addAndGet(3);
+                    } catch (InsufficientBalanceException ibe) {
+                        //Expected once the balance runs out.
+                    }
+                    if(engine.getBalance() < 0) {
+                        negativeSeen.set(true);
+                    }
+                }
+            }));
+        }
+        for(Future<?> result : results) {
+            result.get(30, TimeUnit.SECONDS);
+        }
+        executorService.shutdown();
+
+        //Assert
+        Assert.assertFalse(negativeSeen.get());
+        Assert.assertEquals(9_999, debited.get());
+        Assert.assertEquals(1, engine.getBalance());
+    }
+
+    @Test
+    public void concurrentHoldsKeepBalanceAndHeldConsistent() throws Exception {
+        //Arrange
+        AtomicBalanceEngine engine = new AtomicBalanceEngine(1_000);
+        AtomicLong credited = new AtomicLong();
+        AtomicLong spent = new AtomicLong();
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        List<Future<?>> results = new ArrayList<>();
+
+        //Act
+        for(int t = 0; t < 8; t++) {
+            results.add(executorService.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for(int i = 0; i < 5_000; i++) {
+                    long amount = 1 + random.nextInt(50);
+                    try {
+                        engine.hold(amount);
+                    } catch (InsufficientBalanceException ibe) {
+                        engine.credit(amount);
+                        credited.addAndGet(amount);
+                        continue;
+                    }
+                    if(random.nextBoolean()) {
+                        engine.releaseHold(amount);
+                    } else {
+                        engine.captureHold(amount);
+                        spent.addAndGet(amount);
+                    }
+                    try {
+                        engine.debit(amount);
+                        spent.addAndGet(amount);
+                    } catch (InsufficientBalanceException ibe) {
+                        //Other threads hold the rest for now.
+                    }
+                }
+            }));
+        }
+        for(Future<?> result : results) {
+            result.get(30, TimeUnit.SECONDS);
+        }
+        executorService.shutdown();
+
+        //Assert
+        Assert.assertEquals(0, engine.getHeld());
+        Assert.assertEquals(1_000 + credited.get() - spent.get(), engine.getBalance());
+        Assert.assertTrue(engine.getBalance() >= 0);
+    }
+}
@@ -0,0 +1,107 @@
+package com.db.awmd.challenge.domain;
+
+import com.db.awmd.challenge.exception.CreditOnlyAccountException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class StripedCreditBalanceEngineTest {
+
+    @Test
+    public void concurrentCreditsAllCount() throws Exception {
+        //Arrange
+        StripedCreditBalanceEngine engine = new StripedCreditBalanceEngine(100);
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        List<Future<?>> results = new ArrayList<>();
+
+        //Act
+        for(int t = 0; t < 8; t++) {
+            results.add(executorService.submit(() -> {
+                for(int i = 0; i < 10_000; i++) {
+                    engine.credit(7);
+                }
+            }));
+        }
+        for(Future<?> result : results) {
+            result.get(30, TimeUnit.SECONDS);
+        }
+        executorService.shutdown();
+
+        //Assert
+        Assert.assertEquals(100 + 8 * 10_000 * 7, engine.getBalance());
+        Assert.assertEquals(0, engine.getHeld());
+    }
+
+    @Test
+    public void debitsAndHoldsAreRefused() {
+        //Arrange
+        StripedCreditBalanceEngine engine = new StripedCreditBalanceEngine(100);
+
+        //Act and Assert
+        try {
+            engine.debit(1);
+            Assert.fail("Debit of a credit-only account succeeded");
+        } catch (CreditOnlyAccountException expected) {
+            Assert.assertEquals(100, engine.getBalance());
+        }
+        try {
+            engine.hold(1);
+            Assert.fail("Hold on a credit-only account succeeded");
+        } catch (CreditOnlyAccountException expected) {
+            Assert.assertEquals(0, engine.getHeld());
+        }
+    }
+
+    @Test
+    public void revertedCreditLeavesTheBalanceAsItWas() {
+        //Arrange
+        StripedCreditBalanceEngine engine = new StripedCreditBalanceEngine(100);
+        engine.credit(50);
+
+        //Act
+        engine.revertCredit(50);
+
+        //Assert
+        Assert.assertEquals(100, engine.getBalance());
+        try {
+            engine.revertCredit(101);
+            Assert.fail("Reverted more than was credited");
+        } catch (IllegalStateException expected) {
+            Assert.assertEquals(100, engine.getBalance());
+        }
+    }
+
+    @Test
+    public void balanceNeverWrapsNegative() {
+        //Arrange
+        StripedCreditBalanceEngine engine = new StripedCreditBalanceEngine(0);
+        long credits = 0;
+
+        //Act
+        try {
+            while(credits <= 64) {
+                engine.credit(StripedCreditBalanceEngine.MAX_CELL);
+                credits++;
+            }
+            Assert.fail("Credits beyond Long.MAX_VALUE succeeded");
+        } catch (ArithmeticException expected) {
+            //Every cell is full.
+        }
+
+        //Assert
+        Assert.assertEquals(credits * StripedCreditBalanceEngine.MAX_CELL, engine.getBalance());
+        Assert.assertTrue(engine.getBalance() > 0);
+        try {
+            engine.credit(Long.MAX_VALUE - engine.getBalance() + 1);
+            Assert.fail("Credit past Long.MAX_VALUE succeeded");
+        } catch (ArithmeticException expected) {
+            Assert.assertTrue(engine.getBalance() > 0);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.db.awmd.challenge.domain;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TimeOrderedIdGeneratorTest {
+
+    @Test
+    public void idsSortByCreationTime() {
+        //Arrange
+        AtomicLong now = new AtomicLong(1_500_000_000_000L);
+        TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator(7, now::get);
+
+        //Act
+        List<String> ids = new ArrayList<>();
+        for(int i = 0; i < 1000; i++) {
+            if(i % 10 == 0) {
+                now.incrementAndGet();
+            }
+            ids.add(generator.nextId());
+        }
+
+        //Assert
+        for(int i = 1; i < ids.size(); i++) {
+            Assert.assertTrue(ids.get(i - 1).compareTo(ids.get(i)) < 0);
+        }
+        Assert.assertEquals(26, ids.get(0).length());
+        Assert.assertEquals(1_500_000_000_001L, TimeOrderedIdGenerator.timestampOf(ids.get(0)));
+    }
+
+    @Test
+    public void clockGoingBackKeepsOrder() {
+        //Arrange
+        AtomicLong now = new AtomicLong(1_500_000_000_000L);
+        TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator(7, now::get);
+        String before = generator.nextId();
+
+        //Act
+        now.addAndGet(-1000);
+        String after = generator.nextId();
+
+        //Assert
+        Assert.assertTrue(before.compareTo(after) < 0);
+    }
+
+    @Test
+    public void idsAreUniqueAcrossThreads() throws Exception {
+        //Arrange
+        TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator(7);
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        List<Future<?>> results = new ArrayList<>();
+
+        //Act
+        for(int t = 0; t < 8; t++) {
+            results.add(executorService.submit(() -> {
+                for(int i = 0; i < 10_000; i++) {
+                    ids.add(generator.nextId());
+                }
+            }));
+        }
+        for(Future<?> result : results) {
+            result.get(30, TimeUnit.SECONDS);
+        }
+
+        //Assert
+        Assert.assertEquals(80_000, ids.size());
+        executorService.shutdown();
+    }
+
+    @Test
+    public void idsRoundTripThroughTheirBits() {
+        //Arrange
+        TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator(7);
+
+        for(TransactionIdType type : TransactionIdType.values()) {
+            String id = type == TransactionIdType.TIME_ORDERED ? generator.nextId() : type.create(0).nextId();
+
+            //Act
+            String formatted = type.format(type.highBits(id), type.lowBits(id));
+
+            //Assert
+            Assert.assertEquals(id, formatted);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nodeIdOutOfRange() {
+        new TimeOrderedIdGenerator(TimeOrderedIdGenerator.MAX_NODE_ID + 1);
+    }
+}
@@ -0,0 +1,116 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountLocks;
+import com.db.awmd.challenge.domain.BalanceEngineType;
+import com.db.awmd.challenge.domain.MinorUnits;
+import com.db.awmd.challenge.repository.HoldRegistry.Hold;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class HoldRegistryTest {
+
+    private final AtomicLong now = new AtomicLong(1_000);
+
+    private final AccountLocks locks = new AccountLocks(16);
+
+    private final MinorUnits minorUnits = new MinorUnits(MinorUnits.DEFAULT_CURRENCY);
+
+    private final Account sender = new Account("1", BalanceEngineType.ATOMIC, BalanceEngineType.ATOMIC.create(1_000),
+        locks.lockFor("1"), minorUnits);
+
+    private final Account receiver = new Account("2", BalanceEngineType.ATOMIC, BalanceEngineType.ATOMIC.create(0),
+        locks.lockFor("2"), minorUnits);
+
+    //Ticks of 10 ms on a wheel of 8 buckets, so one turn is 80 ms.
+    private final HoldRegistry registry = new HoldRegistry(10, 8, now::get);
+
+    private Hold hold(long amount, long ttlMillis) {
+        sender.hold(amount);
+        return registry.open(sender, receiver, amount, ttlMillis);
+    }
+
+    private void advanceTo(long millis) {
+        now.set(millis);
+        registry.advance(millis);
+    }
+
+    @Test
+    public void expiredHoldIsReleasedToTheSender() {
+        //Arrange
+        hold(300, 25);
+        advanceTo(1_020);
+        Assert.assertEquals(700, sender.getAvailableMinor());
+
+        //Act
+        advanceTo(1_030);
+
+        //Assert
+        Assert.assertEquals(1_000, sender.getAvailableMinor());
+        Assert.assertEquals(1_000, sender.getBalanceMinor());
+        Assert.assertEquals(0, registry.getOpen());
+        Assert.assertEquals(1, registry.getExpired());
+    }
+
+    @Test
+    public void closedHoldDoesNotExpire() {
+        //Arrange
+        Hold hold = hold(300, 25);
+
+        //Act
+        Hold closed = registry.close(hold.getHoldId());
+        advanceTo(2_000);
+
+        //Assert
+        Assert.assertSame(hold, closed);
+        Assert.assertNull(registry.close(hold.getHoldId()));
+        Assert.assertEquals(700, sender.getAvailableMinor());
+        Assert.assertEquals(0, registry.getExpired());
+    }
+
+    @Test
+    public void closedHoldIsUnlinkedOnTheNextTick() {
+        //Arrange
+        Hold first = hold(100, 500);
+        Hold second = hold(100, 500);
+        Hold third = hold(100, 500);
+        advanceTo(1_010);
+        Assert.assertEquals(3, registry.scheduled());
+
+        //Act
+        registry.close(second.getHoldId());
+        registry.close(first.getHoldId());
+        advanceTo(1_020);
+
+        //Assert
+        Assert.assertEquals(1, registry.scheduled());
+        advanceTo(1_500);
+        Assert.assertNull(registry.close(third.getHoldId()));
+        Assert.assertEquals(0, registry.scheduled());
+        Assert.assertEquals(1, registry.getExpired());
+    }
+
+    @Test
+    public void holdLongerThanOneTurnExpiresOnItsOwnTick() {
+        //Arrange
+        hold(100, 200);
+
+        //Act
+        advanceTo(1_190);
+        long heldBeforeExpiry = sender.getHeldMinor();
+        advanceTo(1_200);
+
+        //Assert
+        Assert.assertEquals(100, heldBeforeExpiry);
+        Assert.assertEquals(0, sender.getHeldMinor());
+        Assert.assertEquals(1, registry.getExpired());
+    }
+
+    @Test
+    public void unknownHoldCannotBeClosed() {
+        //Act and Assert
+        Assert.assertNull(registry.close("unknown"));
+    }
+}
@@ -0,0 +1,138 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class OffHeapAccountsRepositoryTest {
+
+    private final OffHeapAccountsRepository repository = new OffHeapAccountsRepository(1000, TransactionJournal.disabled());
+
+    @Test
+    public void createAndGetAccount() {
+        //Arrange
+        this.repository.createAccount(new Account("Id-123", new BigDecimal("123.45")));
+
+        //Act
+        Account account = this.repository.getAccount("Id-123");
+
+        //Assert
+        Assert.assertEquals("Id-123", account.getAccountId());
+        Assert.assertEquals(new BigDecimal("123.45"), account.getBalance());
+        Assert.assertNull(this.repository.getAccount("Id-124"));
+    }
+
+    @Test(expected = DuplicateAccountIdException.class)
+    public void createDuplicateAccount() {
+        //Arrange
+        this.repository.createAccount(new Account("Id-123", new BigDecimal(10)));
+
+        //Act
+        this.repository.createAccount(new Account("Id-123", new BigDecimal(20)));
+    }
+
+    @Test
+    public void createAccountsIfAbsentSkipsTakenIds() {
+        //Arrange
+        this.repository.createAccount(new Account("Id-1", new BigDecimal(10)));
+
+        //Act
+        List<Account> skipped = this.repository.createAccountsIfAbsent(Arrays.asList(
+                new Account("Id-1", new BigDecimal(20)),
+                new Account("Id-2", new BigDecimal(30)),
+                new Account("Id-2", new BigDecimal(40))));
+
+        //Assert
+        Assert.assertEquals(2, skipped.size());
+        Assert.assertEquals(new BigDecimal(10), this.repository.getAccount("Id-1").getBalance());
+        Assert.assertEquals(new BigDecimal(30), this.repository.getAccount("Id-2").getBalance());
+    }
+
+    @Test
+    public void forEachAccountVisitsEveryAccount() {
+        //Arrange
+        for(int i = 0; i < 500; i++) {
+            this.repository.createAccount(new Account("Id-" + i, new BigDecimal(i)));
+        }
+
+        //Act
+        Map<String, BigDecimal> visited = new HashMap<>();
+        this.repository.forEachAccount(account -> visited.put(account.getAccountId(), account.getBalance()));
+
+        //Assert
+        Assert.assertEquals(500, visited.size());
+        Assert.assertEquals(new BigDecimal(123), visited.get("Id-123"));
+    }
+
+    @Test
+    public void viewsShareBalanceAndLock() {
+        //Arrange
+        this.repository.createAccount(new Account("Id-1", new BigDecimal(100)));
+        Account view1 = this.repository.getAccount("Id-1");
+        Account view2 = this.repository.getAccount("Id-1");
+
+        //Act
+        view1.debit(new BigDecimal(30));
+        view2.credit(new BigDecimal("0.50"));
+        view1.getLock().lock();
+        boolean lockedThroughOtherView = CompletableFuture.supplyAsync(() -> view2.getLock().tryLock()).join();
+        view1.getLock().unlock();
+
+        //Assert
+        Assert.assertEquals(new BigDecimal("70.5"), view2.getBalance());
+        Assert.assertFalse(lockedThroughOtherView);
+    }
+
+    @Test(expected = InsufficientBalanceException.class)
+    public void debitMoreThanBalance() {
+        //Arrange
+        this.repository.createAccount(new Account("Id-1", new BigDecimal(100)));
+
+        //Act
+        this.repository.getAccount("Id-1").debit(new BigDecimal(101));
+    }
+
+    @Test
+    public void concurrentCreatesOfSameIdKeepOneAccount() throws Exception {
+        //Arrange
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        Collection<Callable<Boolean>> calls = new ArrayList<>();
+        for(int i = 0; i < 100; i++) {
+            String id = "Id-" + (i % 10);
+            calls.add(() -> {
+                try {
+                    this.repository.createAccount(new Account(id, new BigDecimal(1)));
+                    return true;
+                } catch (DuplicateAccountIdException daie) {
+                    return false;
+                }
+            });
+        }
+
+        //Act
+        List<Future<Boolean>> results = executorService.invokeAll(calls);
+
+        //Assert
+        int created = 0;
+        for(Future<Boolean> result : results) {
+            created += result.get() ? 1 : 0;
+        }
+        Assert.assertEquals(10, created);
+        Assert.assertEquals(10, this.repository.size());
+    }
+}
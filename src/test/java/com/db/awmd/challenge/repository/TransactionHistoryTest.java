@@ -0,0 +1,146 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.config.HistoryProperties;
+import com.db.awmd.challenge.domain.TransactionHistoryPage;
+import com.db.awmd.challenge.domain.TransactionIds;
+import com.db.awmd.challenge.domain.TransactionRecord;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TransactionHistoryTest {
+
+    private final AtomicLong now = new AtomicLong(1_000);
+
+    private TransactionHistory history(int segmentSize, long maxTransfers, long maxAgeSeconds) {
+        HistoryProperties properties = new HistoryProperties();
+        properties.setSegmentSize(segmentSize);
+        properties.setMaxTransfers(maxTransfers);
+        properties.setMaxAgeSeconds(maxAgeSeconds);
+        return new TransactionHistory(properties, now::get);
+    }
+
+    @Test
+    public void recordsAreReturnedPerAccountInTimeOrder() {
+        //Arrange
+        TransactionHistory history = history(4, 0, 0);
+        String first = TransactionIds.next();
+        history.record(first, "1", "2", 1050);
+        now.incrementAndGet();
+        history.record(TransactionIds.next(), "3", "4", 7);
+        now.incrementAndGet();
+        history.record(TransactionIds.next(), "2", "1", 20);
+
+        //Act
+        TransactionHistoryPage page = history.query("1", 0, Long.MAX_VALUE, -1, 10);
+
+        //Assert
+        Assert.assertEquals(2, page.getTransactions().size());
+        TransactionRecord record = page.getTransactions().get(0);
+        Assert.assertEquals(first, record.getTransactionId());
+        Assert.assertEquals("1", record.getSenderId());
+        Assert.assertEquals("2", record.getReceiverId());
+        Assert.assertEquals(0, new BigDecimal("10.50").compareTo(record.getAmount()));
+        Assert.assertEquals(1_000, record.getTimestamp());
+        Assert.assertEquals("2", page.getTransactions().get(1).getSenderId());
+        Assert.assertEquals(1_002, page.getTransactions().get(1).getTimestamp());
+        Assert.assertNull(page.getNextCursor());
+    }
+
+    @Test
+    public void pagesFollowTheCursorAcrossSegments() {
+        //Arrange
+        TransactionHistory history = history(4, 0, 0);
+        for(int i = 0; i < 25; i++) {
+            history.record(TransactionIds.next(), "1", i % 2 == 0 ? "2" : "3", i);
+        }
+
+        //Act
+        List<Long> amounts = new ArrayList<>();
+        long cursor = -1;
+        int pages = 0;
+        do {
+            TransactionHistoryPage page = history.query("1", 0, Long.MAX_VALUE, cursor, 10);
+            page.getTransactions().forEach(record -> amounts.add(record.getAmountMinor()));
+            cursor = page.getNextCursor() == null ? -1 : page.getNextCursor();
+            pages++;
+        } while(cursor != -1);
+
+        //Assert
+        Assert.assertEquals(3, pages);
+        Assert.assertEquals(25, amounts.size());
+        for(int i = 0; i < 25; i++) {
+            Assert.assertEquals(i, amounts.get(i).longValue());
+        }
+        Assert.assertEquals(12, history.query("3", 0, Long.MAX_VALUE, -1, 100).getTransactions().size());
+    }
+
+    @Test
+    public void timeRangeIsInclusive() {
+        //Arrange
+        TransactionHistory history = history(3, 0, 0);
+        for(int i = 0; i < 10; i++) {
+            history.record(TransactionIds.next(), "1", "2", i);
+            now.addAndGet(10);
+        }
+
+        //Act
+        TransactionHistoryPage page = history.query("2", 1_020, 1_050, -1, 100);
+
+        //Assert
+        Assert.assertEquals(4, page.getTransactions().size());
+        Assert.assertEquals(2, page.getTransactions().get(0).getAmountMinor());
+        Assert.assertEquals(5, page.getTransactions().get(3).getAmountMinor());
+    }
+
+    @Test
+    public void oldestSegmentsAreEvictedBeyondMaxTransfers() {
+        //Arrange
+        TransactionHistory history = history(4, 10, 0);
+
+        //Act
+        for(int i = 0; i < 22; i++) {
+            history.record(TransactionIds.next(), "1", "2", i);
+        }
+
+        //Assert
+        Assert.assertTrue(history.getSize() <= 10);
+        Assert.assertEquals(22 - history.getSize(), history.getEvicted());
+        List<TransactionRecord> records = history.query("1", 0, Long.MAX_VALUE, -1, 100).getTransactions();
+        Assert.assertEquals(history.getSize(), records.size());
+        Assert.assertEquals(21, records.get(records.size() - 1).getAmountMinor());
+    }
+
+    @Test
+    public void segmentsOlderThanMaxAgeAreEvicted() {
+        //Arrange
+        TransactionHistory history = history(2, 0, 60);
+        history.record(TransactionIds.next(), "1", "2", 1);
+        history.record(TransactionIds.next(), "1", "2", 2);
+
+        //Act
+        now.addAndGet(61_000);
+        history.record(TransactionIds.next(), "1", "2", 3);
+
+        //Assert
+        List<TransactionRecord> records = history.query("1", 0, Long.MAX_VALUE, -1, 100).getTransactions();
+        Assert.assertEquals(1, records.size());
+        Assert.assertEquals(3, records.get(0).getAmountMinor());
+    }
+
+    @Test
+    public void disabledHistoryKeepsNothing() {
+        //Arrange
+        TransactionHistory history = TransactionHistory.disabled();
+
+        //Act
+        history.record(TransactionIds.next(), "1", "2", 1);
+
+        //Assert
+        Assert.assertTrue(history.query("1", 0, Long.MAX_VALUE, -1, 100).getTransactions().isEmpty());
+    }
+}
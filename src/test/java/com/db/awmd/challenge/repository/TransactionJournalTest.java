@@ -0,0 +1,408 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.config.JournalProperties;
+import com.db.awmd.challenge.config.JournalProperties.Durability;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountLocks;
+import com.db.awmd.challenge.domain.BalanceEngineFactory;
+import com.db.awmd.challenge.domain.BalanceEngineType;
+import com.db.awmd.challenge.domain.BatchMode;
+import com.db.awmd.challenge.domain.BatchTransferResult;
+import com.db.awmd.challenge.domain.FanOutTransfer;
+import com.db.awmd.challenge.domain.FanOutTransferResult;
+import com.db.awmd.challenge.domain.MinorUnits;
+import com.db.awmd.challenge.domain.Transaction;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.TransactionService;
+import com.db.awmd.challenge.service.TransactionServiceImpl;
+import com.db.awmd.challenge.service.TransferMetrics;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.nio.file.Path;
+
+public class TransactionJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void accountsAreRecoveredFromJournal() throws Exception {
+        //Arrange
+        TransactionJournal journal = openJournal(Durability.GROUP_COMMIT);
+        AccountsRepositoryInMemory repository = repository(journal);
+        repository.recover();
+        TransactionService transactionService = transactionService(repository, journal);
+
+        repository.createAccount(new Account("1", new BigDecimal("100.50")));
+        repository.createAccount(new Account("2", new BigDecimal(200)));
+        transactionService.transferAmount(new Transaction("1", "2", new BigDecimal("40.25")));
+        transactionService.transferAmount(new Transaction("2", "1", new BigDecimal(10)));
+        journal.close();
+
+        //Act
+        AccountsRepositoryInMemory recovered = recoveredRepository(Durability.GROUP_COMMIT);
+
+        //Assert
+        Assert.assertEquals(0, new BigDecimal("70.25").compareTo(recovered.getAccount("1").getBalance()));
+        Assert.assertEquals(0, new BigDecimal("230.25").compareTo(recovered.getAccount("2").getBalance()));
+    }
+
+    @Test
+    public void tornTailIsDiscarded() throws Exception {
+        //Arrange
+        TransactionJournal journal = openJournal(Durability.FSYNC);
+        AccountsRepositoryInMemory repository = repository(journal);
+        repository.recover();
+        repository.createAccount(new Account("1", new BigDecimal(100)));
+        repository.createAccount(new Account("2", new BigDecimal(100)));
+        transactionService(repository, journal).transferAmount(new Transaction("1", "2", new BigDecimal(30)));
+        journal.close();
+
+        //Cut the last record in half, as a crash in the middle of a write would.
+        Path file = journal.getFile();
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(raf.length() - 10);
+        }
+
+        //Act
+        AccountsRepositoryInMemory recovered = recoveredRepository(Durability.FSYNC);
+        recovered.createAccount(new Account("3", new BigDecimal(5)));
+
+        //Assert
+        Assert.assertEquals(0, new BigDecimal(100).compareTo(recovered.getAccount("1").getBalance()));
+        Assert.assertEquals(0, new BigDecimal(100).compareTo(recovered.getAccount("2").getBalance()));
+        Assert.assertNotNull(recoveredRepository(Durability.FSYNC).getAccount("3"));
+    }
+
+    @Test
+    public void accountIdTooLongToJournalIsRejected() throws Exception {
+        //Arrange
+        TransactionJournal journal = openJournal(Durability.FSYNC);
+        AccountsRepositoryInMemory repository = repository(journal);
+        repository.recover();
+        char[] id = new char[TransactionJournal.MAX_ID_LENGTH + 1];
+        Arrays.fill(id, 'x');
+
+        //Act
+        try {
+            repository.createAccount(new Account(new String(id), new BigDecimal(100)));
+            Assert.fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+        }
+        journal.close();
+
+        //Assert
+        Assert.assertNull(repository.getAccount(new String(id)));
+        Assert.assertNull(recoveredRepository(Durability.FSYNC).getAccount(new String(id)));
+    }
+
+    @Test(expected = IllegalStateException.class, timeout = 10_000)
+    public void transferAfterCloseFailsInsteadOfWaiting() throws Exception {
+        //Arrange
+        TransactionJournal journal = openJournal(Durability.GROUP_COMMIT);
+        AccountsRepositoryInMemory repository = repository(journal);
+        repository.recover();
+        repository.createAccount(new Account("1", new BigDecimal(100)));
+        repository.createAccount(new Account("2", new BigDecimal(100)));
+        TransactionService transactionService = transactionService(repository, journal);
+        journal.close();
+
+        //Act
+        try {
+            transactionService.transferAmount(new Transaction("1", "2", new BigDecimal(10)));
+        } finally {
+            //Assert: the refused transfer was undone.
+            Assert.assertEquals(0, new BigDecimal(100).compareTo(repository.getAccount("1").getBalance()));
+        }
+    }
+
+    @Test
+    public void transferJournaledBeforeItsAccountIsSkipped() throws Exception {
+        //Arrange
+        TransactionJournal journal = openJournal(Durability.FSYNC);
+        AccountsRepositoryInMemory repository = repository(journal);
+        repository.recover();
+        repository.createAccount(new Account("1", new BigDecimal(100)));
+        //As an older journal could hold it: the transfer ahead of the receiver's creation.
+        journal.appendTransfer("1", "2", 1000);
+        repository.createAccount(new Account("2", new BigDecimal(100)));
+        journal.close();
+
+        //Act
+        AccountsRepositoryInMemory recovered = recoveredRepository(Durability.FSYNC);
+
+        //Assert
+        Assert.assertEquals(0, new BigDecimal(100).compareTo(recovered.getAccount("1").getBalance()));
+        Assert.assertEquals(0, new BigDecimal(100).compareTo(recovered.getAccount("2").getBalance()));
+    }
+
+    @Test
+    public void fanOutIsRecoveredWhole() throws Exception {
+        //Arrange
+        TransactionJournal journal = openJournal(Durability.FSYNC);
+        AccountsRepositoryInMemory repository = repository(journal);
+        repository.recover();
+        repository.createAccount(new Account("1", new BigDecimal(100)));
+        repository.createAccount(new Account("2", new BigDecimal(0)));
+        repository.createAccount(new Account("3", new BigDecimal(0)));
+        transactionService(repository, journal).transferFanOut(new FanOutTransfer("1", Arrays.asList(
+            new FanOutTransfer.Leg("2", new BigDecimal(30)),
+            new FanOutTransfer.Leg("3", new BigDecimal(20)),
+            new FanOutTransfer.Leg("2", new BigDecimal(10)))));
+        journal.close();
+
+        //Act
+        AccountsRepositoryInMemory recovered = recoveredRepository(Durability.FSYNC);
+
+        //Assert
+        Assert.assertEquals(0, new BigDecimal(40).compareTo(recovered.getAccount("1").getBalance()));
+        Assert.assertEquals(0, new BigDecimal(40).compareTo(recovered.getAccount("2").getBalance()));
+        Assert.assertEquals(0, new BigDecimal(20).compareTo(recovered.getAccount("3").getBalance()));
+    }
+
+    @Test
+    public void tornFanOutIsDiscardedWhole() throws Exception {
+        //Arrange
+        TransactionJournal journal = openJournal(Durability.FSYNC);
+        AccountsRepositoryInMemory repository = repository(journal);
+        repository.recover();
+        repository.createAccount(new Account("1", new BigDecimal(100)));
+        repository.createAccount(new Account("2", new BigDecimal(0)));
+        repository.createAccount(new Account("3", new BigDecimal(0)));
+        transactionService(repository, journal).transferFanOut(new FanOutTransfer("1", Arrays.asList(
+            new FanOutTransfer.Leg("2", new BigDecimal(30)),
+            new FanOutTransfer.Leg("3", new BigDecimal(20)))));
+        journal.close();
+        //Keep the first leg of the record and lose the rest, as a crash in the middle would.
+        try (RandomAccessFile raf = new RandomAccessFile(journal.getFile().toFile(), "rw")) {
+            raf.setLength(raf.length() - 20);
+        }
+
+        //Act
+        AccountsRepositoryInMemory recovered = recoveredRepository(Durability.FSYNC);
+
+        //Assert
+        Assert.assertEquals(0, new BigDecimal(100).compareTo(recovered.getAccount("1").getBalance()));
+        Assert.assertEquals(0, BigDecimal.ZERO.compareTo(recovered.getAccount("2").getBalance()));
+        Assert.assertEquals(0, BigDecimal.ZERO.compareTo(recovered.getAccount("3").getBalance()));
+    }
+
+    @Test
+    public void fanOutLargerThanTheBufferIsRecovered() throws Exception {
+        //Arrange
+        JournalProperties properties = properties(Durability.GROUP_COMMIT);
+        properties.setBufferSize(256);
+        TransactionJournal journal = new TransactionJournal(properties);
+        AccountsRepositoryInMemory repository = repository(journal);
+        repository.recover();
+        TransactionService transactionService = transactionService(repository, journal);
+        repository.createAccount(new Account("1", new BigDecimal(100)));
+        List<FanOutTransfer.Leg> legs = new ArrayList<>();
+        for(int i = 0; i < 20; i++) {
+            repository.createAccount(new Account("Receiver-" + i, BigDecimal.ZERO));
+            legs.add(new FanOutTransfer.Leg("Receiver-" + i, BigDecimal.ONE));
+        }
+
+        //Act: the fan-out is written around records still in the buffers.
+        transactionService.transferAmount(new Transaction("1", "Receiver-0", new BigDecimal(5)));
+        FanOutTransferResult result = transactionService.transferFanOut(new FanOutTransfer("1", legs));
+        transactionService.transferAmount(new Transaction("Receiver-1", "1", new BigDecimal(1)));
+        journal.close();
+        AccountsRepositoryInMemory recovered = recoveredRepository(Durability.GROUP_COMMIT);
+
+        //Assert
+        Assert.assertTrue(result.isCommitted());
+        Assert.assertEquals(0, new BigDecimal(76).compareTo(recovered.getAccount("1").getBalance()));
+        Assert.assertEquals(0, new BigDecimal(6).compareTo(recovered.getAccount("Receiver-0").getBalance()));
+        Assert.assertEquals(0, BigDecimal.ZERO.compareTo(recovered.getAccount("Receiver-1").getBalance()));
+        Assert.assertEquals(0, BigDecimal.ONE.compareTo(recovered.getAccount("Receiver-19").getBalance()));
+    }
+
+    @Test
+    public void tornAllOrNothingBatchIsDiscardedWhole() throws Exception {
+        //Arrange
+        TransactionJournal journal = openJournal(Durability.FSYNC);
+        AccountsRepositoryInMemory repository = repository(journal);
+        repository.recover();
+        repository.createAccount(new Account("1", new BigDecimal(100)));
+        repository.createAccount(new Account("2", new BigDecimal(100)));
+        repository.createAccount(new Account("3", new BigDecimal(100)));
+        BatchTransferResult result = transactionService(repository, journal).transferBatch(Arrays.asList(
+            new Transaction("1", "2", new BigDecimal(30)),
+            new Transaction("2", "3", new BigDecimal(50))), BatchMode.ALL_OR_NOTHING);
+        journal.close();
+        try (RandomAccessFile raf = new RandomAccessFile(journal.getFile().toFile(), "rw")) {
+            raf.setLength(raf.length() - 20);
+        }
+
+        //Act
+        AccountsRepositoryInMemory recovered = recoveredRepository(Durability.FSYNC);
+
+        //Assert
+        Assert.assertTrue(result.isCommitted());
+        for(String id : Arrays.asList("1", "2", "3")) {
+            Assert.assertEquals(0, new BigDecimal(100).compareTo(recovered.getAccount(id).getBalance()));
+        }
+    }
+
+    @Test
+    public void allOrNothingBatchLargerThanTheBufferIsRecovered() throws Exception {
+        //Arrange
+        JournalProperties properties = properties(Durability.GROUP_COMMIT);
+        properties.setBufferSize(256);
+        TransactionJournal journal = new TransactionJournal(properties);
+        AccountsRepositoryInMemory repository = repository(journal);
+        repository.recover();
+        TransactionService transactionService = transactionService(repository, journal);
+        repository.createAccount(new Account("1", new BigDecimal(100)));
+        List<Transaction> transactions = new ArrayList<>();
+        for(int i = 0; i < 20; i++) {
+            repository.createAccount(new Account("Receiver-" + i, BigDecimal.ZERO));
+            transactions.add(new Transaction("1", "Receiver-" + i, BigDecimal.ONE));
+        }
+
+        //Act: the batch is written around records still in the buffers.
+        transactionService.transferAmount(new Transaction("1", "Receiver-0", new BigDecimal(5)));
+        BatchTransferResult result = transactionService.transferBatch(transactions, BatchMode.ALL_OR_NOTHING);
+        transactionService.transferAmount(new Transaction("Receiver-1", "1", new BigDecimal(1)));
+        journal.close();
+        AccountsRepositoryInMemory recovered = recoveredRepository(Durability.GROUP_COMMIT);
+
+        //Assert
+        Assert.assertTrue(result.isCommitted());
+        Assert.assertEquals(20, result.getSucceeded());
+        Assert.assertEquals(0, new BigDecimal(76).compareTo(recovered.getAccount("1").getBalance()));
+        Assert.assertEquals(0, new BigDecimal(6).compareTo(recovered.getAccount("Receiver-0").getBalance()));
+        Assert.assertEquals(0, BigDecimal.ZERO.compareTo(recovered.getAccount("Receiver-1").getBalance()));
+        Assert.assertEquals(0, BigDecimal.ONE.compareTo(recovered.getAccount("Receiver-19").getBalance()));
+    }
+
+    @Test
+    public void batchLargerThanTheBufferIsWrittenInOrderByTheAsyncFlusher() throws Exception {
+        //Arrange
+        JournalProperties properties = properties(Durability.ASYNC);
+        properties.setBufferSize(256);
+        TransactionJournal journal = new TransactionJournal(properties);
+        AccountsRepositoryInMemory repository = repository(journal);
+        repository.recover();
+        TransactionService transactionService = transactionService(repository, journal);
+        repository.createAccount(new Account("1", new BigDecimal(100)));
+        List<Transaction> transactions = new ArrayList<>();
+        for(int i = 0; i < 20; i++) {
+            repository.createAccount(new Account("Receiver-" + i, BigDecimal.ZERO));
+            transactions.add(new Transaction("1", "Receiver-" + i, BigDecimal.ONE));
+        }
+
+        //Act: the batch is handed to the flusher between records still in the buffers.
+        transactionService.transferAmount(new Transaction("1", "Receiver-0", new BigDecimal(5)));
+        BatchTransferResult result = transactionService.transferBatch(transactions, BatchMode.ALL_OR_NOTHING);
+        transactionService.transferAmount(new Transaction("Receiver-1", "1", new BigDecimal(1)));
+        journal.close();
+        AccountsRepositoryInMemory recovered = recoveredRepository(Durability.ASYNC);
+
+        //Assert
+        Assert.assertTrue(result.isCommitted());
+        Assert.assertEquals(0, new BigDecimal(76).compareTo(recovered.getAccount("1").getBalance()));
+        Assert.assertEquals(0, new BigDecimal(6).compareTo(recovered.getAccount("Receiver-0").getBalance()));
+        Assert.assertEquals(0, BigDecimal.ZERO.compareTo(recovered.getAccount("Receiver-1").getBalance()));
+        Assert.assertEquals(0, BigDecimal.ONE.compareTo(recovered.getAccount("Receiver-19").getBalance()));
+    }
+
+    private TransactionJournal openJournal(Durability durability) {
+        return new TransactionJournal(properties(durability));
+    }
+
+    private JournalProperties properties(Durability durability) {
+        JournalProperties properties = new JournalProperties();
+        properties.setDurability(durability);
+        properties.setDirectory(folder.getRoot().getPath());
+        return properties;
+    }
+
+    private AccountsRepositoryInMemory recoveredRepository(Durability durability) throws Exception {
+        AccountsRepositoryInMemory repository = repository(openJournal(durability));
+        repository.recover();
+        return repository;
+    }
+
+    private AccountsRepositoryInMemory repository(TransactionJournal journal) {
+        return new AccountsRepositoryInMemory(journal, new AccountSnapshotStore(properties(Durability.NONE)), properties(Durability.NONE),
+            new AccountLocks(AccountLocks.DEFAULT_STRIPES), new BalanceEngineFactory(BalanceEngineType.LOCKING),
+            new MinorUnits(MinorUnits.DEFAULT_CURRENCY));
+    }
+
+    private static TransactionService transactionService(AccountsRepositoryInMemory repository, TransactionJournal journal) {
+        return new TransactionServiceImpl(new AccountsService(repository), (account, description) -> { }, journal,
+            TransactionHistory.disabled(), new HoldRegistry(100, 512), new TransferMetrics(),
+            new MinorUnits(MinorUnits.DEFAULT_CURRENCY));
+    }
+
+    @Test
+    public void accountsAreRecoveredFromSnapshotAndLaterRecords() throws Exception {
+        //Arrange
+        TransactionJournal journal = openJournal(Durability.GROUP_COMMIT);
+        AccountsRepositoryInMemory repository = repository(journal);
+        repository.recover();
+        TransactionService transactionService = transactionService(repository, journal);
+
+        repository.createAccount(new Account("1", new BigDecimal(100)));
+        repository.createAccount(new Account("2", new BigDecimal(100)));
+        transactionService.transferAmount(new Transaction("1", "2", new BigDecimal(10)));
+        AccountSnapshotStore.Snapshot snapshot = repository.takeSnapshot();
+        transactionService.transferAmount(new Transaction("2", "1", new BigDecimal("2.50")));
+        repository.createAccount(new Account("3", new BigDecimal(7)));
+        transactionService.transferAmount(new Transaction("3", "2", new BigDecimal(7)));
+        journal.close();
+
+        //Act
+        AccountsRepositoryInMemory recovered = recoveredRepository(Durability.GROUP_COMMIT);
+
+        //Assert
+        Assert.assertEquals(2, snapshot.getCount());
+        Assert.assertEquals(0, new BigDecimal("92.50").compareTo(recovered.getAccount("1").getBalance()));
+        Assert.assertEquals(0, new BigDecimal("114.50").compareTo(recovered.getAccount("2").getBalance()));
+        Assert.assertEquals(0, BigDecimal.ZERO.compareTo(recovered.getAccount("3").getBalance()));
+    }
+
+    @Test
+    public void snapshotTakenDuringTransfersRecoversConsistentBalances() throws Exception {
+        //Arrange
+        TransactionJournal journal = openJournal(Durability.ASYNC);
+        AccountsRepositoryInMemory repository = repository(journal);
+        repository.recover();
+        TransactionService transactionService = transactionService(repository, journal);
+        for(int i = 0; i < 10; i++) {
+            repository.createAccount(new Account("Id-" + i, new BigDecimal(1000)));
+        }
+
+        //Act
+        Thread transfers = new Thread(() -> {
+            for(int i = 0; i < 5000; i++) {
+                transactionService.transferAmount(new Transaction("Id-" + (i % 10), "Id-" + ((i * 7 + 3) % 10), BigDecimal.ONE));
+            }
+        });
+        transfers.start();
+        repository.takeSnapshot();
+        repository.takeSnapshot();
+        transfers.join();
+        BigDecimal[] expected = new BigDecimal[10];
+        for(int i = 0; i < 10; i++) {
+            expected[i] = repository.getAccount("Id-" + i).getBalance();
+        }
+        journal.close();
+        AccountsRepositoryInMemory recovered = recoveredRepository(Durability.ASYNC);
+
+        //Assert
+        for(int i = 0; i < 10; i++) {
+            Assert.assertEquals(0, expected[i].compareTo(recovered.getAccount("Id-" + i).getBalance()));
+        }
+    }
+}
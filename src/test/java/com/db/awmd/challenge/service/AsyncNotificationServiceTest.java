@@ -0,0 +1,97 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.config.NotificationDispatchProperties;
+import com.db.awmd.challenge.config.NotificationDispatchProperties.OverflowPolicy;
+import com.db.awmd.challenge.domain.Account;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class AsyncNotificationServiceTest {
+
+    private final Account account1 = new Account("1");
+    private final Account account2 = new Account("2");
+
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+    private final CountDownLatch firstDelivery = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private AsyncNotificationService notificationService;
+
+    //Backend that holds the dispatcher inside the first delivery until released.
+    private final NotificationService backend = (account, description) -> {
+        firstDelivery.countDown();
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        sent.add(account.getAccountId() + ":" + description);
+    };
+
+    @After
+    public void tearDown() throws Exception {
+        release.countDown();
+        notificationService.shutdown();
+    }
+
+    @Test
+    public void notificationsForSameAccountAreMerged() throws Exception {
+        //Arrange
+        notificationService = new AsyncNotificationService(backend, properties(16, OverflowPolicy.DROP_OLDEST));
+        notificationService.notifyAboutTransfer(account1, "first");
+        Assert.assertTrue(firstDelivery.await(5, TimeUnit.SECONDS));
+
+        //Act
+        notificationService.notifyAboutTransfer(account1, "second");
+        notificationService.notifyAboutTransfer(account2, "other");
+        notificationService.notifyAboutTransfer(account1, "third");
+        release.countDown();
+        awaitDelivered(4);
+
+        //Assert
+        Assert.assertEquals(3, sent.size());
+        Assert.assertEquals("1:first", sent.get(0));
+        Assert.assertEquals("1:second third", sent.get(1));
+        Assert.assertEquals("2:other", sent.get(2));
+        Assert.assertEquals(0, notificationService.getDropped());
+    }
+
+    @Test
+    public void notificationsAreDroppedWhenQueueIsFull() throws Exception {
+        //Arrange
+        notificationService = new AsyncNotificationService(backend, properties(1, OverflowPolicy.DROP_NEWEST));
+        notificationService.notifyAboutTransfer(account1, "first");
+        Assert.assertTrue(firstDelivery.await(5, TimeUnit.SECONDS));
+
+        //Act
+        notificationService.notifyAboutTransfer(account1, "second");
+        notificationService.notifyAboutTransfer(account1, "third");
+        release.countDown();
+        awaitDelivered(2);
+
+        //Assert
+        Assert.assertEquals(1, notificationService.getDropped());
+        Assert.assertEquals("1:second", sent.get(1));
+    }
+
+    private static NotificationDispatchProperties properties(int capacity, OverflowPolicy policy) {
+        NotificationDispatchProperties properties = new NotificationDispatchProperties();
+        properties.setQueueCapacity(capacity);
+        properties.setDispatcherThreads(1);
+        properties.setOverflowPolicy(policy);
+        return properties;
+    }
+
+    private void awaitDelivered(long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while(notificationService.getDelivered() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.db.awmd.challenge.service;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class HotAccountSketchTest {
+
+    private static final long MINUTE = TimeUnit.MINUTES.toNanos(1);
+
+    private final AtomicLong now = new AtomicLong();
+
+    private final HotAccountSketch sketch = new HotAccountSketch(1 << 10, 1 << 8, MINUTE, now::get);
+
+    @Test
+    public void countsFromAllThreadsAreSummed() throws Exception {
+        //Arrange
+        Thread[] threads = new Thread[4];
+        for(int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for(int j = 0; j < 1000; j++) {
+                    sketch.record("hot");
+                    sketch.record("cold-" + (j % 100));
+                }
+            });
+        }
+
+        //Act
+        for(Thread thread : threads) {
+            thread.start();
+        }
+        for(int i = 0; i < 500; i++) {
+            sketch.record("hot");
+        }
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        Map<String, Long> top = sketch.top(3);
+
+        //Assert
+        Assert.assertEquals("hot", top.keySet().iterator().next());
+        Assert.assertEquals(4500, (long) top.get("hot"));
+    }
+
+    @Test
+    public void countsHalveEveryPeriod() {
+        //Arrange
+        for(int i = 0; i < 1000; i++) {
+            sketch.record("old");
+        }
+
+        //Act
+        now.addAndGet(2 * MINUTE);
+        for(int i = 0; i < 300; i++) {
+            sketch.record("new");
+        }
+
+        //Assert
+        Assert.assertEquals(250, sketch.estimate("old"));
+        Assert.assertEquals(300, sketch.estimate("new"));
+        Assert.assertEquals("new", sketch.top(1).keySet().iterator().next());
+    }
+}
@@ -0,0 +1,138 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Transaction;
+import com.db.awmd.challenge.domain.TransactionDetails;
+import com.db.awmd.challenge.exception.IdempotencyKeyReusedException;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class IdempotencyCacheTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    private final AtomicInteger executions = new AtomicInteger();
+
+    private final Transaction transaction = new Transaction("1", "2", new BigDecimal(10));
+
+    private TransactionDetails transfer() {
+        return TransactionDetails.builder()
+                .transactionId("tx-" + executions.incrementAndGet())
+                .transaction(transaction)
+                .build();
+    }
+
+    @Test
+    public void retryReturnsOriginalResult() {
+        //Arrange
+        IdempotencyCache cache = new IdempotencyCache(1024, 1000, now::get);
+        TransactionDetails first = cache.execute("key", transaction, this::transfer);
+
+        //Act
+        TransactionDetails retry = cache.execute("key", new Transaction("1", "2", new BigDecimal("10.00")), this::transfer);
+
+        //Assert
+        Assert.assertSame(first, retry);
+        Assert.assertEquals(1, executions.get());
+        Assert.assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void concurrentRetriesRunOnce() throws Exception {
+        //Arrange
+        IdempotencyCache cache = new IdempotencyCache(1024, 1000, now::get);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        List<Future<TransactionDetails>> results = new ArrayList<>();
+
+        //Act
+        for(int i = 0; i < 8; i++) {
+            results.add(executorService.submit(() -> cache.execute("key", transaction, () -> {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+                return transfer();
+            })));
+        }
+        Thread.sleep(100);
+        release.countDown();
+
+        //Assert
+        for(Future<TransactionDetails> result : results) {
+            Assert.assertEquals("tx-1", result.get(5, TimeUnit.SECONDS).getTransactionId());
+        }
+        Assert.assertEquals(1, executions.get());
+        executorService.shutdown();
+    }
+
+    @Test(expected = IdempotencyKeyReusedException.class)
+    public void keyReusedForDifferentTransfer() {
+        //Arrange
+        IdempotencyCache cache = new IdempotencyCache(1024, 1000, now::get);
+        cache.execute("key", transaction, this::transfer);
+
+        //Act
+        cache.execute("key", new Transaction("1", "2", new BigDecimal(11)), this::transfer);
+    }
+
+    @Test
+    public void failedTransferReleasesKey() {
+        //Arrange
+        IdempotencyCache cache = new IdempotencyCache(1024, 1000, now::get);
+        try {
+            cache.execute("key", transaction, () -> {
+                throw new InsufficientBalanceException("Insufficient Account Balance.");
+            });
+            Assert.fail("Expected InsufficientBalanceException");
+        } catch (InsufficientBalanceException expected) {
+        }
+
+        //Act
+        TransactionDetails retry = cache.execute("key", transaction, this::transfer);
+
+        //Assert
+        Assert.assertEquals("tx-1", retry.getTransactionId());
+    }
+
+    @Test
+    public void keysExpireAfterTtl() {
+        //Arrange
+        IdempotencyCache cache = new IdempotencyCache(1024, 1000, now::get);
+        cache.execute("key", transaction, this::transfer);
+
+        //Act
+        now.addAndGet(1000);
+        TransactionDetails later = cache.execute("key", transaction, this::transfer);
+
+        //Assert
+        Assert.assertEquals("tx-2", later.getTransactionId());
+    }
+
+    @Test
+    public void sizeStaysWithinMaxKeys() {
+        //Arrange
+        IdempotencyCache cache = new IdempotencyCache(640, Long.MAX_VALUE, now::get);
+
+        //Act
+        for(int i = 0; i < 100_000; i++) {
+            cache.execute("key-" + i, transaction, this::transfer);
+        }
+
+        //Assert
+        Assert.assertTrue(cache.getSize() <= 640);
+        Assert.assertEquals(100_000 - cache.getSize(), cache.getEvictions());
+    }
+}
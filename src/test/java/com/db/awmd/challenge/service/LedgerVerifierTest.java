@@ -0,0 +1,114 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.LedgerStatus;
+import com.db.awmd.challenge.domain.LedgerTotals;
+import com.db.awmd.challenge.domain.MinorUnits;
+import com.db.awmd.challenge.domain.Transaction;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.math.BigDecimal;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class LedgerVerifierTest {
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private AccountsService accountsService;
+
+    @Autowired
+    private MinorUnits minorUnits;
+
+    private LedgerVerifier ledgerVerifier;
+
+    @Before
+    public void setUp() throws Exception {
+        //Clearing the accounts also restarts the totals at zero.
+        this.accountsService.getAccountsRepository().clearAccounts();
+        this.accountsService.createAccount(new Account("1", new BigDecimal("2000.50")));
+        this.accountsService.createAccount(new Account("2", new BigDecimal(1000)));
+        //Not scheduled, so only the checks a test runs are counted.
+        this.ledgerVerifier = new LedgerVerifier(accountsService, minorUnits, 0, 0);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.accountsService.getAccountsRepository().clearAccounts();
+    }
+
+    @Test
+    public void transfersKeepTheLedgerConsistent() throws Exception {
+        //Arrange
+        this.transactionService.transferAmount(new Transaction("1", "2", new BigDecimal("300.25")));
+        this.transactionService.transferAmount(new Transaction("2", "1", new BigDecimal(50)));
+
+        //Act
+        LedgerVerifier.Result conservation = this.ledgerVerifier.checkConservation();
+        LedgerVerifier.Result reconciliation = this.ledgerVerifier.reconcile();
+        LedgerStatus status = this.ledgerVerifier.getStatus();
+
+        //Assert
+        Assert.assertEquals(LedgerVerifier.Result.CONSISTENT, conservation);
+        Assert.assertEquals(LedgerVerifier.Result.CONSISTENT, reconciliation);
+        Assert.assertEquals(0, new BigDecimal("3000.50").compareTo(status.getTotal()));
+        Assert.assertEquals(0, status.getTotal().compareTo(status.getCreatedTotal()));
+        Assert.assertEquals(2, status.getChecks());
+        Assert.assertEquals(0, status.getViolations());
+    }
+
+    @Test
+    public void creditWithoutDebitViolatesConservation() throws Exception {
+        //Arrange
+        this.accountsService.getAccount("1").credit(new BigDecimal(10));
+
+        //Act
+        LedgerVerifier.Result result = this.ledgerVerifier.checkConservation();
+
+        //Assert
+        Assert.assertEquals(LedgerVerifier.Result.VIOLATED, result);
+        Assert.assertEquals(1, this.ledgerVerifier.getViolations());
+    }
+
+    @Test
+    public void balanceChangedBehindTheTotalsFailsReconciliation() throws Exception {
+        //Arrange
+        this.accountsService.getAccount("2").setBalance(new BigDecimal(5));
+
+        //Act
+        LedgerVerifier.Result conservation = this.ledgerVerifier.checkConservation();
+        LedgerVerifier.Result reconciliation = this.ledgerVerifier.reconcile();
+
+        //Assert
+        Assert.assertEquals(LedgerVerifier.Result.CONSISTENT, conservation);
+        Assert.assertEquals(LedgerVerifier.Result.VIOLATED, reconciliation);
+    }
+
+    @Test
+    public void changeInFlightMakesTheCheckBusy() throws Exception {
+        //Arrange
+        LedgerTotals.beginChange();
+        try {
+            //Act
+            LedgerVerifier.Result conservation = this.ledgerVerifier.checkConservation();
+            LedgerVerifier.Result reconciliation = this.ledgerVerifier.reconcile();
+
+            //Assert
+            Assert.assertEquals(LedgerVerifier.Result.BUSY, conservation);
+            Assert.assertEquals(LedgerVerifier.Result.BUSY, reconciliation);
+            Assert.assertEquals(0, this.ledgerVerifier.getChecks());
+            Assert.assertEquals(2, this.ledgerVerifier.getBusy());
+        } finally {
+            LedgerTotals.endChange();
+        }
+    }
+}
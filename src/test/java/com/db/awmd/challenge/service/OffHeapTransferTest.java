@@ -0,0 +1,75 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.config.JournalProperties;
+import com.db.awmd.challenge.config.TransferEngineProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.MinorUnits;
+import com.db.awmd.challenge.exception.InvalidAccountException;
+import com.db.awmd.challenge.repository.HoldRegistry;
+import com.db.awmd.challenge.repository.OffHeapAccountsRepository;
+import com.db.awmd.challenge.repository.TransactionHistory;
+import com.db.awmd.challenge.repository.TransactionJournal;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.math.BigDecimal;
+
+//The off-heap store hands out a new Account view on every lookup, so two lookups of one id are never the same object.
+public class OffHeapTransferTest {
+
+    private final AccountsService accountsService = new AccountsService(new OffHeapAccountsRepository(16, TransactionJournal.disabled()));
+
+    private final NotificationService notificationService = Mockito.mock(NotificationService.class);
+
+    @Before
+    public void setUp() {
+        this.accountsService.createAccount(new Account("1", new BigDecimal(2000)));
+        this.accountsService.createAccount(new Account("2", new BigDecimal(2000)));
+    }
+
+    @Test
+    public void transferEachRejectsSameAccount() {
+        //Arrange
+        TransactionService transactionService = new TransactionServiceImpl(this.accountsService, this.notificationService,
+                TransactionJournal.disabled(), TransactionHistory.disabled(), new HoldRegistry(100, 512), new TransferMetrics(),
+                new MinorUnits(MinorUnits.DEFAULT_CURRENCY));
+
+        //Act and Assert
+        assertSameAccountRejected(transactionService);
+    }
+
+    @Test
+    public void shardedTransferEachRejectsSameAccount() throws Exception {
+        //Arrange
+        TransferEngineProperties properties = new TransferEngineProperties();
+        properties.setShards(2);
+        ShardedTransactionService transactionService = new ShardedTransactionService(this.accountsService,
+                this.notificationService, TransactionJournal.disabled(), TransactionHistory.disabled(),
+                new TransferMetrics(), properties, new JournalProperties(), new MinorUnits(MinorUnits.DEFAULT_CURRENCY));
+
+        //Act and Assert
+        try {
+            assertSameAccountRejected(transactionService);
+        } finally {
+            transactionService.shutdown();
+        }
+    }
+
+    private void assertSameAccountRejected(TransactionService transactionService) {
+        //Act
+        String[] transactionIds = new String[2];
+        RuntimeException[] failures = new RuntimeException[2];
+        transactionService.transferEach(2, new String[] {"1", "1"}, new String[] {"1", "2"}, new long[] {10000, 10000},
+                transactionIds, failures);
+
+        //Assert
+        Assert.assertTrue(failures[0] instanceof InvalidAccountException);
+        Assert.assertNull(transactionIds[0]);
+        Assert.assertNull(failures[1]);
+        Assert.assertNotNull(transactionIds[1]);
+        Assert.assertEquals(new BigDecimal(1900), this.accountsService.getAccount("1").getBalance());
+        Mockito.verify(this.notificationService, Mockito.times(2)).notifyAboutTransfer(Mockito.any(), Mockito.anyString());
+    }
+}
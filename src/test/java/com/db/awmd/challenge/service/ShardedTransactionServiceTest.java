@@ -0,0 +1,240 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.config.JournalProperties;
+import com.db.awmd.challenge.config.TransferEngineProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BatchMode;
+import com.db.awmd.challenge.domain.BatchTransferResult;
+import com.db.awmd.challenge.domain.MinorUnits;
+import com.db.awmd.challenge.domain.Transaction;
+import com.db.awmd.challenge.domain.TransactionDetails;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.repository.TransactionHistory;
+import com.db.awmd.challenge.repository.TransactionJournal;
+import com.db.awmd.challenge.service.TransferMetrics.Phase;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"transfer.engine=SHARDED", "transfer.shards=4"})
+public class ShardedTransactionServiceTest {
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private AccountsService accountsService;
+
+    //With 4 shards, "1" and "5" share a shard while "2" and "3" each have their own.
+    private final String ACC_ID_1 = "1";
+    private final String ACC_ID_2 = "2";
+    private final String ACC_ID_3 = "3";
+    private final String ACC_ID_5 = "5";
+
+    @Before
+    public void setUp() throws Exception {
+        this.accountsService.createAccount(new Account(ACC_ID_1, new BigDecimal(2000)));
+        this.accountsService.createAccount(new Account(ACC_ID_2, new BigDecimal(2000)));
+        this.accountsService.createAccount(new Account(ACC_ID_3, new BigDecimal(2000)));
+        this.accountsService.createAccount(new Account(ACC_ID_5, new BigDecimal(2000)));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.accountsService.getAccountsRepository().clearAccounts();
+    }
+
+    @Test
+    public void usesShardedEngine() {
+        Assert.assertTrue(this.transactionService instanceof ShardedTransactionService);
+    }
+
+    @Test
+    public void transferWithinShard() {
+        //Act
+        TransactionDetails details = this.transactionService.transferAmount(new Transaction(ACC_ID_1, ACC_ID_5, new BigDecimal("100.25")));
+
+        //Assert
+        Assert.assertNotNull(details.getTransactionId());
+        Assert.assertEquals(new BigDecimal("1899.75"), this.accountsService.getAccount(ACC_ID_1).getBalance());
+        Assert.assertEquals(new BigDecimal("2100.25"), this.accountsService.getAccount(ACC_ID_5).getBalance());
+    }
+
+    @Test
+    public void transferAcrossShards() {
+        //Act
+        TransactionDetails details = this.transactionService.transferAmount(new Transaction(ACC_ID_1, ACC_ID_2, new BigDecimal(100)));
+
+        //Assert
+        Assert.assertNotNull(details.getTransactionId());
+        Assert.assertEquals(new BigDecimal(1900), this.accountsService.getAccount(ACC_ID_1).getBalance());
+        Assert.assertEquals(new BigDecimal(2100), this.accountsService.getAccount(ACC_ID_2).getBalance());
+    }
+
+    @Test
+    public void transferAcrossShardsInsufficientBalanceReservesNothing() {
+        //Act
+        try {
+            this.transactionService.transferAmount(new Transaction(ACC_ID_1, ACC_ID_2, new BigDecimal(2001)));
+            Assert.fail("Expected InsufficientBalanceException");
+        } catch (InsufficientBalanceException expected) {
+            //Assert
+            Assert.assertEquals(new BigDecimal(2000), this.accountsService.getAccount(ACC_ID_1).getBalance());
+            Assert.assertEquals(new BigDecimal(2000), this.accountsService.getAccount(ACC_ID_2).getBalance());
+        }
+    }
+
+    @Test
+    public void transferConcurrentAcrossShardsKeepsTotalConstant() throws Exception {
+        //Arrange
+        String[] ids = {ACC_ID_1, ACC_ID_2, ACC_ID_3, ACC_ID_5};
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        List<Future<TransactionDetails>> results = new ArrayList<>();
+
+        //Act
+        for(int i = 0; i < 400; i++) {
+            Transaction transaction = new Transaction(ids[i % 4], ids[(i / 4 + i + 1) % 4], new BigDecimal(7));
+            if(!transaction.getSenderId().equals(transaction.getReceiverId())) {
+                results.add(executorService.submit(() -> this.transactionService.transferAmount(transaction)));
+            }
+        }
+
+        //Assert
+        for(Future<TransactionDetails> detail : results) {
+            Assert.assertNotNull(detail.get(30, TimeUnit.SECONDS).getTransactionId());
+        }
+        BigDecimal total = BigDecimal.ZERO;
+        for(String id : ids) {
+            total = total.add(this.accountsService.getAccount(id).getBalance());
+        }
+        Assert.assertEquals(new BigDecimal(8000), total);
+        executorService.shutdown();
+    }
+
+    @Test
+    public void snapshotsShowSenderDebitBeforeReceiverCredit() throws Exception {
+        //Arrange: transfers to "2" cross shards, those to "5" stay in the sender's shard.
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        List<Future<TransactionDetails>> results = new ArrayList<>();
+        for(int i = 0; i < 400; i++) {
+            Transaction transaction = new Transaction(ACC_ID_1, i % 2 == 0 ? ACC_ID_2 : ACC_ID_5, new BigDecimal(3));
+            results.add(executorService.submit(() -> this.transactionService.transferAmount(transaction)));
+        }
+
+        //Act: receivers are read before the sender, so money published in both would add up to more.
+        long maxTotal = 0;
+        while(!results.stream().allMatch(Future::isDone)) {
+            long receivers = this.accountsService.getAccount(ACC_ID_2).getSnapshot().getBalanceMinor()
+                    + this.accountsService.getAccount(ACC_ID_5).getSnapshot().getBalanceMinor();
+            maxTotal = Math.max(maxTotal, receivers + this.accountsService.getAccount(ACC_ID_1).getSnapshot().getBalanceMinor());
+        }
+
+        //Assert
+        for(Future<TransactionDetails> detail : results) {
+            Assert.assertNotNull(detail.get(30, TimeUnit.SECONDS).getTransactionId());
+        }
+        Assert.assertTrue("Snapshots showed " + maxTotal, maxTotal <= 600_000);
+        Assert.assertEquals(new BigDecimal(800), this.accountsService.getAccount(ACC_ID_1).getSnapshot().getBalance());
+        Assert.assertEquals(new BigDecimal(2600), this.accountsService.getAccount(ACC_ID_2).getSnapshot().getBalance());
+        executorService.shutdown();
+    }
+
+    @Test
+    public void transferBatchSpendsCreditFromEarlierItem() {
+        //Arrange
+        List<Transaction> transactions = Arrays.asList(
+                new Transaction(ACC_ID_1, ACC_ID_2, new BigDecimal(1000)),
+                new Transaction(ACC_ID_2, ACC_ID_3, new BigDecimal(2500)));
+
+        //Act
+        BatchTransferResult result = this.transactionService.transferBatch(transactions, BatchMode.BEST_EFFORT);
+
+        //Assert
+        Assert.assertEquals(2, result.getSucceeded());
+        Assert.assertEquals(new BigDecimal(1000), this.accountsService.getAccount(ACC_ID_1).getBalance());
+        Assert.assertEquals(new BigDecimal(500), this.accountsService.getAccount(ACC_ID_2).getBalance());
+        Assert.assertEquals(new BigDecimal(4500), this.accountsService.getAccount(ACC_ID_3).getBalance());
+    }
+
+    @Test
+    public void transferBatchAllOrNothingIsRejected() {
+        //Act
+        BatchTransferResult result = this.transactionService.transferBatch(
+                Arrays.asList(new Transaction(ACC_ID_1, ACC_ID_2, new BigDecimal(10))), BatchMode.ALL_OR_NOTHING);
+
+        //Assert
+        Assert.assertFalse(result.isCommitted());
+        Assert.assertEquals(new BigDecimal(2000), this.accountsService.getAccount(ACC_ID_1).getBalance());
+    }
+
+    @Test(timeout = 10_000)
+    public void failingStepCompletesTransferAndReleasesPermit() throws Exception {
+        //Arrange
+        AtomicBoolean failNext = new AtomicBoolean(true);
+        TransferMetrics metrics = new TransferMetrics() {
+            @Override
+            public void record(Phase phase, long nanos) {
+                if(phase == Phase.LOCK && failNext.getAndSet(false)) {
+                    throw new IllegalStateException("Broken metrics");
+                }
+                super.record(phase, nanos);
+            }
+        };
+        ShardedTransactionService service = standaloneService(metrics);
+
+        //Act
+        try {
+            service.transfer(ACC_ID_1, ACC_ID_5, 100);
+            Assert.fail("IllegalStateException expected");
+        } catch (IllegalStateException expected) {
+        }
+        service.transfer(ACC_ID_1, ACC_ID_5, 100);
+        service.shutdown();
+
+        //Assert
+        Assert.assertEquals(new BigDecimal(1999), this.accountsService.getAccount(ACC_ID_1).getBalance());
+    }
+
+    @Test(timeout = 10_000)
+    public void transferAfterShutdownIsRejected() throws Exception {
+        //Arrange
+        ShardedTransactionService service = standaloneService(new TransferMetrics());
+        service.shutdown();
+
+        //Act
+        try {
+            service.transfer(ACC_ID_1, ACC_ID_2, 100);
+            Assert.fail("IllegalStateException expected");
+        } catch (IllegalStateException expected) {
+        }
+
+        //Assert
+        Assert.assertEquals(new BigDecimal(2000), this.accountsService.getAccount(ACC_ID_1).getBalance());
+    }
+
+    //One permit per shard, so a permit that is never released blocks the next transfer.
+    private ShardedTransactionService standaloneService(TransferMetrics metrics) {
+        TransferEngineProperties properties = new TransferEngineProperties();
+        properties.setShards(4);
+        properties.setShardQueueCapacity(1);
+        return new ShardedTransactionService(this.accountsService, (account, description) -> { },
+                TransactionJournal.disabled(), TransactionHistory.disabled(), metrics, properties, new JournalProperties(),
+                new MinorUnits(MinorUnits.DEFAULT_CURRENCY));
+    }
+}
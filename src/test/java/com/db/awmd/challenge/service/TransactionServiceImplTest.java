@@ -1,10 +1,21 @@
 package com.db.awmd.challenge.service;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountLocks;
+import com.db.awmd.challenge.domain.BatchMode;
+import com.db.awmd.challenge.domain.FanOutTransfer;
+import com.db.awmd.challenge.domain.FanOutTransferResult;
+import com.db.awmd.challenge.domain.HoldDetails;
+import com.db.awmd.challenge.domain.MinorUnits;
 import com.db.awmd.challenge.domain.Transaction;
 import com.db.awmd.challenge.domain.TransactionDetails;
+import com.db.awmd.challenge.exception.HoldNotFoundException;
 import com.db.awmd.challenge.exception.InsufficientBalanceException;
 import com.db.awmd.challenge.exception.InvalidAccountException;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.HoldRegistry;
+import com.db.awmd.challenge.repository.TransactionHistory;
+import com.db.awmd.challenge.repository.TransactionJournal;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -18,12 +29,17 @@ import org.springframework.test.context.junit4.SpringRunner;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest
@@ -35,6 +51,9 @@ public class TransactionServiceImplTest {
     @Autowired
     private AccountsService accountsService;
 
+    @Autowired
+    private TransferMetrics transferMetrics;
+
     @Mock
     private NotificationService notificationService;
 
@@ -170,4 +189,243 @@ public class TransactionServiceImplTest {
         Assert.assertEquals(this.accountsService.getAccount(ACC_ID_1).getBalance(), new BigDecimal(2000));
         Assert.assertEquals(this.accountsService.getAccount(ACC_ID_2).getBalance(), new BigDecimal(2000));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void transferConcurrentOpposingTransfersKeepTotalConstant() throws Exception {
+        //Arrange
+        Account account1 = this.accountsService.getAccount(ACC_ID_1);
+        Account account2 = this.accountsService.getAccount(ACC_ID_2);
+        BigDecimal expectedTotal = new BigDecimal(4000);
+
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        Collection<Callable<TransactionDetails>> calls = new ArrayList<>();
+        for(int i = 0; i < 200; i++) {
+            calls.add(() -> this.transactionService.transferAmount(new Transaction(ACC_ID_1, ACC_ID_2, new BigDecimal(7))));
+            calls.add(() -> this.transactionService.transferAmount(new Transaction(ACC_ID_2, ACC_ID_1, new BigDecimal(7))));
+        }
+
+        //Act
+        List<Future<TransactionDetails>> results = new ArrayList<>();
+        for(Callable<TransactionDetails> call : calls) {
+            results.add(executorService.submit(call));
+        }
+        List<BigDecimal> observedTotals = new ArrayList<>();
+        for(int i = 0; i < 100; i++) {
+            account1.getLock().lock();
+            account2.getLock().lock();
+            try {
+                observedTotals.add(account1.getBalance().add(account2.getBalance()));
+            } finally {
+                account2.getLock().unlock();
+                account1.getLock().unlock();
+            }
+        }
+
+        //Assert
+        for(Future<TransactionDetails> detail : results) {
+            Assert.assertNotNull(detail.get(30, TimeUnit.SECONDS).getTransactionId());
+        }
+        for(BigDecimal total : observedTotals) {
+            Assert.assertEquals(expectedTotal, total);
+        }
+        Assert.assertEquals(new BigDecimal(2000), account1.getBalance());
+        Assert.assertEquals(new BigDecimal(2000), account2.getBalance());
+    }
+
+    @Test
+    public void transferBetweenAccountsOnSameLockStripe() throws Exception {
+        //Arrange
+        AccountsService stripedAccounts = new AccountsService(new AccountsRepositoryInMemory(new AccountLocks(1)));
+        stripedAccounts.createAccount(new Account(ACC_ID_1, new BigDecimal(2000)));
+        stripedAccounts.createAccount(new Account(ACC_ID_2, new BigDecimal(2000)));
+        stripedAccounts.createAccount(new Account(ACC_ID_3, new BigDecimal(2000)));
+        TransactionService stripedService = new TransactionServiceImpl(stripedAccounts, (account, description) -> { },
+                TransactionJournal.disabled(), TransactionHistory.disabled(), new HoldRegistry(100, 512),
+                new TransferMetrics(), new MinorUnits(MinorUnits.DEFAULT_CURRENCY));
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        Collection<Callable<TransactionDetails>> calls = new ArrayList<>();
+        for(int i = 0; i < 100; i++) {
+            calls.add(() -> stripedService.transferAmount(new Transaction(ACC_ID_1, ACC_ID_2, new BigDecimal(5))));
+            calls.add(() -> stripedService.transferAmount(new Transaction(ACC_ID_2, ACC_ID_3, new BigDecimal(3))));
+        }
+
+        //Act
+        List<Future<TransactionDetails>> results = executorService.invokeAll(calls, 30, TimeUnit.SECONDS);
+
+        //Assert
+        for(Future<TransactionDetails> detail : results) {
+            Assert.assertNotNull(detail.get().getTransactionId());
+        }
+        Assert.assertEquals(new BigDecimal(1500), stripedAccounts.getAccount(ACC_ID_1).getBalance());
+        Assert.assertEquals(new BigDecimal(2200), stripedAccounts.getAccount(ACC_ID_2).getBalance());
+        Assert.assertEquals(new BigDecimal(2300), stripedAccounts.getAccount(ACC_ID_3).getBalance());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void transferRecordsMetrics() {
+        //Arrange
+        long transfers = this.transferMetrics.getTransfers();
+        long acquisitions = this.transferMetrics.getLockAcquisitions();
+
+        //Act
+        for(int i = 0; i < 5; i++) {
+            this.transactionService.transferAmount(new Transaction(ACC_ID_1, ACC_ID_2, new BigDecimal(10)));
+        }
+        try {
+            this.transactionService.transferAmount(new Transaction(ACC_ID_1, INVALID_ID, new BigDecimal(10)));
+            Assert.fail("Invalid account should be rejected");
+        } catch (InvalidAccountException iae) {
+            //Expected
+        }
+
+        //Assert
+        Map<String, Object> report = this.transferMetrics.report();
+        Assert.assertEquals(transfers + 5, this.transferMetrics.getTransfers());
+        Assert.assertTrue(this.transferMetrics.getLockAcquisitions() >= acquisitions + 5);
+        Assert.assertTrue(((Map<String, Long>) report.get("rejections")).get("InvalidAccountException") >= 1);
+        Assert.assertTrue(((Map<String, Long>) report.get("hotAccounts")).get(ACC_ID_1) >= 5);
+        Assert.assertTrue(((Map<String, Object>) report.get("phases")).containsKey("lock"));
+    }
+
+    @Test
+    public void fanOutDebitsSenderOnceAndCreditsEveryLeg() {
+        //Arrange
+        FanOutTransfer transfer = new FanOutTransfer(ACC_ID_1, Arrays.asList(
+                new FanOutTransfer.Leg(ACC_ID_2, new BigDecimal(300)),
+                new FanOutTransfer.Leg(ACC_ID_3, new BigDecimal(200)),
+                new FanOutTransfer.Leg(ACC_ID_2, new BigDecimal(100))));
+
+        //Act
+        FanOutTransferResult result = this.transactionService.transferFanOut(transfer);
+
+        //Assert
+        Assert.assertTrue(result.isCommitted());
+        Assert.assertEquals(new BigDecimal(600), result.getTotal());
+        Assert.assertEquals(3, result.getSucceeded());
+        Assert.assertNotNull(result.getResults().get(2).getTransactionId());
+        Assert.assertEquals(new BigDecimal(1400), this.accountsService.getAccount(ACC_ID_1).getBalance());
+        Assert.assertEquals(new BigDecimal(2400), this.accountsService.getAccount(ACC_ID_2).getBalance());
+        Assert.assertEquals(new BigDecimal(2200), this.accountsService.getAccount(ACC_ID_3).getBalance());
+    }
+
+    @Test
+    public void fanOutWithInvalidLegAppliesNothing() {
+        //Arrange
+        FanOutTransfer transfer = new FanOutTransfer(ACC_ID_1, Arrays.asList(
+                new FanOutTransfer.Leg(ACC_ID_2, new BigDecimal(300)),
+                new FanOutTransfer.Leg(INVALID_ID, new BigDecimal(200)),
+                new FanOutTransfer.Leg(ACC_ID_1, new BigDecimal(100))));
+
+        //Act
+        FanOutTransferResult result = this.transactionService.transferFanOut(transfer);
+
+        //Assert
+        Assert.assertFalse(result.isCommitted());
+        Assert.assertEquals(3, result.getFailed());
+        Assert.assertEquals("Fan-out rolled back.", result.getResults().get(0).getMessage());
+        Assert.assertEquals("Account does not exists for id = 4", result.getResults().get(1).getMessage());
+        Assert.assertEquals("Same Account transfer not supported.", result.getResults().get(2).getMessage());
+        Assert.assertEquals(new BigDecimal(2000), this.accountsService.getAccount(ACC_ID_1).getBalance());
+        Assert.assertEquals(new BigDecimal(2000), this.accountsService.getAccount(ACC_ID_2).getBalance());
+    }
+
+    @Test
+    public void holdReducesAvailableBalanceOnly() {
+        //Arrange
+        Account sender = this.accountsService.getAccount(ACC_ID_1);
+
+        //Act
+        this.transactionService.hold(new Transaction(ACC_ID_1, ACC_ID_2, new BigDecimal(1500)), 60_000);
+
+        //Assert
+        Assert.assertEquals(new BigDecimal(2000), sender.getBalance());
+        Assert.assertEquals(0, new BigDecimal(500).compareTo(sender.getSnapshot().getAvailableBalance()));
+    }
+
+    @Test(expected = InsufficientBalanceException.class)
+    public void debitCannotSpendHeldMoney() {
+        //Arrange
+        this.transactionService.hold(new Transaction(ACC_ID_1, ACC_ID_2, new BigDecimal(1500)), 60_000);
+
+        //Act
+        this.transactionService.transferAmount(new Transaction(ACC_ID_1, ACC_ID_3, new BigDecimal(600)));
+    }
+
+    @Test
+    public void captureCompletesHeldTransfer() {
+        //Arrange
+        HoldDetails hold = this.transactionService.hold(new Transaction(ACC_ID_1, ACC_ID_2, new BigDecimal(300)), 60_000);
+
+        //Act
+        TransactionDetails details = this.transactionService.capture(hold.getHoldId());
+
+        //Assert
+        Assert.assertNotNull(details.getTransactionId());
+        Assert.assertEquals(new BigDecimal(1700), this.accountsService.getAccount(ACC_ID_1).getBalance());
+        Assert.assertEquals(1700_00, this.accountsService.getAccount(ACC_ID_1).getAvailableMinor());
+        Assert.assertEquals(new BigDecimal(2300), this.accountsService.getAccount(ACC_ID_2).getBalance());
+    }
+
+    @Test
+    public void releasedHoldCannotBeCaptured() {
+        //Arrange
+        HoldDetails hold = this.transactionService.hold(new Transaction(ACC_ID_1, ACC_ID_2, new BigDecimal(300)), 60_000);
+        this.transactionService.release(hold.getHoldId());
+
+        //Act
+        try {
+            this.transactionService.capture(hold.getHoldId());
+            Assert.fail("Captured a released hold");
+        } catch (HoldNotFoundException expected) {
+            //Assert
+            Assert.assertEquals(new BigDecimal(2000), this.accountsService.getAccount(ACC_ID_1).getBalance());
+            Assert.assertEquals(2000_00, this.accountsService.getAccount(ACC_ID_1).getAvailableMinor());
+            Assert.assertEquals(new BigDecimal(2000), this.accountsService.getAccount(ACC_ID_2).getBalance());
+        }
+    }
+
+    @Test
+    public void holdsCannotTakeMoneyFromRollingBackBatch() throws Exception {
+        //Arrange
+        List<Transaction> batch = Arrays.asList(
+                new Transaction(ACC_ID_1, ACC_ID_2, new BigDecimal(2000)),
+                new Transaction(ACC_ID_2, ACC_ID_3, new BigDecimal(4000)),
+                new Transaction(ACC_ID_3, ACC_ID_1, new BigDecimal(99999)));
+        //Only balances the batch has applied but not committed cover these holds.
+        List<Transaction> holds = Arrays.asList(
+                new Transaction(ACC_ID_2, ACC_ID_1, new BigDecimal(4000)),
+                new Transaction(ACC_ID_3, ACC_ID_1, new BigDecimal(6000)));
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger holdsTaken = new AtomicInteger();
+        Thread holder = new Thread(() -> {
+            while(running.get()) {
+                for(Transaction hold : holds) {
+                    try {
+                        this.transactionService.release(this.transactionService.hold(hold, 60_000).getHoldId());
+                        holdsTaken.incrementAndGet();
+                    } catch (InsufficientBalanceException expected) {
+                    }
+                }
+            }
+        });
+
+        //Act
+        holder.start();
+        try {
+            for(int i = 0; i < 2000; i++) {
+                Assert.assertFalse(this.transactionService.transferBatch(batch, BatchMode.ALL_OR_NOTHING).isCommitted());
+            }
+        } finally {
+            running.set(false);
+            holder.join();
+        }
+
+        //Assert
+        Assert.assertEquals(0, holdsTaken.get());
+        for(String id : Arrays.asList(ACC_ID_1, ACC_ID_2, ACC_ID_3)) {
+            Assert.assertEquals(new BigDecimal(2000), this.accountsService.getAccount(id).getBalance());
+            Assert.assertEquals(0, this.accountsService.getAccount(id).getHeldMinor());
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.config.AdmissionProperties;
+import com.db.awmd.challenge.domain.Transaction;
+import com.db.awmd.challenge.exception.TransferRejectedException;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TransferAdmissionTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    private final AdmissionProperties properties = new AdmissionProperties();
+
+    @Before
+    public void setUp() {
+        //Ten transfers a second and three back to back per account; clients are not limited.
+        properties.setEnabled(true);
+        properties.getAccount().setRatePerSecond(10);
+        properties.getAccount().setBurst(3);
+        properties.getClient().setRatePerSecond(0);
+        properties.getLimit().setInitial(10);
+        properties.getLimit().setMin(2);
+    }
+
+    private void advanceMillis(long millis) {
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    @Test
+    public void accountBucketAllowsBurstThenRefills() {
+        //Arrange
+        TransferAdmission admission = new TransferAdmission(properties, now::get);
+        for(int i = 0; i < 3; i++) {
+            admission.complete(admission.admit("client", "hot", "other-" + i));
+        }
+
+        //Act
+        TransferRejectedException rejected = null;
+        try {
+            admission.admit("client", "hot", "other");
+        } catch (TransferRejectedException tre) {
+            rejected = tre;
+        }
+        advanceMillis(100);
+        admission.complete(admission.admit("client", "hot", "other"));
+
+        //Assert
+        Assert.assertNotNull(rejected);
+        Assert.assertEquals(100, rejected.getRetryAfterMillis());
+        Assert.assertEquals(1, admission.getRejectedByAccount());
+    }
+
+    @Test
+    public void rejectedTransferKeepsNoToken() {
+        //Arrange
+        properties.getClient().setRatePerSecond(1);
+        properties.getClient().setBurst(3);
+        TransferAdmission admission = new TransferAdmission(properties, now::get);
+        for(int i = 0; i < 3; i++) {
+            admission.complete(admission.admit("other-client", "other-" + i, "hot"));
+        }
+
+        //Act
+        try {
+            admission.admit("client", "cold", "hot");
+            Assert.fail("Expected the receiver's bucket to be empty");
+        } catch (TransferRejectedException tre) {
+            Assert.assertEquals(1, admission.getRejectedByAccount());
+        }
+
+        //Assert: the sender and the client still have their whole burst.
+        for(int i = 0; i < 3; i++) {
+            admission.complete(admission.admit("client", "cold", "receiver-" + i));
+        }
+    }
+
+    @Test
+    public void batchPaysATokenPerTransfer() {
+        //Arrange
+        TransferAdmission admission = new TransferAdmission(properties, now::get);
+        List<Transaction> batch = Arrays.asList(
+                new Transaction("hot", "a", BigDecimal.ONE),
+                new Transaction("b", "hot", BigDecimal.ONE));
+
+        //Act
+        admission.complete(admission.admit("client", batch));
+
+        //Assert
+        admission.complete(admission.admit("client", "hot", "c"));
+        try {
+            admission.admit("client", batch);
+            Assert.fail("Expected the hot account's bucket to be short of two tokens");
+        } catch (TransferRejectedException tre) {
+            Assert.assertEquals(1, admission.getRejectedByAccount());
+        }
+        //Nothing was kept from the rejected batch, so a and b still have tokens to spare.
+        for(int i = 0; i < 2; i++) {
+            admission.complete(admission.admit("client", "a", "b"));
+        }
+    }
+
+    @Test
+    public void batchLargerThanTheBurstPaysForEveryTransfer() {
+        //Arrange: six transfers from an account with a burst of three.
+        TransferAdmission admission = new TransferAdmission(properties, now::get);
+        List<Transaction> batch = Arrays.asList(
+                new Transaction("hot", "a", BigDecimal.ONE), new Transaction("hot", "b", BigDecimal.ONE),
+                new Transaction("hot", "c", BigDecimal.ONE), new Transaction("hot", "d", BigDecimal.ONE),
+                new Transaction("hot", "e", BigDecimal.ONE), new Transaction("hot", "f", BigDecimal.ONE));
+
+        //Act
+        admission.complete(admission.admit("client", batch));
+
+        //Assert: the bucket is 600ms in debt, so it only has a token again after 400ms.
+        advanceMillis(300);
+        try {
+            admission.admit("client", "hot", "g");
+            Assert.fail("Expected the hot account's bucket to be in debt");
+        } catch (TransferRejectedException tre) {
+            Assert.assertEquals(100, tre.getRetryAfterMillis());
+        }
+        advanceMillis(100);
+        admission.complete(admission.admit("client", "hot", "g"));
+        try {
+            admission.admit("client", batch);
+            Assert.fail("Expected the batch to wait for a full bucket");
+        } catch (TransferRejectedException tre) {
+            Assert.assertEquals(300, tre.getRetryAfterMillis());
+        }
+    }
+
+    @Test
+    public void hotAccountDoesNotLimitOtherAccounts() {
+        //Arrange
+        TransferAdmission admission = new TransferAdmission(properties, now::get);
+        int rejected = 0;
+        for(int i = 0; i < 100; i++) {
+            try {
+                admission.complete(admission.admit("client", "hot", "other-" + i));
+            } catch (TransferRejectedException tre) {
+                rejected++;
+            }
+        }
+
+        //Act
+        long ticket = admission.admit("client", "a", "b");
+        admission.complete(ticket);
+
+        //Assert
+        Assert.assertEquals(97, rejected);
+    }
+
+    @Test
+    public void clientBucketRejectsRunawayClient() {
+        //Arrange
+        properties.getClient().setRatePerSecond(1);
+        properties.getClient().setBurst(1);
+        TransferAdmission admission = new TransferAdmission(properties, now::get);
+        admission.complete(admission.admit("runaway", "a", "b"));
+
+        //Act and Assert
+        try {
+            admission.admit("runaway", "c", "d");
+            Assert.fail("Expected the client's bucket to be empty");
+        } catch (TransferRejectedException tre) {
+            Assert.assertEquals(1000, tre.getRetryAfterMillis());
+        }
+        admission.complete(admission.admit("well-behaved", "c", "d"));
+        Assert.assertEquals(1, admission.getRejectedByClient());
+    }
+
+    @Test
+    public void limitShrinksWhenLatencyRises() {
+        //Arrange
+        properties.getAccount().setRatePerSecond(0);
+        TransferAdmission admission = new TransferAdmission(properties, now::get);
+        long[] tickets = new long[10];
+        for(int i = 0; i < tickets.length; i++) {
+            tickets[i] = admission.admit("client", "a" + i, "b" + i);
+        }
+        try {
+            admission.admit("client", "a", "b");
+            Assert.fail("Expected the concurrency limit to be reached");
+        } catch (TransferRejectedException tre) {
+            Assert.assertEquals(1, admission.getRejectedByLimit());
+        }
+
+        //Act: the first transfer sets the unloaded latency and the rest take a hundred times as long.
+        advanceMillis(1);
+        admission.complete(tickets[0]);
+        int grown = admission.getLimit();
+        advanceMillis(99);
+        for(int i = 1; i < tickets.length; i++) {
+            admission.complete(tickets[i]);
+        }
+
+        //Assert
+        Assert.assertEquals(16, grown);
+        //Samples stop counting once fewer than half the limit are in flight.
+        Assert.assertEquals(12, admission.getLimit());
+        Assert.assertEquals(0, admission.getInFlight());
+    }
+
+    @Test
+    public void bucketsStayWithinMaxKeys() {
+        //Arrange
+        TokenBuckets buckets = new TokenBuckets(1, 1, 4, now::get);
+        for(int i = 0; i < 4; i++) {
+            Assert.assertEquals(0, buckets.tryAcquire("idle-" + i));
+        }
+        advanceMillis(2000);
+
+        //Act
+        for(int i = 0; i < 4; i++) {
+            Assert.assertEquals(0, buckets.tryAcquire("busy-" + i));
+        }
+        for(int i = 4; i < 8; i++) {
+            buckets.tryAcquire("busy-" + i);
+        }
+
+        //Assert
+        Assert.assertTrue(buckets.size() <= 4);
+        //The idle buckets were full again and went for free; busy ones were evicted, but never the newest.
+        Assert.assertEquals(TimeUnit.SECONDS.toNanos(1), buckets.tryAcquire("busy-7"));
+        Assert.assertTrue(buckets.getEvictions() > 0);
+    }
+}
@@ -0,0 +1,170 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.exception.TransferRejectedException;
+import com.db.awmd.challenge.service.TransactionService;
+import com.db.awmd.challenge.service.TransferAdmission;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class BinaryTransferHandlerTest {
+
+    private final TransactionService transactionService = Mockito.mock(TransactionService.class);
+
+    private final BinaryTransferHandler handler = new BinaryTransferHandler(transactionService);
+
+    private final ByteBuffer in = ByteBuffer.allocate(1024);
+
+    private final ByteBuffer out = ByteBuffer.allocate(4 * BinaryTransferHandler.MAX_RESPONSE_FRAME);
+
+    @Before
+    public void setUp() {
+        answerEachWithTransfer(transactionService);
+    }
+
+    @Test
+    public void handlesCompleteFramesAndKeepsPartialOne() {
+        //Arrange
+        Mockito.when(transactionService.transfer("1", "2", 1_000)).thenReturn("tx-1");
+        Mockito.when(transactionService.transfer("2", "1", 5_000))
+                .thenThrow(new InsufficientBalanceException("Insufficient Account Balance."));
+        BinaryTransferHandler.writeRequest(in, 7, "1", "2", 1_000);
+        BinaryTransferHandler.writeRequest(in, 8, "2", "1", 5_000);
+        BinaryTransferHandler.writeRequest(in, 9, "1", "2", 1_000);
+        in.flip();
+        in.limit(in.limit() - 3);
+
+        //Act
+        int complete = BinaryTransferHandler.completeFrames(in);
+        handler.handle(in, out, "client");
+        out.flip();
+
+        //Assert
+        Assert.assertEquals(2 * (4 + 8 + 1 + 1 + 1 + 1 + 8), complete);
+        Assert.assertEquals(complete, in.position());
+        Assert.assertEquals(7, readResponse(BinaryTransferHandler.OK, "tx-1"));
+        Assert.assertEquals(8, readResponse(BinaryTransferHandler.INSUFFICIENT_BALANCE, ""));
+        Assert.assertFalse(out.hasRemaining());
+    }
+
+    @Test
+    public void reusesAccountIdsAndRejectsSmallAmounts() {
+        //Arrange
+        BinaryTransferHandler.writeRequest(in, 1, "sender", "receiver", 1_000);
+        BinaryTransferHandler.writeRequest(in, 2, "sender", "receiver", 1_000);
+        BinaryTransferHandler.writeRequest(in, 3, "sender", "receiver", 1);
+        in.flip();
+        ArgumentCaptor<String> senders = ArgumentCaptor.forClass(String.class);
+
+        //Act
+        handler.handle(in, out, "client");
+        out.flip();
+
+        //Assert
+        Mockito.verify(transactionService, Mockito.times(2)).transfer(senders.capture(), Mockito.eq("receiver"), Mockito.eq(1_000L));
+        Assert.assertSame(senders.getAllValues().get(0), senders.getAllValues().get(1));
+        readResponse(BinaryTransferHandler.OK, "");
+        readResponse(BinaryTransferHandler.OK, "");
+        Assert.assertEquals(3, readResponse(BinaryTransferHandler.BAD_REQUEST, ""));
+    }
+
+    @Test
+    public void rejectedTransferIsNotExecuted() {
+        //Arrange
+        TransferAdmission admission = Mockito.mock(TransferAdmission.class);
+        Mockito.when(admission.admit("client", "hot", "2")).thenThrow(new TransferRejectedException("Too many transfers for these accounts.", 5));
+        BinaryTransferHandler admitted = new BinaryTransferHandler(transactionService, admission);
+        BinaryTransferHandler.writeRequest(in, 1, "hot", "2", 1_000);
+        BinaryTransferHandler.writeRequest(in, 2, "1", "2", 1_000);
+        in.flip();
+
+        //Act
+        admitted.handle(in, out, "client");
+        out.flip();
+
+        //Assert
+        Assert.assertEquals(1, readResponse(BinaryTransferHandler.TOO_MANY_REQUESTS, ""));
+        Assert.assertEquals(2, readResponse(BinaryTransferHandler.OK, ""));
+        Mockito.verify(transactionService, Mockito.never()).transfer(Mockito.eq("hot"), Mockito.anyString(), Mockito.anyLong());
+        Mockito.verify(admission).complete(Mockito.anyLong());
+    }
+
+    @Test
+    public void framesAreExecutedAsOneBatch() {
+        //Arrange
+        Mockito.when(transactionService.transfer("2", "1", 5_000))
+                .thenThrow(new InsufficientBalanceException("Insufficient Account Balance."));
+        BinaryTransferHandler.writeRequest(in, 1, "1", "2", 1_000);
+        BinaryTransferHandler.writeRequest(in, 2, "2", "1", 0);
+        BinaryTransferHandler.writeRequest(in, 3, "2", "1", 5_000);
+        BinaryTransferHandler.writeRequest(in, 4, "1", "2", 2_000);
+        in.flip();
+
+        //Act
+        int handled = handler.handle(in, out, "client");
+        out.flip();
+
+        //Assert
+        Assert.assertEquals(4, handled);
+        Mockito.verify(transactionService).transferEach(Mockito.eq(3), Mockito.any(String[].class),
+                Mockito.any(String[].class), Mockito.any(long[].class), Mockito.any(String[].class),
+                Mockito.any(RuntimeException[].class));
+        Assert.assertEquals(1, readResponse(BinaryTransferHandler.OK, ""));
+        Assert.assertEquals(2, readResponse(BinaryTransferHandler.BAD_REQUEST, ""));
+        Assert.assertEquals(3, readResponse(BinaryTransferHandler.INSUFFICIENT_BALANCE, ""));
+        Assert.assertEquals(4, readResponse(BinaryTransferHandler.OK, ""));
+    }
+
+    @Test
+    public void malformedFrameIsRejected() {
+        //Arrange
+        BinaryTransferHandler.writeRequest(in, 1, "1", "2", 1_000);
+        in.put(12, (byte) 5);
+        in.flip();
+
+        //Act and Assert
+        Assert.assertEquals(-1, BinaryTransferHandler.completeFrames(in));
+    }
+
+    //Answers transferEach one transfer at a time, from whatever transfer is stubbed to do.
+    static void answerEachWithTransfer(TransactionService transactionService) {
+        Mockito.doAnswer(invocation -> {
+            Object[] args = invocation.getArguments();
+            int count = (Integer) args[0];
+            String[] senderIds = (String[]) args[1];
+            String[] receiverIds = (String[]) args[2];
+            long[] amounts = (long[]) args[3];
+            String[] transactionIds = (String[]) args[4];
+            RuntimeException[] failures = (RuntimeException[]) args[5];
+            for(int i = 0; i < count; i++) {
+                try {
+                    transactionIds[i] = transactionService.transfer(senderIds[i], receiverIds[i], amounts[i]);
+                    failures[i] = null;
+                } catch (RuntimeException ex) {
+                    transactionIds[i] = null;
+                    failures[i] = ex;
+                }
+            }
+            return null;
+        }).when(transactionService).transferEach(Mockito.anyInt(), Mockito.any(String[].class),
+                Mockito.any(String[].class), Mockito.any(long[].class), Mockito.any(String[].class),
+                Mockito.any(RuntimeException[].class));
+    }
+
+    private long readResponse(byte status, String transactionId) {
+        int length = out.getInt();
+        long correlationId = out.getLong();
+        Assert.assertEquals(status, out.get());
+        byte[] id = new byte[out.get()];
+        out.get(id);
+        Assert.assertEquals(8 + 1 + 1 + id.length, length);
+        Assert.assertEquals(transactionId, new String(id, StandardCharsets.US_ASCII));
+        return correlationId;
+    }
+}
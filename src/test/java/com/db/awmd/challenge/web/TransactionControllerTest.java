@@ -1,6 +1,7 @@
 package com.db.awmd.challenge.web;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceEngineType;
 import com.db.awmd.challenge.domain.Transaction;
 import com.db.awmd.challenge.domain.TransactionDetails;
 import com.db.awmd.challenge.service.AccountsService;
@@ -23,6 +24,8 @@ import org.springframework.web.context.WebApplicationContext;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -32,8 +35,12 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.stream.IntStream;
 
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
 
@@ -90,6 +97,86 @@ public class TransactionControllerTest {
         Assert.assertEquals(new BigDecimal(300), this.accountsService.getAccount(ACC_ID_2).getBalance());
     }
 
+    @Test
+    public void oneMinorUnitIsTheSmallestTransfer() throws Exception {
+        //Arrange, Act and Assert
+        this.mockMvc.perform(post("/v1/transaction/transfer").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"from\":\"1\",\"to\":\"2\",\"amount\":0.01}"))
+                .andExpect(status().isOk());
+        this.mockMvc.perform(post("/v1/transaction/transfer").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"from\":\"1\",\"to\":\"2\",\"amount\":0.001}"))
+                .andExpect(status().isBadRequest());
+
+        Assert.assertEquals(new BigDecimal("199.99"), this.accountsService.getAccount(ACC_ID_1).getBalance());
+        Assert.assertEquals(new BigDecimal("200.01"), this.accountsService.getAccount(ACC_ID_2).getBalance());
+    }
+
+    @Test
+    public void makeTransactionAsync() throws Exception {
+        //Arrange
+        MvcResult started = this.mockMvc.perform(post("/v1/transaction/transfer/async").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"from\":\"1\",\"to\":\"2\",\"amount\":100}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        //Act
+        ResultActions result = this.mockMvc.perform(asyncDispatch(started));
+
+        //Assert
+        result.andExpect(status().isOk()).andExpect(jsonPath("$.transactionId").exists());
+        Assert.assertEquals(new BigDecimal(100), this.accountsService.getAccount(ACC_ID_1).getBalance());
+        Assert.assertEquals(new BigDecimal(300), this.accountsService.getAccount(ACC_ID_2).getBalance());
+    }
+
+    @Test
+    public void makeTransactionAsyncInvalidAccountId() throws Exception {
+        //Arrange
+        MvcResult started = this.mockMvc.perform(post("/v1/transaction/transfer/async").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"from\":\"4\",\"to\":\"2\",\"amount\":100}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        //Act & Assert
+        this.mockMvc.perform(asyncDispatch(started)).andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void makeTransactionRetryWithIdempotencyKey() throws Exception {
+        //Arrange
+        String body = "{\"from\":\"1\",\"to\":\"2\",\"amount\":50}";
+        String key = "retry-" + System.nanoTime();
+        MvcResult first = this.mockMvc.perform(post("/v1/transaction/transfer").contentType(MediaType.APPLICATION_JSON)
+                .header(TransactionController.IDEMPOTENCY_KEY, key).content(body))
+                .andReturn();
+
+        //Act
+        MvcResult retry = this.mockMvc.perform(post("/v1/transaction/transfer").contentType(MediaType.APPLICATION_JSON)
+                .header(TransactionController.IDEMPOTENCY_KEY, key).content(body))
+                .andReturn();
+
+        //Assert
+        Assert.assertEquals(HttpStatus.OK.value(), retry.getResponse().getStatus());
+        Assert.assertEquals(fromJson(first.getResponse().getContentAsString()).getTransactionId(),
+                fromJson(retry.getResponse().getContentAsString()).getTransactionId());
+        Assert.assertEquals(new BigDecimal(150), this.accountsService.getAccount(ACC_ID_1).getBalance());
+        Assert.assertEquals(new BigDecimal(250), this.accountsService.getAccount(ACC_ID_2).getBalance());
+    }
+
+    @Test
+    public void makeTransactionIdempotencyKeyReusedForOtherTransfer() throws Exception {
+        //Arrange
+        String key = "reused-" + System.nanoTime();
+        this.mockMvc.perform(post("/v1/transaction/transfer").contentType(MediaType.APPLICATION_JSON)
+                .header(TransactionController.IDEMPOTENCY_KEY, key).content("{\"from\":\"1\",\"to\":\"2\",\"amount\":50}"))
+                .andExpect(status().isOk());
+
+        //Act & Assert
+        this.mockMvc.perform(post("/v1/transaction/transfer").contentType(MediaType.APPLICATION_JSON)
+                .header(TransactionController.IDEMPOTENCY_KEY, key).content("{\"from\":\"1\",\"to\":\"2\",\"amount\":60}"))
+                .andExpect(status().isUnprocessableEntity());
+        Assert.assertEquals(new BigDecimal(150), this.accountsService.getAccount(ACC_ID_1).getBalance());
+    }
+
     @Test
     public void makeTransactionMissingData() throws Exception {
         //Arrange, Act and Assert
@@ -114,6 +201,18 @@ public class TransactionControllerTest {
                 .andExpect(status().isBadRequest());
     }
 
+    @Test
+    public void makeTransactionWithFractionOfMinorUnit() throws Exception {
+        //Arrange & Act
+        MvcResult result = this.mockMvc.perform(post("/v1/transaction/transfer").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"from\":\"1\",\"to\":\"2\",\"amount\":10.005}"))
+                .andReturn();
+
+        //Assert
+        Assert.assertEquals(HttpStatus.BAD_REQUEST.value(), result.getResponse().getStatus());
+        Assert.assertEquals(new BigDecimal(200), this.accountsService.getAccount(ACC_ID_1).getBalance());
+    }
+
     @Test
     public void makeTransactionAmountGreaterThanBalance() throws Exception {
         //Arrange & Act
@@ -299,4 +398,229 @@ public class TransactionControllerTest {
         Assert.assertEquals(new BigDecimal(expected1Balance), this.accountsService.getAccount(ACC_ID_1).getBalance());
         Assert.assertEquals(new BigDecimal(expected2Balance), this.accountsService.getAccount(ACC_ID_2).getBalance());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void makeBatchTransactionBestEffort() throws Exception {
+        //Arrange, Act and Assert
+        this.mockMvc.perform(post("/v1/transaction/transfers").contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"from\":\"1\",\"to\":\"2\",\"amount\":50}," +
+                        "{\"from\":\"3\",\"to\":\"4\",\"amount\":50}," +
+                        "{\"from\":\"2\",\"to\":\"3\",\"amount\":1000}," +
+                        "{\"from\":\"2\",\"to\":\"3\",\"amount\":0}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.committed").value(true))
+                .andExpect(jsonPath("$.succeeded").value(1))
+                .andExpect(jsonPath("$.failed").value(3))
+                .andExpect(jsonPath("$.results[0].message").value("Transaction Successful!!"))
+                .andExpect(jsonPath("$.results[1].message").value("Account does not exists for id = 4"))
+                .andExpect(jsonPath("$.results[2].message").value("Insufficient Account Balance."))
+                .andExpect(jsonPath("$.results[3].message").value("amount Transfer amount should be greater than 0."));
+
+        Assert.assertEquals(new BigDecimal(150), this.accountsService.getAccount(ACC_ID_1).getBalance());
+        Assert.assertEquals(new BigDecimal(250), this.accountsService.getAccount(ACC_ID_2).getBalance());
+        Assert.assertEquals(new BigDecimal(200), this.accountsService.getAccount(ACC_ID_3).getBalance());
+    }
+
+    @Test
+    public void makeBatchTransactionAllOrNothingRollsBack() throws Exception {
+        //Arrange, Act and Assert
+        this.mockMvc.perform(post("/v1/transaction/transfers?mode=ALL_OR_NOTHING").contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"from\":\"1\",\"to\":\"2\",\"amount\":150}," +
+                        "{\"from\":\"3\",\"to\":\"1\",\"amount\":20}," +
+                        "{\"from\":\"1\",\"to\":\"3\",\"amount\":100}]"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.committed").value(false))
+                .andExpect(jsonPath("$.results[0].message").value("Batch rolled back."))
+                .andExpect(jsonPath("$.results[2].message").value("Insufficient Account Balance."));
+
+        Assert.assertEquals(new BigDecimal(INITIAL_BAL), this.accountsService.getAccount(ACC_ID_1).getBalance());
+        Assert.assertEquals(new BigDecimal(INITIAL_BAL), this.accountsService.getAccount(ACC_ID_2).getBalance());
+        Assert.assertEquals(new BigDecimal(INITIAL_BAL), this.accountsService.getAccount(ACC_ID_3).getBalance());
+    }
+
+    @Test
+    public void transferFromCreditOnlyAccountIsBadRequest() throws Exception {
+        //Arrange
+        this.accountsService.createAccount(new Account("sink", new BigDecimal(200), BalanceEngineType.CREDIT_ONLY));
+
+        //Act
+        this.mockMvc.perform(post("/v1/transaction/transfer").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"from\":\"sink\",\"to\":\"1\",\"amount\":100}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("Debit not supported on a credit-only account."));
+
+        //Assert
+        Assert.assertEquals(new BigDecimal(200), this.accountsService.getAccount("sink").getBalance());
+        Assert.assertEquals(new BigDecimal(INITIAL_BAL), this.accountsService.getAccount(ACC_ID_1).getBalance());
+    }
+
+    @Test
+    public void rolledBackBatchTakesBackCreditsToCreditOnlyAccount() throws Exception {
+        //Arrange
+        this.accountsService.createAccount(new Account("sink", BigDecimal.ZERO, BalanceEngineType.CREDIT_ONLY));
+
+        //Act
+        this.mockMvc.perform(post("/v1/transaction/transfers?mode=ALL_OR_NOTHING").contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"from\":\"1\",\"to\":\"sink\",\"amount\":150}," +
+                        "{\"from\":\"1\",\"to\":\"2\",\"amount\":100}]"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.committed").value(false));
+
+        //Assert
+        Assert.assertEquals(new BigDecimal(0), this.accountsService.getAccount("sink").getBalance());
+        Assert.assertEquals(new BigDecimal(INITIAL_BAL), this.accountsService.getAccount(ACC_ID_1).getBalance());
+    }
+
+    @Test
+    public void makeBatchTransactionFromNdjson() throws Exception {
+        //Arrange, Act and Assert
+        this.mockMvc.perform(post("/v1/transaction/transfers?mode=ALL_OR_NOTHING").contentType(TransactionController.NDJSON_VALUE)
+                .content("{\"from\":\"1\",\"to\":\"2\",\"amount\":150}\n{\"from\":\"2\",\"to\":\"3\",\"amount\":300}\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.succeeded").value(2));
+
+        Assert.assertEquals(new BigDecimal(50), this.accountsService.getAccount(ACC_ID_1).getBalance());
+        Assert.assertEquals(new BigDecimal(50), this.accountsService.getAccount(ACC_ID_2).getBalance());
+        Assert.assertEquals(new BigDecimal(500), this.accountsService.getAccount(ACC_ID_3).getBalance());
+    }
+
+    @Test
+    public void ndjsonBatchOverTheItemLimitIsRejected() throws Exception {
+        //Arrange
+        StringBuilder body = new StringBuilder();
+        for(int i = 0; i <= TransactionController.MAX_NDJSON_ITEMS; i++) {
+            body.append("{\"from\":\"1\",\"to\":\"2\",\"amount\":1}\n");
+        }
+
+        //Act and Assert
+        this.mockMvc.perform(post("/v1/transaction/transfers").contentType(TransactionController.NDJSON_VALUE)
+                .content(body.toString()))
+                .andExpect(status().isPayloadTooLarge());
+
+        Assert.assertEquals(new BigDecimal(INITIAL_BAL), this.accountsService.getAccount(ACC_ID_1).getBalance());
+    }
+
+    @Test
+    public void makeFanOutTransaction() throws Exception {
+        //Arrange, Act and Assert
+        this.mockMvc.perform(post("/v1/transaction/fan-out").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"from\":\"1\",\"legs\":[{\"to\":\"2\",\"amount\":50}," +
+                        "{\"to\":\"3\",\"amount\":70},{\"to\":\"2\",\"amount\":30}]}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.committed").value(true))
+                .andExpect(jsonPath("$.total").value(150))
+                .andExpect(jsonPath("$.succeeded").value(3))
+                .andExpect(jsonPath("$.results[1].transaction.receiverId").value("3"));
+
+        Assert.assertEquals(new BigDecimal(50), this.accountsService.getAccount(ACC_ID_1).getBalance());
+        Assert.assertEquals(new BigDecimal(280), this.accountsService.getAccount(ACC_ID_2).getBalance());
+        Assert.assertEquals(new BigDecimal(270), this.accountsService.getAccount(ACC_ID_3).getBalance());
+    }
+
+    @Test
+    public void makeFanOutTransactionInsufficientBalanceRollsBack() throws Exception {
+        //Arrange, Act and Assert
+        this.mockMvc.perform(post("/v1/transaction/fan-out").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"from\":\"1\",\"legs\":[{\"to\":\"2\",\"amount\":150},{\"to\":\"3\",\"amount\":100}]}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.committed").value(false))
+                .andExpect(jsonPath("$.results[0].message").value("Insufficient Account Balance."));
+
+        Assert.assertEquals(new BigDecimal(INITIAL_BAL), this.accountsService.getAccount(ACC_ID_1).getBalance());
+        Assert.assertEquals(new BigDecimal(INITIAL_BAL), this.accountsService.getAccount(ACC_ID_2).getBalance());
+        Assert.assertEquals(new BigDecimal(INITIAL_BAL), this.accountsService.getAccount(ACC_ID_3).getBalance());
+    }
+
+    @Test
+    public void holdAndCapture() throws Exception {
+        //Arrange
+        String body = this.mockMvc.perform(post("/v1/transaction/holds?ttlSeconds=30").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"from\":\"1\",\"to\":\"2\",\"amount\":150}"))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        String holdId = new ObjectMapper().readTree(body).get("holdId").asText();
+
+        //Act and Assert
+        this.mockMvc.perform(post("/v1/transaction/holds/" + holdId + "/capture"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.message").value("Transaction Successful!!"));
+        this.mockMvc.perform(delete("/v1/transaction/holds/" + holdId))
+                .andExpect(status().isNotFound());
+
+        Assert.assertEquals(new BigDecimal(50), this.accountsService.getAccount(ACC_ID_1).getBalance());
+        Assert.assertEquals(new BigDecimal(350), this.accountsService.getAccount(ACC_ID_2).getBalance());
+    }
+
+    @Test
+    public void holdMoreThanAvailable() throws Exception {
+        //Arrange
+        this.mockMvc.perform(post("/v1/transaction/holds").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"from\":\"1\",\"to\":\"2\",\"amount\":150}"))
+                .andExpect(status().isCreated());
+
+        //Act and Assert
+        this.mockMvc.perform(post("/v1/transaction/holds").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"from\":\"1\",\"to\":\"3\",\"amount\":100}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("Insufficient Account Balance."));
+    }
+
+    @Test
+    public void holdWithTtlOutOfRange() throws Exception {
+        //Arrange, Act and Assert: Long.MAX_VALUE seconds would overflow the expiry time.
+        this.mockMvc.perform(post("/v1/transaction/holds?ttlSeconds=0").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"from\":\"1\",\"to\":\"2\",\"amount\":150}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("ttlSeconds must be between 1 and 86400."));
+        this.mockMvc.perform(post("/v1/transaction/holds?ttlSeconds=" + Long.MAX_VALUE).contentType(MediaType.APPLICATION_JSON)
+                .content("{\"from\":\"1\",\"to\":\"2\",\"amount\":150}"))
+                .andExpect(status().isBadRequest());
+
+        Assert.assertEquals(new BigDecimal(INITIAL_BAL), this.accountsService.getAccount(ACC_ID_1).getBalance());
+    }
+
+    @Test
+    public void makeBinaryTransactions() throws Exception {
+        //Arrange
+        ByteBuffer frames = ByteBuffer.allocate(256);
+        BinaryTransferHandler.writeRequest(frames, 1, ACC_ID_1, ACC_ID_2, 15_000);
+        BinaryTransferHandler.writeRequest(frames, 2, ACC_ID_1, ACC_ID_3, 15_000);
+        BinaryTransferHandler.writeRequest(frames, 3, ACC_ID_1, "9", 100);
+
+        //Act
+        MvcResult result = this.mockMvc.perform(post("/v1/transaction/binary").contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .content(Arrays.copyOf(frames.array(), frames.position())))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        //Assert
+        ByteBuffer responses = ByteBuffer.wrap(result.getResponse().getContentAsByteArray());
+        byte[] statuses = new byte[3];
+        for(int i = 0; i < statuses.length; i++) {
+            int length = responses.getInt();
+            Assert.assertEquals(i + 1, responses.getLong());
+            statuses[i] = responses.get();
+            responses.position(responses.position() + length - 9);
+        }
+        Assert.assertFalse(responses.hasRemaining());
+        Assert.assertArrayEquals(new byte[] {BinaryTransferHandler.OK, BinaryTransferHandler.INSUFFICIENT_BALANCE,
+                BinaryTransferHandler.INVALID_ACCOUNT}, statuses);
+        Assert.assertEquals(new BigDecimal(50), this.accountsService.getAccount(ACC_ID_1).getBalance());
+        Assert.assertEquals(new BigDecimal(350), this.accountsService.getAccount(ACC_ID_2).getBalance());
+    }
+
+    @Test
+    public void makeBinaryTransactionsTruncated() throws Exception {
+        //Arrange
+        ByteBuffer frames = ByteBuffer.allocate(256);
+        BinaryTransferHandler.writeRequest(frames, 1, ACC_ID_1, ACC_ID_2, 15_000);
+        BinaryTransferHandler.writeRequest(frames, 2, ACC_ID_1, ACC_ID_3, 15_000);
+
+        //Act and Assert
+        this.mockMvc.perform(post("/v1/transaction/binary").contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .content(Arrays.copyOf(frames.array(), frames.position() - 1)))
+                .andExpect(status().isBadRequest());
+
+        Assert.assertEquals(new BigDecimal(INITIAL_BAL), this.accountsService.getAccount(ACC_ID_1).getBalance());
+    }
+}
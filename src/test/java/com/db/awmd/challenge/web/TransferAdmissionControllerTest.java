@@ -0,0 +1,201 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.config.TransferEngineProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.HoldRegistry;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.IdempotencyCache;
+import com.db.awmd.challenge.service.TransactionService;
+import com.db.awmd.challenge.service.TransferAdmission;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.context.WebApplicationContext;
+
+import javax.validation.Validator;
+import java.math.BigDecimal;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.standaloneSetup;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"admission.enabled=true", "admission.account.rate-per-second=0.1", "admission.account.burst=2"})
+@WebAppConfiguration
+public class TransferAdmissionControllerTest {
+
+    private MockMvc mockMvc;
+
+    @Autowired
+    private AccountsService accountsService;
+
+    @Autowired
+    private WebApplicationContext webApplicationContext;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private Validator validator;
+
+    @Autowired
+    private IdempotencyCache idempotencyCache;
+
+    @Autowired
+    private TransferAdmission transferAdmission;
+
+    @Autowired
+    private HoldRegistry holdRegistry;
+
+    @Autowired
+    private TransferEngineProperties transferEngineProperties;
+
+    @Before
+    public void prepareMockMvc() {
+        this.mockMvc = webAppContextSetup(this.webApplicationContext).build();
+        for(String accountId : new String[] {"1", "2", "3", "4"}) {
+            this.accountsService.createAccount(new Account(accountId, new BigDecimal(200)));
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.accountsService.getAccountsRepository().clearAccounts();
+    }
+
+    @Test
+    public void hotAccountIsRejectedWithTooManyRequests() throws Exception {
+        //Arrange
+        for(int i = 0; i < 2; i++) {
+            this.mockMvc.perform(post("/v1/transaction/transfer").contentType(MediaType.APPLICATION_JSON)
+                    .content("{\"from\":\"1\",\"to\":\"" + (2 + i) + "\",\"amount\":1}"))
+                    .andExpect(status().isOk());
+        }
+
+        //Act and Assert
+        this.mockMvc.perform(post("/v1/transaction/transfer").contentType(MediaType.APPLICATION_JSON)
+                .header(TransactionController.CLIENT_ID, "runaway")
+                .content("{\"from\":\"1\",\"to\":\"4\",\"amount\":1}"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "10"))
+                .andExpect(jsonPath("$.message").value("Too many transfers for these accounts."));
+        this.mockMvc.perform(post("/v1/transaction/transfer").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"from\":\"4\",\"to\":\"2\",\"amount\":1}"))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void batchIsAdmittedAsAWholeAndRefundedWhenRejected() throws Exception {
+        //Arrange
+        createAccounts("b1", "b2", "b3", "b4");
+        this.mockMvc.perform(post("/v1/transaction/transfer").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"from\":\"b1\",\"to\":\"b2\",\"amount\":1}"))
+                .andExpect(status().isOk());
+
+        //Act: b1 has one token left but takes part in two transfers.
+        this.mockMvc.perform(post("/v1/transaction/transfers").contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"from\":\"b3\",\"to\":\"b4\",\"amount\":1},{\"from\":\"b4\",\"to\":\"b1\",\"amount\":1},"
+                        + "{\"from\":\"b1\",\"to\":\"b2\",\"amount\":1}]"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "10"))
+                .andExpect(jsonPath("$.committed").value(false))
+                .andExpect(jsonPath("$.results[0].message").value("Too many transfers for these accounts."));
+
+        //Assert: b3 and b4 got back the tokens the batch had taken.
+        this.mockMvc.perform(post("/v1/transaction/transfer").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"from\":\"b3\",\"to\":\"b4\",\"amount\":1}"))
+                .andExpect(status().isOk());
+        this.mockMvc.perform(post("/v1/transaction/transfer").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"from\":\"b4\",\"to\":\"b3\",\"amount\":1}"))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void fanOutAndHoldCaptureAreAdmitted() throws Exception {
+        //Arrange
+        createAccounts("f1", "f2", "f3");
+        String body = this.mockMvc.perform(post("/v1/transaction/holds").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"from\":\"f1\",\"to\":\"f2\",\"amount\":1}"))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        String holdId = new ObjectMapper().readTree(body).get("holdId").asText();
+
+        //Act and Assert: f1 has one token left.
+        this.mockMvc.perform(post("/v1/transaction/fan-out").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"from\":\"f1\",\"legs\":[{\"to\":\"f2\",\"amount\":1},{\"to\":\"f3\",\"amount\":1}]}"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(jsonPath("$.committed").value(false));
+        this.mockMvc.perform(post("/v1/transaction/holds/" + holdId + "/capture"))
+                .andExpect(status().isOk());
+        this.mockMvc.perform(post("/v1/transaction/transfer").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"from\":\"f1\",\"to\":\"f3\",\"amount\":1}"))
+                .andExpect(status().isTooManyRequests());
+    }
+
+    @Test
+    public void idempotentReplayTakesNoToken() throws Exception {
+        //Arrange
+        createAccounts("i1", "i2", "i3");
+        for(int i = 0; i < 3; i++) {
+            this.mockMvc.perform(post("/v1/transaction/transfer").contentType(MediaType.APPLICATION_JSON)
+                    .header(TransactionController.IDEMPOTENCY_KEY, "replayed")
+                    .content("{\"from\":\"i1\",\"to\":\"i2\",\"amount\":1}"))
+                    .andExpect(status().isOk());
+        }
+
+        //Act and Assert: only the first request ran, so i1 still has its second token.
+        this.mockMvc.perform(post("/v1/transaction/transfer").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"from\":\"i1\",\"to\":\"i3\",\"amount\":1}"))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void asyncTransferTurnedAwayByAFullExecutorGetsServiceUnavailable() throws Exception {
+        //Arrange
+        createAccounts("q1", "q2");
+        TransactionController controller = new TransactionController(this.transactionService, this.objectMapper,
+                this.validator, runnable -> { throw new RejectedExecutionException("full"); }, this.idempotencyCache,
+                this.transferAdmission, this.holdRegistry, this.transferEngineProperties, 60);
+        MockMvc rejecting = standaloneSetup(controller).build();
+
+        //Act
+        MvcResult started = rejecting.perform(post("/v1/transaction/transfer/async").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"from\":\"q1\",\"to\":\"q2\",\"amount\":1}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        //Assert: nothing ran, and the admission ticket was handed back.
+        rejecting.perform(asyncDispatch(started))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "1"))
+                .andExpect(jsonPath("$.message").value("Too many transfers waiting to run."));
+        Assert.assertEquals(new BigDecimal(200), this.accountsService.getAccount("q1").getBalance());
+        Assert.assertEquals(0, this.transferAdmission.getInFlight());
+    }
+
+    //Accounts of their own per test: the token buckets outlive each test's accounts.
+    private void createAccounts(String... accountIds) {
+        for(String accountId : accountIds) {
+            this.accountsService.createAccount(new Account(accountId, new BigDecimal(200)));
+        }
+    }
+}
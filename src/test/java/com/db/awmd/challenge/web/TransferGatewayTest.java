@@ -0,0 +1,165 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.config.GatewayProperties;
+import com.db.awmd.challenge.service.TransactionService;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+
+public class TransferGatewayTest {
+
+    private final TransactionService transactionService = Mockito.mock(TransactionService.class);
+
+    private final GatewayProperties properties = new GatewayProperties();
+
+    private TransferGateway gateway;
+
+    @Before
+    public void setUp() throws Exception {
+        properties.setPort(0);
+        properties.setIoThreads(2);
+        properties.setMaxConnections(2);
+        Mockito.when(transactionService.transfer(Mockito.anyString(), Mockito.anyString(), Mockito.anyLong()))
+                .thenAnswer(invocation -> "tx-" + invocation.getArguments()[2]);
+        BinaryTransferHandlerTest.answerEachWithTransfer(transactionService);
+        gateway = new TransferGateway(properties, transactionService, null);
+        gateway.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        gateway.stop();
+    }
+
+    @Test
+    public void pipelinedRequestsAreAnsweredInOrder() throws Exception {
+        //Arrange
+        ByteBuffer frames = ByteBuffer.allocate(64 * 1024);
+        for(int i = 0; i < 1000; i++) {
+            BinaryTransferHandler.writeRequest(frames, i, "1", "2", 100 + i);
+        }
+
+        try (Socket socket = new Socket("127.0.0.1", gateway.getPort())) {
+            //Act
+            socket.getOutputStream().write(frames.array(), 0, frames.position());
+
+            //Assert
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            for(int i = 0; i < 1000; i++) {
+                int length = in.readInt();
+                Assert.assertEquals(i, in.readLong());
+                Assert.assertEquals(BinaryTransferHandler.OK, in.readByte());
+                byte[] id = new byte[in.readByte()];
+                in.readFully(id);
+                Assert.assertEquals(8 + 1 + 1 + id.length, length);
+                Assert.assertEquals("tx-" + (100 + i), new String(id, "US-ASCII"));
+            }
+        }
+        Assert.assertEquals(1000, gateway.getRequests());
+    }
+
+    @Test(timeout = 20_000)
+    public void pipelinedBacklogIsAnsweredBeforeClose() throws Exception {
+        //Arrange
+        GatewayProperties small = new GatewayProperties();
+        small.setPort(0);
+        small.setIoThreads(1);
+        //One response buffer per connection and long transaction ids, so a buffer only has room
+        //for a fraction of the frames one read brings in.
+        small.setMaxPendingBytes(1);
+        TransactionService longIds = Mockito.mock(TransactionService.class);
+        Mockito.when(longIds.transfer(Mockito.anyString(), Mockito.anyString(), Mockito.anyLong()))
+                .thenReturn(String.join("", Collections.nCopies(200, "x")));
+        BinaryTransferHandlerTest.answerEachWithTransfer(longIds);
+        TransferGateway backlogged = new TransferGateway(small, longIds, null);
+        backlogged.start();
+        ByteBuffer frames = ByteBuffer.allocate(256 * 1024);
+        for(int i = 0; i < 10_000; i++) {
+            BinaryTransferHandler.writeRequest(frames, i, "1", "2", 100 + i);
+        }
+
+        try (Socket socket = new Socket("127.0.0.1", backlogged.getPort())) {
+            //Act
+            Thread writer = new Thread(() -> {
+                try {
+                    socket.getOutputStream().write(frames.array(), 0, frames.position());
+                    socket.shutdownOutput();
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            });
+            writer.start();
+
+            //Assert
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            for(int i = 0; i < 10_000; i++) {
+                in.readInt();
+                Assert.assertEquals(i, in.readLong());
+                Assert.assertEquals(BinaryTransferHandler.OK, in.readByte());
+                in.skipBytes(in.readUnsignedByte());
+            }
+            Assert.assertEquals(-1, in.read());
+            writer.join();
+        } finally {
+            backlogged.stop();
+        }
+    }
+
+    @Test
+    public void connectionsBeyondTheLimitAreClosed() throws Exception {
+        //Arrange
+        try (Socket first = new Socket("127.0.0.1", gateway.getPort());
+             Socket second = new Socket("127.0.0.1", gateway.getPort())) {
+            roundTrip(first);
+            roundTrip(second);
+
+            //Act
+            try (Socket third = new Socket("127.0.0.1", gateway.getPort())) {
+                //Assert
+                Assert.assertEquals(-1, third.getInputStream().read());
+            }
+            Assert.assertEquals(2, gateway.getConnections());
+            Assert.assertEquals(1, gateway.getRejectedConnections());
+        }
+    }
+
+    @Test
+    public void malformedFrameClosesTheConnection() throws Exception {
+        try (Socket socket = new Socket("127.0.0.1", gateway.getPort())) {
+            //Arrange
+            ByteBuffer frame = ByteBuffer.allocate(64);
+            frame.putInt(3).putInt(0);
+
+            //Act
+            socket.getOutputStream().write(frame.array(), 0, frame.position());
+
+            //Assert
+            Assert.assertEquals(-1, socket.getInputStream().read());
+        }
+        Mockito.verifyZeroInteractions(transactionService);
+    }
+
+    private static void roundTrip(Socket socket) throws IOException {
+        ByteBuffer frame = ByteBuffer.allocate(64);
+        BinaryTransferHandler.writeRequest(frame, 1, "1", "2", 100);
+        OutputStream out = socket.getOutputStream();
+        out.write(frame.array(), 0, frame.position());
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        in.readInt();
+        Assert.assertEquals(1, in.readLong());
+        if(in.skipBytes(2 + "tx-100".length()) != 2 + "tx-100".length()) {
+            throw new EOFException();
+        }
+    }
+}